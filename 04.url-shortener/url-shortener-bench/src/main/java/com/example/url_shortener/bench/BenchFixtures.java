@@ -0,0 +1,72 @@
+// BenchFixtures 提供各個 benchmark 共用的測試資料與物件組裝：
+//   - 合成的 URL（長度分布接近實際流量：多數 40–100 字元，少數帶長 query string）；
+//   - 不經過 Spring 容器建立 ShortenService（沒有快取、Bloom filter、點擊監聽者與 metrics，量測的是核心路徑）。
+// capacity 套件的容量測試也使用同一組合成 URL。
+
+package com.example.url_shortener.bench;
+
+import com.example.url_shortener.cluster.ClusterNode;
+import com.example.url_shortener.service.CapacityGuard;
+import com.example.url_shortener.service.ClickListener;
+import com.example.url_shortener.service.CodeGenerator;
+import com.example.url_shortener.service.ShortenService;
+import com.example.url_shortener.service.ShortenerMetrics;
+import com.example.url_shortener.store.CodeFilter;
+import com.example.url_shortener.store.HotEntryCache;
+import com.example.url_shortener.store.UrlStore;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.util.SplittableRandom;
+
+public final class BenchFixtures {
+
+    // 與 app.default-ttl-seconds 的預設值相同（30 天），benchmark 期間不會有資料過期
+    public static final long TTL_SECONDS = 2_592_000L;
+
+    private static final String[] HOSTS = {
+            "https://www.example.com", "https://news.example.org", "https://shop.example.net",
+            "https://docs.example.io", "https://blog.example.dev", "https://cdn.example-media.com"
+    };
+    private static final String[] SEGMENTS = {
+            "articles", "products", "2024", "2025", "category", "item", "user", "posts", "en-us", "search", "video"
+    };
+
+    private BenchFixtures() {
+    }
+
+    // 第 index 筆合成 URL；相同的 index 永遠產生相同的 URL，不同的 index 不會重複
+    public static String url(long index) {
+        SplittableRandom random = new SplittableRandom(index * 0x9E3779B97F4A7C15L);
+        StringBuilder url = new StringBuilder(128);
+        url.append(HOSTS[random.nextInt(HOSTS.length)]);
+        int depth = 1 + random.nextInt(4);
+        for (int i = 0; i < depth; i++) {
+            url.append('/').append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+        }
+        url.append('/').append(Long.toString(index, 36));
+        // 約 3 成帶 query string，其中少數是很長的追蹤參數
+        int query = random.nextInt(10);
+        if (query >= 7) {
+            url.append("?utm_source=newsletter&utm_medium=email&id=").append(random.nextInt(1_000_000));
+            if (query == 9) {
+                url.append("&ref=").append(Long.toHexString(random.nextLong())).append(Long.toHexString(random.nextLong()));
+            }
+        }
+        return url.toString();
+    }
+
+    public static ShortenService shortenService(UrlStore store) {
+        StaticListableBeanFactory none = new StaticListableBeanFactory();
+        return new ShortenService(new CodeGenerator(store, 0.01), store,
+                none.getBeanProvider(HotEntryCache.class), none.getBeanProvider(CodeFilter.class),
+                none.getBeanProvider(ClickListener.class), none.getBeanProvider(ClusterNode.class),
+                none.getBeanProvider(CapacityGuard.class), none.getBeanProvider(ShortenerMetrics.class));
+    }
+}
+
+//程式碼解說：
+//
+//url(long index): 以 index 作為亂數種子，所以預先填入的資料與量測時查詢的 URL 可以各自重新產生，不必另外保存一份清單。
+//
+//StaticListableBeanFactory: 空的 bean factory，getBeanProvider(...) 回傳「沒有這個 bean」的 ObjectProvider，
+// 等同於這些功能在 application.properties 中都是關閉的。
@@ -0,0 +1,72 @@
+// CodeGeneratorBenchmark 量測 CodeGenerator.generate：MurmurHash3 + Base62 產生一個短碼的成本（32-bit 雜湊的 6 碼與 64-bit 雜湊的 7 碼）。
+
+package com.example.url_shortener.bench;
+
+import com.example.url_shortener.service.CodeGenerator;
+import com.example.url_shortener.store.InMemoryStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodeGeneratorBenchmark {
+
+    private static final int MASK = 1023;
+
+    private final CodeGenerator generator = new CodeGenerator(new InMemoryStore(), 0.01);
+    private final String[] urls = new String[MASK + 1];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i <= MASK; i++) {
+            urls[i] = BenchFixtures.url(i);
+        }
+    }
+
+    @Benchmark
+    public String generate() {
+        return generator.generate(urls[next++ & MASK], 0);
+    }
+
+    // 碰撞重試時的 salt 路徑
+    @Benchmark
+    public String generateWithSalt() {
+        int i = next++;
+        return generator.generate(urls[i & MASK], 1 + (i & 3));
+    }
+
+    // 連續碰撞兩次之後改用 64-bit 雜湊的 7 碼（與 store 筆數超過門檻時相同的路徑）
+    @Benchmark
+    public String generateWide() {
+        return generator.generate(urls[next++ & MASK], 2);
+    }
+
+    // 所有執行緒同時產碼：CodeGenerator 共用一個實例，緩衝區是 ThreadLocal
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String generateAllThreads() {
+        return generator.generate(urls[next++ & MASK], 0);
+    }
+}
+
+//程式碼解說：
+//
+//urls: 長度分布接近實際流量的合成 URL（BenchFixtures.url），雜湊成本與 URL 長度成正比，用固定短字串會低估。
+//
+//generateAllThreads: @Threads(Threads.MAX) 以 CPU 核心數個執行緒同時執行，用來確認共用的 CodeGenerator 沒有互相競爭的狀態。
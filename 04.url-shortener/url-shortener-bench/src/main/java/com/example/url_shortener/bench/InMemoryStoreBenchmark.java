@@ -0,0 +1,124 @@
+// InMemoryStoreBenchmark 量測 InMemoryStore 的讀取（getEntry）與寫入（save），各有單一執行緒與所有核心兩種版本：
+//   - access=disjoint：每個執行緒只碰自己那一段短碼（沒有競爭）；
+//   - access=shared  ：所有執行緒反覆存取同一小組熱門短碼（同一個 ConcurrentHashMap bin 上的競爭）。
+
+package com.example.url_shortener.bench;
+
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.store.InMemoryStore;
+import com.example.url_shortener.util.Base62;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InMemoryStoreBenchmark {
+
+    // 所有執行緒共用的 store，預先填入 size 筆資料
+    @State(Scope.Benchmark)
+    public static class Store {
+
+        @Param({"100000"})
+        public int size;
+
+        @Param({"disjoint", "shared"})
+        public String access;
+
+        InMemoryStore store;
+        Entry[] entries;
+
+        @Setup
+        public void setUp() {
+            store = new InMemoryStore();
+            entries = new Entry[size];
+            Instant now = Instant.now();
+            Instant expiresAt = now.plusSeconds(BenchFixtures.TTL_SECONDS);
+            for (int i = 0; i < size; i++) {
+                // 與 CodeGenerator 相同長度的短碼
+                String code = Base62.encode(0x3B9ACA00L + i * 7919L);
+                entries[i] = new Entry(code, BenchFixtures.url(i), now, expiresAt);
+                store.save(entries[i].getUrl(), code, entries[i]);
+            }
+        }
+    }
+
+    // 每個執行緒自己的游標：disjoint 時各自走訪不重疊的一段，shared 時都在同一組熱門短碼上打轉
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private static final int HOT_KEYS = 8;
+
+        int base;
+        int span;
+        int next;
+
+        @Setup
+        public void setUp(Store store, ThreadParams thread) {
+            if (store.access.equals("shared")) {
+                base = 0;
+                span = HOT_KEYS;
+            } else {
+                span = store.size / thread.getThreadCount();
+                base = span * thread.getThreadIndex();
+            }
+        }
+
+        Entry nextEntry(Entry[] entries) {
+            Entry entry = entries[base + next];
+            if (++next == span) {
+                next = 0;
+            }
+            return entry;
+        }
+    }
+
+    @Benchmark
+    public Entry get(Store store, Cursor cursor) {
+        return store.store.getEntry(cursor.nextEntry(store.entries).getCode());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Entry getAllThreads(Store store, Cursor cursor) {
+        return store.store.getEntry(cursor.nextEntry(store.entries).getCode());
+    }
+
+    @Benchmark
+    public void put(Store store, Cursor cursor) {
+        Entry entry = cursor.nextEntry(store.entries);
+        store.store.save(entry.getUrl(), entry.getCode(), entry);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void putAllThreads(Store store, Cursor cursor) {
+        Entry entry = cursor.nextEntry(store.entries);
+        store.store.save(entry.getUrl(), entry.getCode(), entry);
+    }
+}
+
+//程式碼解說：
+//
+//@Threads(Threads.MAX): 以 CPU 核心數個執行緒同時執行；也可以用 -t 指定任意執行緒數（會覆蓋所有方法的設定），
+// 例如 -t 1、-t 4、-t 16 依序量測就能畫出 1 到 N 個執行緒的擴展曲線。
+//
+//put: 以同一筆 Entry 覆寫既有的短碼，store 大小不變，量測的是兩個 ConcurrentHashMap.put 與 StoreListener 通知的成本。
+//
+//Cursor.setUp(...): ThreadParams 提供這個執行緒的編號與總執行緒數，用來切出互不重疊的區段。
@@ -0,0 +1,85 @@
+// LongKeyStoreBenchmark 量測 LongKeyStore 的兩種讀取方式，搭配 -prof gc 比較每次查詢配置的 bytes：
+//   - get      ：getEntry(code)，依照 UrlStore 契約每次命中都回傳新的 Entry；
+//   - getInto  ：getEntry(code, holder)，寫進每個執行緒重複使用的 EntryHolder，不配置任何物件。
+
+package com.example.url_shortener.bench;
+
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.model.EntryHolder;
+import com.example.url_shortener.store.LongKeyStore;
+import com.example.url_shortener.util.Base62;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LongKeyStoreBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Store {
+
+        @Param({"100000"})
+        public int size;
+
+        LongKeyStore store;
+        String[] codes;
+
+        @Setup
+        public void setUp() {
+            store = new LongKeyStore();
+            codes = new String[size];
+            Instant now = Instant.now();
+            Instant expiresAt = now.plusSeconds(BenchFixtures.TTL_SECONDS);
+            for (int i = 0; i < size; i++) {
+                codes[i] = Base62.encode(0x3B9ACA00L + i * 7919L);
+                store.save(BenchFixtures.url(i), codes[i], new Entry(codes[i], BenchFixtures.url(i), now, expiresAt));
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Reader {
+
+        final EntryHolder holder = new EntryHolder();
+        int next;
+
+        String nextCode(String[] codes) {
+            String code = codes[next];
+            if (++next == codes.length) {
+                next = 0;
+            }
+            return code;
+        }
+    }
+
+    @Benchmark
+    public Entry get(Store store, Reader reader) {
+        return store.store.getEntry(reader.nextCode(store.codes));
+    }
+
+    @Benchmark
+    public boolean getInto(Store store, Reader reader) {
+        return store.store.getEntry(reader.nextCode(store.codes), reader.holder);
+    }
+}
+
+//程式碼解說：
+//
+//get 回傳 Entry: JMH 會把回傳值交給 Blackhole，Entry 因此一定逃逸，-prof gc 的 gc.alloc.rate.norm 就是每次命中配置的大小。
+//
+//getInto: 短碼字串在 setUp 時就建立好，holder 屬於這個執行緒的 State，量測到的配置量只剩查詢本身。
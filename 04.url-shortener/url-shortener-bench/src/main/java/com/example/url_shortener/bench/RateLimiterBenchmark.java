@@ -0,0 +1,71 @@
+// RateLimiterBenchmark 量測 TokenBucketTable.tryAcquire：RateLimitFilter 在每個 POST /shorten 請求前多做的工作。
+
+package com.example.url_shortener.bench;
+
+import com.example.url_shortener.ratelimit.TokenBucketTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RateLimiterBenchmark {
+
+    private static final int MASK = 4095;
+
+    // 速率設得很高，量到的是通過的路徑（絕大多數請求走的路徑）
+    private final TokenBucketTable table = new TokenBucketTable(1e9, 1_000_000, 100_000);
+    private final String[] clients = new String[MASK + 1];
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i <= MASK; i++) {
+            clients[i] = "10." + (i >>> 8) + "." + (i & 255) + ".7";
+        }
+    }
+
+    @Benchmark
+    public long acquire(Cursor cursor) {
+        return table.tryAcquire(clients[cursor.next++ & MASK], System.nanoTime());
+    }
+
+    // 所有執行緒同時取 token：量測分段鎖的競爭
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long acquireAllThreads(Cursor cursor) {
+        return table.tryAcquire(clients[cursor.next++ & MASK], System.nanoTime());
+    }
+
+    // 同一個用戶端的請求全部搶同一把鎖（最壞情況）
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long acquireSingleClient() {
+        return table.tryAcquire(clients[0], System.nanoTime());
+    }
+}
+
+//程式碼解說：
+//
+//clients: 4096 個不同的 IP 字串，分散在 64 段中；String.hashCode 會被快取，實際請求每次都是新的字串，
+// 所以這裡的數字略為樂觀，但差距只是一次短字串的雜湊。
+//
+//System.nanoTime(): RateLimitFilter 每次請求都會讀取一次，成本包含在量測結果中。
@@ -0,0 +1,128 @@
+// ShortenServiceBenchmark 量測 ShortenService.shorten / resolve 在不同 store 填充量（fill）下的成本。
+//
+// 預設的 fill 涵蓋 1K 到 1M；更大的填充量需要對應的 heap，例如：
+//   -p fill=10000000,50000000 -jvmArgsAppend -Xmx32g
+//
+// resolve 有兩種存取模式：隨機分散在所有短碼上（每次都可能 cache miss，沒有競爭），
+// 以及所有執行緒集中查詢少數熱門短碼（resolveHot，同一筆資料上的並行讀取）。
+
+package com.example.url_shortener.bench;
+
+import com.example.url_shortener.service.ShortenService;
+import com.example.url_shortener.store.InMemoryStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ShortenServiceBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Service {
+
+        @Param({"1000", "100000", "1000000"})
+        public int fill;
+
+        ShortenService service;
+        String[] codes;
+
+        @Setup
+        public void setUp() {
+            service = BenchFixtures.shortenService(new InMemoryStore());
+            codes = new String[fill];
+            for (int i = 0; i < fill; i++) {
+                codes[i] = service.shorten(BenchFixtures.url(i), BenchFixtures.TTL_SECONDS).getEntry().getCode();
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private static final int HOT_CODES = 8;
+
+        long random;
+        long nextNewUrl;
+        int hot;
+
+        @Setup
+        public void setUp(Service service, ThreadParams thread) {
+            random = 0x9E3779B97F4A7C15L * (thread.getThreadIndex() + 1);
+            // 每個執行緒各自的新 URL 區段，與預先填入的資料、其他執行緒都不重疊
+            nextNewUrl = service.fill + ((long) thread.getThreadIndex() << 40);
+        }
+
+        // xorshift：比 ThreadLocalRandom 更便宜，不會干擾量測
+        int nextIndex(int bound) {
+            random ^= random << 13;
+            random ^= random >>> 7;
+            random ^= random << 17;
+            return (int) ((random >>> 1) % bound);
+        }
+
+        int nextHot() {
+            return hot++ & (HOT_CODES - 1);
+        }
+    }
+
+    @Benchmark
+    public Optional<?> resolve(Service service, Cursor cursor) {
+        return service.service.resolve(service.codes[cursor.nextIndex(service.fill)]);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Optional<?> resolveAllThreads(Service service, Cursor cursor) {
+        return service.service.resolve(service.codes[cursor.nextIndex(service.fill)]);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Optional<?> resolveHotAllThreads(Service service, Cursor cursor) {
+        return service.service.resolve(service.codes[cursor.nextHot()]);
+    }
+
+    // 冪等路徑：URL 已經有短碼
+    @Benchmark
+    public Object shortenExisting(Service service, Cursor cursor) {
+        return service.service.shorten(BenchFixtures.url(cursor.nextIndex(service.fill)), BenchFixtures.TTL_SECONDS);
+    }
+
+    // 新 URL：產碼、碰撞檢查與寫入（store 在量測期間持續成長）
+    @Benchmark
+    public Object shortenNew(Service service, Cursor cursor) {
+        return service.service.shorten(BenchFixtures.url(cursor.nextNewUrl++), BenchFixtures.TTL_SECONDS);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Object shortenNewAllThreads(Service service, Cursor cursor) {
+        return service.service.shorten(BenchFixtures.url(cursor.nextNewUrl++), BenchFixtures.TTL_SECONDS);
+    }
+}
+
+//程式碼解說：
+//
+//Service.setUp(...): 透過 shorten 本身填入資料，所以 store 中的短碼與 URL 分布與正式環境相同（包含碰撞時加 salt 的短碼）。
+//
+//shortenExisting / shortenNew: 兩者都包含產生 URL 字串的成本（BenchFixtures.url），比較兩者的差距才是冪等檢查與寫入的差異；
+// 產生 URL 的配置量也會出現在 -prof gc 的結果中。
+//
+//@Fork(jvmArgsAppend = "-Xmx2g"): 足以容納預設的 1M 筆；以 -jvmArgsAppend 指定更大的 heap 時會覆蓋這個設定。
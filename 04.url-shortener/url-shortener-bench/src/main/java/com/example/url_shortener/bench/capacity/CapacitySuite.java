@@ -0,0 +1,287 @@
+// CapacitySuite 是端到端的容量與 heap 用量測試：在同一個 JVM 中啟動完整的 url-shortener（隨機連接埠），
+// 透過 ShortenService 把 store 依序填到每個填充量，並在每個填充量量測：
+//   - 每筆資料佔用的 heap（完整 GC 後的 heap 用量差 / 筆數）；
+//   - 載入期間與延遲量測期間的 GC 次數與暫停時間；
+//   - 以固定到達率（OpenLoadGenerator）對 GET /r/{code} 發出 HTTP 請求的延遲百分位數。
+// 結果寫成 JSON（完整資料）與 CSV（每個填充量一列），方便比較不同的儲存後端與 JVM 設定。
+//
+// 參數（其餘 --key=value 會原封不動交給 Spring Boot，例如 --app.store.type=long-key）：
+//   --fills=10000,100000,1000000   依序填到的筆數
+//   --rate=2000                    每秒請求數
+//   --duration-seconds=20          每個填充量的延遲量測時間
+//   --warmup-seconds=5             量測前以相同速率暖身的時間
+//   --sample-size=100000           延遲量測時隨機挑選的短碼數
+//   --max-in-flight=10000          同時等待回應的請求上限
+//   --label=...                    結果檔名與內容中的標籤（預設為 app.store.type）
+//   --out=target/capacity          結果輸出目錄
+
+package com.example.url_shortener.bench.capacity;
+
+import com.example.url_shortener.UrlShortenerApplication;
+import com.example.url_shortener.bench.BenchFixtures;
+import com.example.url_shortener.service.ShortenService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+public final class CapacitySuite {
+
+    private static final String[] CSV_COLUMNS = {
+            "label", "storeType", "fill", "bytesPerEntry", "heapUsedBytes", "loadSeconds", "loadRate",
+            "loadGcCount", "loadGcTotalMs", "loadGcMaxMs", "targetRate", "achievedRate", "errors", "dropped",
+            "p50Micros", "p90Micros", "p99Micros", "p999Micros", "maxMicros",
+            "latencyGcCount", "latencyGcTotalMs", "latencyGcMaxMs"
+    };
+
+    private static final String WARMUP_CODE = "capacity-warmup";
+
+    private final Map<String, String> options = new LinkedHashMap<>();
+    private final List<String> appArgs = new ArrayList<>();
+
+    private CapacitySuite(String[] args) {
+        options.put("fills", "10000,100000,1000000");
+        options.put("rate", "2000");
+        options.put("duration-seconds", "20");
+        options.put("warmup-seconds", "5");
+        options.put("sample-size", "100000");
+        options.put("max-in-flight", "10000");
+        options.put("out", "target/capacity");
+        options.put("label", "");
+
+        appArgs.add("--server.port=0");
+        appArgs.add("--logging.level.root=WARN");
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Expected --key=value but got " + arg);
+            }
+            String key = arg.substring(2, equals);
+            if (options.containsKey(key)) {
+                options.put(key, arg.substring(equals + 1));
+            } else {
+                appArgs.add(arg);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new CapacitySuite(args).run();
+    }
+
+    private void run() throws Exception {
+        long[] fills = Arrays.stream(options.get("fills").split(",")).mapToLong(s -> Long.parseLong(s.trim())).sorted().toArray();
+        int rate = Integer.parseInt(options.get("rate"));
+        Duration measure = Duration.ofSeconds(Long.parseLong(options.get("duration-seconds")));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(options.get("warmup-seconds")));
+        int sampleSize = Integer.parseInt(options.get("sample-size"));
+
+        try (GcRecorder gc = new GcRecorder();
+             ConfigurableApplicationContext context = SpringApplication.run(UrlShortenerApplication.class,
+                     appArgs.toArray(String[]::new))) {
+            Environment environment = context.getEnvironment();
+            ShortenService service = context.getBean(ShortenService.class);
+            String storeType = environment.getProperty("app.store.type", "map");
+            String label = options.get("label").isEmpty() ? storeType : options.get("label");
+            OpenLoadGenerator generator = new OpenLoadGenerator("http://127.0.0.1:" + targetPort(environment),
+                    Integer.parseInt(options.get("max-in-flight")));
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("label", label);
+            report.put("startedAt", Instant.now().toString());
+            report.put("storeType", storeType);
+            report.put("javaVersion", System.getProperty("java.version"));
+            report.put("jvmArgs", ManagementFactory.getRuntimeMXBean().getInputArguments());
+            report.put("garbageCollectors", GcRecorder.collectorNames());
+            report.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+            report.put("maxHeapBytes", Runtime.getRuntime().maxMemory());
+            report.put("appArgs", appArgs);
+            report.put("options", options);
+
+            // 先以不存在的短碼（404）暖身 HTTP 路徑，讓 Tomcat、HttpClient 的緩衝區與延遲載入的類別不計入基準之後的用量
+            generator.run(new String[]{WARMUP_CODE}, rate, warmup);
+            long baseline = usedHeapAfterGc();
+            report.put("baselineHeapBytes", baseline);
+            List<Map<String, Object>> levels = new ArrayList<>();
+            report.put("levels", levels);
+            System.out.printf("capacity suite [%s]: baseline heap %,d bytes%n", label, baseline);
+
+            long loaded = 0;
+            long urlChars = 0;
+            for (long fill : fills) {
+                Map<String, Object> level = new LinkedHashMap<>();
+                level.put("fill", fill);
+
+                gc.snapshotAndReset();
+                long started = System.nanoTime();
+                urlChars += load(service, loaded, fill);
+                double loadSeconds = (System.nanoTime() - started) / 1e9;
+                Map<String, Object> loadGc = gc.snapshotAndReset();
+                level.put("loadSeconds", loadSeconds);
+                level.put("loadRate", Math.round((fill - loaded) / loadSeconds));
+                level.put("loadGc", loadGc);
+                loaded = fill;
+
+                long heap = usedHeapAfterGc();
+                level.put("heapUsedBytes", heap - baseline);
+                level.put("bytesPerEntry", (heap - baseline) / fill);
+                level.put("averageUrlLength", urlChars / fill);
+
+                String[] codes = sampleCodes(service, fill, sampleSize);
+                generator.run(codes, rate, warmup);
+                gc.snapshotAndReset();
+                Map<String, Object> latency = generator.run(codes, rate, measure);
+                level.put("redirect", latency);
+                level.put("latencyGc", gc.snapshotAndReset());
+                levels.add(level);
+
+                @SuppressWarnings("unchecked")
+                Map<String, Object> micros = (Map<String, Object>) latency.get("latencyMicros");
+                System.out.printf("capacity suite [%s]: %,d entries, %,d bytes/entry, load %.1fs (%d GCs, max %d ms), "
+                                + "/r p50=%dus p99=%dus p999=%dus max=%dus at %d req/s (errors %d, dropped %d)%n",
+                        label, fill, (heap - baseline) / fill, loadSeconds, loadGc.get("count"), loadGc.get("maxMs"),
+                        micros.get("p50"), micros.get("p99"), micros.get("p999"), micros.get("max"),
+                        latency.get("achievedRate"), latency.get("errors"), latency.get("dropped"));
+            }
+
+            Path written = write(report, label);
+            System.out.println("capacity suite results written to " + written.toAbsolutePath());
+        }
+    }
+
+    // /r/{code} 由輕量轉址伺服器處理時直接對它量測，否則對 Spring MVC（Tomcat）量測
+    private static int targetPort(Environment environment) {
+        if (environment.getProperty("app.redirect-server.enabled", Boolean.class, false)) {
+            return environment.getProperty("app.redirect-server.port", Integer.class, 8081);
+        }
+        return environment.getRequiredProperty("local.server.port", Integer.class);
+    }
+
+    // 以所有 CPU 核心並行呼叫 ShortenService.shorten，把 store 從 from 筆填到 to 筆；回傳新增 URL 的總字元數
+    private static long load(ShortenService service, long from, long to) throws InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        long[] chars = new long[threads];
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        Thread[] loaders = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            loaders[t] = new Thread(() -> {
+                try {
+                    for (long i = from + id; i < to; i += threads) {
+                        String url = BenchFixtures.url(i);
+                        service.shorten(url, BenchFixtures.TTL_SECONDS);
+                        chars[id] += url.length();
+                    }
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "capacity-loader-" + t);
+            loaders[t].start();
+        }
+        for (Thread loader : loaders) {
+            loader.join();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return Arrays.stream(chars).sum();
+    }
+
+    // 冪等地再縮短一次既有的 URL，取得對應的短碼（不需要另外保存所有短碼，避免影響 heap 量測）
+    private static String[] sampleCodes(ShortenService service, long fill, int sampleSize) {
+        SplittableRandom random = new SplittableRandom(fill);
+        String[] codes = new String[(int) Math.min(fill, sampleSize)];
+        for (int i = 0; i < codes.length; i++) {
+            long index = codes.length == fill ? i : random.nextLong(fill);
+            codes[i] = service.shorten(BenchFixtures.url(index), BenchFixtures.TTL_SECONDS).getEntry().getCode();
+        }
+        return codes;
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        // 連續幾次完整 GC，取最小值，排除還在等待 finalization / reference processing 的物件
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    private Path write(Map<String, Object> report, String label) throws IOException {
+        Path directory = Paths.get(options.get("out"));
+        Files.createDirectories(directory);
+        String name = "capacity-" + label.replaceAll("[^A-Za-z0-9._-]", "_") + "-"
+                + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+
+        Path json = directory.resolve(name + ".json");
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(json.toFile(), report);
+
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(directory.resolve(name + ".csv")))) {
+            csv.println(String.join(",", CSV_COLUMNS));
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> levels = (List<Map<String, Object>>) report.get("levels");
+            for (Map<String, Object> level : levels) {
+                csv.println(csvRow(report, level));
+            }
+        }
+        return json;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String csvRow(Map<String, Object> report, Map<String, Object> level) {
+        Map<String, Object> loadGc = (Map<String, Object>) level.get("loadGc");
+        Map<String, Object> redirect = (Map<String, Object>) level.get("redirect");
+        Map<String, Object> micros = (Map<String, Object>) redirect.get("latencyMicros");
+        Map<String, Object> latencyGc = (Map<String, Object>) level.get("latencyGc");
+        Object[] values = {
+                report.get("label"), report.get("storeType"), level.get("fill"), level.get("bytesPerEntry"),
+                level.get("heapUsedBytes"), String.format("%.3f", (Double) level.get("loadSeconds")), level.get("loadRate"),
+                loadGc.get("count"), loadGc.get("totalMs"), loadGc.get("maxMs"),
+                redirect.get("targetRate"), redirect.get("achievedRate"), redirect.get("errors"), redirect.get("dropped"),
+                micros.get("p50"), micros.get("p90"), micros.get("p99"), micros.get("p999"), micros.get("max"),
+                latencyGc.get("count"), latencyGc.get("totalMs"), latencyGc.get("maxMs")
+        };
+        StringBuilder row = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                row.append(',');
+            }
+            row.append(values[i]);
+        }
+        return row.toString();
+    }
+}
+
+//程式碼解說：
+//
+//usedHeapAfterGc(): 每個填充量都在完整 GC 後量 heap，扣掉啟動後的基準值，bytesPerEntry 就包含 Entry、兩個 map 的節點、
+// URL 與短碼字串，以及 TTL 索引等 StoreListener 為每筆資料保留的結構。
+//
+//量測順序: 先量 heap 再送 /r 請求。前一個填充量的延遲量測留下的狀態（例如 app.stats.enabled 的每個短碼點擊數、
+// 輕量轉址伺服器在 Entry 上快取的回應）會計入之後的填充量，這也是正式環境中實際會有的用量。
+//
+//sampleCodes(...): 延遲量測只從 sample-size 筆短碼中挑選，但短碼是在整個 store 中隨機抽出的，仍然會碰到 CPU cache 以外的資料。
+//
+//SpringApplication.run(...): 與正式環境相同的元件組合與設定，--app.* 參數可以切換儲存後端、快取、Bloom filter 等功能再比較結果。
@@ -0,0 +1,88 @@
+// GcRecorder 透過 GarbageCollectorMXBean 的通知記錄每一次 GC 的耗時，依量測階段（載入、延遲量測）分開統計。
+//
+// 對 Serial / Parallel / G1 的 young 與 mixed collection 來說，通知中的 duration 就是 stop-the-world 暫停時間；
+// ZGC、Shenandoah 等並行收集器回報的是整個週期（大部分與應用程式並行），比較不同收集器時需要注意。
+
+package com.example.url_shortener.bench.capacity;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+final class GcRecorder implements NotificationListener, AutoCloseable {
+
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+    private final List<Long> durations = new ArrayList<>(); // 由 this 的 monitor 保護
+    private final Map<String, Integer> collectors = new LinkedHashMap<>();
+
+    GcRecorder() {
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (bean instanceof NotificationEmitter emitter) {
+                emitter.addNotificationListener(this, null, null);
+                emitters.add(emitter);
+            }
+        }
+    }
+
+    static List<String> collectorNames() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().map(GarbageCollectorMXBean::getName).toList();
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        synchronized (this) {
+            durations.add(info.getGcInfo().getDuration());
+            collectors.merge(info.getGcName() + " (" + info.getGcAction() + ")", 1, Integer::sum);
+        }
+    }
+
+    // 回傳上次 reset 之後的 GC 統計並重新開始計算
+    synchronized Map<String, Object> snapshotAndReset() {
+        List<Long> sorted = new ArrayList<>(durations);
+        sorted.sort(null);
+        long total = 0;
+        for (long duration : sorted) {
+            total += duration;
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", sorted.size());
+        stats.put("totalMs", total);
+        stats.put("maxMs", sorted.isEmpty() ? 0 : sorted.get(sorted.size() - 1));
+        stats.put("p99Ms", sorted.isEmpty() ? 0 : sorted.get((int) Math.ceil(0.99 * sorted.size()) - 1));
+        stats.put("collections", new LinkedHashMap<>(collectors));
+        durations.clear();
+        collectors.clear();
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(this);
+            } catch (Exception ignored) {
+                // 已經移除
+            }
+        }
+    }
+}
+
+//程式碼解說：
+//
+//handleNotification(...): JVM 在每次 GC 結束後由內部執行緒送出通知；這裡只做記錄，不做任何耗時的處理。
+//
+//collections: 依收集器與動作（end of minor GC / end of major GC）分別計數，可以看出暫停主要來自 young 還是 full GC。
@@ -0,0 +1,80 @@
+// LatencyHistogram 是可由多個執行緒同時寫入的對數-線性直方圖（數值單位由呼叫端決定，這裡用微秒）。
+//
+// 每個 2 的次方區間再細分成 128 格，任何數值的相對誤差都小於 1%，而記憶體固定（約 4,500 個計數器），
+// 不會因為請求數增加而成長，也不需要保存每一筆延遲。
+
+package com.example.url_shortener.bench.capacity;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+final class LatencyHistogram {
+
+    private static final int SUB_BITS = 7;
+    private static final int SUB_COUNT = 1 << SUB_BITS; // 128
+    private static final int LINEAR_LIMIT = SUB_COUNT * 2; // 小於 256 的數值各自一格
+    private static final int BUCKETS = LINEAR_LIMIT + (63 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(index(v));
+        max.accumulate(v);
+    }
+
+    long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    // 第 quantile（0–1）分位數；回傳所在格子的上界，不會低估
+    long percentile(double quantile) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max());
+            }
+        }
+        return max();
+    }
+
+    private static int index(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        int mantissa = (int) (value >>> shift); // 128–255
+        return LINEAR_LIMIT + (shift - 1) * SUB_COUNT + (mantissa - SUB_COUNT);
+    }
+
+    private static long upperBound(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = (index - LINEAR_LIMIT) / SUB_COUNT + 1;
+        long mantissa = SUB_COUNT + (index - LINEAR_LIMIT) % SUB_COUNT;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
+
+//程式碼解說：
+//
+//index(...): 以最高位元決定所在的 2 的次方區間，再取接下來 7 個位元決定區間內的格子，與 HdrHistogram 的做法相同。
+//
+//AtomicLongArray: HttpClient 的回應在多個執行緒上完成，計數器以 CAS 遞增，不需要鎖。
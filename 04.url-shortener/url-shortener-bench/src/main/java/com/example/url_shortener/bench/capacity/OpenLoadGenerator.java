@@ -0,0 +1,108 @@
+// OpenLoadGenerator 以固定的到達率（open model）對 GET /r/{code} 發出請求：
+// 每個請求都有預定的發送時間，不論前面的請求是否已經回應，延遲一律從「預定發送時間」起算。
+//
+// closed model（固定數量的用戶端、收到回應才送下一個）在伺服器變慢時會自動降低送出速率，
+// 暫停期間本來應該送出的請求就不會被量到（coordinated omission）；open model 會把這段等待計入延遲。
+
+package com.example.url_shortener.bench.capacity;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+final class OpenLoadGenerator {
+
+    private static final int EXPECTED_STATUS = 302;
+
+    private final HttpClient client;
+    private final String baseUrl;
+    private final int maxInFlight;
+
+    OpenLoadGenerator(String baseUrl, int maxInFlight) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        this.baseUrl = baseUrl;
+        this.maxInFlight = maxInFlight;
+    }
+
+    // 以 rate 個請求 / 秒持續 duration，短碼從 codes 中隨機挑選；回傳延遲（微秒）與錯誤統計
+    Map<String, Object> run(String[] codes, int rate, Duration duration) throws InterruptedException {
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder errors = new LongAdder();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        SplittableRandom random = new SplittableRandom(rate);
+
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long total = rate * duration.toSeconds();
+        long dropped = 0;
+        long start = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            long intended = start + i * interval;
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (!inFlight.tryAcquire()) {
+                // 同時等待回應的請求已達上限：視為失敗，而不是延後送出（否則又回到 closed model）
+                dropped++;
+                continue;
+            }
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/r/" + codes[random.nextInt(codes.length)]))
+                    .timeout(Duration.ofSeconds(30))
+                    .GET()
+                    .build();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                if (error != null || response.statusCode() != EXPECTED_STATUS) {
+                    errors.increment();
+                } else {
+                    latency.record((System.nanoTime() - intended) / 1_000);
+                }
+                inFlight.release();
+            });
+        }
+        long sendNanos = System.nanoTime() - start;
+        // 等所有請求回應（或逾時）
+        if (!inFlight.tryAcquire(maxInFlight, 60, TimeUnit.SECONDS)) {
+            errors.add(maxInFlight - inFlight.availablePermits());
+        } else {
+            inFlight.release(maxInFlight);
+        }
+
+        long completed = latency.count();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("targetRate", rate);
+        result.put("achievedRate", Math.round(completed / (sendNanos / 1e9)));
+        result.put("requests", total);
+        result.put("completed", completed);
+        result.put("errors", errors.sum());
+        result.put("dropped", dropped);
+        Map<String, Object> micros = new LinkedHashMap<>();
+        micros.put("p50", latency.percentile(0.50));
+        micros.put("p90", latency.percentile(0.90));
+        micros.put("p99", latency.percentile(0.99));
+        micros.put("p999", latency.percentile(0.999));
+        micros.put("max", latency.max());
+        result.put("latencyMicros", micros);
+        return result;
+    }
+}
+
+//程式碼解說：
+//
+//intended: 第 i 個請求的預定發送時間 = start + i * interval；發送執行緒落後時會立即補送，延遲仍從預定時間起算。
+//
+//maxInFlight: 伺服器完全停住時避免無限制地累積請求；超過上限的請求記為 dropped，結果中 dropped > 0 代表這個到達率已超過容量。
+//
+//EXPECTED_STATUS: /r/{code} 對存在的短碼回應 302，其他狀態（404、5xx）都算錯誤，不計入延遲。
@@ -0,0 +1,243 @@
+// AdminController 提供維運用的唯讀端點，用來觀察熱門項目快取（HotEntryCache）、Bloom filter（CodeFilter）、點擊事件紀錄（ClickEventLog）
+// 轉址快取標頭（RedirectPolicy）、容量上限（CapacityGuard）、短碼長度（CodeGenerator）、JDBC write-behind（JdbcWriteBehind）、限流（RateLimitFilter）、叢集分片（ClusterNode）與 leader / follower 複寫的狀態。
+
+package com.example.url_shortener.api;
+
+import com.example.url_shortener.clicklog.ClickEventLog;
+import com.example.url_shortener.cluster.ClusterNode;
+import com.example.url_shortener.persist.JdbcWriteBehind;
+import com.example.url_shortener.ratelimit.RateLimitFilter;
+import com.example.url_shortener.redirect.RedirectPolicy;
+import com.example.url_shortener.replication.ReplicationFollower;
+import com.example.url_shortener.replication.ReplicationLeader;
+import com.example.url_shortener.service.CapacityGuard;
+import com.example.url_shortener.service.CodeGenerator;
+import com.example.url_shortener.store.CodeFilter;
+import com.example.url_shortener.store.HotEntryCache;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+public class AdminController {
+
+    private final HotEntryCache hotCache;
+    private final CodeFilter codeFilter;
+    private final ClickEventLog clickEventLog;
+    private final ClusterNode clusterNode;
+    private final ReplicationLeader replicationLeader;
+    private final ReplicationFollower replicationFollower;
+    private final RedirectPolicy redirectPolicy;
+    private final CapacityGuard capacityGuard;
+    private final CodeGenerator codeGenerator;
+    private final JdbcWriteBehind writeBehind;
+    private final RateLimitFilter rateLimit;
+
+    public AdminController(ObjectProvider<HotEntryCache> hotCache, ObjectProvider<CodeFilter> codeFilter,
+                           ObjectProvider<ClickEventLog> clickEventLog, ObjectProvider<ClusterNode> clusterNode,
+                           ObjectProvider<ReplicationLeader> replicationLeader,
+                           ObjectProvider<ReplicationFollower> replicationFollower,
+                           RedirectPolicy redirectPolicy, ObjectProvider<CapacityGuard> capacityGuard,
+                           ObjectProvider<CodeGenerator> codeGenerator, ObjectProvider<JdbcWriteBehind> writeBehind,
+                           ObjectProvider<RateLimitFilter> rateLimit) {
+        this.hotCache = hotCache.getIfAvailable();
+        this.codeFilter = codeFilter.getIfAvailable();
+        this.clickEventLog = clickEventLog.getIfAvailable();
+        this.clusterNode = clusterNode.getIfAvailable();
+        this.replicationLeader = replicationLeader.getIfAvailable();
+        this.replicationFollower = replicationFollower.getIfAvailable();
+        this.redirectPolicy = redirectPolicy;
+        this.capacityGuard = capacityGuard.getIfAvailable();
+        this.codeGenerator = codeGenerator.getIfAvailable();
+        this.writeBehind = writeBehind.getIfAvailable();
+        this.rateLimit = rateLimit.getIfAvailable();
+    }
+
+    @GetMapping("/admin/cache-stats")
+    public Map<String, Object> cacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", hotCache != null);
+        if (hotCache != null) {
+            long hits = hotCache.hitCount();
+            long misses = hotCache.missCount();
+            stats.put("size", hotCache.size());
+            stats.put("capacity", hotCache.capacity());
+            stats.put("hits", hits);
+            stats.put("misses", misses);
+            stats.put("hitRate", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+            stats.put("evictions", hotCache.evictionCount());
+            stats.put("rejections", hotCache.rejectionCount());
+        }
+        return stats;
+    }
+
+    @GetMapping("/admin/filter-stats")
+    public Map<String, Object> filterStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", codeFilter != null);
+        if (codeFilter != null) {
+            stats.put("counters", codeFilter.counterCount());
+            stats.put("hashFunctions", codeFilter.hashCount());
+            stats.put("rejected", codeFilter.rejectedCount());
+            stats.put("estimatedFalsePositiveRate", codeFilter.estimatedFalsePositiveRate());
+            stats.put("rebuilds", codeFilter.rebuildCount());
+        }
+        return stats;
+    }
+
+    @GetMapping("/admin/clicklog-stats")
+    public Map<String, Object> clickLogStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", clickEventLog != null);
+        if (clickEventLog != null) {
+            stats.put("written", clickEventLog.writtenCount());
+            stats.put("dropped", clickEventLog.droppedCount());
+            stats.put("late", clickEventLog.lateCount());
+        }
+        return stats;
+    }
+
+    @GetMapping("/admin/redirect-stats")
+    public Map<String, Object> redirectStats() {
+        long redirects = redirectPolicy.redirectCount();
+        long notModified = redirectPolicy.notModifiedCount();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxAgeSeconds", redirectPolicy.maxAgeSeconds());
+        stats.put("nonExpiringStatus", redirectPolicy.nonExpiringStatus());
+        stats.put("redirects", redirects);
+        stats.put("notModified", notModified);
+        stats.put("notModifiedRate", redirects + notModified == 0 ? 0.0 : (double) notModified / (redirects + notModified));
+        return stats;
+    }
+
+    @GetMapping("/admin/capacity-stats")
+    public Map<String, Object> capacityStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", capacityGuard != null);
+        if (capacityGuard != null) {
+            stats.put("policy", capacityGuard.policy().name().toLowerCase().replace('_', '-'));
+            stats.put("entries", capacityGuard.entryCount());
+            stats.put("maxEntries", capacityGuard.maxEntries());
+            stats.put("estimatedBytes", capacityGuard.estimatedBytes());
+            stats.put("maxBytes", capacityGuard.maxBytes());
+            stats.put("occupancy", capacityGuard.occupancy());
+            stats.put("evictions", capacityGuard.evictionCount());
+            stats.put("rejections", capacityGuard.rejectionCount());
+        }
+        return stats;
+    }
+
+    @GetMapping("/admin/code-stats")
+    public Map<String, Object> codeStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("strategy", codeGenerator != null ? "hash" : "sequential");
+        if (codeGenerator != null) {
+            stats.put("codeLength", codeGenerator.currentLength());
+            stats.put("loadFactor", codeGenerator.loadFactor());
+            stats.put("maxCollisionRate", codeGenerator.maxCollisionRate());
+            stats.put("widened", codeGenerator.widenedCount());
+        }
+        return stats;
+    }
+
+    @GetMapping("/admin/write-behind-stats")
+    public Map<String, Object> writeBehindStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", writeBehind != null);
+        if (writeBehind != null) {
+            stats.put("batchSize", writeBehind.batchSize());
+            stats.put("flushIntervalMs", writeBehind.flushIntervalMillis());
+            stats.put("queued", writeBehind.queuedCount());
+            stats.put("lagMillis", writeBehind.lagMillis());
+            stats.put("lastBatchLagMillis", writeBehind.lastBatchLagMillis());
+            stats.put("flushed", writeBehind.flushedCount());
+            stats.put("batches", writeBehind.batchCount());
+            stats.put("coalesced", writeBehind.coalescedCount());
+            stats.put("dropped", writeBehind.droppedCount());
+            stats.put("skipped", writeBehind.skippedCount());
+            stats.put("failures", writeBehind.failureCount());
+        }
+        return stats;
+    }
+
+    @GetMapping("/admin/rate-limit-stats")
+    public Map<String, Object> rateLimitStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", rateLimit != null);
+        if (rateLimit != null) {
+            stats.put("allowed", rateLimit.allowedCount());
+            stats.put("limited", rateLimit.limitedCount());
+            stats.put("shortenClients", rateLimit.shortenClients());
+            stats.put("batchClients", rateLimit.batchClients());
+            stats.put("evicted", rateLimit.evictedCount());
+        }
+        return stats;
+    }
+
+    @GetMapping("/admin/cluster")
+    public Map<String, Object> cluster() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", clusterNode != null);
+        if (clusterNode != null) {
+            stats.put("nodeId", clusterNode.nodeId());
+            stats.put("address", clusterNode.address());
+            stats.put("ringVersion", clusterNode.ringVersion());
+            stats.put("nodes", clusterNode.ringNodes());
+            stats.put("rebalancing", clusterNode.isRebalancing());
+            stats.put("localEntries", clusterNode.routedStore().size());
+            stats.put("urlIndexSize", clusterNode.urlIndexSize());
+            stats.put("forwarded", clusterNode.forwardedCount());
+            stats.put("served", clusterNode.servedCount());
+            stats.put("migratedEntries", clusterNode.migratedEntryCount());
+            stats.put("migratedUrls", clusterNode.migratedUrlCount());
+            stats.put("migrationRetries", clusterNode.migrationRetryCount());
+        }
+        return stats;
+    }
+
+    @GetMapping("/admin/replication")
+    public Map<String, Object> replication() {
+        if (replicationLeader != null) {
+            return replicationLeader.stats();
+        }
+        if (replicationFollower != null) {
+            return replicationFollower.stats();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("role", "none");
+        return stats;
+    }
+}
+
+//程式碼解說：
+//
+//@GetMapping("/admin/cache-stats"): 回傳快取的命中、未命中、淘汰與准入拒絕次數。快取未啟用時只回傳 {"enabled": false}。
+//
+//rejections: 因為 TinyLFU 判定存取頻率不夠高而沒有放入快取的次數；掃描流量大時這個數字會明顯上升，而 hitRate 不受影響。
+//
+//@GetMapping("/admin/filter-stats"): Bloom filter 的大小、雜湊函數個數、直接擋下的查詢數（rejected）、估計的誤判率與重建次數。
+//
+//@GetMapping("/admin/clicklog-stats"): 已寫入的點擊事件數，以及因緩衝區已滿（dropped）或遲到（late）而丟棄的事件數。
+//
+//@GetMapping("/admin/redirect-stats"): 到達伺服器的完整轉址（redirects）與條件式請求回 304（notModified）的次數，
+// 兩個端口（8080 與輕量轉址伺服器）合計；瀏覽器或 CDN 直接用快取回應的點擊不會出現在這裡。
+//
+//@GetMapping("/admin/capacity-stats"): 目前筆數與估計位元組數相對於上限的佔用率（occupancy，1.0 表示已滿）、
+// 淘汰的筆數與因 store 已滿回 507 的次數。maxEntries / maxBytes 為 0 表示該項沒有限制。
+//
+//@GetMapping("/admin/code-stats"): hash 策略目前新短碼的長度（codeLength）、現存筆數佔這個長度短碼空間的比例
+// （loadFactor，也就是新短碼的預期碰撞機率）與因連續碰撞而提早加長的次數（widened）。sequential 策略不會碰撞，只回傳策略名稱。
+//
+//@GetMapping("/admin/write-behind-stats"): lagMillis 是資料表目前落後 store 的時間（尚未提交的異動中最早一筆已等待的毫秒數），
+// 調整 batch-size 與 flush-interval-ms 時用來比較吞吐量與落後時間；dropped / skipped 不為 0 表示資料表少了這些異動。
+//
+//@GetMapping("/admin/rate-limit-stats"): 通過（allowed）與回 429（limited）的請求數、目前保存 bucket 的用戶端數與定期移除的閒置 bucket 數。
+//
+//@GetMapping("/admin/cluster"): 這個節點看到的 ring（版本與成員）、本機分片的筆數、轉送出去（forwarded）與替其他節點處理（served）的請求數，
+// 以及 rebalance 時搬出的短碼與 URL 索引筆數。rebalancing 為 true 表示還有舊節點尚未搬移完成。
+//
+//@GetMapping("/admin/replication"): leader 回傳 log 的範圍與 follower 連線數；follower 回傳已套用的 offset、
+// leader 的 offset 與兩者的差距（lagRecords、lagMillis），用來監控複寫延遲。
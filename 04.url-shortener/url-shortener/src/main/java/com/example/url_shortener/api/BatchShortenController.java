@@ -0,0 +1,171 @@
+// BatchShortenController 提供 POST /shorten/batch，讓匯入大量連結的客戶端一次送出整批 URL。
+//
+// 請求：JSON 陣列（application/json）或 NDJSON（application/x-ndjson，一行一筆），
+//       每一筆可以是 URL 字串，或與 POST /shorten 相同的 {"url": ..., "ttlSeconds": ...} 物件。
+// 回應：NDJSON，依輸入順序每筆輸出一行結果，處理完一個區塊就立即寫出。
+//
+// 請求以 Jackson 串流解析、每 app.batch.chunk-size 筆處理並寫出一次，
+// 因此即使一批有上百萬筆，記憶體中也只會保留一個區塊。
+
+package com.example.url_shortener.api;
+
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.service.ShortenResult;
+import com.example.url_shortener.service.ShortenService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@RestController
+public class BatchShortenController {
+
+    public static final String NDJSON = "application/x-ndjson";
+
+    private final ShortenService shortenService;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+
+    @Value("${app.base-url:http://localhost:8080}")
+    private String baseUrl;
+
+    @Value("${app.batch.chunk-size:500}")
+    private int chunkSize;
+
+    public BatchShortenController(ShortenService shortenService, ObjectMapper objectMapper, Validator validator) {
+        this.shortenService = shortenService;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+    }
+
+    @PostMapping(path = "/shorten/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, NDJSON}, produces = NDJSON)
+    public void shortenBatch(InputStream body, HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON);
+        response.setCharacterEncoding("UTF-8");
+
+        try (JsonParser parser = objectMapper.createParser(body);
+             JsonGenerator out = objectMapper.createGenerator(response.getOutputStream())) {
+            // 以換行分隔每一筆結果（NDJSON）
+            out.setRootValueSeparator(null);
+
+            List<ShortenRequest> chunk = new ArrayList<>(chunkSize);
+            int index = 0;
+            try {
+                JsonToken token = parser.nextToken();
+                // JSON 陣列：逐一讀取元素；NDJSON：逐一讀取最外層的值
+                boolean array = token == JsonToken.START_ARRAY;
+                if (array) {
+                    token = parser.nextToken();
+                }
+                while (token != null && token != JsonToken.END_ARRAY) {
+                    chunk.add(readItem(parser, token));
+                    if (chunk.size() == chunkSize) {
+                        index = writeChunk(chunk, index, out);
+                        chunk.clear();
+                    }
+                    token = parser.nextToken();
+                }
+            } catch (JsonProcessingException e) {
+                // 標頭已送出，只能在串流中回報格式錯誤並停止
+                index = writeChunk(chunk, index, out);
+                chunk.clear();
+                out.writeStartObject();
+                out.writeStringField("error", "E4001_MALFORMED_BATCH: " + e.getOriginalMessage());
+                out.writeEndObject();
+                out.writeRaw('\n');
+                return;
+            }
+            writeChunk(chunk, index, out);
+        }
+    }
+
+    private ShortenRequest readItem(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_STRING) {
+            ShortenRequest request = new ShortenRequest();
+            request.setUrl(parser.getText());
+            return request;
+        }
+        if (token == JsonToken.VALUE_NULL) {
+            // readValueAs 對 null 回傳 null；改成沒有 URL 的請求，由驗證回報為這一筆的錯誤
+            return new ShortenRequest();
+        }
+        return parser.readValueAs(ShortenRequest.class);
+    }
+
+    // 驗證並批次縮短一個區塊，依輸入順序寫出結果後 flush，回傳下一筆的序號
+    private int writeChunk(List<ShortenRequest> chunk, int index, JsonGenerator out) throws IOException {
+        if (chunk.isEmpty()) {
+            return index;
+        }
+        String[] errors = new String[chunk.size()];
+        Map<String, Long> valid = new LinkedHashMap<>(chunk.size() * 2);
+        for (int i = 0; i < chunk.size(); i++) {
+            ShortenRequest request = chunk.get(i);
+            Set<ConstraintViolation<ShortenRequest>> violations = validator.validate(request);
+            if (violations.isEmpty()) {
+                // 同一區塊內重複的 URL 只會縮短一次
+                valid.putIfAbsent(request.getUrl(), request.getTtlSeconds());
+            } else {
+                errors[i] = violations.iterator().next().getMessage();
+            }
+        }
+
+        Map<String, ShortenResult> results = shortenService.shortenAll(valid);
+        // 重複出現的 URL 只有第一次算是新建立
+        Set<String> reported = new HashSet<>(valid.size() * 2);
+
+        for (int i = 0; i < chunk.size(); i++, index++) {
+            out.writeStartObject();
+            out.writeNumberField("index", index);
+            ShortenResult result = errors[i] == null ? results.get(chunk.get(i).getUrl()) : null;
+            if (errors[i] != null) {
+                out.writeStringField("error", errors[i]);
+            } else if (result == null) {
+                // 容量已滿（app.capacity.enabled），沒有建立短碼
+                out.writeStringField("error", "E5071_STORE_FULL");
+            } else {
+                Entry entry = result.getEntry();
+                out.writeStringField("code", entry.getCode());
+                out.writeStringField("shortUrl", baseUrl + "/r/" + entry.getCode());
+                out.writeStringField("expiresAt", entry.getExpiresAt() != null ? entry.getExpiresAt().toString() : null);
+                out.writeBooleanField("created", result.isCreated() && reported.add(entry.getUrl()));
+            }
+            out.writeEndObject();
+            out.writeRaw('\n');
+        }
+        out.flush();
+        return index;
+    }
+}
+
+//程式碼解說：
+//
+//InputStream body / HttpServletResponse: 直接讀寫原始串流，不經過 @RequestBody 一次把整個陣列反序列化到記憶體。
+//
+//JsonParser: 同一段迴圈同時支援 JSON 陣列與 NDJSON（Jackson 可以連續讀取多個最外層的值）。
+//
+//validator.validate(...): 沿用 ShortenRequest 上的 @NotNull / @Pattern / @Range 規則，錯誤只影響該筆，不會讓整批失敗。
+// 陣列中的 null 元素視為沒有 URL 的請求，同樣只回報該筆的 "URL cannot be null"。
+//
+//E5071_STORE_FULL: 啟用容量上限時，store 已滿的那幾筆不會出現在 shortenAll 的結果中，同樣只在該筆回報錯誤。
+//
+//shortenService.shortenAll(...): 一個區塊一次呼叫，區塊內重複的 URL 已在這裡合併；跨區塊的重複則由 store 的冪等性處理。
+//
+//out.flush(): 每處理完一個區塊就把結果送出，客戶端可以邊送邊收，也不需要等整批完成。
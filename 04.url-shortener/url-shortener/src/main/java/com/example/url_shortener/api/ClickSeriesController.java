@@ -0,0 +1,86 @@
+// ClickSeriesController 提供單一短碼的點擊時間序列，例如最近一天每分鐘的點擊數。
+// 資料來自 ClickRollup 彙總好的 rollup 檔（app.clicklog.enabled=true 時啟用）。
+
+package com.example.url_shortener.api;
+
+import com.example.url_shortener.clicklog.ClickRollup;
+import com.example.url_shortener.clicklog.Granularity;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+@RestController
+@ConditionalOnProperty(name = "app.clicklog.enabled", havingValue = "true")
+public class ClickSeriesController {
+
+    // 單次查詢最多回傳的 bucket 數量
+    private static final long MAX_BUCKETS = 10_000;
+
+    private final ClickRollup clickRollup;
+
+    public ClickSeriesController(ClickRollup clickRollup) {
+        this.clickRollup = clickRollup;
+    }
+
+    @GetMapping("/stats/{code}/series")
+    public Map<String, Object> series(@PathVariable String code,
+                                      @RequestParam(defaultValue = "minute") String granularity,
+                                      @RequestParam(required = false) String from,
+                                      @RequestParam(required = false) String to) throws IOException {
+        Granularity g;
+        Instant end;
+        Instant start;
+        try {
+            g = Granularity.parse(granularity);
+            end = to != null ? Instant.parse(to) : Instant.now();
+            start = from != null ? Instant.parse(from) : end.minus(Duration.ofDays(1));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "granularity must be minute, hour or day; from / to must be ISO-8601 instants");
+        }
+        if (!start.isBefore(end)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must be before to");
+        }
+        if (Duration.between(start, end).getSeconds() / g.seconds() > MAX_BUCKETS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Range too large for " + granularity + " granularity (max " + MAX_BUCKETS + " buckets)");
+        }
+
+        List<Map<String, Object>> buckets = new ArrayList<>();
+        clickRollup.query(code, g, start, end).forEach((bucketStart, clicks) -> {
+            Map<String, Object> bucket = new LinkedHashMap<>();
+            bucket.put("start", bucketStart.toString());
+            bucket.put("clicks", clicks);
+            buckets.add(bucket);
+        });
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("code", code);
+        response.put("granularity", g.name().toLowerCase(Locale.ROOT));
+        response.put("from", start.toString());
+        response.put("to", end.toString());
+        response.put("buckets", buckets);
+        return response;
+    }
+}
+
+//程式碼解說：
+//
+//@GetMapping("/stats/{code}/series"): granularity 為 minute / hour / day，from / to 為 ISO-8601 時間（預設為最近一天）。
+// 只回傳有點擊的 bucket；沒有出現的 bucket 點擊數為 0。
+//
+//MAX_BUCKETS: 限制單次查詢的範圍，例如以分鐘為粒度最多約查詢 7 天，避免一次讀取過多檔案。
@@ -1,68 +1,80 @@
 package com.example.url_shortener.api;
 
 import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.redirect.RedirectPolicy;
+import com.example.url_shortener.service.ShortenResult;
 import com.example.url_shortener.service.ShortenService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.server.ResponseStatusException;
 
 import java.net.URI;
-import java.time.format.DateTimeFormatter;
+import java.time.Instant;
 import java.util.Optional;
 
 @RestController
 public class ShortenController {
 
+    // 預先建好的 404 回應（ResponseEntity 與其標頭都是不可變的，可以安全共用），不再經過例外處理流程
+    private static final ResponseEntity<String> NOT_FOUND = ResponseEntity.status(HttpStatus.NOT_FOUND)
+            .contentType(MediaType.TEXT_PLAIN)
+            .body("E4041_CODE_NOT_FOUND or E4101_CODE_EXPIRED");
+
     private final ShortenService shortenService;
+    private final RedirectPolicy redirectPolicy;
 
     @Value("${app.base-url:http://localhost:8080}")
     private String baseUrl;
 
-    public ShortenController(ShortenService shortenService) {
+    public ShortenController(ShortenService shortenService, RedirectPolicy redirectPolicy) {
         this.shortenService = shortenService;
+        this.redirectPolicy = redirectPolicy;
     }
 
     @PostMapping("/shorten")
     public ResponseEntity<ShortenResponse> shortenUrl(@Valid @RequestBody ShortenRequest request) {
-        Optional<String> codeOpt = shortenService.shorten(request.getUrl(), request.getTtlSeconds());
-
-        if (codeOpt.isEmpty()) {
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "E5001_INTERNAL_ERROR");
-        }
-
-        String code = codeOpt.get();
-        Optional<Entry> entryOpt = shortenService.resolve(code);
+        // shorten 一次就帶回建立好（或既有）的 Entry，不需要再 resolve 讀回
+        ShortenResult result = shortenService.shorten(request.getUrl(), request.getTtlSeconds());
 
-        if (entryOpt.isEmpty()) {
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "E5001_INTERNAL_ERROR: Unable to retrieve newly created entry");
-        }
-        Entry entry = entryOpt.get();
-        String shortUrl = baseUrl + "/r/" + code;
+        Entry entry = result.getEntry();
+        String shortUrl = baseUrl + "/r/" + entry.getCode();
         String expiresAt = entry.getExpiresAt() != null ? entry.getExpiresAt().toString() : null;
 
-        HttpStatus status = entry.getCreatedAt().equals(entry.getExpiresAt()) ? HttpStatus.CREATED : HttpStatus.OK;
+        HttpStatus status = result.isCreated() ? HttpStatus.CREATED : HttpStatus.OK;
 
-        return new ResponseEntity<>(new ShortenResponse(code, shortUrl, expiresAt), status);
+        return new ResponseEntity<>(new ShortenResponse(entry.getCode(), shortUrl, expiresAt), status);
     }
 
     @GetMapping("/r/{code}")
-    public ResponseEntity<Void> redirect(@PathVariable String code) {
+    public ResponseEntity<String> redirect(@PathVariable String code,
+                                           @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                           @RequestHeader(value = HttpHeaders.IF_MODIFIED_SINCE, required = false) String ifModifiedSince) {
         Optional<Entry> entryOpt = shortenService.resolve(code);
 
         if (entryOpt.isEmpty()) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "E4041_CODE_NOT_FOUND or E4101_CODE_EXPIRED");
+            return NOT_FOUND;
         }
 
         Entry entry = entryOpt.get();
 
-        // 建立 302 轉址回應
+        // 快取標頭：max-age 不超過剩餘 TTL 與設定的上限，另帶 ETag / Last-Modified 供重新驗證
         HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl(redirectPolicy.cacheControl(redirectPolicy.maxAge(entry, Instant.now().getEpochSecond())));
+        headers.setETag(redirectPolicy.etag(entry));
+        headers.set(HttpHeaders.LAST_MODIFIED, redirectPolicy.lastModified(entry));
+        if (redirectPolicy.isNotModified(entry, ifNoneMatch, ifModifiedSince)) {
+            redirectPolicy.recordNotModified();
+            return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+        }
+
+        // 建立轉址回應（302，或永不過期的短碼依設定使用 301 / 308）
+        redirectPolicy.recordRedirect();
         headers.setLocation(URI.create(entry.getUrl()));
-        return new ResponseEntity<>(headers, HttpStatus.FOUND);
+        return new ResponseEntity<>(headers, HttpStatus.valueOf(redirectPolicy.status(entry)));
     }
 }
 
@@ -78,16 +90,19 @@ public class ShortenController {
 //
 //@Valid 則會觸發前面在 ShortenRequest 類別中定義的驗證規則（@NotNull, @Pattern, @Range）。如果驗證失敗，Spring 會自動回傳 400 Bad Request 狀態碼。
 //
-//shortenService.shorten(...): 呼叫我們在步驟 5 中定義的服務方法來生成短碼。
+//shortenService.shorten(...): 呼叫我們在步驟 5 中定義的服務方法來生成短碼，回傳的 ShortenResult 已經包含完整的 Entry。
 //
-//回應狀態碼: 如果短碼已經存在（冪等性），我們回傳 200 OK，這與設計書中的描述一致。如果是新建立的，則回傳 201 Created。
+//回應狀態碼: 依 ShortenResult.isCreated() 判斷。如果短碼已經存在（冪等性），我們回傳 200 OK，這與設計書中的描述一致。如果是新建立的，則回傳 201 Created。
 //
 //@GetMapping("/r/{code}"): 處理 GET 請求到 /r/{code} 路徑。{code} 是一個路徑變數。
 //
 //@PathVariable String code: 告訴 Spring 從路徑變數中提取短碼。
 //
-//ResponseEntity<Void>: 表示我們不需要回傳任何內容（Void），只需要設定回應標頭（Header）。
+//ResponseEntity<String>: 轉址成功時不需要回傳任何內容，只需要設定回應標頭（Header）；
+// 找不到短碼時直接回傳預先建好的 NOT_FOUND（純文字錯誤碼），不再丟出 ResponseStatusException 交給 Spring 的錯誤處理流程，
+// 大量猜測短碼的掃描流量因此不會產生例外與錯誤頁面的成本。
 //
-//HttpStatus.FOUND: 這是 HTTP 302 Found 狀態碼，用於轉址。
+//HttpStatus.FOUND: 這是 HTTP 302 Found 狀態碼，用於轉址。狀態碼與快取標頭由 RedirectPolicy 決定（與輕量轉址伺服器共用），
+// 永不過期的短碼可以設定改用 301 / 308；條件式請求（If-None-Match / If-Modified-Since）內容沒變時回 304 Not Modified。
 //
 //HttpHeaders.setLocation(...): 設定 Location 標頭，指示瀏覽器要轉址到哪個 URL。
\ No newline at end of file
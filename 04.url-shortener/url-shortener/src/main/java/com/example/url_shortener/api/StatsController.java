@@ -0,0 +1,67 @@
+// StatsController 提供短碼的點擊統計：單一短碼的總點擊數，以及點擊數最多的前 N 個短碼。
+
+package com.example.url_shortener.api;
+
+import com.example.url_shortener.service.ClickCounter;
+import com.example.url_shortener.util.SpaceSaving;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@ConditionalOnProperty(name = "app.stats.enabled", havingValue = "true")
+public class StatsController {
+
+    private final ClickCounter clickCounter;
+
+    public StatsController(ClickCounter clickCounter) {
+        this.clickCounter = clickCounter;
+    }
+
+    @GetMapping("/stats/{code}")
+    public Map<String, Object> codeStats(@PathVariable String code) {
+        Long clicks = clickCounter.clicks(code);
+        if (clicks == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "E4041_CODE_NOT_FOUND");
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("code", code);
+        stats.put("clicks", clicks);
+        return stats;
+    }
+
+    @GetMapping("/stats")
+    public List<Map<String, Object>> topCodes(@RequestParam(defaultValue = "10") int top) {
+        if (top < 1 || top > clickCounter.topCapacity()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "top must be between 1 and " + clickCounter.topCapacity());
+        }
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (SpaceSaving.Item item : clickCounter.top(top)) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("code", item.getKey());
+            row.put("clicks", item.getCount());
+            row.put("maxOvercount", item.getError());
+            result.add(row);
+        }
+        return result;
+    }
+}
+
+//程式碼解說：
+//
+//@ConditionalOnProperty: 與 ClickCounter 使用相同的條件，app.stats.enabled=false 時不註冊這兩個端點。
+//
+//@GetMapping("/stats/{code}"): 回傳短碼目前的總點擊數；短碼不存在時回傳 404。
+//
+//@GetMapping("/stats"): 回傳點擊數最多的前 top 個短碼（預設 10 個，上限為 app.stats.top-capacity）。
+// clicks 是 Space-Saving 的估計值，真實次數介於 clicks - maxOvercount 與 clicks 之間。
@@ -0,0 +1,223 @@
+// StoreExportController 提供備份與檢視 store 內容的維運端點：
+//
+//   GET  /admin/scan?cursor=...&count=N : 以不透明的 cursor 分頁查看 store（第一頁不帶 cursor，回傳的 cursor 為 "0" 表示結束）；
+//   GET  /admin/export                   : 以 NDJSON 串流匯出所有項目，一行一筆；
+//   POST /admin/import                   : 讀取相同格式的 NDJSON，逐筆寫回 store。
+//
+// 三者都透過 UrlStore.scan / save 逐頁處理：記憶體中只有一頁的資料，不複製整個 store，
+// 每一頁只短暫持有 URL 索引單一分段的讀鎖，轉址（只查 getEntry）不受影響。
+
+package com.example.url_shortener.api;
+
+import com.example.url_shortener.cluster.ClusterNode;
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.store.UrlStore;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+public class StoreExportController {
+
+    private static final int MAX_SCAN_COUNT = 1000;
+    // 匯出時每次向 store 取出的筆數，也是兩次 flush 之間的筆數
+    private static final int EXPORT_PAGE = 1000;
+    // 匯入結果最多列出的錯誤數
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    private final UrlStore store;
+    // 匯入時寫入的 store：叢集模式下依短碼轉送到負責的節點
+    private final UrlStore importStore;
+    private final ObjectMapper objectMapper;
+
+    public StoreExportController(UrlStore store, ObjectProvider<ClusterNode> cluster, ObjectMapper objectMapper) {
+        ClusterNode clusterNode = cluster.getIfAvailable();
+        this.store = store;
+        this.importStore = clusterNode != null ? clusterNode.routedStore() : store;
+        this.objectMapper = objectMapper;
+    }
+
+    @GetMapping("/admin/scan")
+    public Map<String, Object> scan(@RequestParam(defaultValue = "0") String cursor,
+                                    @RequestParam(defaultValue = "100") int count) {
+        if (count < 1 || count > MAX_SCAN_COUNT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "count must be between 1 and " + MAX_SCAN_COUNT);
+        }
+        List<Map<String, Object>> entries = new ArrayList<>(count);
+        long next;
+        try {
+            next = store.scan(decodeCursor(cursor), count, entry -> entries.add(toMap(entry)));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "E4002_INVALID_CURSOR");
+        }
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("cursor", Long.toString(next, 36));
+        page.put("entries", entries);
+        return page;
+    }
+
+    @GetMapping(path = "/admin/export", produces = BatchShortenController.NDJSON)
+    public void export(HttpServletResponse response) throws IOException {
+        response.setContentType(BatchShortenController.NDJSON);
+        response.setCharacterEncoding("UTF-8");
+        try (JsonGenerator out = objectMapper.createGenerator(response.getOutputStream())) {
+            out.setRootValueSeparator(null);
+            long cursor = 0;
+            do {
+                cursor = store.scan(cursor, EXPORT_PAGE, entry -> {
+                    try {
+                        writeEntry(out, entry);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                // 客戶端讀得慢時 flush 會阻塞在這裡（TCP 背壓），此時沒有持有任何鎖
+                out.flush();
+            } while (cursor != 0);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @PostMapping(path = "/admin/import", consumes = BatchShortenController.NDJSON)
+    public Map<String, Object> importEntries(InputStream body) throws IOException {
+        long imported = 0;
+        long expired = 0;
+        long invalid = 0;
+        long line = 0;
+        List<String> errors = new ArrayList<>();
+        Instant now = Instant.now();
+
+        try (JsonParser parser = objectMapper.createParser(body)) {
+            JsonNode node;
+            while ((node = nextRecord(parser, line, errors)) != null) {
+                line++;
+                if (!node.isObject()) {
+                    invalid++;
+                    report(errors, line, "expected a JSON object");
+                    continue;
+                }
+                Entry entry;
+                try {
+                    entry = fromNode(node);
+                } catch (IllegalArgumentException | DateTimeException e) {
+                    invalid++;
+                    report(errors, line, e.getMessage());
+                    continue;
+                }
+                if (entry.isExpired(now)) {
+                    expired++;
+                    continue;
+                }
+                try {
+                    importStore.save(entry.getUrl(), entry.getCode(), entry);
+                    imported++;
+                } catch (IllegalArgumentException e) {
+                    // 例如 long-key 後端無法保存超過 10 碼的短碼
+                    invalid++;
+                    report(errors, line, e.getMessage());
+                }
+            }
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("imported", imported);
+        result.put("expired", expired);
+        result.put("invalid", invalid);
+        result.put("errors", errors);
+        return result;
+    }
+
+    // 讀取下一筆；格式錯誤之後無法再找到下一筆的開頭，記錄錯誤並結束匯入（已匯入的資料保留）
+    private static JsonNode nextRecord(JsonParser parser, long line, List<String> errors) throws IOException {
+        try {
+            return parser.nextToken() != null ? parser.readValueAsTree() : null;
+        } catch (JsonProcessingException e) {
+            errors.add("E4001_MALFORMED_IMPORT after record " + line + ": " + e.getOriginalMessage());
+            return null;
+        }
+    }
+
+    private static void report(List<String> errors, long line, String message) {
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add("record " + line + ": " + message);
+        }
+    }
+
+    private static long decodeCursor(String cursor) {
+        try {
+            return Long.parseLong(cursor, 36);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static Entry fromNode(JsonNode node) {
+        String code = node.path("code").asText(null);
+        String url = node.path("url").asText(null);
+        if (code == null || code.isEmpty() || url == null || url.isEmpty()) {
+            throw new IllegalArgumentException("code and url are required");
+        }
+        JsonNode createdAt = node.path("createdAt");
+        JsonNode expiresAt = node.path("expiresAt");
+        return new Entry(code, url,
+                createdAt.isTextual() ? Instant.parse(createdAt.asText()) : Instant.now(),
+                expiresAt.isTextual() ? Instant.parse(expiresAt.asText()) : null);
+    }
+
+    private static void writeEntry(JsonGenerator out, Entry entry) throws IOException {
+        Instant expiresAt = entry.getExpiresAt();
+        out.writeStartObject();
+        out.writeStringField("code", entry.getCode());
+        out.writeStringField("url", entry.getUrl());
+        out.writeStringField("createdAt", entry.getCreatedAt().toString());
+        out.writeStringField("expiresAt", expiresAt != null ? expiresAt.toString() : null);
+        out.writeEndObject();
+        out.writeRaw('\n');
+    }
+
+    private static Map<String, Object> toMap(Entry entry) {
+        Instant expiresAt = entry.getExpiresAt();
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("code", entry.getCode());
+        row.put("url", entry.getUrl());
+        row.put("createdAt", entry.getCreatedAt().toString());
+        row.put("expiresAt", expiresAt != null ? expiresAt.toString() : null);
+        return row;
+    }
+}
+
+//程式碼解說：
+//
+//cursor: UrlStore.scan 回傳的 long 以 36 進位字串表示，客戶端只需原樣帶回；"0" 同時代表第一頁與走訪結束。
+// cursor 不對應任何伺服器端的狀態，放棄走訪不需要清理，伺服器重啟之後也只是從頭開始。
+//
+//export(...): 每取出一頁就寫出並 flush。Servlet 的輸出串流在客戶端讀得慢時會阻塞，
+// 匯出因此自然地跟著客戶端的速度進行，不會把整個 store 先放進記憶體；scan 只在複製槽位時持有讀鎖，阻塞時不持有任何鎖。
+// 走訪期間新增或刪除的資料可能出現也可能不出現，分段重建時少數資料可能重複（匯入時會覆寫成同一筆，結果不變）。
+//
+//importEntries(...): Jackson 串流解析，一次只讀一筆；請求本身的讀取速度就是背壓。每一筆經過 store.save，
+// 持久化、複寫、快取與 Bloom filter 都會收到通知。已過期的資料直接略過，格式錯誤的資料只影響該筆。
+// 匯入不經過容量上限（CapacityGuard）的准入檢查，超出的部分由背景淘汰處理。
+//
+//importStore: 叢集模式下匯入的資料依短碼送到負責的節點；scan / export 則只涵蓋本機分片，與 forEach 相同。
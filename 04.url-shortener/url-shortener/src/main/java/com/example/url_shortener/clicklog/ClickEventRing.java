@@ -0,0 +1,83 @@
+// ClickEventRing 是多生產者、單一消費者（MPSC）的無鎖環狀緩衝區，存放尚未寫入磁碟的點擊事件。
+//
+// 每一格有自己的序號（sequence）：生產者以 CAS 取得寫入位置，寫完資料後才更新序號；
+// 消費者看到序號更新才讀取。緩衝區滿了時 offer 直接回傳 false（丟棄事件），轉址執行緒永遠不會等待。
+
+package com.example.url_shortener.clicklog;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+final class ClickEventRing {
+
+    @FunctionalInterface
+    interface EventHandler {
+        void onEvent(long codeKey, long epochMillis);
+    }
+
+    private final int mask;
+    private final long[] codeKeys;
+    private final long[] times;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private long head; // 只由消費者存取
+
+    ClickEventRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.codeKeys = new long[size];
+        this.times = new long[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    // 生產者：放入一筆事件；緩衝區已滿時回傳 false
+    boolean offer(long codeKey, long epochMillis) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long sequence = sequences.get(index);
+            long difference = sequence - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    codeKeys[index] = codeKey;
+                    times[index] = epochMillis;
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false; // 消費者還沒讀走這一格：緩衝區已滿
+            } else {
+                position = tail.get(); // 被其他生產者搶先，重新讀取
+            }
+        }
+    }
+
+    // 消費者：最多取出 max 筆事件交給 handler，回傳實際取出的數量
+    int drain(EventHandler handler, int max) {
+        int drained = 0;
+        while (drained < max) {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) {
+                break; // 這一格還沒寫好
+            }
+            handler.onEvent(codeKeys[index], times[index]);
+            sequences.lazySet(index, head + mask + 1);
+            head++;
+            drained++;
+        }
+        return drained;
+    }
+}
+
+//程式碼解說：
+//
+//sequences: 第 i 格的序號等於 position 時代表「可以寫入第 position 筆」，等於 position + 1 時代表「第 position 筆已寫好、可以讀取」。
+// 消費者讀完後把序號設為 position + capacity，讓下一輪的生產者可以使用這一格。
+//
+//offer(...): 生產者只在 tail 上 CAS，一次就能取得位置；資料寫完才 lazySet 序號，消費者不會讀到寫到一半的事件。
+//
+//drain(...): 只有單一寫入執行緒呼叫，head 不需要同步。
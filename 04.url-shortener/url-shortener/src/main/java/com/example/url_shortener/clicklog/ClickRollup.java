@@ -0,0 +1,187 @@
+// ClickRollup 把 ClickEventLog 寫出的原始點擊事件彙總成分鐘、小時、天三種粒度的 rollup 檔，並提供範圍查詢。
+//
+// 每 app.clicklog.rollup-interval-seconds 執行一次：
+//   1. 每個事件檔只讀取上次之後新增的部分，累加到該小時的 RollupTable，再重寫該小時的 minute 檔；
+//   2. 有變動的日子，由當天所有 minute 檔重建 hour 檔；有變動的月份，由當月所有 hour 檔重建 day 檔；
+//   3. 小時結束一段時間後，該小時的事件檔已完整併入 minute 檔，直接刪除（壓縮）；
+//   4. 依保留期限刪除過舊的 minute / hour 檔（day 檔永久保留）。
+//
+// 每一層都由下一層「重建」而不是「累加」，因此中途當機後重跑也不會重複計算。
+// 查詢時只開啟時間範圍內的 rollup 檔，以記憶體映射加二分搜尋讀取該短碼的資料。
+
+package com.example.url_shortener.clicklog;
+
+import com.example.url_shortener.util.Base62;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+@Component
+@ConditionalOnProperty(name = "app.clicklog.enabled", havingValue = "true")
+public class ClickRollup {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClickRollup.class);
+
+    // 比 ClickEventLog.LATE_EVENT_MILLIS 更長，確保封存時寫入執行緒已不會再寫入該小時
+    private static final long SEAL_DELAY_MILLIS = 2 * ClickEventLog.LATE_EVENT_MILLIS;
+
+    private final Path directory;
+    private final long minuteRetentionHours;
+    private final long hourRetentionDays;
+
+    // 事件檔的小時 -> 尚未封存的累加結果，只在 rollup() 中存取
+    private final Map<Long, HourAccumulator> accumulators = new HashMap<>();
+
+    public ClickRollup(ClickEventLog eventLog,
+                       @Value("${app.clicklog.minute-retention-hours:48}") long minuteRetentionHours,
+                       @Value("${app.clicklog.hour-retention-days:62}") long hourRetentionDays) {
+        this.directory = eventLog.directory();
+        // hour / day 檔由前一層重建，保留期限至少要涵蓋一整天 / 一整個月
+        this.minuteRetentionHours = Math.max(25, minuteRetentionHours);
+        this.hourRetentionDays = Math.max(32, hourRetentionDays);
+    }
+
+    @Scheduled(fixedDelayString = "${app.clicklog.rollup-interval-seconds:60}000",
+            initialDelayString = "${app.clicklog.rollup-interval-seconds:60}000")
+    public synchronized void rollup() throws IOException {
+        long now = System.currentTimeMillis();
+        TreeSet<Integer> changedDays = new TreeSet<>();
+
+        for (Path file : listFiles()) {
+            long hour = RollupFiles.parseEventFileHour(file.getFileName().toString());
+            if (hour < 0) {
+                continue;
+            }
+            HourAccumulator accumulator = accumulators.computeIfAbsent(hour, h -> new HourAccumulator());
+            long before = accumulator.offset;
+            accumulator.offset = RollupFiles.readEvents(file, accumulator.offset, (codeKey, epochMillis) ->
+                    accumulator.table.add(codeKey, (int) Math.floorDiv(epochMillis, 60_000L), 1));
+
+            int firstMinute = (int) hour * 60;
+            Path minuteFile = directory.resolve(Granularity.MINUTE.fileName(firstMinute));
+            if (accumulator.offset != before || !Files.exists(minuteFile)) {
+                RollupFiles.write(minuteFile, accumulator.table);
+                changedDays.add((int) Math.floorDiv(hour, 24));
+            }
+
+            // 小時已結束且超過遲到期限：事件都已併入 minute 檔，刪除原始事件檔
+            if ((hour + 1) * ClickEventLog.HOUR_MILLIS + SEAL_DELAY_MILLIS < now) {
+                Files.deleteIfExists(file);
+                accumulators.remove(hour);
+            }
+        }
+
+        TreeSet<Integer> changedMonths = new TreeSet<>();
+        for (int day : changedDays) {
+            rebuild(Granularity.HOUR, day * 24, Granularity.MINUTE);
+            changedMonths.add(Granularity.DAY.groupStart(day));
+        }
+        for (int monthStart : changedMonths) {
+            rebuild(Granularity.DAY, monthStart, Granularity.HOUR);
+        }
+
+        deleteExpired(now);
+    }
+
+    // 查詢短碼在 [from, to) 之間每個 bucket 的點擊數（只回傳有點擊的 bucket，依時間排序）
+    public NavigableMap<Instant, Long> query(String code, Granularity granularity, Instant from, Instant to)
+            throws IOException {
+        NavigableMap<Instant, Long> result = new TreeMap<>();
+        long codeKey = Base62.toKey(code);
+        if (codeKey == 0 || !from.isBefore(to)) {
+            return result;
+        }
+        int fromBucket = granularity.bucketOf(from.getEpochSecond());
+        int toBucket = granularity.bucketOf(to.getEpochSecond() - 1) + 1;
+
+        for (int group = granularity.groupStart(fromBucket); group < toBucket; group = granularity.nextGroupStart(group)) {
+            Path file = directory.resolve(granularity.fileName(group));
+            if (!Files.exists(file)) {
+                continue;
+            }
+            try {
+                RollupFiles.query(file, codeKey, fromBucket, toBucket, (key, bucket, count) ->
+                        result.merge(Instant.ofEpochSecond(granularity.bucketStartSecond(bucket)), count, Long::sum));
+            } catch (NoSuchFileException e) {
+                // 查詢期間剛好被保留期限刪除
+            }
+        }
+        return result;
+    }
+
+    // 由較細一級的檔案重建 groupStart 所在的 target 檔
+    private void rebuild(Granularity target, int groupStart, Granularity source) throws IOException {
+        RollupTable table = new RollupTable();
+        int end = target.nextGroupStart(groupStart);
+        // 把 target 的 bucket 範圍換算成 source 的 bucket 範圍
+        int sourceFrom = toFiner(target, groupStart);
+        int sourceTo = toFiner(target, end);
+        for (int group = source.groupStart(sourceFrom); group < sourceTo; group = source.nextGroupStart(group)) {
+            Path file = directory.resolve(source.fileName(group));
+            if (Files.exists(file)) {
+                RollupFiles.readAll(file, (codeKey, bucket, count) ->
+                        table.add(codeKey, target.fromFiner(bucket), count));
+            }
+        }
+        RollupFiles.write(directory.resolve(target.fileName(groupStart)), table);
+    }
+
+    private static int toFiner(Granularity target, int bucket) {
+        return target == Granularity.HOUR ? bucket * 60 : bucket * 24;
+    }
+
+    private void deleteExpired(long now) throws IOException {
+        long currentHour = Math.floorDiv(now, ClickEventLog.HOUR_MILLIS);
+        long today = Math.floorDiv(now, 86_400_000L);
+        for (Path file : listFiles()) {
+            String name = file.getFileName().toString();
+            Integer minuteStart = Granularity.MINUTE.parseGroupStart(name);
+            Integer hourStart = Granularity.HOUR.parseGroupStart(name);
+            if ((minuteStart != null && minuteStart / 60 < currentHour - minuteRetentionHours)
+                    || (hourStart != null && hourStart / 24 < today - hourRetentionDays)) {
+                Files.deleteIfExists(file);
+                logger.info("Deleted expired click rollup {}", name);
+            }
+        }
+    }
+
+    private List<Path> listFiles() throws IOException {
+        try (Stream<Path> stream = Files.list(directory)) {
+            return stream.sorted().toList();
+        }
+    }
+
+    private static final class HourAccumulator {
+        final RollupTable table = new RollupTable();
+        long offset;
+    }
+}
+
+//程式碼解說：
+//
+//HourAccumulator: 記住每個事件檔已經讀到哪裡（offset），每次 rollup 只讀新增的事件，不必從頭掃描整個小時。
+// 重啟後 accumulators 是空的，會從檔案開頭重新累加，結果與當機前相同。
+//
+//rebuild(...): hour 檔由當天 24 個 minute 檔重建、day 檔由當月的 hour 檔重建，重跑幾次結果都一樣（冪等）。
+//
+//SEAL_DELAY_MILLIS: 寫入執行緒會丟棄小時結束超過 1 分鐘的遲到事件，這裡等 2 分鐘才刪除事件檔，
+// 避免刪檔之後又有事件寫入同一個小時。
+//
+//query(...): 依粒度只開啟 [from, to) 範圍內的檔案（例如查最近一天的每分鐘點擊只會讀 24 或 25 個 minute 檔），
+// 每個檔案以二分搜尋直接定位到這個短碼。
@@ -0,0 +1,120 @@
+// Granularity 是點擊統計的時間粒度，以及各粒度的 rollup 檔案如何分組：
+//
+// MINUTE : 每分鐘一個 bucket，每小時一個檔案  minute-2026-10-18T13.roll
+// HOUR   : 每小時一個 bucket，每天一個檔案    hour-2026-10-18.roll
+// DAY    : 每天一個 bucket，每月一個檔案      day-2026-10.roll
+//
+// bucket 是從 epoch 起算的分鐘 / 小時 / 天數。
+
+package com.example.url_shortener.clicklog;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Locale;
+
+public enum Granularity {
+    MINUTE("minute", 60),
+    HOUR("hour", 3600),
+    DAY("day", 86400);
+
+    private final String prefix;
+    private final long seconds;
+
+    Granularity(String prefix, long seconds) {
+        this.prefix = prefix;
+        this.seconds = seconds;
+    }
+
+    public static Granularity parse(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+
+    public long seconds() {
+        return seconds;
+    }
+
+    int bucketOf(long epochSecond) {
+        return (int) Math.floorDiv(epochSecond, seconds);
+    }
+
+    long bucketStartSecond(int bucket) {
+        return bucket * seconds;
+    }
+
+    // 較細一級的 bucket 換算成這個粒度的 bucket（分鐘 -> 小時、小時 -> 天）
+    int fromFiner(int finerBucket) {
+        return this == HOUR ? Math.floorDiv(finerBucket, 60) : Math.floorDiv(finerBucket, 24);
+    }
+
+    // bucket 所在檔案的第一個 bucket
+    int groupStart(int bucket) {
+        return switch (this) {
+            case MINUTE -> Math.floorDiv(bucket, 60) * 60;
+            case HOUR -> Math.floorDiv(bucket, 24) * 24;
+            case DAY -> (int) LocalDate.ofEpochDay(bucket).withDayOfMonth(1).toEpochDay();
+        };
+    }
+
+    // 下一個檔案的第一個 bucket
+    int nextGroupStart(int bucket) {
+        return switch (this) {
+            case MINUTE -> groupStart(bucket) + 60;
+            case HOUR -> groupStart(bucket) + 24;
+            case DAY -> (int) LocalDate.ofEpochDay(bucket).withDayOfMonth(1).plusMonths(1).toEpochDay();
+        };
+    }
+
+    String fileName(int bucket) {
+        return prefix + "-" + groupLabel(bucket) + ".roll";
+    }
+
+    private String groupLabel(int bucket) {
+        return switch (this) {
+            case MINUTE -> hourLabel(Math.floorDiv(bucket, 60));
+            case HOUR -> LocalDate.ofEpochDay(Math.floorDiv(bucket, 24)).toString();
+            case DAY -> YearMonth.from(LocalDate.ofEpochDay(bucket)).toString();
+        };
+    }
+
+    // fileName 的反向操作，回傳檔案的第一個 bucket；不是這個粒度的檔案時回傳 null
+    Integer parseGroupStart(String fileName) {
+        String head = prefix + "-";
+        if (!fileName.startsWith(head) || !fileName.endsWith(".roll")) {
+            return null;
+        }
+        String label = fileName.substring(head.length(), fileName.length() - ".roll".length());
+        try {
+            return switch (this) {
+                case MINUTE -> (int) parseHourLabel(label) * 60;
+                case HOUR -> (int) LocalDate.parse(label).toEpochDay() * 24;
+                case DAY -> (int) YearMonth.parse(label).atDay(1).toEpochDay();
+            };
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    // 小時的 UTC 標籤，例如 2026-10-18T13；minute rollup 檔與原始事件檔共用
+    static String hourLabel(long epochHour) {
+        return LocalDate.ofEpochDay(Math.floorDiv(epochHour, 24)) + String.format(Locale.ROOT, "T%02d", Math.floorMod(epochHour, 24));
+    }
+
+    // hourLabel 的反向操作，格式不符時丟出 RuntimeException
+    static long parseHourLabel(String label) {
+        int separator = label.indexOf('T');
+        LocalDate date = LocalDate.parse(label.substring(0, separator));
+        int hour = Integer.parseInt(label.substring(separator + 1));
+        if (hour < 0 || hour > 23) {
+            throw new IllegalArgumentException("Invalid hour label: " + label);
+        }
+        return date.toEpochDay() * 24 + hour;
+    }
+}
+
+//程式碼解說：
+//
+//bucketOf(...): 以 floorDiv 換算，所有粒度都用 int 表示（分鐘數在西元 6000 年前都不會溢位）。
+//
+//groupStart / nextGroupStart: 查詢一段時間時，依這兩個方法決定需要讀哪些檔案，不在範圍內的檔案完全不會被開啟。
+//
+//fileName / parseGroupStart: 檔名使用 UTC 的日期時間，方便維運人員直接從目錄判斷內容的時間範圍。
@@ -0,0 +1,156 @@
+// RollupFiles 負責 rollup 檔案與原始點擊事件檔的格式與讀寫。
+//
+// 原始事件檔（events-2026-10-18T13.log）：每筆 16 bytes [短碼 key 8][epoch 毫秒 8]，只會附加。
+// rollup 檔（minute- / hour- / day-*.roll）：
+//   [magic 4][version 4][筆數 8] 之後是依 (短碼 key, bucket) 排序的紀錄，每筆 20 bytes [短碼 key 8][bucket 4][次數 8]
+//
+// 讀取一律使用記憶體映射（FileChannel.map）。查詢某個短碼時以二分搜尋找到第一筆，只讀取需要的那一段。
+
+package com.example.url_shortener.clicklog;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+final class RollupFiles {
+
+    static final int EVENT_SIZE = 16;
+
+    private static final int MAGIC = 0x55534C52; // "USLR"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 20;
+
+    @FunctionalInterface
+    interface RecordConsumer {
+        void accept(long codeKey, int bucket, long count);
+    }
+
+    private RollupFiles() {
+    }
+
+    static String eventFileName(long epochHour) {
+        return "events-" + Granularity.hourLabel(epochHour) + ".log";
+    }
+
+    // eventFileName 的反向操作；不是原始事件檔時回傳 -1
+    static long parseEventFileHour(String fileName) {
+        if (!fileName.startsWith("events-") || !fileName.endsWith(".log")) {
+            return -1;
+        }
+        try {
+            return Granularity.parseHourLabel(fileName.substring("events-".length(), fileName.length() - ".log".length()));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    // 以 .tmp 寫完整份檔案後 ATOMIC_MOVE，讀取端只會看到舊檔或新檔
+    static void write(Path file, RollupTable table) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(table.size());
+            table.forEachSorted((codeKey, bucket, count) -> {
+                try {
+                    out.writeLong(codeKey);
+                    out.writeInt(bucket);
+                    out.writeLong(count);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // 讀取整個 rollup 檔
+    static void readAll(Path file, RecordConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = map(channel, file);
+            long records = buffer.getLong(8);
+            for (long i = 0; i < records; i++) {
+                int offset = (int) (HEADER_SIZE + i * RECORD_SIZE);
+                consumer.accept(buffer.getLong(offset), buffer.getInt(offset + 8), buffer.getLong(offset + 12));
+            }
+        }
+    }
+
+    // 讀取某個短碼在 [fromBucket, toBucket) 之間的紀錄
+    static void query(Path file, long codeKey, int fromBucket, int toBucket, RecordConsumer consumer)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = map(channel, file);
+            long records = buffer.getLong(8);
+
+            // 二分搜尋第一筆 >= (codeKey, fromBucket) 的紀錄
+            long low = 0;
+            long high = records;
+            while (low < high) {
+                long middle = (low + high) >>> 1;
+                int offset = (int) (HEADER_SIZE + middle * RECORD_SIZE);
+                long key = buffer.getLong(offset);
+                if (key < codeKey || (key == codeKey && buffer.getInt(offset + 8) < fromBucket)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            for (long i = low; i < records; i++) {
+                int offset = (int) (HEADER_SIZE + i * RECORD_SIZE);
+                int bucket = buffer.getInt(offset + 8);
+                if (buffer.getLong(offset) != codeKey || bucket >= toBucket) {
+                    break;
+                }
+                consumer.accept(codeKey, bucket, buffer.getLong(offset + 12));
+            }
+        }
+    }
+
+    // 讀取原始事件檔 [fromOffset, 檔尾) 中完整的事件，回傳讀到的位置（只包含完整的 16 bytes 事件）
+    static long readEvents(Path file, long fromOffset, ClickEventRing.EventHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long end = channel.size() - channel.size() % EVENT_SIZE;
+            long position = fromOffset;
+            while (position < end) {
+                // 單次映射的上限（MappedByteBuffer 最多 2GB），取 EVENT_SIZE 的倍數
+                long length = Math.min(end - position, 256L * 1024 * 1024);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                while (window.remaining() >= EVENT_SIZE) {
+                    handler.onEvent(window.getLong(), window.getLong());
+                }
+                position += length;
+            }
+            return position;
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, Path file) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Unrecognized rollup file: " + file);
+        }
+        return buffer;
+    }
+}
+
+//程式碼解說：
+//
+//write(...): 新的 rollup 檔一次寫完，再以 ATOMIC_MOVE 取代舊檔；查詢中已映射舊檔的讀取端不受影響。
+//
+//query(...): 紀錄依 (短碼 key, bucket) 排序，二分搜尋只需要 O(log n) 次讀取，之後只往後讀這個短碼的資料。
+// 作業系統只會把實際被讀到的頁面載入記憶體，大檔案也不必整個讀進來。
+//
+//readEvents(...): 原始事件檔仍在被寫入，只讀到最後一個完整事件為止，剩下的部分留給下一次 rollup。
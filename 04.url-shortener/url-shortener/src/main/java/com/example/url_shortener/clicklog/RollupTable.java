@@ -0,0 +1,140 @@
+// RollupTable 在記憶體中累加 (短碼, bucket) -> 點擊數，再依 (短碼, bucket) 排序寫成 rollup 檔。
+//
+// 以開放定址法（open addressing）存放在三個平行的原始型別陣列中，累加時不需要配置任何物件。
+// 短碼以 Base62.toKey 打包成 long，0 不會是合法的 key，因此用來表示空位。
+
+package com.example.url_shortener.clicklog;
+
+final class RollupTable {
+
+    private long[] codeKeys;
+    private int[] buckets;
+    private long[] counts;
+    private int size;
+
+    RollupTable() {
+        allocate(1024);
+    }
+
+    void add(long codeKey, int bucket, long count) {
+        if ((size + 1) * 2 > codeKeys.length) {
+            resize();
+        }
+        int mask = codeKeys.length - 1;
+        int index = hash(codeKey, bucket) & mask;
+        while (codeKeys[index] != 0) {
+            if (codeKeys[index] == codeKey && buckets[index] == bucket) {
+                counts[index] += count;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        codeKeys[index] = codeKey;
+        buckets[index] = bucket;
+        counts[index] = count;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // 依 (短碼, bucket) 排序後逐筆交給 consumer
+    void forEachSorted(RollupFiles.RecordConsumer consumer) {
+        long[] sortedKeys = new long[size];
+        int[] sortedBuckets = new int[size];
+        long[] sortedCounts = new long[size];
+        int n = 0;
+        for (int i = 0; i < codeKeys.length; i++) {
+            if (codeKeys[i] != 0) {
+                sortedKeys[n] = codeKeys[i];
+                sortedBuckets[n] = buckets[i];
+                sortedCounts[n] = counts[i];
+                n++;
+            }
+        }
+        sort(sortedKeys, sortedBuckets, sortedCounts, 0, n - 1);
+        for (int i = 0; i < n; i++) {
+            consumer.accept(sortedKeys[i], sortedBuckets[i], sortedCounts[i]);
+        }
+    }
+
+    private void resize() {
+        long[] oldKeys = codeKeys;
+        int[] oldBuckets = buckets;
+        long[] oldCounts = counts;
+        allocate(oldKeys.length * 2);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                add(oldKeys[i], oldBuckets[i], oldCounts[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        codeKeys = new long[capacity];
+        buckets = new int[capacity];
+        counts = new long[capacity];
+    }
+
+    private static int hash(long codeKey, int bucket) {
+        long h = (codeKey ^ ((long) bucket * 0x9E3779B97F4A7C15L)) * 0xBF58476D1CE4E5B9L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int compare(long[] keys, int[] buckets, int i, long key, int bucket) {
+        int c = Long.compare(keys[i], key);
+        return c != 0 ? c : Integer.compare(buckets[i], bucket);
+    }
+
+    // 對三個平行陣列做原地快速排序，避免把每筆紀錄包成物件
+    private static void sort(long[] keys, int[] buckets, long[] counts, int low, int high) {
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            long pivotKey = keys[middle];
+            int pivotBucket = buckets[middle];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compare(keys, buckets, i, pivotKey, pivotBucket) < 0) {
+                    i++;
+                }
+                while (compare(keys, buckets, j, pivotKey, pivotBucket) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, buckets, counts, i++, j--);
+                }
+            }
+            // 先遞迴較小的一半，遞迴深度維持在 O(log n)
+            if (j - low < high - i) {
+                sort(keys, buckets, counts, low, j);
+                low = i;
+            } else {
+                sort(keys, buckets, counts, i, high);
+                high = j;
+            }
+        }
+    }
+
+    private static void swap(long[] keys, int[] buckets, long[] counts, int a, int b) {
+        long key = keys[a];
+        keys[a] = keys[b];
+        keys[b] = key;
+        int bucket = buckets[a];
+        buckets[a] = buckets[b];
+        buckets[b] = bucket;
+        long count = counts[a];
+        counts[a] = counts[b];
+        counts[b] = count;
+    }
+}
+
+//程式碼解說：
+//
+//add(...): 同一個 (短碼, bucket) 重複出現時只累加次數；負載超過一半就擴充為兩倍。
+//
+//forEachSorted(...): rollup 檔案必須依 (短碼, bucket) 排序，查詢時才能以二分搜尋直接找到某個短碼的資料。
+//
+//sort(...): 三個陣列同步交換的快速排序（Hoare partition），排序期間不需要任何額外的物件。
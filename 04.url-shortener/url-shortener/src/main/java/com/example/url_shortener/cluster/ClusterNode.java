@@ -0,0 +1,858 @@
+// ClusterNode 讓多個 url-shortener 實例組成一個分片叢集（app.cluster.enabled=true 時啟用）。
+//
+// 一致性雜湊環（HashRing）決定兩種資料的擁有者：
+//   - 短碼 -> Entry：依短碼雜湊，存放在擁有者節點原本的 UrlStore（map / long-key）中；
+//   - URL -> 短碼 的冪等索引：依 URL 雜湊，存放在擁有者節點的 urlIndex 中。
+// ShortenService 改用 routedStore()：擁有者是自己就直接讀寫本機，否則以 ShardProtocol 轉送（proxy）到擁有者。
+//
+// 加入節點（app.cluster.join 指向任一既有節點）時採用漸進式 rebalance：
+//   1. 接受 JOIN 的節點（coordinator）產生 version + 1 的新環，依序送給新節點、其他節點與自己；
+//   2. 每個舊節點在背景把新環下不再屬於自己的短碼與 URL 索引分批搬到新擁有者，搬完後通知所有節點；
+//   3. 搬移期間擁有者在本機找不到資料時，改向舊環的擁有者讀取並存到本機，因此讀寫都不需要停止；
+//   4. 所有舊節點都回報完成後才結束 rebalance，coordinator 在那之前會拒絕下一個 JOIN。
+//      搬移或回報失敗（例如新擁有者暫時無法寫入）時以指數退避重試，直到成功、節點停止或出現更新的環。
+
+package com.example.url_shortener.cluster;
+
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.store.CodeFilter;
+import com.example.url_shortener.store.HotEntryCache;
+import com.example.url_shortener.store.StoreListener;
+import com.example.url_shortener.store.UrlStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static com.example.url_shortener.cluster.ShardProtocol.*;
+
+@Component
+@ConditionalOnProperty(name = "app.cluster.enabled", havingValue = "true")
+public class ClusterNode implements SmartLifecycle, StoreListener, ShardServer.Handler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterNode.class);
+
+    private static final int MIGRATION_BATCH = 512;
+    private static final int MAX_CODE_LENGTH = 64;
+    private static final long JOIN_TIMEOUT_MILLIS = 60_000L;
+    private static final long MIGRATION_RETRY_MILLIS = 200L;
+    private static final long MIGRATION_RETRY_MAX_MILLIS = 10_000L;
+
+    private final UrlStore localStore;
+    private final HotEntryCache hotCache; // app.cache.enabled=false 時為 null
+    private final CodeFilter codeFilter; // app.bloom.enabled=false 時為 null
+    private final String nodeId;
+    private final String host;
+    private final int port;
+    private final List<ShardNode> members;
+    private final String joinAddress;
+    private final int virtualNodes;
+    private final int poolSize;
+
+    // 依 URL 雜湊分配給這個節點的 URL -> 短碼 索引（短碼本身可能存放在其他節點）
+    private final ConcurrentHashMap<String, String> urlIndex = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ShardClient> clients = new ConcurrentHashMap<>();
+    private final UrlStore routedStore = new ShardedStore(this);
+    private final Object joinLock = new Object();
+
+    // 短碼被刪除後，釋放其他節點上的 URL 索引（不在刪除的執行緒上等待網路往返）
+    private final ExecutorService releases = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "cluster-url-release");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile HashRing ring;
+    // rebalance 期間不為 null：本機找不到的資料改向這個環上的擁有者讀取
+    private volatile HashRing previousRing;
+    // 以下兩個欄位由 this 的 monitor 保護
+    private final Set<String> pendingMigrations = new HashSet<>();
+    private final Map<Long, Set<String>> earlyMigrations = new HashMap<>();
+
+    private volatile ShardNode self;
+    private ShardServer server;
+    private volatile boolean running;
+
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder served = new LongAdder();
+    private final LongAdder entriesMigrated = new LongAdder();
+    private final LongAdder urlsMigrated = new LongAdder();
+    private final LongAdder migrationRetries = new LongAdder();
+
+    @Autowired
+    public ClusterNode(UrlStore localStore,
+                       ObjectProvider<HotEntryCache> hotCache,
+                       ObjectProvider<CodeFilter> codeFilter,
+                       @Value("${app.cluster.node-id:node-1}") String nodeId,
+                       @Value("${app.cluster.address:127.0.0.1:9101}") String address,
+                       @Value("${app.cluster.nodes:}") String nodes,
+                       @Value("${app.cluster.join:}") String join,
+                       @Value("${app.cluster.virtual-nodes:128}") int virtualNodes,
+                       @Value("${app.cluster.pool-size:8}") int poolSize) {
+        this(localStore, hotCache.getIfAvailable(), codeFilter.getIfAvailable(),
+                nodeId, address, nodes, join, virtualNodes, poolSize);
+    }
+
+    ClusterNode(UrlStore localStore, HotEntryCache hotCache, CodeFilter codeFilter,
+                String nodeId, String address, String nodes, String join, int virtualNodes, int poolSize) {
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("app.cluster.address must be host:port: " + address);
+        }
+        this.localStore = localStore;
+        this.hotCache = hotCache;
+        this.codeFilter = codeFilter;
+        this.nodeId = nodeId;
+        this.host = address.substring(0, colon);
+        this.port = Integer.parseInt(address.substring(colon + 1));
+        this.members = new ArrayList<>();
+        for (String spec : nodes.split(",")) {
+            if (!spec.isBlank()) {
+                members.add(ShardNode.parse(spec));
+            }
+        }
+        this.joinAddress = join.trim();
+        this.virtualNodes = virtualNodes;
+        this.poolSize = poolSize;
+        localStore.addListener(this);
+    }
+
+    // ShortenService 在叢集模式下使用的 UrlStore：依短碼 / URL 轉送到擁有者節點
+    public UrlStore routedStore() {
+        return routedStore;
+    }
+
+    // 不加 synchronized：join 期間 coordinator 送來的 OP_RING 會在其他執行緒呼叫 installRing（同樣以 this 為鎖）
+    @Override
+    public void start() {
+        try {
+            server = new ShardServer(host, port, this);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to start shard server on " + host + ":" + port, e);
+        }
+        self = new ShardNode(nodeId, host, server.port());
+        server.start();
+        running = true;
+
+        if (joinAddress.isEmpty()) {
+            List<ShardNode> initial = new ArrayList<>();
+            for (ShardNode member : members) {
+                if (!member.getId().equals(nodeId)) {
+                    initial.add(member);
+                }
+            }
+            initial.add(self);
+            installRing(new HashRing(1, initial, virtualNodes), null);
+        } else {
+            join();
+        }
+        logger.info("Cluster node {} listening on {}, ring version {} with {} nodes",
+                nodeId, self.address(), ring.version(), ring.nodes().size());
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        server.stop();
+        releases.shutdown();
+        clients.values().forEach(ShardClient::close);
+        logger.info("Cluster node {} stopped", nodeId);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // 比 Web 伺服器更早啟動、更晚停止：開始接受 HTTP 請求前就已經取得 ring
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    // ---- 依 key 路由的操作（ShardedStore 使用）----
+
+    Entry getEntry(String code) {
+        if (code.length() > MAX_CODE_LENGTH) {
+            return null; // 不可能是合法的短碼，也無法以 1 byte 表示長度
+        }
+        return route(code, () -> lookupLocal(code),
+                OP_GET_ENTRY, out -> writeCode(out, code), ClusterNode::entryOrNull);
+    }
+
+    String getCode(String url) {
+        return route(url, () -> getCodeLocal(url),
+                OP_GET_CODE, out -> writeString(out, url), ClusterNode::codeOrNull);
+    }
+
+    // URL 尚未有短碼時登記為 code 並回傳 null；否則回傳既有的短碼
+    String claimUrl(String url, String code) {
+        return route(url, () -> claimUrlLocal(url, code),
+                OP_CLAIM_URL, out -> {
+                    writeString(out, url);
+                    writeCode(out, code);
+                }, ClusterNode::codeOrNull);
+    }
+
+    void releaseUrl(String url, String code) {
+        route(url, () -> urlIndex.remove(url, code),
+                OP_RELEASE_URL, out -> {
+                    writeString(out, url);
+                    writeCode(out, code);
+                }, response -> Boolean.TRUE);
+    }
+
+    void setUrl(String url, String code) {
+        route(url, () -> urlIndex.put(url, code),
+                OP_SET_URL, out -> {
+                    writeString(out, url);
+                    writeCode(out, code);
+                }, response -> code);
+    }
+
+    // 與 UrlStore.claim 相同：成功時回傳 candidate 本身，否則回傳佔用該短碼的 Entry
+    Entry claimEntry(Entry candidate) {
+        return route(candidate.getCode(), () -> claimEntryLocal(candidate),
+                OP_CLAIM_ENTRY, out -> writeEntry(out, candidate),
+                response -> response.body().get() == 1 ? candidate : readEntry(response.body()));
+    }
+
+    boolean removeEntry(Entry expected) {
+        return route(expected.getCode(), () -> removeEntryLocal(expected),
+                OP_REMOVE_ENTRY, out -> writeEntry(out, expected),
+                response -> response.body().get() == 1);
+    }
+
+    void save(Entry entry) {
+        route(entry.getCode(), () -> {
+            localStore.save(entry.getUrl(), entry.getCode(), entry);
+            return entry;
+        }, OP_SAVE, out -> writeEntry(out, entry), response -> entry);
+    }
+
+    void remove(String url, String code) {
+        route(code, () -> {
+            localStore.remove(url, code);
+            return code;
+        }, OP_REMOVE, out -> {
+            writeString(out, url);
+            writeCode(out, code);
+        }, response -> code);
+    }
+
+    int localSize() {
+        return localStore.size();
+    }
+
+    void forEachLocal(Consumer<Entry> action) {
+        localStore.forEach(action);
+    }
+
+    long scanLocal(long cursor, int count, Consumer<Entry> action) {
+        return localStore.scan(cursor, count, action);
+    }
+
+    void addLocalListener(StoreListener listener) {
+        localStore.addListener(listener);
+    }
+
+    // 擁有者是自己就執行 local，否則轉送；對方的 ring 較新時安裝後重新選擇擁有者
+    private <T> T route(String key, Supplier<T> local, byte op, ShardClient.Body body,
+                        Function<ShardClient.Response, T> remote) {
+        while (true) {
+            HashRing current = requireRing();
+            ShardNode owner = current.ownerOf(key);
+            if (owner.getId().equals(nodeId)) {
+                return local.get();
+            }
+            forwarded.increment();
+            ShardClient.Response response = client(owner.address()).call(op, current.version(), body);
+            if (response.status() == STATUS_STALE_RING) {
+                installRingUpdate(response.body());
+                continue;
+            }
+            if (response.status() == STATUS_ERROR) {
+                throw new ShardUnavailableException("Shard " + owner + " failed: " + readString(response.body()));
+            }
+            return remote.apply(response);
+        }
+    }
+
+    // ---- 本機操作 ----
+
+    private Entry lookupLocal(String code) {
+        HashRing previous = previousRing;
+        // rebalance 期間 Bloom filter 還沒有搬移中的短碼，不能用來排除
+        if (previous == null && codeFilter != null && !codeFilter.mightContain(code)) {
+            return null;
+        }
+        Entry entry = hotCache != null ? hotCache.get(code) : localStore.getEntry(code);
+        if (entry == null && previous != null) {
+            entry = adoptEntry(previous, code);
+        }
+        return entry;
+    }
+
+    private String getCodeLocal(String url) {
+        HashRing previous = previousRing;
+        if (previous != null && !urlIndex.containsKey(url)) {
+            adoptUrl(previous, url);
+        }
+        return urlIndex.get(url);
+    }
+
+    private String claimUrlLocal(String url, String code) {
+        HashRing previous = previousRing;
+        if (previous != null && !urlIndex.containsKey(url)) {
+            adoptUrl(previous, url);
+        }
+        return urlIndex.putIfAbsent(url, code);
+    }
+
+    private Entry claimEntryLocal(Entry candidate) {
+        HashRing previous = previousRing;
+        if (previous != null && localStore.getEntry(candidate.getCode()) == null) {
+            adoptEntry(previous, candidate.getCode());
+        }
+        return localStore.claim(candidate);
+    }
+
+    private boolean removeEntryLocal(Entry expected) {
+        Entry current = localStore.getEntry(expected.getCode());
+        return current != null
+                && current.getUrl().equals(expected.getUrl())
+                // 協定以毫秒傳送時間，跨節點時只能比對到毫秒
+                && current.getCreatedAt().toEpochMilli() == expected.getCreatedAt().toEpochMilli()
+                && localStore.remove(current);
+    }
+
+    // rebalance 期間本機還沒收到的短碼：向舊環的擁有者讀取並存到本機
+    private Entry adoptEntry(HashRing previous, String code) {
+        ShardNode oldOwner = previous.ownerOf(code);
+        if (oldOwner.getId().equals(nodeId)) {
+            return null;
+        }
+        Entry fetched = entryOrNull(client(oldOwner.address())
+                .call(OP_FETCH_ENTRY, previous.version(), out -> writeCode(out, code)));
+        if (fetched == null) {
+            // 舊擁有者可能剛把它搬過來並刪除
+            return localStore.getEntry(code);
+        }
+        return localStore.claim(fetched);
+    }
+
+    private void adoptUrl(HashRing previous, String url) {
+        ShardNode oldOwner = previous.ownerOf(url);
+        if (oldOwner.getId().equals(nodeId)) {
+            return;
+        }
+        String code = codeOrNull(client(oldOwner.address())
+                .call(OP_FETCH_CODE, previous.version(), out -> writeString(out, url)));
+        if (code != null) {
+            urlIndex.putIfAbsent(url, code);
+        }
+    }
+
+    // ---- StoreListener：本機短碼被刪除時釋放 URL 索引 ----
+
+    @Override
+    public void onSave(Entry entry) {
+        // 新增短碼時的 URL 索引由 ShardedStore.claim 負責
+    }
+
+    @Override
+    public void onRemove(String url, String code) {
+        HashRing current = ring;
+        // 搬移到其他節點的短碼仍然有效，不能釋放它的 URL 索引
+        if (current == null || !current.ownerOf(code).getId().equals(nodeId)) {
+            return;
+        }
+        if (current.ownerOf(url).getId().equals(nodeId)) {
+            urlIndex.remove(url, code);
+            return;
+        }
+        releases.execute(() -> {
+            try {
+                // 排隊期間短碼可能已被同一個 URL 重新佔用（ShardedStore.claim 接手索引指向的短碼），這時索引仍然有效
+                Entry entry = localStore.getEntry(code);
+                if (entry != null && entry.hasUrl(url)) {
+                    return;
+                }
+                releaseUrl(url, code);
+            } catch (RuntimeException e) {
+                logger.warn("Failed to release URL index for code {}", code, e);
+            }
+        });
+    }
+
+    // ---- ShardServer.Handler ----
+
+    @Override
+    public byte handle(byte op, long ringVersion, ByteBuffer request, DataOutputStream response) throws IOException {
+        served.increment();
+        switch (op) {
+            case OP_JOIN:
+                return handleJoin(readNode(request), response);
+            case OP_RING: {
+                HashRing next = readRing(request);
+                HashRing previous = request.get() == 1 ? readRing(request) : null;
+                installRing(next, previous);
+                return STATUS_OK;
+            }
+            case OP_MIGRATED:
+                migrated(request.getLong(), readString(request));
+                return STATUS_OK;
+            case OP_FETCH_ENTRY:
+                return writeEntryOrNotFound(localStore.getEntry(readCode(request)), response);
+            case OP_FETCH_CODE:
+                return writeCodeOrNotFound(urlIndex.get(readString(request)), response);
+            case OP_PUT_ENTRIES: {
+                int count = request.getInt();
+                for (int i = 0; i < count; i++) {
+                    localStore.claim(readEntry(request));
+                }
+                return STATUS_OK;
+            }
+            case OP_PUT_URLS: {
+                int count = request.getInt();
+                for (int i = 0; i < count; i++) {
+                    urlIndex.putIfAbsent(readString(request), readCode(request));
+                }
+                return STATUS_OK;
+            }
+            default:
+                break;
+        }
+
+        HashRing current = ring;
+        if (current == null) {
+            writeString(response, "Node " + nodeId + " has not joined the cluster yet");
+            return STATUS_ERROR;
+        }
+        if (ringVersion < current.version()) {
+            writeRingUpdate(response, current, previousRing);
+            return STATUS_STALE_RING;
+        }
+
+        switch (op) {
+            case OP_GET_ENTRY:
+                return writeEntryOrNotFound(lookupLocal(readCode(request)), response);
+            case OP_GET_CODE:
+                return writeCodeOrNotFound(getCodeLocal(readString(request)), response);
+            case OP_CLAIM_URL: {
+                String url = readString(request);
+                return writeCodeOrNotFound(claimUrlLocal(url, readCode(request)), response);
+            }
+            case OP_RELEASE_URL: {
+                String url = readString(request);
+                urlIndex.remove(url, readCode(request));
+                return STATUS_OK;
+            }
+            case OP_SET_URL: {
+                String url = readString(request);
+                urlIndex.put(url, readCode(request));
+                return STATUS_OK;
+            }
+            case OP_CLAIM_ENTRY: {
+                Entry candidate = readEntry(request);
+                Entry claimed = claimEntryLocal(candidate);
+                if (claimed == candidate) {
+                    response.writeByte(1);
+                } else {
+                    response.writeByte(0);
+                    writeEntry(response, claimed);
+                }
+                return STATUS_OK;
+            }
+            case OP_REMOVE_ENTRY:
+                response.writeByte(removeEntryLocal(readEntry(request)) ? 1 : 0);
+                return STATUS_OK;
+            case OP_SAVE: {
+                Entry entry = readEntry(request);
+                localStore.save(entry.getUrl(), entry.getCode(), entry);
+                return STATUS_OK;
+            }
+            case OP_REMOVE: {
+                String url = readString(request);
+                localStore.remove(url, readCode(request));
+                return STATUS_OK;
+            }
+            default:
+                writeString(response, "Unknown shard op " + op);
+                return STATUS_ERROR;
+        }
+    }
+
+    // ---- 成員管理與 rebalance ----
+
+    private void join() {
+        ShardClient seed = client(joinAddress);
+        long deadline = System.currentTimeMillis() + JOIN_TIMEOUT_MILLIS;
+        while (true) {
+            ShardClient.Response response = seed.call(OP_JOIN, 0, out -> writeNode(out, self));
+            if (response.status() == STATUS_OK) {
+                return; // coordinator 已經把新環送到這個節點（OP_RING）
+            }
+            String reason = readString(response.body());
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Unable to join cluster via " + joinAddress + ": " + reason);
+            }
+            logger.info("Join via {} deferred: {}", joinAddress, reason);
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while joining cluster", e);
+            }
+        }
+    }
+
+    private byte handleJoin(ShardNode joining, DataOutputStream response) throws IOException {
+        synchronized (joinLock) {
+            HashRing current = ring;
+            if (current == null || previousRing != null) {
+                writeString(response, "Rebalance in progress on " + nodeId + ", retry later");
+                return STATUS_ERROR;
+            }
+            HashRing next = current.withNode(joining);
+
+            // 先通知新節點，再通知其他節點，最後才是自己：任何節點開始轉送到新節點之前，新節點已經有新環
+            List<ShardNode> targets = new ArrayList<>();
+            targets.add(joining);
+            for (ShardNode node : next.nodes()) {
+                if (!node.getId().equals(nodeId) && !node.getId().equals(joining.getId())) {
+                    targets.add(node);
+                }
+            }
+            for (ShardNode target : targets) {
+                ShardClient.Response reply = client(target.address())
+                        .call(OP_RING, next.version(), out -> writeRingUpdate(out, next, current));
+                if (reply.status() != STATUS_OK) {
+                    throw new ShardUnavailableException("Node " + target + " rejected ring version " + next.version());
+                }
+            }
+            installRing(next, current);
+            logger.info("Node {} joined; ring version {} now has {} nodes", joining, next.version(), next.nodes().size());
+            return STATUS_OK;
+        }
+    }
+
+    private void installRingUpdate(ByteBuffer body) {
+        HashRing next = readRing(body);
+        installRing(next, body.get() == 1 ? readRing(body) : null);
+    }
+
+    private synchronized void installRing(HashRing next, HashRing previous) {
+        HashRing current = ring;
+        if (current != null && next.version() <= current.version()) {
+            return;
+        }
+        pendingMigrations.clear();
+        if (previous != null) {
+            for (ShardNode node : previous.nodes()) {
+                pendingMigrations.add(node.getId());
+            }
+            Set<String> early = earlyMigrations.remove(next.version());
+            if (early != null) {
+                pendingMigrations.removeAll(early);
+            }
+        }
+        earlyMigrations.keySet().removeIf(version -> version <= next.version());
+
+        // 先設定 previousRing 再換 ring，讀取端不會看到「新環但沒有舊環可查」的中間狀態
+        previousRing = pendingMigrations.isEmpty() ? null : previous;
+        ring = next;
+        logger.info("Node {} installed ring version {} with {} nodes", nodeId, next.version(), next.nodes().size());
+
+        if (previous != null && previous.contains(nodeId)) {
+            Thread migration = new Thread(() -> migrate(next), "cluster-migration-" + next.version());
+            migration.setDaemon(true);
+            migration.start();
+        }
+    }
+
+    // 把新環下不再屬於自己的短碼與 URL 索引分批搬到新擁有者，全部送達後通知所有節點
+    private void migrate(HashRing target) {
+        long started = System.nanoTime();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                copyAway(target);
+                break;
+            } catch (RuntimeException e) {
+                // 不能直接放棄：沒有送出 MIGRATED，所有節點都會停在 rebalance 中，coordinator 也會拒絕之後的 JOIN
+                logger.warn("Rebalance to ring version {} failed on node {} (attempt {}), retrying",
+                        target.version(), nodeId, attempt, e);
+                if (!backOff(target, attempt)) {
+                    return;
+                }
+            }
+        }
+        logger.info("Node {} migrated {} entries and {} URL index records for ring version {} in {} ms",
+                nodeId, entriesMigrated.sum(), urlsMigrated.sum(), target.version(),
+                (System.nanoTime() - started) / 1_000_000);
+
+        for (ShardNode node : target.nodes()) {
+            if (node.getId().equals(nodeId)) {
+                migrated(target.version(), nodeId);
+                continue;
+            }
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    client(node.address()).call(OP_MIGRATED, target.version(), out -> {
+                        out.writeLong(target.version());
+                        writeString(out, nodeId);
+                    });
+                    break;
+                } catch (ShardUnavailableException e) {
+                    logger.warn("Unable to report finished rebalance to {} (attempt {}), retrying", node, attempt, e);
+                    if (!backOff(target, attempt)) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    // 已送達的批次會從本機刪除，重試時只會重送剩下的部分；對方以 claim / putIfAbsent 寫入，重送同一筆也沒有副作用
+    private void copyAway(HashRing target) {
+        Map<ShardNode, List<Entry>> entryBatches = new HashMap<>();
+        localStore.forEach(entry -> {
+            ShardNode owner = target.ownerOf(entry.getCode());
+            if (owner.getId().equals(nodeId)) {
+                return;
+            }
+            List<Entry> batch = entryBatches.computeIfAbsent(owner, node -> new ArrayList<>());
+            batch.add(entry);
+            if (batch.size() >= MIGRATION_BATCH) {
+                sendEntries(owner, target, batch);
+            }
+        });
+        entryBatches.forEach((owner, batch) -> sendEntries(owner, target, batch));
+
+        Map<ShardNode, List<String[]>> urlBatches = new HashMap<>();
+        urlIndex.forEach((url, code) -> {
+            ShardNode owner = target.ownerOf(url);
+            if (owner.getId().equals(nodeId)) {
+                return;
+            }
+            List<String[]> batch = urlBatches.computeIfAbsent(owner, node -> new ArrayList<>());
+            batch.add(new String[]{url, code});
+            if (batch.size() >= MIGRATION_BATCH) {
+                sendUrls(owner, target, batch);
+            }
+        });
+        urlBatches.forEach((owner, batch) -> sendUrls(owner, target, batch));
+    }
+
+    // 第 attempt 次失敗後的等待（200 ms 起倍增，最多 10 秒）；節點停止或已經換成其他環時回傳 false，放棄這次搬移
+    private boolean backOff(HashRing target, int attempt) {
+        migrationRetries.increment();
+        long delay = Math.min(MIGRATION_RETRY_MAX_MILLIS, MIGRATION_RETRY_MILLIS << Math.min(attempt - 1, 6));
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (!running || ring != target) {
+            logger.info("Node {} abandoned rebalance to ring version {}", nodeId, target.version());
+            return false;
+        }
+        return true;
+    }
+
+    private void sendEntries(ShardNode owner, HashRing target, List<Entry> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        ShardClient.Response response = client(owner.address()).call(OP_PUT_ENTRIES, target.version(), out -> {
+            out.writeInt(batch.size());
+            for (Entry entry : batch) {
+                writeEntry(out, entry);
+            }
+        });
+        if (response.status() != STATUS_OK) {
+            throw new ShardUnavailableException("Node " + owner + " rejected migrated entries");
+        }
+        // 對方已經存好才刪除本機的副本；這時短碼已不屬於自己，onRemove 不會釋放 URL 索引
+        for (Entry entry : batch) {
+            localStore.remove(entry);
+        }
+        entriesMigrated.add(batch.size());
+        batch.clear();
+    }
+
+    private void sendUrls(ShardNode owner, HashRing target, List<String[]> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        ShardClient.Response response = client(owner.address()).call(OP_PUT_URLS, target.version(), out -> {
+            out.writeInt(batch.size());
+            for (String[] record : batch) {
+                writeString(out, record[0]);
+                writeCode(out, record[1]);
+            }
+        });
+        if (response.status() != STATUS_OK) {
+            throw new ShardUnavailableException("Node " + owner + " rejected migrated URL index records");
+        }
+        for (String[] record : batch) {
+            urlIndex.remove(record[0], record[1]);
+        }
+        urlsMigrated.add(batch.size());
+        batch.clear();
+    }
+
+    private synchronized void migrated(long version, String fromNode) {
+        HashRing current = ring;
+        if (current != null && version == current.version()) {
+            pendingMigrations.remove(fromNode);
+            if (pendingMigrations.isEmpty() && previousRing != null) {
+                previousRing = null;
+                logger.info("Node {} finished rebalance to ring version {}", nodeId, version);
+            }
+        } else if (current == null || version > current.version()) {
+            // 比新環更早抵達的完成通知，安裝新環時再套用
+            earlyMigrations.computeIfAbsent(version, v -> new HashSet<>()).add(fromNode);
+        }
+    }
+
+    // ---- 狀態（AdminController 與測試使用）----
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    public String address() {
+        ShardNode current = self;
+        return current != null ? current.address() : host + ":" + port;
+    }
+
+    public long ringVersion() {
+        HashRing current = ring;
+        return current != null ? current.version() : 0;
+    }
+
+    public List<String> ringNodes() {
+        HashRing current = ring;
+        return current != null ? current.nodes().stream().map(ShardNode::toString).toList() : List.of();
+    }
+
+    public boolean isRebalancing() {
+        return previousRing != null;
+    }
+
+    public int urlIndexSize() {
+        return urlIndex.size();
+    }
+
+    public long forwardedCount() {
+        return forwarded.sum();
+    }
+
+    public long servedCount() {
+        return served.sum();
+    }
+
+    public long migratedEntryCount() {
+        return entriesMigrated.sum();
+    }
+
+    public long migratedUrlCount() {
+        return urlsMigrated.sum();
+    }
+
+    public long migrationRetryCount() {
+        return migrationRetries.sum();
+    }
+
+    // ---- 工具 ----
+
+    private HashRing requireRing() {
+        HashRing current = ring;
+        if (current == null) {
+            throw new ShardUnavailableException("Node " + nodeId + " has not joined the cluster yet");
+        }
+        return current;
+    }
+
+    private ShardClient client(String address) {
+        return clients.computeIfAbsent(address, a -> new ShardClient(a, poolSize));
+    }
+
+    private static Entry entryOrNull(ShardClient.Response response) {
+        return response.status() == STATUS_OK ? readEntry(response.body()) : null;
+    }
+
+    private static String codeOrNull(ShardClient.Response response) {
+        return response.status() == STATUS_OK ? readCode(response.body()) : null;
+    }
+
+    private static byte writeEntryOrNotFound(Entry entry, DataOutputStream response) throws IOException {
+        if (entry == null) {
+            return STATUS_NOT_FOUND;
+        }
+        writeEntry(response, entry);
+        return STATUS_OK;
+    }
+
+    private static byte writeCodeOrNotFound(String code, DataOutputStream response) throws IOException {
+        if (code == null) {
+            return STATUS_NOT_FOUND;
+        }
+        writeCode(response, code);
+        return STATUS_OK;
+    }
+}
+
+//程式碼解說：
+//
+//localStore: 仍是 app.store.type 選出的 UrlStore，持久化、TTL 清理、快取與 Bloom filter 都照舊掛在它上面，
+// 只是裡面只放這個節點負責的短碼。
+//
+//urlIndex: URL 的擁有者不一定是短碼的擁有者，所以冪等索引另外依 URL 分片。ShardedStore.claim 先在 URL 擁有者佔用 URL，
+// 再到短碼擁有者佔用短碼，與 InMemoryStore.claim 的兩步驟相同，只是兩步可能在不同節點上。
+//
+//route(...): 擁有者是自己時直接呼叫本機方法（不經過序列化）；否則轉送，收到 STALE_RING 時安裝對方較新的環再重新路由。
+//
+//lookupLocal(...): 擁有者節點上照常使用 Bloom filter 與熱門項目快取；轉送過來的 GET 也會經過它們。
+//
+//adoptEntry / adoptUrl: rebalance 期間的 read-through。新擁有者在本機找不到時向舊擁有者讀取，並以 claim（putIfAbsent）存到本機，
+// 之後舊擁有者搬移同一筆資料時也只是被忽略，因此搬移與讀寫可以同時進行。
+//
+//onRemove(...): 本機短碼被刪除（到期、CAS 刪除）時，釋放它在 URL 擁有者上的索引；搬移造成的刪除不會釋放。
+// 非同步釋放前再確認一次短碼沒有被同一個 URL 重新佔用，避免刪掉仍然有效的索引。
+//
+//installRing(...): 依版本號只接受更新的環；自己在舊環中時啟動背景搬移，等所有舊節點回報 MIGRATED 才結束 rebalance。
+//
+//migrate(...): 搬移與 MIGRATED 通知都會重試。只要有一個舊節點放棄，previousRing 就永遠不會清除，
+// 叢集會一直處於 rebalance 中（讀取多一次舊環查詢、無法再加入節點），所以失敗時等待後重來，而不是記錄錯誤後返回。
+//
+//backOff(...): 以指數退避避免對暫時失敗的節點持續施壓；ring 已經不是 target 時放棄，新環的安裝會自己啟動新的搬移。
+//
+//handleJoin(...): 以 joinLock 讓同一時間只有一個 JOIN；rebalance 尚未完成時回傳錯誤，新節點會稍後重試。
@@ -0,0 +1,108 @@
+// HashRing 是一致性雜湊環（shard map）：決定每個短碼與每個 URL 由哪個節點負責。
+//
+// 每個節點在環上放 virtualNodes 個虛擬節點（位置 = Murmur3(id + "#" + i)），
+// key 的擁有者是環上順時針方向第一個虛擬節點所屬的節點。
+// 加入一個節點時只有落在新虛擬節點前方的 key 會換擁有者（約 1/N），其餘 key 完全不動。
+//
+// HashRing 建立後不可變；加入節點會產生 version + 1 的新環，所有節點依 version 判斷誰的環比較新。
+
+package com.example.url_shortener.cluster;
+
+import com.example.url_shortener.util.Murmur3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+final class HashRing {
+
+    private final long version;
+    private final int virtualNodes;
+    private final List<ShardNode> nodes;
+
+    // 依位置排序的虛擬節點，points[i] 的擁有者是 owners[i]
+    private final int[] points;
+    private final ShardNode[] owners;
+
+    HashRing(long version, Collection<ShardNode> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("Hash ring needs at least one node");
+        }
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("app.cluster.virtual-nodes must be positive");
+        }
+        List<ShardNode> sorted = new ArrayList<>(nodes);
+        sorted.sort(Comparator.comparing(ShardNode::getId));
+        this.version = version;
+        this.virtualNodes = virtualNodes;
+        this.nodes = List.copyOf(sorted);
+
+        // 高 32 bits 為位置、低 32 bits 為節點索引，排序一次就同時得到兩個陣列
+        long[] packed = new long[sorted.size() * virtualNodes];
+        int k = 0;
+        for (int n = 0; n < sorted.size(); n++) {
+            String prefix = sorted.get(n).getId() + "#";
+            for (int i = 0; i < virtualNodes; i++) {
+                packed[k++] = ((long) Murmur3.hash32(prefix, i) << 32) | n;
+            }
+        }
+        Arrays.sort(packed);
+        this.points = new int[packed.length];
+        this.owners = new ShardNode[packed.length];
+        for (int i = 0; i < packed.length; i++) {
+            points[i] = (int) (packed[i] >> 32);
+            owners[i] = sorted.get((int) packed[i]);
+        }
+    }
+
+    ShardNode ownerOf(CharSequence key) {
+        int index = Arrays.binarySearch(points, Murmur3.hash32(key, 0));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    // 加入（或以新位址取代同 id 的）節點，回傳下一個版本的環
+    HashRing withNode(ShardNode node) {
+        List<ShardNode> next = new ArrayList<>(nodes.size() + 1);
+        for (ShardNode existing : nodes) {
+            if (!existing.getId().equals(node.getId())) {
+                next.add(existing);
+            }
+        }
+        next.add(node);
+        return new HashRing(version + 1, next, virtualNodes);
+    }
+
+    boolean contains(String nodeId) {
+        for (ShardNode node : nodes) {
+            if (node.getId().equals(nodeId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    long version() {
+        return version;
+    }
+
+    int virtualNodes() {
+        return virtualNodes;
+    }
+
+    List<ShardNode> nodes() {
+        return nodes;
+    }
+}
+
+//程式碼解說：
+//
+//虛擬節點: 每個實體節點在環上有多個位置，讓各節點分到的 key 數量接近平均（預設 128 個，各節點的差距約在 ±10% 內）。
+//
+//ownerOf(...): 以 Arrays.binarySearch 找到第一個 >= key 雜湊值的位置，超過最後一個時繞回第一個，查詢成本 O(log(N * virtualNodes))。
+//
+//節點依 id 排序後才建立環，所以只要成員與 virtualNodes 相同，每個節點算出的環都完全一樣。
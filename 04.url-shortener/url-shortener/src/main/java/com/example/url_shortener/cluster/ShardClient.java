@@ -0,0 +1,163 @@
+// ShardClient 是連到單一節點的分片協定客戶端，內部維持一個小型的連線池。
+//
+// 每次 call 從池中取出一條閒置連線（沒有就新建），送出請求、讀回應後再放回池中；
+// 池滿時多出來的連線直接關閉。連線數的上限就是同時對該節點轉送的請求數。
+
+package com.example.url_shortener.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+final class ShardClient implements Closeable {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final int READ_TIMEOUT_MILLIS = 10_000;
+
+    @FunctionalInterface
+    interface Body {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    static final class Response {
+        private final byte status;
+        private final ByteBuffer body;
+
+        Response(byte status, ByteBuffer body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        byte status() {
+            return status;
+        }
+
+        ByteBuffer body() {
+            return body;
+        }
+    }
+
+    private final String address;
+    private final String host;
+    private final int port;
+    private final BlockingQueue<Connection> idle;
+    private volatile boolean closed;
+
+    ShardClient(String address, int poolSize) {
+        int colon = address.lastIndexOf(':');
+        this.address = address;
+        this.host = address.substring(0, colon);
+        this.port = Integer.parseInt(address.substring(colon + 1));
+        this.idle = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+    }
+
+    Response call(byte op, long ringVersion, Body body) {
+        Connection pooled = idle.poll();
+        if (pooled != null) {
+            try {
+                return exchange(pooled, op, ringVersion, body);
+            } catch (IOException e) {
+                // 閒置太久被對方關閉的連線：換一條新的連線重送一次
+                pooled.close();
+            }
+        }
+        Connection connection = null;
+        try {
+            connection = new Connection(host, port);
+            return exchange(connection, op, ringVersion, body);
+        } catch (IOException e) {
+            if (connection != null) {
+                connection.close();
+            }
+            throw new ShardUnavailableException("Shard " + address + " unavailable", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.close();
+        }
+    }
+
+    private Response exchange(Connection connection, byte op, long ringVersion, Body body) throws IOException {
+        Response response = connection.exchange(op, ringVersion, body);
+        if (closed || !idle.offer(connection)) {
+            connection.close();
+        }
+        return response;
+    }
+
+    private static final class Connection {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        // 先把請求寫到這裡才知道長度；每條連線重複使用
+        private final ByteArrayOutputStream request = new ByteArrayOutputStream(256);
+        private final DataOutputStream requestOut = new DataOutputStream(request);
+
+        Connection(String host, int port) throws IOException {
+            socket = new Socket();
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+                socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 8192));
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 8192));
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+
+        Response exchange(byte op, long ringVersion, Body body) throws IOException {
+            request.reset();
+            requestOut.writeByte(op);
+            requestOut.writeLong(ringVersion);
+            body.write(requestOut);
+            requestOut.flush();
+
+            out.writeInt(request.size());
+            request.writeTo(out);
+            out.flush();
+
+            int length = in.readInt();
+            if (length < 1 || length > ShardProtocol.MAX_FRAME_BYTES) {
+                throw new IOException("Invalid shard response length " + length);
+            }
+            byte status = in.readByte();
+            byte[] payload = new byte[length - 1];
+            in.readFully(payload);
+            return new Response(status, ByteBuffer.wrap(payload));
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // 關閉失敗不影響後續請求
+            }
+        }
+    }
+}
+
+//程式碼解說：
+//
+//call(...): 從池中取出的連線可能已被對方關閉（例如對方重啟），第一次失敗時換一條新連線重送；
+// 新連線仍然失敗才丟出 ShardUnavailableException。
+//
+//所有轉送的操作在對方都是冪等的（putIfAbsent、CAS 刪除），因此重送一次不會造成重複寫入。
+//
+//TCP_NODELAY: 請求都很小，關閉 Nagle 演算法避免每次轉送多等 40ms。
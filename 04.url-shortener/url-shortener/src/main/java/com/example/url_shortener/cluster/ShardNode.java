@@ -0,0 +1,74 @@
+// ShardNode 是叢集中的一個分片節點：節點編號加上分片協定監聽的位址。
+// 設定檔中的寫法為 id@host:port，例如 node-1@127.0.0.1:9101。
+
+package com.example.url_shortener.cluster;
+
+import java.util.Objects;
+
+public final class ShardNode {
+
+    private final String id;
+    private final String host;
+    private final int port;
+
+    public ShardNode(String id, String host, int port) {
+        this.id = id;
+        this.host = host;
+        this.port = port;
+    }
+
+    // 解析 id@host:port
+    static ShardNode parse(String spec) {
+        String value = spec.trim();
+        int at = value.indexOf('@');
+        int colon = value.lastIndexOf(':');
+        if (at <= 0 || colon < at) {
+            throw new IllegalArgumentException("Cluster node must be id@host:port: " + spec);
+        }
+        return new ShardNode(value.substring(0, at), value.substring(at + 1, colon),
+                Integer.parseInt(value.substring(colon + 1)));
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String address() {
+        return host + ":" + port;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ShardNode node)) {
+            return false;
+        }
+        return port == node.port && id.equals(node.id) && host.equals(node.host);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, host, port);
+    }
+
+    @Override
+    public String toString() {
+        return id + "@" + address();
+    }
+}
+
+//程式碼解說：
+//
+//id: 節點在 ring 上的身分，虛擬節點的位置只由 id 決定。同一個 id 換了位址重新加入時，負責的分片不變。
+//
+//address(): 分片協定（ShardServer）的 host:port，其他節點以它建立連線。
@@ -0,0 +1,149 @@
+// ShardProtocol 定義節點之間轉送請求用的二進位協定（TCP，同一條連線上一問一答）。
+//
+// 請求：length(int) + op(byte) + 送出者的 ring 版本(long) + body
+// 回應：length(int) + status(byte) + body
+//
+// body 中的短碼為 length(byte) + UTF-8 bytes，其他字串為 length(int) + UTF-8 bytes，
+// Entry 為 短碼 + url + createdAt 毫秒(long) + expiresAt 毫秒(long)。
+// 一次 GET_ENTRY 的請求只有十幾 bytes，回應約為 URL 長度 + 30 bytes。
+
+package com.example.url_shortener.cluster;
+
+import com.example.url_shortener.model.Entry;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+final class ShardProtocol {
+
+    // 依 key 路由的操作：送出者的 ring 比較舊時，回應 STATUS_STALE_RING 與新的 ring
+    static final byte OP_GET_ENTRY = 1;
+    static final byte OP_GET_CODE = 2;
+    static final byte OP_CLAIM_URL = 3;
+    static final byte OP_RELEASE_URL = 4;
+    static final byte OP_SET_URL = 5;
+    static final byte OP_CLAIM_ENTRY = 6;
+    static final byte OP_REMOVE_ENTRY = 7;
+    static final byte OP_SAVE = 8;
+    static final byte OP_REMOVE = 9;
+
+    // rebalance 使用的操作：直接讀寫本機資料，不檢查 ring 版本
+    static final byte OP_FETCH_ENTRY = 20;
+    static final byte OP_FETCH_CODE = 21;
+    static final byte OP_PUT_ENTRIES = 22;
+    static final byte OP_PUT_URLS = 23;
+
+    // 成員管理
+    static final byte OP_JOIN = 30;
+    static final byte OP_RING = 31;
+    static final byte OP_MIGRATED = 32;
+
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_NOT_FOUND = 1;
+    static final byte STATUS_STALE_RING = 2;
+    static final byte STATUS_ERROR = 3;
+
+    static final int MAX_FRAME_BYTES = 64 * 1024 * 1024;
+
+    private static final long NO_EXPIRY = Long.MIN_VALUE;
+
+    private ShardProtocol() {
+    }
+
+    static void writeCode(DataOutputStream out, String code) throws IOException {
+        byte[] bytes = code.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 255) {
+            throw new IllegalArgumentException("Code too long for shard protocol: " + code.length() + " chars");
+        }
+        out.writeByte(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readCode(ByteBuffer in) {
+        return readUtf8(in, in.get() & 0xFF);
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        return readUtf8(in, in.getInt());
+    }
+
+    static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        writeCode(out, entry.getCode());
+        writeString(out, entry.getUrl());
+        out.writeLong(entry.getCreatedAt().toEpochMilli());
+        out.writeLong(entry.getExpiresAt() != null ? entry.getExpiresAt().toEpochMilli() : NO_EXPIRY);
+    }
+
+    static Entry readEntry(ByteBuffer in) {
+        String code = readCode(in);
+        String url = readString(in);
+        Instant createdAt = Instant.ofEpochMilli(in.getLong());
+        long expiresAt = in.getLong();
+        return new Entry(code, url, createdAt, expiresAt != NO_EXPIRY ? Instant.ofEpochMilli(expiresAt) : null);
+    }
+
+    static void writeNode(DataOutputStream out, ShardNode node) throws IOException {
+        writeString(out, node.getId());
+        writeString(out, node.getHost());
+        out.writeInt(node.getPort());
+    }
+
+    static ShardNode readNode(ByteBuffer in) {
+        return new ShardNode(readString(in), readString(in), in.getInt());
+    }
+
+    static void writeRing(DataOutputStream out, HashRing ring) throws IOException {
+        out.writeLong(ring.version());
+        out.writeInt(ring.virtualNodes());
+        out.writeInt(ring.nodes().size());
+        for (ShardNode node : ring.nodes()) {
+            writeNode(out, node);
+        }
+    }
+
+    static HashRing readRing(ByteBuffer in) {
+        long version = in.getLong();
+        int virtualNodes = in.getInt();
+        int count = in.getInt();
+        List<ShardNode> nodes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            nodes.add(readNode(in));
+        }
+        return new HashRing(version, nodes, virtualNodes);
+    }
+
+    // 新的 ring 加上它之前的 ring（rebalance 期間向舊擁有者讀取資料用，可能為 null）
+    static void writeRingUpdate(DataOutputStream out, HashRing ring, HashRing previous) throws IOException {
+        writeRing(out, ring);
+        out.writeBoolean(previous != null);
+        if (previous != null) {
+            writeRing(out, previous);
+        }
+    }
+
+    private static String readUtf8(ByteBuffer in, int length) {
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+}
+
+//程式碼解說：
+//
+//op 分成三類：依 key 路由的一般操作、rebalance 時搬移資料的操作，以及加入節點 / 安裝 ring / 回報搬移完成的成員管理。
+//
+//ring 版本: 每個請求都帶著送出者目前的 ring 版本。接收端的版本較新時不處理請求，而是把新的 ring 回傳給送出者，
+// 送出者安裝後重新決定擁有者再送一次，因此某個節點晚一點收到新 ring 也不會把資料寫到錯的節點。
+//
+//短碼長度以 1 byte 表示：合法的短碼最多只有十幾個字元，轉址請求中過長的短碼在路由前就會被排除。
@@ -0,0 +1,167 @@
+// ShardServer 在 app.cluster.address 上接受其他節點的分片協定連線。
+//
+// 一個 acceptor 執行緒接受連線，每條連線由一個工作執行緒依序處理「讀請求 → Handler → 寫回應」。
+// 節點之間的連線數受 ShardClient 的連線池限制（每個對端最多 app.cluster.pool-size 條），
+// 所以每條連線一個執行緒的模型就足夠，也讓 Handler 可以直接呼叫會阻塞的本機操作。
+
+package com.example.url_shortener.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class ShardServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardServer.class);
+
+    @FunctionalInterface
+    interface Handler {
+        // 處理一個請求並把回應 body 寫到 response，回傳 status
+        byte handle(byte op, long ringVersion, ByteBuffer request, DataOutputStream response) throws IOException;
+    }
+
+    private final ServerSocket serverSocket;
+    private final Handler handler;
+    private final ExecutorService workers;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean running;
+    private Thread acceptor;
+
+    ShardServer(String host, int port, Handler handler) throws IOException {
+        this.handler = handler;
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.setReuseAddress(true);
+        this.serverSocket.bind(new InetSocketAddress(host, port), 128);
+        AtomicInteger sequence = new AtomicInteger();
+        this.workers = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "shard-worker-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // 實際監聽的連接埠（設定為 0 時由系統指定）
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    void start() {
+        running = true;
+        acceptor = new Thread(this::acceptLoop, "shard-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    void stop() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close shard server socket", e);
+        }
+        for (Socket socket : connections) {
+            closeQuietly(socket);
+        }
+        workers.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                workers.execute(() -> serve(socket));
+            } catch (SocketException e) {
+                return; // stop() 關閉了 server socket
+            } catch (IOException e) {
+                logger.warn("Failed to accept shard connection", e);
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 8192));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 8192));
+            ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+            DataOutputStream bodyOut = new DataOutputStream(body);
+            byte[] buffer = new byte[4096];
+
+            while (running) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return; // 對方關閉連線
+                }
+                if (length < 9 || length > ShardProtocol.MAX_FRAME_BYTES) {
+                    throw new IOException("Invalid shard request length " + length);
+                }
+                if (buffer.length < length) {
+                    buffer = new byte[Math.max(length, buffer.length * 2)];
+                }
+                in.readFully(buffer, 0, length);
+                ByteBuffer request = ByteBuffer.wrap(buffer, 0, length);
+                byte op = request.get();
+                long ringVersion = request.getLong();
+
+                body.reset();
+                byte status;
+                try {
+                    status = handler.handle(op, ringVersion, request, bodyOut);
+                } catch (RuntimeException e) {
+                    logger.warn("Shard request op={} failed", op, e);
+                    body.reset();
+                    ShardProtocol.writeString(bodyOut, String.valueOf(e.getMessage()));
+                    status = ShardProtocol.STATUS_ERROR;
+                }
+                bodyOut.flush();
+
+                out.writeInt(1 + body.size());
+                out.writeByte(status);
+                body.writeTo(out);
+                out.flush();
+            }
+        } catch (IOException e) {
+            if (running) {
+                logger.debug("Shard connection closed: {}", e.toString());
+            }
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // 正在關閉伺服器
+        }
+    }
+}
+
+//程式碼解說：
+//
+//serve(...): 每條連線重複使用同一個讀取 buffer 與回應 buffer；請求是一問一答，不需要處理 pipelining。
+//
+//Handler 丟出的 RuntimeException 轉成 STATUS_ERROR 與錯誤訊息回傳給對方，連線仍可繼續使用。
+//
+//stop(): 關閉 server socket 讓 acceptor 結束，再關閉所有連線，讓阻塞在 readInt 的工作執行緒也一併結束。
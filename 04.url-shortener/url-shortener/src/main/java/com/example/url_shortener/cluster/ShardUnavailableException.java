@@ -0,0 +1,23 @@
+// ShardUnavailableException 表示負責該短碼 / URL 的節點無法連線或回傳錯誤。
+// 對 HTTP 呼叫端而言是暫時性的錯誤，因此對應到 503 Service Unavailable。
+
+package com.example.url_shortener.cluster;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class ShardUnavailableException extends RuntimeException {
+
+    public ShardUnavailableException(String message) {
+        super(message);
+    }
+
+    public ShardUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
+
+//程式碼解說：
+//
+//@ResponseStatus: 例外一路傳到 Controller 之外時，Spring 直接以 503 回應，不需要另外寫 @ExceptionHandler。
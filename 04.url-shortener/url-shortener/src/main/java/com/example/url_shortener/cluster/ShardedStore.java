@@ -0,0 +1,133 @@
+// ShardedStore 是叢集模式下 ShortenService 使用的 UrlStore，每個操作都依 key 交給 ClusterNode 路由：
+//   - 以短碼為 key 的操作（getEntry、claim 的第二步、remove）送到短碼的擁有者；
+//   - 以 URL 為 key 的冪等索引（getCode、claim 的第一步）送到 URL 的擁有者。
+//
+// forEach / size / addListener 只涵蓋本機的分片：TTL 清理、持久化與快取都在各節點上各自處理自己的資料。
+
+package com.example.url_shortener.cluster;
+
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.store.StoreListener;
+import com.example.url_shortener.store.UrlStore;
+
+import java.util.function.Consumer;
+
+final class ShardedStore implements UrlStore {
+
+    private final ClusterNode cluster;
+
+    ShardedStore(ClusterNode cluster) {
+        this.cluster = cluster;
+    }
+
+    @Override
+    public void save(String url, String code, Entry entry) {
+        cluster.save(entry);
+        cluster.setUrl(url, code);
+    }
+
+    @Override
+    public String getCode(String url) {
+        return cluster.getCode(url);
+    }
+
+    @Override
+    public Entry getEntry(String code) {
+        return cluster.getEntry(code);
+    }
+
+    @Override
+    public void remove(String url, String code) {
+        cluster.remove(url, code);
+        cluster.releaseUrl(url, code);
+    }
+
+    @Override
+    public Entry claim(Entry candidate) {
+        String url = candidate.getUrl();
+        String code = candidate.getCode();
+        while (true) {
+            // 第一步：在 URL 的擁有者佔用 URL
+            String existingCode = cluster.claimUrl(url, code);
+            if (existingCode != null && !existingCode.equals(code)) {
+                Entry existing = cluster.getEntry(existingCode);
+                if (existing == null) {
+                    // 另一個請求剛佔用 URL、還沒寫入短碼，或短碼已被刪除而索引尚未釋放。
+                    // 不猜是哪一種：直接在短碼的擁有者以這個 URL 佔用索引指向的短碼，由擁有者的 claim 決定結果
+                    existing = cluster.claimEntry(new Entry(existingCode, url, candidate.getCreatedAt(),
+                            candidate.getExpiresAt()));
+                }
+                if (!existing.hasUrl(url)) {
+                    // 索引指向已屬於其他 URL 的短碼（舊資料），清掉後重試
+                    cluster.releaseUrl(url, existingCode);
+                    continue;
+                }
+                if (!existing.getCode().equals(existingCode)) {
+                    // 擁有者上同一個 URL 已經有另一個短碼：把索引改指向它
+                    cluster.releaseUrl(url, existingCode);
+                    cluster.claimUrl(url, existing.getCode());
+                }
+                return existing;
+            }
+
+            // 第二步：在短碼的擁有者佔用短碼
+            Entry occupant = cluster.claimEntry(candidate);
+            if (occupant == candidate) {
+                return candidate;
+            }
+            if (!occupant.hasUrl(url)) {
+                // 碰撞：放掉剛剛佔用的 URL，讓呼叫端換短碼
+                cluster.releaseUrl(url, code);
+            } else if (!occupant.getCode().equals(code)) {
+                // 擁有者上同一個 URL 已經有另一個短碼：把索引改指向它
+                cluster.releaseUrl(url, code);
+                cluster.claimUrl(url, occupant.getCode());
+            }
+            return occupant;
+        }
+    }
+
+    @Override
+    public boolean remove(Entry expected) {
+        return cluster.removeEntry(expected);
+    }
+
+    @Override
+    public void forEach(Consumer<Entry> action) {
+        cluster.forEachLocal(action);
+    }
+
+    // 與 forEach 相同，只走訪本機分片
+    @Override
+    public long scan(long cursor, int count, Consumer<Entry> action) {
+        return cluster.scanLocal(cursor, count, action);
+    }
+
+    @Override
+    public int size() {
+        return cluster.localSize();
+    }
+
+    @Override
+    public int urlIndexSize() {
+        return cluster.urlIndexSize();
+    }
+
+    @Override
+    public void addListener(StoreListener listener) {
+        cluster.addLocalListener(listener);
+    }
+}
+
+//程式碼解說：
+//
+//claim(...): 與 InMemoryStore.claim 相同的兩步驟（先佔用 URL、再佔用短碼），只是兩個 putIfAbsent 可能在不同節點上。
+// 同一個 URL 不會拿到兩個短碼，兩個 URL 也不會搶到同一個短碼。
+//
+//URL 索引指向查不到的短碼: 可能是另一個請求正在兩步驟之間，也可能是短碼已被刪除、索引還在等背景執行緒非同步釋放。
+// 兩種情況都改由這個請求以同一個 URL 佔用「索引指向的短碼」（claimEntry 在短碼擁有者上是原子的）：
+// 搶先寫入的一方成功，另一方的 claimEntry 會回傳同一個 URL 的資料，兩個請求拿到的仍是同一個短碼。
+// 不以等待時間判斷索引是否過期，慢的請求（例如網路延遲）不會因此讓同一個 URL 得到兩個短碼。
+// 這時回傳的 Entry 不是 candidate 本身，ShortenService 會把它當成既有的短碼回應。
+//
+//remove(Entry expected): 擁有者以 code、url、createdAt 比對是否仍是同一筆資料，跨節點時物件不會是同一個實例。
@@ -1,23 +1,50 @@
 // 建立 Entry 資料模型
 //這個類別將用於儲存短碼與原始網址的對應關係。
 // 它包含了設計書中提到的 code、url、createdAt 和 expiresAt。
+//
+// 為了讓大量資料佔用較少的 heap，Entry 內部以精簡的格式保存：
+//   - 時間是 epoch 秒（int，視為無號數，可表示到 2106 年），不再保存兩個 Instant 物件；
+//   - URL 拆成「scheme://host」前綴的字典編號（UrlPrefixes）與其餘部分的 UTF-8 bytes，getUrl() 時才組回字串。
 
 package com.example.url_shortener.model;
 
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 
 public class Entry {
-    private String code;
-    private String url;
-    private Instant createdAt;
-    private Instant expiresAt;
+
+    // expiresAt 為 0 表示永不過期
+    private static final int NO_EXPIRY = 0;
+    // 時間以無號 int 保存：可表示的範圍是 epoch 1 秒到 2^32-1 秒（2106-02-07T06:28:15Z）
+    private static final long MAX_EPOCH_SECOND = 0xFFFF_FFFFL;
+
+    private final String code;
+    private final char urlPrefix;
+    private final byte[] urlTail;
+    private final int createdAt;
+    private final int expiresAt;
 
     public Entry(String code, String url, Instant createdAt, Instant expiresAt) {
         this.code = code;
-        this.url = url;
-        this.createdAt = createdAt;
-        this.expiresAt = expiresAt;
+        int prefixLength = UrlPrefixes.prefixLength(url);
+        int prefix = prefixLength > 0 ? UrlPrefixes.idOf(url.substring(0, prefixLength)) : UrlPrefixes.NONE;
+        this.urlPrefix = (char) prefix;
+        this.urlTail = (prefix != UrlPrefixes.NONE ? url.substring(prefixLength) : url).getBytes(StandardCharsets.UTF_8);
+        // 建立時間取整數秒；到期時間無條件進位，精簡之後不會比原本的時間更早過期
+        this.createdAt = toEpochSecond("createdAt", createdAt.getEpochSecond());
+        this.expiresAt = expiresAt != null
+                ? toEpochSecond("expiresAt", expiresAt.getEpochSecond() + (expiresAt.getNano() > 0 ? 1 : 0))
+                : NO_EXPIRY;
+    }
+
+    // 直接以精簡格式建立（例如 LongKeyStore 從自己的陣列組回 Entry），不需要重新編碼 URL
+    public Entry(String code, int urlPrefix, byte[] urlTail, int createdAtEpochSecond, int expiresAtEpochSecond) {
+        this.code = code;
+        this.urlPrefix = (char) urlPrefix;
+        this.urlTail = urlTail;
+        this.createdAt = createdAtEpochSecond;
+        this.expiresAt = expiresAtEpochSecond;
     }
 
     public String getCode() {
@@ -25,16 +52,89 @@ public class Entry {
     }
 
     public String getUrl() {
-        return url;
+        byte[] prefix = UrlPrefixes.bytes(urlPrefix);
+        if (prefix.length == 0) {
+            return new String(urlTail, StandardCharsets.UTF_8);
+        }
+        byte[] url = new byte[prefix.length + urlTail.length];
+        System.arraycopy(prefix, 0, url, 0, prefix.length);
+        System.arraycopy(urlTail, 0, url, prefix.length, urlTail.length);
+        return new String(url, StandardCharsets.UTF_8);
+    }
+
+    // 與 getUrl().equals(url) 相同，但 URL 是 ASCII 時（絕大多數）直接逐字比較，不必組出字串
+    public boolean hasUrl(String url) {
+        byte[] prefix = UrlPrefixes.bytes(urlPrefix);
+        int length = prefix.length + urlTail.length;
+        if (url.length() != length) {
+            // UTF-8 的 bytes 數只會大於等於字元數：字串較短時才可能是含非 ASCII 字元的同一個 URL
+            return url.length() < length && getUrl().equals(url);
+        }
+        for (int i = 0; i < length; i++) {
+            byte b = i < prefix.length ? prefix[i] : urlTail[i - prefix.length];
+            if (b < 0) {
+                return getUrl().equals(url);
+            }
+            if (b != url.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public Instant getCreatedAt() {
-        return createdAt;
+        return Instant.ofEpochSecond(Integer.toUnsignedLong(createdAt));
     }
 
     public Instant getExpiresAt() {
+        return expiresAt != NO_EXPIRY ? Instant.ofEpochSecond(Integer.toUnsignedLong(expiresAt)) : null;
+    }
+
+    // 到期時間的 epoch 秒，永不過期時回傳 0
+    public long getExpiresAtEpochSecond() {
+        return Integer.toUnsignedLong(expiresAt);
+    }
+
+    // 與 getExpiresAt().isBefore(now) 相同，不建立 Instant
+    public boolean isExpired(Instant now) {
+        return isExpired(expiresAt, now);
+    }
+
+    // 精簡格式的到期判斷，EntryHolder 共用
+    static boolean isExpired(int expiresAt, Instant now) {
+        if (expiresAt == NO_EXPIRY) {
+            return false;
+        }
+        long expires = Integer.toUnsignedLong(expiresAt);
+        long seconds = now.getEpochSecond();
+        return expires < seconds || (expires == seconds && now.getNano() > 0);
+    }
+
+    // 以下四個方法提供精簡格式給需要自行保存資料的 store（例如 LongKeyStore），回傳的陣列不可修改
+    public int getUrlPrefix() {
+        return urlPrefix;
+    }
+
+    public byte[] getUrlTail() {
+        return urlTail;
+    }
+
+    public int getCreatedAtRaw() {
+        return createdAt;
+    }
+
+    public int getExpiresAtRaw() {
         return expiresAt;
     }
+
+    // 超出範圍的時間直接截成 int 會變成另一個時間（例如 2200 年變成 1970 年代而立刻過期），因此拒絕
+    private static int toEpochSecond(String field, long seconds) {
+        if (seconds < 1 || seconds > MAX_EPOCH_SECOND) {
+            throw new IllegalArgumentException(field + " must be between 1970-01-01T00:00:01Z and "
+                    + Instant.ofEpochSecond(MAX_EPOCH_SECOND) + ": " + Instant.ofEpochSecond(seconds));
+        }
+        return (int) seconds;
+    }
 }
 
 
@@ -42,15 +142,19 @@ public class Entry {
 //
 //package com.example.urlshortener.model;: 宣告這個類別屬於 com.example.urlshortener.model 套件。
 //
-//private String code;: 短網址的短碼。
+//private final String code;: 短網址的短碼。
 //
-//private String url;: 原始的長網址。
+//urlPrefix / urlTail: 原始的長網址。前綴（例如 https://www.example.com）只在 UrlPrefixes 中存一份，
+// 每筆 Entry 只有 2 bytes 的編號與其餘部分的 UTF-8 bytes，也省下 String 物件本身（24 bytes）的開銷。
 //
-//private Instant createdAt;: 建立這個短碼的時間。
-// 我們使用 Instant 來處理時間，這是一個精確、無時區的 UTC 時間點，非常適合記錄事件發生時刻。
+//getUrl(): 每次呼叫都從 bytes 組出新的字串（lazy decode），不在 Entry 中快取，才不會把省下的記憶體又用回去。
+// 熱門路徑上的比較請使用 hasUrl(url)；轉址伺服器的 302 回應放在有大小上限的 RedirectResponseCache，不掛在 Entry 上。
 //
-//private Instant expiresAt;: 短碼的到期時間。如果為 null，表示永不過期。
+//createdAt / expiresAt: 以 int 保存的 epoch 秒，取代兩個各 24 bytes 的 Instant 物件。
+// getCreatedAt() / getExpiresAt() 需要時才建立 Instant；到期判斷請使用 isExpired(now)，不配置任何物件。
+// 到期時間為 0 表示永不過期（對外仍以 null 表示）。
+// 無法以無號 int 表示的時間（1970 以前、2106 以後）在建構時以 IllegalArgumentException 拒絕，匯入時會回報為該筆的錯誤。
 //
 //建構子 (Constructor): 負責在建立 Entry 物件時初始化這些屬性。
 //
-//get 方法 (Getter): 讓我們能夠從外部安全地讀取這些屬性。
\ No newline at end of file
+//get 方法 (Getter): 讓我們能夠從外部安全地讀取這些屬性。
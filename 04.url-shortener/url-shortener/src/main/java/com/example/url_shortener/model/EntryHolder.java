@@ -0,0 +1,74 @@
+// EntryHolder 是 Entry 的可重複使用版本，給每次查詢都不想配置物件的熱門路徑使用。
+//
+// LongKeyStore 的表格中沒有 Entry 物件，getEntry(code) 只能在每次命中時建立一個新的 Entry；
+// 呼叫端改傳入自己持有的 EntryHolder（例如每個執行緒一個），store 把槽位的精簡欄位直接寫進來，查詢就完全不配置物件。
+// 需要長期保存資料（放進快取、CAS 刪除）時再呼叫 toEntry() 取得一般的 Entry。
+
+package com.example.url_shortener.model;
+
+import java.time.Instant;
+
+public final class EntryHolder {
+
+    private String code;
+    private int urlPrefix;
+    private byte[] urlTail;
+    private int createdAt;
+    private int expiresAt;
+
+    // 以精簡格式寫入（store 在讀鎖或樂觀讀驗證成功後呼叫）
+    public void set(String code, int urlPrefix, byte[] urlTail, int createdAtEpochSecond, int expiresAtEpochSecond) {
+        this.code = code;
+        this.urlPrefix = urlPrefix;
+        this.urlTail = urlTail;
+        this.createdAt = createdAtEpochSecond;
+        this.expiresAt = expiresAtEpochSecond;
+    }
+
+    public void set(Entry entry) {
+        set(entry.getCode(), entry.getUrlPrefix(), entry.getUrlTail(), entry.getCreatedAtRaw(), entry.getExpiresAtRaw());
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public int getUrlPrefix() {
+        return urlPrefix;
+    }
+
+    public byte[] getUrlTail() {
+        return urlTail;
+    }
+
+    public int getCreatedAtRaw() {
+        return createdAt;
+    }
+
+    public int getExpiresAtRaw() {
+        return expiresAt;
+    }
+
+    // 到期時間的 epoch 秒，永不過期時回傳 0
+    public long getExpiresAtEpochSecond() {
+        return Integer.toUnsignedLong(expiresAt);
+    }
+
+    // 與 Entry.isExpired(now) 相同
+    public boolean isExpired(Instant now) {
+        return Entry.isExpired(expiresAt, now);
+    }
+
+    // 目前內容的 Entry；holder 之後被覆寫也不影響回傳的 Entry
+    public Entry toEntry() {
+        return new Entry(code, urlPrefix, urlTail, createdAt, expiresAt);
+    }
+}
+
+//程式碼解說：
+//
+//可變欄位: 與 Entry 相反，EntryHolder 刻意設計成可以一再覆寫；它不是執行緒安全的，只能由持有它的執行緒使用。
+//
+//urlTail: 直接共用 store 槽位中的陣列（那個陣列寫入後不會再被修改），不複製任何 bytes。
+//
+//toEntry(): 只有在資料要離開目前這次查詢（例如交給 HotEntryCache 保存）時才需要，查詢本身仍然不配置物件。
@@ -0,0 +1,85 @@
+// UrlPrefixes 是所有 Entry 共用的「scheme://host[:port]」字典。
+//
+// 大部分短網址指向少數幾個網站，同一個前綴在每筆 Entry 中都存一份很浪費；
+// 這裡把每個前綴配發一個編號（1–65535），Entry 只保存編號與前綴之後的部分。
+// 字典滿了之後出現的新前綴不再編號（編號 0），那些 URL 就整串存在 Entry 中。
+
+package com.example.url_shortener.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+
+final class UrlPrefixes {
+
+    static final int NONE = 0;
+    static final int MAX_PREFIXES = Character.MAX_VALUE;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private static final ConcurrentHashMap<String, Character> ids = new ConcurrentHashMap<>();
+    // 依編號存放前綴的 UTF-8 bytes；只在 synchronized 中擴充，讀取時不加鎖
+    private static volatile byte[][] prefixes = new byte[64][];
+    private static int next = 1; // 由 UrlPrefixes.class 的 monitor 保護
+
+    private UrlPrefixes() {
+    }
+
+    // URL 中可以編入字典的前綴長度（"scheme://host[:port]"），沒有時回傳 0。
+    // 前綴在 host 之後第一個 '/'、'?' 或 '#' 結束；沒有路徑的 URL（例如 https://host?q=1）不會把 query 一起編入字典
+    static int prefixLength(String url) {
+        int scheme = url.indexOf("://");
+        if (scheme <= 0) {
+            return 0;
+        }
+        for (int i = scheme + 3; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                return i;
+            }
+        }
+        return url.length();
+    }
+
+    // 取得前綴的編號，第一次出現時配發；字典已滿時回傳 NONE
+    static int idOf(String prefix) {
+        Character id = ids.get(prefix);
+        if (id != null) {
+            return id;
+        }
+        synchronized (UrlPrefixes.class) {
+            id = ids.get(prefix);
+            if (id != null) {
+                return id;
+            }
+            if (next > MAX_PREFIXES) {
+                return NONE;
+            }
+            int assigned = next++;
+            byte[][] table = prefixes;
+            if (assigned >= table.length) {
+                byte[][] grown = new byte[Math.min(table.length * 2, MAX_PREFIXES + 1)][];
+                System.arraycopy(table, 0, grown, 0, table.length);
+                table = grown;
+            }
+            table[assigned] = prefix.getBytes(StandardCharsets.UTF_8);
+            prefixes = table;
+            ids.put(prefix, (char) assigned);
+            return assigned;
+        }
+    }
+
+    static byte[] bytes(int id) {
+        return id == NONE ? EMPTY : prefixes[id];
+    }
+}
+
+//程式碼解說：
+//
+//prefixLength(...): 字典的大小有上限，只應該放進真正的網站前綴；若把 query 或 fragment 也當成前綴，
+// 每個不同的參數都會佔掉一個編號，字典很快就被用完。
+//
+//idOf(...): 一般情況只是一次 ConcurrentHashMap.get；只有第一次看到新網站時才進入 synchronized 配發編號。
+//
+//prefixes: 先寫入陣列元素、再發布到 ids，之後任何拿到這個編號的執行緒（經由 ids 或經由 store 中的 Entry）都能讀到完整的前綴。
+//
+//MAX_PREFIXES: 編號以 char 存放在 Entry 中（2 bytes），字典最多 65535 個前綴，大小有上限，不會被大量不同網站撐大。
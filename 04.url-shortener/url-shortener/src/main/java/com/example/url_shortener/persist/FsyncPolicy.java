@@ -0,0 +1,13 @@
+// journal 的 fsync 策略（app.persistence.fsync）：
+//
+// ALWAYS : 每次寫入都等到資料 fsync 完成才返回；同時到達的寫入共用一次 fsync（group commit）
+// BATCH  : 寫入立即返回，背景每 app.persistence.fsync-interval-ms 毫秒寫出並 fsync 一次
+// OS     : 寫入立即返回，背景定期寫出，但不主動 fsync，交給作業系統決定何時落盤
+
+package com.example.url_shortener.persist;
+
+public enum FsyncPolicy {
+    ALWAYS,
+    BATCH,
+    OS
+}
@@ -0,0 +1,415 @@
+// JdbcWriteBehind 把 UrlStore 的每一次異動非同步寫進內嵌的 H2 資料庫（file 模式，app.write-behind.enabled=true 時啟用）。
+//
+// 寫入：StoreListener 只把異動放進有上限的佇列，POST /shorten 不必等待資料庫；
+//       單一背景執行緒每累積 batch-size 筆、或最早的一筆已等待 flush-interval-ms 時，以 JDBC batch 一次寫出。
+// 失敗：佇列已滿時依 app.write-behind.overflow 阻塞寫入端（block）或丟棄異動（drop）；
+//       資料庫寫入失敗時依 app.write-behind.on-error 持續重試同一批（retry）或記錄後略過（skip）。
+// 啟動：以 keyset 分頁（WHERE code > ? ORDER BY code）逐頁讀出資料表載入 store，不會一次把整張表讀進記憶體。
+//
+// 資料庫的內容最多落後 store「flush lag」的時間（見 GET /admin/write-behind-stats），這段時間內的異動在當機時會遺失。
+
+package com.example.url_shortener.persist;
+
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.store.StoreListener;
+import com.example.url_shortener.store.UrlStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+@Component
+@ConditionalOnProperty(name = "app.write-behind.enabled", havingValue = "true")
+public class JdbcWriteBehind implements StoreListener, SmartInitializingSingleton, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcWriteBehind.class);
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS short_urls ("
+            + "code VARCHAR(16) PRIMARY KEY, url VARCHAR NOT NULL, created_at BIGINT NOT NULL, expires_at BIGINT NOT NULL)";
+    private static final String UPSERT = "MERGE INTO short_urls (code, url, created_at, expires_at) KEY (code) VALUES (?, ?, ?, ?)";
+    private static final String DELETE = "DELETE FROM short_urls WHERE code = ?";
+    private static final String DELETE_EXPIRED = "DELETE FROM short_urls WHERE expires_at > 0 AND expires_at < ?";
+    private static final String PAGE = "SELECT code, url, created_at, expires_at FROM short_urls WHERE code > ? ORDER BY code LIMIT ?";
+
+    // 重試間隔從 100 ms 開始倍增，最多 30 秒
+    private static final long MIN_RETRY_MILLIS = 100;
+    private static final long MAX_RETRY_MILLIS = 30_000;
+
+    public enum Overflow { BLOCK, DROP }
+
+    public enum OnError { RETRY, SKIP }
+
+    // 佇列中的一筆異動；url 為 null 表示刪除
+    private static final class Op {
+        final String code;
+        final String url;
+        final long createdAt;
+        final long expiresAt;
+        final long enqueuedNanos = System.nanoTime();
+
+        Op(String code, String url, long createdAt, long expiresAt) {
+            this.code = code;
+            this.url = url;
+            this.createdAt = createdAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final UrlStore store;
+    private final String jdbcUrl;
+    private final String username;
+    private final String password;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final int pageSize;
+    private final Overflow overflow;
+    private final OnError onError;
+
+    private final BlockingQueue<Op> queue;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // 寫入執行緒正在處理（含重試中）的那一批最早一筆的入列時間，沒有時為 0
+    private volatile long inFlightSince;
+    private volatile long lastBatchLagNanos;
+
+    private final LongAdder flushedOps = new LongAdder();
+    private final LongAdder flushedBatches = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    // 只由寫入執行緒存取
+    private Connection connection;
+
+    public JdbcWriteBehind(UrlStore store,
+                           @Value("${app.write-behind.url:jdbc:h2:file:./data/shortener;DB_CLOSE_ON_EXIT=FALSE}") String jdbcUrl,
+                           @Value("${app.write-behind.username:sa}") String username,
+                           @Value("${app.write-behind.password:}") String password,
+                           @Value("${app.write-behind.queue-capacity:100000}") int queueCapacity,
+                           @Value("${app.write-behind.batch-size:500}") int batchSize,
+                           @Value("${app.write-behind.flush-interval-ms:100}") long flushIntervalMs,
+                           @Value("${app.write-behind.page-size:10000}") int pageSize,
+                           @Value("${app.write-behind.overflow:block}") String overflow,
+                           @Value("${app.write-behind.on-error:retry}") String onError) {
+        if (queueCapacity <= 0 || batchSize <= 0 || pageSize <= 0 || flushIntervalMs < 0) {
+            throw new IllegalArgumentException(
+                    "app.write-behind.queue-capacity, batch-size and page-size must be positive, flush-interval-ms must not be negative");
+        }
+        this.store = store;
+        this.jdbcUrl = jdbcUrl;
+        this.username = username;
+        this.password = password;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.pageSize = pageSize;
+        this.overflow = Overflow.valueOf(overflow.trim().toUpperCase(Locale.ROOT));
+        this.onError = OnError.valueOf(onError.trim().toUpperCase(Locale.ROOT));
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.writer = new Thread(this::writeLoop, "write-behind");
+        this.writer.setDaemon(true);
+    }
+
+    // 所有單例都建立完成後才載入，確保其他 StoreListener 也能收到載入的資料
+    @Override
+    public void afterSingletonsInstantiated() {
+        long start = System.currentTimeMillis();
+        int loaded = 0;
+        try (Connection warm = DriverManager.getConnection(jdbcUrl, username, password)) {
+            try (Statement statement = warm.createStatement()) {
+                statement.execute(CREATE_TABLE);
+            }
+            // 已過期的資料不必載入；之後 TTLSweeper 刪除的短碼會經由監聽者從資料表刪除
+            try (PreparedStatement statement = warm.prepareStatement(DELETE_EXPIRED)) {
+                statement.setLong(1, Instant.now().getEpochSecond());
+                statement.executeUpdate();
+            }
+            try (PreparedStatement statement = warm.prepareStatement(PAGE)) {
+                String after = "";
+                while (true) {
+                    statement.setString(1, after);
+                    statement.setInt(2, pageSize);
+                    int rows = 0;
+                    try (ResultSet page = statement.executeQuery()) {
+                        while (page.next()) {
+                            Entry entry = toEntry(page);
+                            store.save(entry.getUrl(), entry.getCode(), entry);
+                            after = entry.getCode();
+                            rows++;
+                        }
+                    }
+                    loaded += rows;
+                    if (rows < pageSize) {
+                        break;
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to load entries from " + jdbcUrl, e);
+        }
+        logger.info("Loaded {} entries from {} in {} ms.", loaded, jdbcUrl, System.currentTimeMillis() - start);
+
+        // 載入完成後才開始監聽，載入的資料不會被再寫一次
+        writer.start();
+        store.addListener(this);
+    }
+
+    @Override
+    public void onSave(Entry entry) {
+        enqueue(new Op(entry.getCode(), entry.getUrl(), entry.getCreatedAt().getEpochSecond(), entry.getExpiresAtEpochSecond()));
+    }
+
+    @Override
+    public void onRemove(String url, String code) {
+        enqueue(new Op(code, null, 0, 0));
+    }
+
+    // 資料表落後 store 的時間：尚未提交的異動中最早一筆已經等待的毫秒數，全部寫出時為 0
+    public long lagMillis() {
+        long since = inFlightSince;
+        if (since == 0) {
+            Op head = queue.peek();
+            if (head == null) {
+                return 0;
+            }
+            since = head.enqueuedNanos;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(Math.max(0, System.nanoTime() - since));
+    }
+
+    // 最近一次提交的那一批，最早一筆從入列到提交經過的毫秒數
+    public long lastBatchLagMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lastBatchLagNanos);
+    }
+
+    public int queuedCount() {
+        return queue.size();
+    }
+
+    public long flushedCount() {
+        return flushedOps.sum();
+    }
+
+    public long batchCount() {
+        return flushedBatches.sum();
+    }
+
+    public long coalescedCount() {
+        return coalesced.sum();
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    public long skippedCount() {
+        return skipped.sum();
+    }
+
+    public long failureCount() {
+        return failures.sum();
+    }
+
+    public int batchSize() {
+        return batchSize;
+    }
+
+    public long flushIntervalMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        // 不中斷寫入執行緒：H2 的檔案在 I/O 中被中斷會被關閉，這裡只等它把剩下的異動寫完
+        running = false;
+        writer.join(10_000);
+    }
+
+    private void enqueue(Op op) {
+        if (queue.offer(op)) {
+            return;
+        }
+        if (overflow == Overflow.DROP || !running) {
+            dropped.increment();
+            return;
+        }
+        try {
+            queue.put(op);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped.increment();
+        }
+    }
+
+    private void writeLoop() {
+        List<Op> batch = new ArrayList<>(batchSize);
+        // 停止後仍把佇列中剩下的異動寫完
+        while (running || !queue.isEmpty()) {
+            try {
+                Op first = running ? queue.poll(100, TimeUnit.MILLISECONDS) : queue.poll();
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // 湊滿一批，或等到最早一筆已經等待 flush-interval 為止
+                long deadline = first.enqueuedNanos + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    Op next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+        closeConnection();
+    }
+
+    private void flush(List<Op> batch) {
+        inFlightSince = batch.get(0).enqueuedNanos;
+        // 同一批中同一個短碼只保留最後一次異動（後寫者勝）
+        Map<String, Op> latest = new LinkedHashMap<>(batch.size() * 2);
+        for (Op op : batch) {
+            latest.put(op.code, op);
+        }
+        coalesced.add(batch.size() - latest.size());
+
+        long backoff = MIN_RETRY_MILLIS;
+        while (true) {
+            try {
+                write(latest.values());
+                flushedOps.add(latest.size());
+                flushedBatches.increment();
+                lastBatchLagNanos = System.nanoTime() - inFlightSince;
+                break;
+            } catch (SQLException e) {
+                failures.increment();
+                closeConnection();
+                if (onError == OnError.SKIP || !running) {
+                    logger.error("Write-behind batch of {} changes could not be written to {}; skipping it.",
+                            latest.size(), jdbcUrl, e);
+                    skipped.add(latest.size());
+                    break;
+                }
+                logger.warn("Write-behind batch of {} changes failed; retrying in {} ms.", latest.size(), backoff, e);
+                // 分段等待，關閉時不必等滿整個間隔（下一輪以 running=false 做最後一次嘗試）
+                for (long waited = 0; running && waited < backoff; waited += 10) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+                }
+                backoff = Math.min(MAX_RETRY_MILLIS, backoff * 2);
+            }
+        }
+        inFlightSince = 0;
+    }
+
+    private void write(Iterable<Op> ops) throws SQLException {
+        if (connection == null) {
+            connection = DriverManager.getConnection(jdbcUrl, username, password);
+            connection.setAutoCommit(false);
+        }
+        try (PreparedStatement upsert = connection.prepareStatement(UPSERT);
+             PreparedStatement delete = connection.prepareStatement(DELETE)) {
+            boolean upserts = false;
+            boolean deletes = false;
+            for (Op op : ops) {
+                if (op.url != null) {
+                    upsert.setString(1, op.code);
+                    upsert.setString(2, op.url);
+                    upsert.setLong(3, op.createdAt);
+                    upsert.setLong(4, op.expiresAt);
+                    upsert.addBatch();
+                    upserts = true;
+                } else {
+                    delete.setString(1, op.code);
+                    delete.addBatch();
+                    deletes = true;
+                }
+            }
+            // 合併後每個短碼只剩一筆，先刪後寫或先寫後刪結果都相同
+            if (deletes) {
+                delete.executeBatch();
+            }
+            if (upserts) {
+                upsert.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            try {
+                connection.rollback();
+            } catch (SQLException ignored) {
+                // 連線已經不能用，closeConnection() 之後重新建立
+            }
+            throw e;
+        }
+    }
+
+    private void closeConnection() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.debug("Closing write-behind connection failed", e);
+            }
+            connection = null;
+        }
+    }
+
+    private static Entry toEntry(ResultSet row) throws SQLException {
+        long expiresAt = row.getLong(4);
+        return new Entry(row.getString(1), row.getString(2), Instant.ofEpochSecond(row.getLong(3)),
+                expiresAt != 0 ? Instant.ofEpochSecond(expiresAt) : null);
+    }
+}
+
+//程式碼解說：
+//
+//enqueue(...): 佇列未滿時只是一次 offer，寫入端的延遲與資料庫無關。已滿表示資料庫跟不上：
+// block 讓寫入端等待（犧牲 /shorten 延遲，不遺失資料），drop 直接丟棄並計數（延遲不變，資料表可能少了這些異動）。
+//
+//writeLoop(): 批次大小與等待時間是吞吐量與落後時間的取捨：batch-size 越大、flush-interval-ms 越長，每次 commit 涵蓋的異動越多，
+// 但資料表落後 store 的時間也越長。lagMillis() 量的就是這個落後時間。
+//
+//flush(...): 以短碼合併同一批的異動，同一個短碼在一批內被寫入又刪除時只執行最後一次。
+// retry 模式下失敗的那一批會留在寫入執行緒中持續重試（之後的異動在佇列中排隊，順序不變），佇列滿了之後由 overflow 決定如何處理。
+//
+//MERGE INTO ... KEY (code): H2 的 upsert，同一個短碼重複寫入（例如重新回放）結果不變。
+//
+//afterSingletonsInstantiated(): 以 keyset 分頁載入：每一頁從上一頁最後的短碼之後開始，利用主鍵索引，
+// 不像 OFFSET 分頁越後面越慢，記憶體中也只有一頁的資料。
+//
+//DisposableBean: 應用程式關閉時先把佇列中剩下的異動寫完才關閉連線。預設的 JDBC URL 帶有 DB_CLOSE_ON_EXIT=FALSE，
+// 避免 H2 自己的 shutdown hook 在最後一批寫完之前就關閉資料庫。
@@ -0,0 +1,236 @@
+// Journal 是只允許附加（append-only）的異動紀錄檔，檔名為 journal-<generation>.log。
+//
+// 寫入端只把編碼好的紀錄放進記憶體中的 pending buffer，
+// 真正的 write / fsync 由單一背景執行緒負責，一次把累積的紀錄整批寫出（group commit）。
+// 壓縮（compaction）時呼叫 rotate() 換到下一個 generation，舊檔案就可以在 snapshot 完成後刪除。
+
+package com.example.url_shortener.persist;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+final class Journal implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(Journal.class);
+
+    private final Path directory;
+    private final FsyncPolicy policy;
+    private final long fsyncIntervalMs;
+    private final Thread flusher;
+
+    // channel 與 generation 只在持有 channelLock 時存取
+    private final Object channelLock = new Object();
+    private FileChannel channel;
+    private long generation;
+
+    // 以下欄位由 this 的 monitor 保護
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer spare = ByteBuffer.allocate(64 * 1024);
+    private long appendedSeq;
+    private long durableSeq;
+    private boolean dirtySinceRotate;
+    private boolean closed;
+    private IOException failure;
+
+    Journal(Path directory, long generation, FsyncPolicy policy, long fsyncIntervalMs) throws IOException {
+        this.directory = directory;
+        this.policy = policy;
+        this.fsyncIntervalMs = fsyncIntervalMs;
+        this.generation = generation;
+        this.channel = open(generation);
+        this.flusher = new Thread(this::runFlusher, "journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    static Path fileName(Path directory, long generation) {
+        return directory.resolve("journal-" + generation + ".log");
+    }
+
+    // 放進 pending buffer 後立即返回；ALWAYS 模式下由呼叫端在鎖外呼叫 awaitDurable 等待落盤
+    void append(byte[] record) {
+        synchronized (this) {
+            if (failure != null) {
+                throw new UncheckedIOException("Journal is not writable", failure);
+            }
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            if (pending.remaining() < record.length) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + record.length));
+                pending.flip();
+                bigger.put(pending);
+                pending = bigger;
+            }
+            pending.put(record);
+            ++appendedSeq;
+            dirtySinceRotate = true;
+            if (policy == FsyncPolicy.ALWAYS) {
+                notifyAll(); // 喚醒 flusher
+            }
+        }
+    }
+
+    // ALWAYS 模式：等到目前為止附加的紀錄（包含呼叫端自己剛附加的那筆，以及同批的其他紀錄）都 fsync 完成
+    void awaitDurable() {
+        if (policy != FsyncPolicy.ALWAYS) {
+            return;
+        }
+        synchronized (this) {
+            long seq = appendedSeq;
+            boolean interrupted = false;
+            while (durableSeq < seq && failure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (durableSeq < seq) {
+                throw new UncheckedIOException("Journal write was not persisted", failure);
+            }
+        }
+    }
+
+    // 關閉目前的檔案並換到下一個 generation，回傳剛關閉的 generation；
+    // 回傳前保證該檔案的所有紀錄都已寫出並 fsync。
+    long rotate() throws IOException {
+        synchronized (channelLock) {
+            flushPending();
+            channel.force(true);
+            channel.close();
+            long closedGeneration = generation;
+            generation++;
+            channel = open(generation);
+            synchronized (this) {
+                dirtySinceRotate = false;
+            }
+            return closedGeneration;
+        }
+    }
+
+    synchronized boolean isDirtySinceRotate() {
+        return dirtySinceRotate;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            synchronized (channelLock) {
+                flushPending();
+                channel.force(true);
+                channel.close();
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                failure = e;
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    private void runFlusher() {
+        while (true) {
+            synchronized (this) {
+                try {
+                    if (policy == FsyncPolicy.ALWAYS) {
+                        while (pending.position() == 0 && !closed) {
+                            wait();
+                        }
+                    } else if (!closed) {
+                        wait(fsyncIntervalMs);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+            }
+            try {
+                synchronized (channelLock) {
+                    flushPending();
+                }
+            } catch (IOException e) {
+                logger.error("Journal flush failed, further writes will be rejected.", e);
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    // 呼叫者必須持有 channelLock：交換 buffer 後在鎖外寫出，寫入端不會被磁碟 I/O 擋住
+    private void flushPending() throws IOException {
+        ByteBuffer batch;
+        long upTo;
+        synchronized (this) {
+            if (pending.position() == 0) {
+                return;
+            }
+            batch = pending;
+            pending = spare;
+            upTo = appendedSeq;
+        }
+        batch.flip();
+        while (batch.hasRemaining()) {
+            channel.write(batch);
+        }
+        if (policy != FsyncPolicy.OS) {
+            channel.force(false);
+        }
+        batch.clear();
+        synchronized (this) {
+            spare = batch;
+            durableSeq = upTo;
+            notifyAll();
+        }
+    }
+
+    private FileChannel open(long generation) throws IOException {
+        FileChannel fileChannel = FileChannel.open(fileName(directory, generation),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        fileChannel.write(ByteBuffer.wrap(RecordCodec.header()));
+        return fileChannel;
+    }
+}
+
+//程式碼解說：
+//
+//append(...): 只做記憶體複製。store 在 URL 的索引鎖內呼叫它，紀錄的順序因此與異動的順序相同，鎖內不能等待磁碟。
+//
+//awaitDurable(): ALWAYS 模式下在鎖外等待 durableSeq 追上呼叫當下的 appendedSeq。
+// 多個同時寫入的請求會被同一次 flushPending() 一起寫出，共享一次 fsync，這就是 group commit。
+//
+//pending / spare: 雙緩衝。flusher 寫出 batch 的同時，新的寫入已經可以進入另一個 buffer。
+//
+//rotate(): 壓縮流程用來切換檔案的入口，切換前把所有未寫出的紀錄落盤。
+//
+//failure: 一旦磁碟寫入失敗，之後的 append 直接丟出例外，避免在不知情的情況下遺失資料。
@@ -0,0 +1,50 @@
+// MappedRecordReader 負責在啟動時讀回 snapshot 與 journal。
+// 檔案透過 FileChannel.map 映射進記憶體後循序解碼，讀取速度只受限於磁碟的循序讀取，
+// 不會有逐筆的 read 系統呼叫，也不需要解析 JSON。
+
+package com.example.url_shortener.persist;
+
+import com.example.url_shortener.store.StoreListener;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+final class MappedRecordReader {
+
+    // 單次映射的視窗大小；MappedByteBuffer 最多只能映射 2GB，大檔案分段處理
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+    private MappedRecordReader() {
+    }
+
+    // 回放整個檔案，回傳有效資料的長度（遇到損毀的尾端紀錄時會小於檔案大小）
+    static long replay(Path file, StoreListener handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < RecordCodec.HEADER_SIZE) {
+                return 0;
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, RecordCodec.HEADER_SIZE);
+            if (header.getInt() != RecordCodec.MAGIC || header.getInt() != RecordCodec.VERSION) {
+                throw new IOException("Unrecognized record file: " + file);
+            }
+
+            RecordCodec codec = new RecordCodec();
+            long position = RecordCodec.HEADER_SIZE;
+            while (position < size) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(WINDOW_SIZE, size - position));
+                int consumed = codec.decode(window, handler);
+                if (consumed == 0) {
+                    // 視窗開頭的紀錄就不完整或損毀：視為當機時寫到一半的尾端
+                    break;
+                }
+                position += consumed;
+            }
+            return position;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+// PersistenceManager 把 UrlStore 的內容保存到磁碟（app.persistence.enabled=true 時啟用）。
+//
+// 寫入：監聽每一次 save / remove，編碼後附加到 journal。
+// 壓縮：定期 rotate journal，把目前的 store 內容寫成 snapshot-<generation>.dat，再刪除已被涵蓋的舊檔。
+// 啟動：以記憶體映射讀入最新的 snapshot，再依序回放比它新的 journal。
+//
+// snapshot 是在 store 持續寫入時建立的（fuzzy snapshot），但 save / remove 對同一個短碼都是「後寫者勝」，
+// 只要把 rotate 之後的 journal 全部回放一次，結果就會和當機前一致。
+// 這依賴 journal 中同一個短碼的紀錄順序與實際異動相同：store 在 URL 的索引鎖內通知 onSave / onRemove，
+// 同一個 URL 的紀錄依序寫入；短碼改由別的 URL 使用時，舊 URL 的刪除紀錄回放時不會刪掉新資料（見 UrlStore.remove）。
+
+package com.example.url_shortener.persist;
+
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.store.StoreListener;
+import com.example.url_shortener.store.UrlStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+@Component
+@ConditionalOnProperty(name = "app.persistence.enabled", havingValue = "true")
+public class PersistenceManager implements StoreListener, SmartInitializingSingleton, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(PersistenceManager.class);
+
+    private static final Pattern JOURNAL_FILE = Pattern.compile("journal-(\\d+)\\.log");
+    private static final Pattern SNAPSHOT_FILE = Pattern.compile("snapshot-(\\d+)\\.dat");
+
+    private final UrlStore store;
+    private final Path directory;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMs;
+
+    private volatile Journal journal;
+
+    public PersistenceManager(UrlStore store,
+                              @Value("${app.persistence.dir:data}") String directory,
+                              @Value("${app.persistence.fsync:batch}") String fsyncPolicy,
+                              @Value("${app.persistence.fsync-interval-ms:10}") long fsyncIntervalMs) {
+        this.store = store;
+        this.directory = Paths.get(directory);
+        this.fsyncPolicy = FsyncPolicy.valueOf(fsyncPolicy.trim().toUpperCase(Locale.ROOT));
+        this.fsyncIntervalMs = fsyncIntervalMs;
+    }
+
+    // 所有單例都建立完成後才回放，確保其他 StoreListener 也能收到回放出來的資料
+    @Override
+    public void afterSingletonsInstantiated() {
+        try {
+            Files.createDirectories(directory);
+            long lastGeneration = recover();
+            journal = new Journal(directory, lastGeneration + 1, fsyncPolicy, fsyncIntervalMs);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open persistence directory " + directory.toAbsolutePath(), e);
+        }
+        // 回放完成後才開始監聽，回放的資料不會被再寫一次 journal
+        store.addListener(this);
+    }
+
+    @Override
+    public void onSave(Entry entry) {
+        journal.append(RecordCodec.encodeSave(entry));
+    }
+
+    @Override
+    public void onRemove(String url, String code) {
+        journal.append(RecordCodec.encodeRemove(url, code));
+    }
+
+    // fsync=always 時在 store 解鎖後才等待落盤，其他 URL 的寫入不會被卡在同一把鎖上
+    @Override
+    public void afterWrite() {
+        journal.awaitDurable();
+    }
+
+    @Scheduled(fixedDelayString = "${app.persistence.snapshot-interval-seconds:300}000",
+            initialDelayString = "${app.persistence.snapshot-interval-seconds:300}000")
+    public void compact() throws IOException {
+        if (!journal.isDirtySinceRotate()) {
+            return;
+        }
+        long covered = journal.rotate();
+        long start = System.currentTimeMillis();
+
+        Path snapshot = directory.resolve("snapshot-" + covered + ".dat");
+        Path temp = directory.resolve("snapshot-" + covered + ".dat.tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 20)) {
+            out.write(RecordCodec.header());
+            store.forEach(entry -> {
+                try {
+                    out.write(RecordCodec.encodeSave(entry));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+            channel.force(true);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(temp, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        // snapshot 已涵蓋 <= covered 的 journal，較舊的檔案都可以刪除
+        for (Path file : listFiles()) {
+            long journalGeneration = generationOf(file, JOURNAL_FILE);
+            long snapshotGeneration = generationOf(file, SNAPSHOT_FILE);
+            if ((journalGeneration >= 0 && journalGeneration <= covered)
+                    || (snapshotGeneration >= 0 && snapshotGeneration < covered)) {
+                Files.deleteIfExists(file);
+            }
+        }
+        logger.info("Snapshot {} written with {} entries in {} ms.", snapshot.getFileName(), store.size(),
+                System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    // 載入最新的 snapshot 並回放較新的 journal，回傳目前磁碟上最大的 generation
+    private long recover() throws IOException {
+        long start = System.currentTimeMillis();
+        List<Path> files = listFiles();
+
+        long snapshotGeneration = -1;
+        long lastGeneration = 0;
+        for (Path file : files) {
+            snapshotGeneration = Math.max(snapshotGeneration, generationOf(file, SNAPSHOT_FILE));
+            lastGeneration = Math.max(lastGeneration, generationOf(file, JOURNAL_FILE));
+        }
+        lastGeneration = Math.max(lastGeneration, snapshotGeneration);
+
+        StoreListener replay = new StoreListener() {
+            @Override
+            public void onSave(Entry entry) {
+                store.save(entry.getUrl(), entry.getCode(), entry);
+            }
+
+            @Override
+            public void onRemove(String url, String code) {
+                store.remove(url, code);
+            }
+        };
+
+        if (snapshotGeneration >= 0) {
+            MappedRecordReader.replay(directory.resolve("snapshot-" + snapshotGeneration + ".dat"), replay);
+        }
+        long after = snapshotGeneration;
+        List<Path> journals = files.stream()
+                .filter(file -> generationOf(file, JOURNAL_FILE) > after)
+                .sorted((a, b) -> Long.compare(generationOf(a, JOURNAL_FILE), generationOf(b, JOURNAL_FILE)))
+                .toList();
+        for (Path file : journals) {
+            long valid = MappedRecordReader.replay(file, replay);
+            long size = Files.size(file);
+            if (valid < size) {
+                logger.warn("Journal {} has {} trailing bytes that could not be replayed (torn write).",
+                        file.getFileName(), size - valid);
+            }
+        }
+
+        logger.info("Recovered {} entries from {} in {} ms (snapshot generation {}, {} journal files).",
+                store.size(), directory.toAbsolutePath(), System.currentTimeMillis() - start,
+                snapshotGeneration, journals.size());
+        return lastGeneration;
+    }
+
+    private List<Path> listFiles() throws IOException {
+        try (Stream<Path> stream = Files.list(directory)) {
+            return stream.toList();
+        }
+    }
+
+    private static long generationOf(Path file, Pattern pattern) {
+        Matcher matcher = pattern.matcher(file.getFileName().toString());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+}
+
+//程式碼解說：
+//
+//SmartInitializingSingleton: afterSingletonsInstantiated() 會在所有單例建立完成、Web 伺服器啟動之前執行，
+// 適合在開始接受請求前把資料回放回 store。
+//
+//StoreListener: 回放完成後才把自己註冊成監聽者，之後每次異動都會寫進 journal。
+//
+//compact(): 先 rotate 讓新的異動寫到新檔，再把 store 寫成 snapshot（.tmp 寫完後以 ATOMIC_MOVE 改名，避免留下半份 snapshot），
+// 最後刪除已被 snapshot 涵蓋的 journal。
+//
+//DisposableBean: 應用程式關閉時把尚未寫出的紀錄落盤。
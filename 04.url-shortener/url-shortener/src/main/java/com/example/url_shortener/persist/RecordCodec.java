@@ -0,0 +1,124 @@
+// RecordCodec 定義 journal 與 snapshot 共用的二進位紀錄格式。
+//
+// 檔案開頭：magic(int) + version(int)
+// 每一筆紀錄：payloadLength(int) + crc32c(int) + payload
+// payload   ：op(byte) + code + url [+ createdAt 毫秒(long) + expiresAt 毫秒(long)]
+// 字串一律為 length(int) + UTF-8 bytes。
+//
+// CRC 讓我們在重啟時能辨識「寫到一半就當機」的尾端紀錄，遇到就停止回放。
+
+package com.example.url_shortener.persist;
+
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.store.StoreListener;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.zip.CRC32C;
+
+public final class RecordCodec {
+
+    public static final int MAGIC = 0x55534C47; // "USLG"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 8;
+
+    private static final int FRAME_OVERHEAD = 8;
+    private static final byte OP_SAVE = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final long NO_EXPIRY = Long.MIN_VALUE;
+
+    // 解碼時重複使用的暫存區，避免每個字串都配置一次 byte[]
+    private byte[] scratch = new byte[256];
+    private final CRC32C crc = new CRC32C();
+
+    public static byte[] header() {
+        return ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).array();
+    }
+
+    public static byte[] encodeSave(Entry entry) {
+        byte[] code = entry.getCode().getBytes(StandardCharsets.UTF_8);
+        byte[] url = entry.getUrl().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(1 + 4 + code.length + 4 + url.length + 16);
+        payload.put(OP_SAVE);
+        payload.putInt(code.length).put(code);
+        payload.putInt(url.length).put(url);
+        payload.putLong(entry.getCreatedAt().toEpochMilli());
+        payload.putLong(entry.getExpiresAt() != null ? entry.getExpiresAt().toEpochMilli() : NO_EXPIRY);
+        return frame(payload.array());
+    }
+
+    public static byte[] encodeRemove(String url, String code) {
+        byte[] codeBytes = code.getBytes(StandardCharsets.UTF_8);
+        byte[] urlBytes = url.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(1 + 4 + codeBytes.length + 4 + urlBytes.length);
+        payload.put(OP_REMOVE);
+        payload.putInt(codeBytes.length).put(codeBytes);
+        payload.putInt(urlBytes.length).put(urlBytes);
+        return frame(payload.array());
+    }
+
+    private static byte[] frame(byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        return ByteBuffer.allocate(FRAME_OVERHEAD + payload.length)
+                .putInt(payload.length)
+                .putInt((int) crc.getValue())
+                .put(payload)
+                .array();
+    }
+
+    // 從 buffer 目前位置開始，解碼所有完整且 CRC 正確的紀錄並交給 handler。
+    // 回傳消耗的 bytes 數；遇到不完整或損毀的紀錄就停下來。
+    public int decode(ByteBuffer buffer, StoreListener handler) {
+        int start = buffer.position();
+        while (buffer.remaining() >= FRAME_OVERHEAD) {
+            int recordStart = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                buffer.position(recordStart);
+                break;
+            }
+            ByteBuffer payload = buffer.duplicate();
+            payload.limit(buffer.position() + length);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                buffer.position(recordStart);
+                break;
+            }
+            byte op = buffer.get();
+            String code = readString(buffer);
+            String url = readString(buffer);
+            if (op == OP_SAVE) {
+                Instant createdAt = Instant.ofEpochMilli(buffer.getLong());
+                long expiresAt = buffer.getLong();
+                handler.onSave(new Entry(code, url, createdAt, expiresAt != NO_EXPIRY ? Instant.ofEpochMilli(expiresAt) : null));
+            } else if (op == OP_REMOVE) {
+                handler.onRemove(url, code);
+            } else {
+                buffer.position(recordStart);
+                break;
+            }
+        }
+        return buffer.position() - start;
+    }
+
+    private String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+}
+
+//程式碼解說：
+//
+//encodeSave / encodeRemove: 把一次 save / remove 轉成一筆獨立、可自我驗證的紀錄。
+//
+//decode(...): 直接在 ByteBuffer（通常是 MappedByteBuffer）上循序解碼，只複製字串內容，不做任何系統呼叫。
+//
+//CRC32C: JDK 內建、有硬體加速的校驗碼，用來偵測當機時寫到一半的紀錄。
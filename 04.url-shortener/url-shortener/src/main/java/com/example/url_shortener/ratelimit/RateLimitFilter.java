@@ -0,0 +1,139 @@
+// RateLimitFilter 限制每個用戶端建立短碼的速率：POST /shorten 與 POST /shorten/batch 各有一組 token bucket，
+// 超過時回應 429 E4291_RATE_LIMITED 與 Retry-After（秒），請求不會進入 ShortenService。
+//
+// 用戶端預設以連線的 IP 區分；設定 app.rate-limit.key-header（例如 X-API-Key）時，帶有這個標頭的請求改以標頭的值區分。
+// 這個標頭必須由可信任的反向代理 / API gateway 驗證後設定（並覆寫用戶端自己送來的值），
+// 否則用戶端只要每次換一個值就能拿到新的 bucket。
+
+package com.example.url_shortener.ratelimit;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+@ConditionalOnProperty(name = "app.rate-limit.enabled", havingValue = "true")
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final String keyHeader;
+    private final TokenBucketTable shortenBuckets;
+    private final TokenBucketTable batchBuckets;
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder limited = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    public RateLimitFilter(@Value("${app.rate-limit.key-header:}") String keyHeader,
+                           @Value("${app.rate-limit.shorten.rate-per-second:10}") double shortenRate,
+                           @Value("${app.rate-limit.shorten.burst:20}") int shortenBurst,
+                           @Value("${app.rate-limit.batch.rate-per-second:0.2}") double batchRate,
+                           @Value("${app.rate-limit.batch.burst:2}") int batchBurst,
+                           @Value("${app.rate-limit.max-clients:100000}") int maxClients) {
+        this.keyHeader = keyHeader.trim();
+        this.shortenBuckets = new TokenBucketTable(shortenRate, shortenBurst, maxClients);
+        this.batchBuckets = new TokenBucketTable(batchRate, batchBurst, maxClients);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"POST".equals(request.getMethod()) || bucketsFor(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long waitNanos = bucketsFor(request).tryAcquire(clientKey(request), System.nanoTime());
+        if (waitNanos == 0) {
+            allowed.increment();
+            chain.doFilter(request, response);
+            return;
+        }
+        limited.increment();
+        long retryAfter = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter));
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.getWriter().write("E4291_RATE_LIMITED");
+    }
+
+    @Scheduled(fixedDelayString = "${app.rate-limit.evict-interval-seconds:60}000",
+            initialDelayString = "${app.rate-limit.evict-interval-seconds:60}000")
+    public void evictIdle() {
+        long now = System.nanoTime();
+        evicted.add(shortenBuckets.evictIdle(now) + batchBuckets.evictIdle(now));
+    }
+
+    public long allowedCount() {
+        return allowed.sum();
+    }
+
+    public long limitedCount() {
+        return limited.sum();
+    }
+
+    public long evictedCount() {
+        return evicted.sum();
+    }
+
+    public int shortenClients() {
+        return shortenBuckets.size();
+    }
+
+    public int batchClients() {
+        return batchBuckets.size();
+    }
+
+    // 以 Spring MVC 比對路由時使用的路徑判斷（去掉 context path 與 ;參數、百分比解碼），
+    // /shorten;x=1 或 /%73horten 這類寫法會被 Controller 接受，也必須被限流
+    private TokenBucketTable bucketsFor(HttpServletRequest request) {
+        String path = UrlPathHelper.defaultInstance.getLookupPathForRequest(request);
+        if (path.equals("/shorten")) {
+            return shortenBuckets;
+        }
+        return path.equals("/shorten/batch") ? batchBuckets : null;
+    }
+
+    private String clientKey(HttpServletRequest request) {
+        if (!keyHeader.isEmpty()) {
+            String key = request.getHeader(keyHeader);
+            if (key != null && !key.isBlank()) {
+                // 加上前綴，標頭的值不會與 IP 共用同一個 bucket
+                return "key:" + key;
+            }
+        }
+        return request.getRemoteAddr();
+    }
+}
+
+//程式碼解說：
+//
+//shouldNotFilter(...): 轉址、查詢與 /admin 端點完全不經過限流。
+//
+//UrlPathHelper.getLookupPathForRequest(...): getRequestURI() 是未經處理的原始字串，與 Controller 實際比對的路徑不一定相同；
+// 改用解碼、去掉分號參數後的路徑，才不會被不同寫法的同一個端點繞過。
+//
+//batchBuckets: 一次批次請求可能包含上千筆 URL，所以批次端點有自己的 bucket 與較低的預設速率（每 5 秒一次，最多連續 2 次），
+// 不會消耗 POST /shorten 的額度。
+//
+//Retry-After: 以秒為單位無條件進位，用戶端等這麼久之後至少會有一個 token。
+//
+//keyHeader: 適合「gateway 驗證 API key 後轉送」的部署方式；直接對外時請保持空白，用戶端可以任意偽造標頭的值。
+//
+//getRemoteAddr(): 連線的來源位址。放在反向代理後面時，要由代理（或 server.forward-headers-strategy）提供真實的用戶端位址，
+// 否則所有請求會共用代理的 bucket。
+//
+//evictIdle(): 定期移除已經補滿的 bucket，表格大小只和最近活躍的用戶端數有關。
@@ -0,0 +1,138 @@
+// TokenBucketTable 為每個用戶端（IP 或 API key）保存一個 token bucket：
+//   - 每個 bucket 最多 burst 個 token，每秒補充 ratePerSecond 個；每次請求取走一個，取不到就拒絕；
+//   - 補充是「用到時才算」：記錄上次更新的時間，下次請求時依經過的時間補上，不需要任何計時器；
+//   - 表格分成 STRIPES 段，每段一個 HashMap 與一把鎖，不同用戶端的請求很少搶同一把鎖。
+//
+// 閒置到已經補滿的 bucket 與新建的 bucket 完全相同，evictIdle 把它們移除不會改變任何用戶端的額度。
+
+package com.example.url_shortener.ratelimit;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+public class TokenBucketTable {
+
+    private static final int STRIPES = 64;
+
+    private final double tokensPerNano;
+    private final double burst;
+    // 空的 bucket 補滿所需的時間：閒置超過這段時間的 bucket 可以直接移除
+    private final long fillNanos;
+    // 每一段最多保存的 bucket 數
+    private final int stripeCapacity;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public TokenBucketTable(double ratePerSecond, int burst, int maxClients) {
+        if (!(ratePerSecond > 0)) {
+            throw new IllegalArgumentException("rate-per-second must be positive");
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("burst must be at least 1");
+        }
+        if (maxClients < 1) {
+            throw new IllegalArgumentException("max-clients must be at least 1");
+        }
+        this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.fillNanos = (long) Math.ceil(burst / tokensPerNano);
+        this.stripeCapacity = Math.max(1, (maxClients + STRIPES - 1) / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    // 取走 key 的一個 token。成功時回傳 0，否則回傳還要等待多少奈秒才會有下一個 token。
+    public long tryAcquire(String key, long nowNanos) {
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            Bucket bucket = stripe.buckets.get(key);
+            if (bucket == null) {
+                if (stripe.buckets.size() >= stripeCapacity && stripe.evictIdle(nowNanos) == 0) {
+                    // 這一段已滿且沒有閒置的 bucket（大量不同的 key 同時出現）：寧可拒絕，也不讓表格無限制地長大
+                    return waitNanos(0);
+                }
+                stripe.buckets.put(key, new Bucket(burst - 1, nowNanos));
+                return 0;
+            }
+            double tokens = Math.min(burst, bucket.tokens + (nowNanos - bucket.updatedNanos) * tokensPerNano);
+            bucket.updatedNanos = nowNanos;
+            if (tokens >= 1) {
+                bucket.tokens = tokens - 1;
+                return 0;
+            }
+            bucket.tokens = tokens;
+            return waitNanos(tokens);
+        }
+    }
+
+    // 移除所有已經補滿的 bucket，回傳移除的數量
+    public int evictIdle(long nowNanos) {
+        int evicted = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                evicted += stripe.evictIdle(nowNanos);
+            }
+        }
+        return evicted;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.buckets.size();
+            }
+        }
+        return size;
+    }
+
+    private long waitNanos(double tokens) {
+        return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerNano));
+    }
+
+    private Stripe stripeFor(String key) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    private final class Stripe {
+
+        final HashMap<String, Bucket> buckets = new HashMap<>();
+
+        int evictIdle(long nowNanos) {
+            int evicted = 0;
+            for (Iterator<Bucket> it = buckets.values().iterator(); it.hasNext(); ) {
+                if (nowNanos - it.next().updatedNanos >= fillNanos) {
+                    it.remove();
+                    evicted++;
+                }
+            }
+            return evicted;
+        }
+    }
+
+    private static final class Bucket {
+
+        double tokens;
+        long updatedNanos;
+
+        Bucket(double tokens, long updatedNanos) {
+            this.tokens = tokens;
+            this.updatedNanos = updatedNanos;
+        }
+    }
+}
+
+//程式碼解說：
+//
+//tryAcquire(...): 熱路徑只有一次 String.hashCode、一次 HashMap 查詢與幾個浮點運算，全部在一把很少被搶的鎖內完成，
+// 不配置物件（第一次出現的用戶端除外）。nowNanos 由呼叫端傳入（System.nanoTime），測試可以直接控制時間。
+//
+//Bucket.tokens: 以 double 保存，補充速率不必是整數（例如每秒 0.5 個）。
+//
+//stripeCapacity: max-clients 平均分給每一段。某一段滿了會先移除該段閒置的 bucket；
+// 仍然沒有空間時新用戶端直接被拒絕，避免有人不斷更換 key 把表格撐大。
+//
+//evictIdle(...): 由 RateLimitFilter 定期呼叫；判斷條件是「距離上次請求已超過補滿所需的時間」，所以移除之後重新建立的 bucket 額度完全相同。
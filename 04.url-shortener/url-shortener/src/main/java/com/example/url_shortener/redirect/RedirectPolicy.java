@@ -0,0 +1,154 @@
+// RedirectPolicy 決定 /r/{code} 轉址回應的狀態碼與快取標頭，Spring 端點（ShortenController）與輕量轉址伺服器（RedirectServer）共用：
+//   - Cache-Control: max-age 取「剩餘 TTL」與 app.redirect.cache-max-age-seconds 中較小者，
+//     瀏覽器與 CDN 在這段時間內直接重用轉址，不再回到伺服器；
+//   - ETag / Last-Modified: 快取過期後以條件式請求重新驗證，內容沒變時只回 304 Not Modified；
+//   - 永不過期的短碼可以設定改用 301 或 308（app.redirect.non-expiring-status）。
+//
+// 短碼被 TTLSweeper 或 API 刪除後，快取最多再用 max-age 秒：上限就是「刪除後仍可能被轉址」的最長時間。
+
+package com.example.url_shortener.redirect;
+
+import com.example.url_shortener.model.Entry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+public class RedirectPolicy {
+
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+    private final long maxAgeSeconds;
+    private final int nonExpiringStatus;
+
+    private final LongAdder redirects = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+
+    public RedirectPolicy(@Value("${app.redirect.cache-max-age-seconds:60}") long maxAgeSeconds,
+                          @Value("${app.redirect.non-expiring-status:302}") int nonExpiringStatus) {
+        if (maxAgeSeconds < 0) {
+            throw new IllegalArgumentException("app.redirect.cache-max-age-seconds must not be negative");
+        }
+        if (nonExpiringStatus != 301 && nonExpiringStatus != 302 && nonExpiringStatus != 308) {
+            throw new IllegalArgumentException("app.redirect.non-expiring-status must be 301, 302 or 308");
+        }
+        this.maxAgeSeconds = maxAgeSeconds;
+        this.nonExpiringStatus = nonExpiringStatus;
+    }
+
+    public int status(Entry entry) {
+        return entry.getExpiresAt() == null ? nonExpiringStatus : 302;
+    }
+
+    // 可以快取的秒數：不超過上限，也不超過剩餘 TTL（快取不會在短碼過期後繼續轉址）
+    public long maxAge(Entry entry, long nowEpochSecond) {
+        long expires = entry.getExpiresAtEpochSecond();
+        if (expires == 0) {
+            return maxAgeSeconds;
+        }
+        return Math.max(0, Math.min(maxAgeSeconds, expires - nowEpochSecond));
+    }
+
+    // max-age 不受剩餘 TTL 影響時，回應內容不隨時間改變，可以整段快取起來重用
+    public boolean isStable(Entry entry, long nowEpochSecond) {
+        return isStable(entry.getExpiresAtEpochSecond(), nowEpochSecond);
+    }
+
+    // 同上，直接以到期時間的 epoch 秒判斷（0 表示永不過期），RedirectServer 命中快取前不必建立 Entry
+    public boolean isStable(long expiresAtEpochSecond, long nowEpochSecond) {
+        return expiresAtEpochSecond == 0 || expiresAtEpochSecond - nowEpochSecond >= maxAgeSeconds;
+    }
+
+    public String cacheControl(long maxAge) {
+        // 剩餘 TTL 不到 1 秒（或已過期）時不讓任何快取保存這個轉址
+        return maxAge > 0 ? "public, max-age=" + maxAge : "no-store";
+    }
+
+    // 短碼內容的版本：同一個短碼被刪除後以不同 URL 重新建立時，建立時間或 URL 至少有一個不同
+    public String etag(Entry entry) {
+        return "\"" + Long.toString(entry.getCreatedAt().getEpochSecond(), 36)
+                + "-" + Integer.toHexString(entry.getUrl().hashCode()) + "\"";
+    }
+
+    public String lastModified(Entry entry) {
+        return HTTP_DATE.format(entry.getCreatedAt());
+    }
+
+    // 條件式請求是否可以回 304：有 If-None-Match 時只看它（RFC 9110 的弱比較），否則比較 If-Modified-Since
+    public boolean isNotModified(Entry entry, String ifNoneMatch, String ifModifiedSince) {
+        if (ifNoneMatch != null) {
+            return etagMatches(ifNoneMatch, etag(entry));
+        }
+        if (ifModifiedSince != null) {
+            try {
+                Instant since = ZonedDateTime.parse(ifModifiedSince.trim(), HTTP_DATE).toInstant();
+                return !entry.getCreatedAt().isAfter(since);
+            } catch (DateTimeParseException e) {
+                return false; // 無法解析的日期依規範忽略
+            }
+        }
+        return false;
+    }
+
+    public void recordRedirect() {
+        redirects.increment();
+    }
+
+    public void recordNotModified() {
+        notModified.increment();
+    }
+
+    public long redirectCount() {
+        return redirects.sum();
+    }
+
+    public long notModifiedCount() {
+        return notModified.sum();
+    }
+
+    public long maxAgeSeconds() {
+        return maxAgeSeconds;
+    }
+
+    public int nonExpiringStatus() {
+        return nonExpiringStatus;
+    }
+
+    private static boolean etagMatches(String header, String etag) {
+        for (String candidate : header.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
+
+//程式碼解說：
+//
+//maxAge(...): 有到期時間的短碼，max-age 會隨剩餘 TTL 縮短，最後一段時間變成 0（no-store），快取永遠不會在過期後繼續轉址。
+// 用 no-store 而不是 no-cache：即將過期的轉址沒有保存的價值，也不會留下一份過期後還可能被拿來重新驗證的副本。
+// 上限則同時限制了「被刪除的短碼」還能被快取轉址多久：TTLSweeper 或其他刪除不會通知瀏覽器與 CDN，只能等快取過期。
+//
+//status(...): 301 / 308 只用在永不過期的短碼。瀏覽器對永久轉址的快取較積極，但仍遵守明確的 Cache-Control: max-age，
+// 所以刪除後最長的錯誤轉址時間一樣是 max-age。308 與 301 的差別是 308 保證不會把 POST 改成 GET。
+//
+//etag(...): 建立時間（秒）加上 URL 的雜湊；短碼被重新指向其他 URL 時 ETag 隨之改變，重新驗證不會誤回 304。
+//
+//isNotModified(...): 304 回應仍然會到達伺服器，但不需要傳回 Location，CDN 也會依新的 Cache-Control 延長快取。
+//
+//recordRedirect() / recordNotModified(): 到達伺服器的完整轉址與 304 次數，見 GET /admin/redirect-stats；
+// 被瀏覽器或 CDN 快取吸收的點擊不會到達伺服器，可以與開啟快取前的轉址 QPS 比較。
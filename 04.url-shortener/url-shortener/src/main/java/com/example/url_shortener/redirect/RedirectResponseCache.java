@@ -0,0 +1,90 @@
+// RedirectResponseCache 是 RedirectServer 以短碼為鍵的轉址回應快取。
+//
+// 回應不掛在 Entry 上：每筆資料多一個欄位會抵銷精簡 Entry 省下的記憶體，而且 LongKeyStore（以及叢集轉送）
+// 每次命中都是新的 Entry 或 EntryHolder，掛在上面的回應永遠不會命中。
+// 這裡改用一個固定大小的直接映射表（direct-mapped）：短碼的雜湊決定槽位，衝突時後寫入的覆蓋先前的，
+// 所以記憶體用量固定（只有熱門短碼會留在表中），也不需要任何鎖。
+// 槽位記下建立回應時的短碼內容（URL、建立與到期時間），查詢時與目前的 Entry 比對，
+// 短碼被刪除後改由其他 URL 使用、或以新的到期時間重新建立時都不會拿到舊的回應。
+
+package com.example.url_shortener.redirect;
+
+import com.example.url_shortener.model.EntryHolder;
+
+import java.util.Arrays;
+
+final class RedirectResponseCache {
+
+    private final Slot[] slots;
+    private final int mask;
+
+    // size 會進位到 2 的次方；0 表示停用
+    RedirectResponseCache(int size) {
+        if (size < 0 || size > 1 << 30) {
+            throw new IllegalArgumentException("app.redirect-server.response-cache-size must be between 0 and 2^30");
+        }
+        int capacity = Integer.highestOneBit(size);
+        if (capacity < size) {
+            capacity <<= 1;
+        }
+        this.slots = new Slot[capacity];
+        this.mask = capacity - 1;
+    }
+
+    // 回傳這筆資料先前建立的回應；沒有或已不是同一筆資料時回傳 null
+    byte[] get(EntryHolder entry) {
+        if (slots.length == 0) {
+            return null;
+        }
+        Slot slot = slots[indexFor(entry.getCode())];
+        return slot != null && slot.matches(entry) ? slot.response : null;
+    }
+
+    void put(EntryHolder entry, byte[] response) {
+        if (slots.length == 0) {
+            return;
+        }
+        slots[indexFor(entry.getCode())] = new Slot(entry, response);
+    }
+
+    private int indexFor(String code) {
+        int h = code.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    // 欄位全部是 final：其他執行緒透過陣列讀到 Slot 時一定看得到完整的內容
+    private static final class Slot {
+        final String code;
+        final int prefix;
+        final byte[] tail;
+        final int created;
+        final int expires;
+        final byte[] response;
+
+        Slot(EntryHolder entry, byte[] response) {
+            this.code = entry.getCode();
+            this.prefix = entry.getUrlPrefix();
+            this.tail = entry.getUrlTail();
+            this.created = entry.getCreatedAtRaw();
+            this.expires = entry.getExpiresAtRaw();
+            this.response = response;
+        }
+
+        boolean matches(EntryHolder entry) {
+            // 兩種儲存後端寫進 holder 的都是 store 中同一個 tail 陣列，Arrays.equals 通常在比較參考時就結束
+            return created == entry.getCreatedAtRaw() && expires == entry.getExpiresAtRaw()
+                    && prefix == entry.getUrlPrefix() && code.equals(entry.getCode())
+                    && Arrays.equals(tail, entry.getUrlTail());
+        }
+    }
+}
+
+//程式碼解說：
+//
+//direct-mapped: 每個短碼只可能在一個槽位（雜湊值 & mask），查詢就是一次陣列讀取加上內容比對；
+// 不記錄存取順序，也不需要淘汰演算法，熱門短碼被其他短碼覆蓋後下一次請求就會重新寫回。
+//
+//Slot.matches(...): 轉址回應的內容（Location、ETag、Last-Modified、狀態碼）完全由 URL 與建立、到期時間決定，
+// 這些欄位都相同時回應也一定相同，因此可以安全地重複使用。
+//
+//沒有 volatile: 槽位被覆寫時讀者可能暫時還看到舊的 Slot，但舊的 Slot 仍會經過 matches 比對，最多只是少一次命中。
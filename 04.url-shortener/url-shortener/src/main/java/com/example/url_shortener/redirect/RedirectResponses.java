@@ -0,0 +1,135 @@
+// RedirectResponses 產生 RedirectServer 直接寫到 socket 的 HTTP/1.1 回應位元組。
+//
+// 固定的錯誤回應在類別載入時就建好；轉址回應則依每個 Entry 的 URL 建立一次，
+// 之後放在 RedirectResponseCache，每次命中都只是把同一個 byte[] 寫出去（max-age 受剩餘 TTL 影響時除外，見 RedirectPolicy）。
+
+package com.example.url_shortener.redirect;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+final class RedirectResponses {
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    // 與 ShortenController 的 404 訊息相同
+    static final byte[] NOT_FOUND = build("404 Not Found", null,
+            "E4041_CODE_NOT_FOUND or E4101_CODE_EXPIRED", false);
+
+    static final byte[] BAD_REQUEST = build("400 Bad Request", null, "Bad Request", true);
+
+    static final byte[] METHOD_NOT_ALLOWED = build("405 Method Not Allowed", "Allow: GET, HEAD",
+            "Method Not Allowed", true);
+
+    static final byte[] HEADERS_TOO_LARGE = build("431 Request Header Fields Too Large", null,
+            "Request Header Fields Too Large", true);
+
+    // 叢集模式下擁有者節點無法連線（ShardUnavailableException），與 Spring 端點相同回 503
+    static final byte[] SERVICE_UNAVAILABLE = build("503 Service Unavailable", null, "Service Unavailable", true);
+
+    static final byte[] INTERNAL_ERROR = build("500 Internal Server Error", null, "Internal Server Error", true);
+
+    // HEAD 請求的版本：標頭（含 Content-Length）與上面相同，但沒有 body
+    private static final byte[] NOT_FOUND_HEAD = headOnly(NOT_FOUND);
+    private static final byte[] BAD_REQUEST_HEAD = headOnly(BAD_REQUEST);
+    private static final byte[] SERVICE_UNAVAILABLE_HEAD = headOnly(SERVICE_UNAVAILABLE);
+    private static final byte[] INTERNAL_ERROR_HEAD = headOnly(INTERNAL_ERROR);
+
+    private RedirectResponses() {
+    }
+
+    // 301 / 302 / 308 + Location 與快取標頭。
+    // URL 中的空白、控制字元與非 ASCII 字元以 UTF-8 百分比編碼，避免標頭被注入或截斷
+    static byte[] redirect(int status, String url, String cacheControl, String etag, String lastModified) {
+        byte[] raw = url.getBytes(StandardCharsets.UTF_8);
+        StringBuilder location = new StringBuilder(raw.length + 16);
+        for (byte b : raw) {
+            int c = b & 0xff;
+            if (c <= 0x20 || c >= 0x7f) {
+                location.append('%').append((char) HEX[c >>> 4]).append((char) HEX[c & 0x0f]);
+            } else {
+                location.append((char) c);
+            }
+        }
+        String head = "HTTP/1.1 " + statusLine(status) + "\r\n"
+                + "Location: " + location + "\r\n"
+                + validators(cacheControl, etag, lastModified)
+                + "Content-Length: 0\r\n"
+                + "\r\n";
+        return head.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // 條件式請求命中時的 304：不帶 Location，客戶端沿用快取中的轉址
+    static byte[] notModified(String cacheControl, String etag, String lastModified) {
+        String head = "HTTP/1.1 304 Not Modified\r\n"
+                + validators(cacheControl, etag, lastModified)
+                + "\r\n";
+        return head.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // 把要回給 GET 的回應換成 HEAD 的版本。轉址與 304 本來就沒有 body，原樣回傳
+    static byte[] forHead(byte[] response) {
+        if (response == NOT_FOUND) {
+            return NOT_FOUND_HEAD;
+        }
+        if (response == BAD_REQUEST) {
+            return BAD_REQUEST_HEAD;
+        }
+        if (response == SERVICE_UNAVAILABLE) {
+            return SERVICE_UNAVAILABLE_HEAD;
+        }
+        return response == INTERNAL_ERROR ? INTERNAL_ERROR_HEAD : response;
+    }
+
+    private static String statusLine(int status) {
+        return switch (status) {
+            case 301 -> "301 Moved Permanently";
+            case 308 -> "308 Permanent Redirect";
+            default -> "302 Found";
+        };
+    }
+
+    private static String validators(String cacheControl, String etag, String lastModified) {
+        return "Cache-Control: " + cacheControl + "\r\n"
+                + "ETag: " + etag + "\r\n"
+                + "Last-Modified: " + lastModified + "\r\n";
+    }
+
+    private static byte[] build(String status, String extraHeader, String body, boolean close) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("HTTP/1.1 ").append(status).append("\r\n");
+        if (extraHeader != null) {
+            sb.append(extraHeader).append("\r\n");
+        }
+        sb.append("Content-Type: text/plain\r\n");
+        sb.append("Content-Length: ").append(body.length()).append("\r\n");
+        if (close) {
+            sb.append("Connection: close\r\n");
+        }
+        sb.append("\r\n").append(body);
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // 截到標頭結尾的空行為止
+    private static byte[] headOnly(byte[] response) {
+        for (int i = 3; i < response.length; i++) {
+            if (response[i] == '\n' && response[i - 1] == '\r' && response[i - 2] == '\n' && response[i - 3] == '\r') {
+                return Arrays.copyOf(response, i + 1);
+            }
+        }
+        return response;
+    }
+}
+
+//程式碼解說：
+//
+//redirect(...): 只在 Entry 第一次被命中時呼叫。Content-Length: 0 讓 keep-alive 連線不需要等待 body，
+// HEAD 與 GET 也可以共用同一份位元組。
+//
+//notModified(...): 304 依規範沒有 body，也不需要 Content-Length；標頭與 200/3xx 相同，讓快取更新 max-age。
+//
+//build(...): 400 / 405 / 431 / 500 / 503 的請求可能還有未讀完的內容，因此回應後一律關閉連線（Connection: close）；
+// 404 則保留連線，讓同一個客戶端可以繼續送出下一個轉址請求。
+//
+//forHead(...): HEAD 的回應不能帶 body。404 保留連線時若把 body 寫出去，客戶端會把它當成下一個回應的開頭，
+// 所以每個固定回應都有只含標頭的版本；Content-Length 保留 GET 的長度，與 Spring 端點處理 HEAD 的方式相同。
@@ -0,0 +1,548 @@
+// RedirectServer 是只處理 GET /r/{code} 的輕量轉址伺服器（app.redirect-server.enabled=true 時啟用）。
+//
+// 轉址佔了絕大部分的流量，但經過 DispatcherServlet、@PathVariable 綁定、URI.create 與 HttpHeaders 的
+// 成本遠大於一次 Map 查詢。這裡改用 NIO 直接監聽另一個連接埠（app.redirect-server.port）：
+//   - 一個 acceptor 執行緒接受連線，輪流分配給數個 event loop（每個各有一個 Selector）；
+//   - event loop 自行解析 HTTP/1.1 請求行，查詢短碼後把快取好的轉址回應整段寫出；
+//     狀態碼與 Cache-Control / ETag / Last-Modified 由 RedirectPolicy 決定，與 Spring 端點相同；
+//   - 支援 keep-alive 與 pipelining，同一次讀取到的多個請求會合併成一次 write。
+// Spring 的 8080 連接埠照常提供 /shorten 等其他 API（也仍保留 /r/{code}）。
+
+package com.example.url_shortener.redirect;
+
+import com.example.url_shortener.cluster.ShardUnavailableException;
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.model.EntryHolder;
+import com.example.url_shortener.service.ShortenService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+@Component
+@ConditionalOnProperty(name = "app.redirect-server.enabled", havingValue = "true")
+public class RedirectServer implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedirectServer.class);
+
+    // 單一請求（請求行 + 標頭）的上限，超過時回應 431
+    private static final int MAX_REQUEST_BYTES = 8 * 1024;
+    private static final int OUTPUT_BUFFER_BYTES = 64 * 1024;
+    private static final int MAX_CODE_LENGTH = 64;
+
+    private static final byte[] REDIRECT_PREFIX = "/r/".getBytes(StandardCharsets.US_ASCII);
+
+    private final ShortenService shortenService;
+    private final RedirectPolicy policy;
+    private final int port;
+    private final int threads;
+    private final RedirectResponseCache responseCache;
+
+    private volatile boolean running;
+    private ServerSocketChannel serverChannel;
+    private EventLoop[] loops;
+    private Thread acceptor;
+
+    public RedirectServer(ShortenService shortenService, RedirectPolicy policy,
+                          @Value("${app.redirect-server.port:8081}") int port,
+                          @Value("${app.redirect-server.threads:0}") int threads,
+                          @Value("${app.redirect-server.response-cache-size:65536}") int responseCacheSize) {
+        this.shortenService = shortenService;
+        this.policy = policy;
+        this.port = port;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.responseCache = new RedirectResponseCache(responseCacheSize);
+    }
+
+    @Override
+    public synchronized void start() {
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            serverChannel.bind(new InetSocketAddress(port), 1024);
+
+            loops = new EventLoop[threads];
+            for (int i = 0; i < threads; i++) {
+                loops[i] = new EventLoop(Selector.open());
+                Thread thread = new Thread(loops[i], "redirect-loop-" + i);
+                thread.setDaemon(true);
+                loops[i].thread = thread;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to start redirect server on port " + port, e);
+        }
+
+        running = true;
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+        acceptor = new Thread(this::acceptLoop, "redirect-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.info("Redirect server listening on port {} with {} event loops", port, threads);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close redirect server socket", e);
+        }
+        for (EventLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+        try {
+            acceptor.join(1000);
+            for (EventLoop loop : loops) {
+                loop.thread.join(1000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Redirect server stopped");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // 實際監聽的連接埠（port 設為 0 時由系統分配，測試使用）
+    int localPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    private void acceptLoop() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                loops[next].register(channel);
+                next = (next + 1) % loops.length;
+            } catch (ClosedChannelException e) {
+                return; // stop() 關閉了 server socket
+            } catch (IOException e) {
+                logger.warn("Failed to accept redirect connection", e);
+            }
+        }
+    }
+
+    // 查詢短碼並回傳要寫出的回應；內容不隨時間改變的轉址回應第一次建立後放進 responseCache。
+    // 查詢結果寫進 event loop 自己的 holder，快取命中時不建立 Entry
+    private byte[] redirectFor(String code, String ifNoneMatch, String ifModifiedSince, EntryHolder holder) {
+        if (!shortenService.resolve(code, holder)) {
+            return RedirectResponses.NOT_FOUND;
+        }
+        long now = System.currentTimeMillis() / 1000;
+        boolean conditional = ifNoneMatch != null || ifModifiedSince != null;
+        boolean stable = policy.isStable(holder.getExpiresAtEpochSecond(), now);
+        if (!conditional && stable) {
+            byte[] cached = responseCache.get(holder);
+            if (cached != null) {
+                policy.recordRedirect();
+                return cached;
+            }
+        }
+        Entry entry = holder.toEntry();
+        if (conditional && policy.isNotModified(entry, ifNoneMatch, ifModifiedSince)) {
+            policy.recordNotModified();
+            return RedirectResponses.notModified(policy.cacheControl(policy.maxAge(entry, now)),
+                    policy.etag(entry), policy.lastModified(entry));
+        }
+        policy.recordRedirect();
+        // 無條件請求已經在上面查過快取
+        byte[] response = stable && conditional ? responseCache.get(holder) : null;
+        if (response == null) {
+            response = RedirectResponses.redirect(policy.status(entry), entry.getUrl(),
+                    policy.cacheControl(policy.maxAge(entry, now)), policy.etag(entry), policy.lastModified(entry));
+            if (stable) {
+                responseCache.put(holder, response);
+            }
+        }
+        return response;
+    }
+
+    private static final class Connection {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(MAX_REQUEST_BYTES);
+        ByteBuffer pending;   // 尚未寫出的回應（讀取模式），null 表示沒有
+        boolean closeAfterWrite;
+        boolean head;         // 目前的請求是 HEAD：回應不帶 body
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final class EventLoop implements Runnable {
+        final Selector selector;
+        final Queue<SocketChannel> incoming = new ConcurrentLinkedQueue<>();
+        // 同一個 event loop 的所有連線共用的輸出緩衝區
+        final ByteBuffer out = ByteBuffer.allocateDirect(OUTPUT_BUFFER_BYTES);
+        // 查詢短碼時重複使用，只有這個 event loop 的執行緒會碰它
+        final EntryHolder holder = new EntryHolder();
+        Thread thread;
+
+        EventLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        void register(SocketChannel channel) {
+            incoming.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                    SocketChannel accepted;
+                    while ((accepted = incoming.poll()) != null) {
+                        accepted.register(selector, SelectionKey.OP_READ, new Connection(accepted));
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        handle(key);
+                    }
+                } catch (IOException e) {
+                    logger.warn("Redirect event loop error", e);
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+                // 已經在關閉流程中
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            Connection connection = (Connection) key.attachment();
+            try {
+                if (key.isValid() && key.isWritable()) {
+                    onWritable(key, connection);
+                }
+                if (key.isValid() && key.isReadable()) {
+                    onReadable(key, connection);
+                }
+            } catch (IOException e) {
+                closeQuietly(key); // 客戶端中斷連線
+            } catch (RuntimeException e) {
+                // 只關閉這個連線；例外不能離開 run()，否則這個 event loop 上的所有連線都會停住
+                logger.warn("Closing redirect connection after unexpected error", e);
+                closeQuietly(key);
+            }
+        }
+
+        private void onReadable(SelectionKey key, Connection connection) throws IOException {
+            ByteBuffer in = connection.in;
+            if (connection.channel.read(in) < 0) {
+                closeQuietly(key);
+                return;
+            }
+            in.flip();
+            processRequests(connection);
+            in.compact();
+            if (!connection.closeAfterWrite && !in.hasRemaining()) {
+                // 緩衝區滿了還找不到標頭結尾
+                write(connection, RedirectResponses.HEADERS_TOO_LARGE);
+                connection.closeAfterWrite = true;
+            }
+            drain(connection);
+            afterWrite(key, connection);
+        }
+
+        private void onWritable(SelectionKey key, Connection connection) throws IOException {
+            connection.channel.write(connection.pending);
+            if (!connection.pending.hasRemaining()) {
+                connection.pending = null;
+            }
+            afterWrite(key, connection);
+        }
+
+        // 還有未寫完的回應時暫停讀取（背壓），寫完後再恢復；需要關閉的連線在寫完後關閉
+        private void afterWrite(SelectionKey key, Connection connection) {
+            if (connection.pending != null) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else if (connection.closeAfterWrite) {
+                closeQuietly(key);
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        // 解析 in 中所有完整的請求，並把回應放進輸出緩衝區
+        private void processRequests(Connection connection) {
+            ByteBuffer in = connection.in;
+            byte[] buf = in.array();
+            while (!connection.closeAfterWrite) {
+                int start = in.position();
+                int end = indexOfHeaderEnd(buf, start, in.limit());
+                if (end < 0) {
+                    return; // 請求還沒收完整
+                }
+                in.position(end + 4);
+                byte[] response;
+                try {
+                    response = respond(connection, buf, start, end);
+                } catch (RuntimeException e) {
+                    // 查詢失敗（例如擁有者節點無法連線）：回應錯誤並關閉這個連線，之前 pipelined 的回應照常寫出
+                    logger.warn("Redirect lookup failed", e);
+                    connection.closeAfterWrite = true;
+                    response = e instanceof ShardUnavailableException
+                            ? RedirectResponses.SERVICE_UNAVAILABLE : RedirectResponses.INTERNAL_ERROR;
+                }
+                write(connection, connection.head ? RedirectResponses.forHead(response) : response);
+            }
+        }
+
+        // 解析單一請求 buf[start, end)，end 指向標頭結尾的 \r\n\r\n
+        private byte[] respond(Connection connection, byte[] buf, int start, int end) {
+            int lineEnd = indexOf(buf, start, end, (byte) '\r');
+            if (lineEnd < 0) {
+                lineEnd = end;
+            }
+            int methodEnd = indexOf(buf, start, lineEnd, (byte) ' ');
+            connection.head = methodEnd >= 0 && regionEquals(buf, start, methodEnd, "HEAD");
+            int targetEnd = methodEnd < 0 ? -1 : indexOf(buf, methodEnd + 1, lineEnd, (byte) ' ');
+            if (targetEnd < 0) {
+                connection.closeAfterWrite = true;
+                return RedirectResponses.BAD_REQUEST;
+            }
+
+            boolean http10 = regionMatches(buf, targetEnd + 1, lineEnd, "HTTP/1.0");
+            boolean keepAlive = !http10;
+            boolean hasBody = false;
+            String ifNoneMatch = null;
+            String ifModifiedSince = null;
+            // 只看會影響連線處理與條件式請求的標頭
+            for (int line = lineEnd + 2; line < end; ) {
+                int next = indexOf(buf, line, end, (byte) '\r');
+                if (next < 0) {
+                    next = end;
+                }
+                if (headerNameIs(buf, line, next, "connection")) {
+                    if (containsIgnoreCase(buf, line, next, "close")) {
+                        keepAlive = false;
+                    } else if (containsIgnoreCase(buf, line, next, "keep-alive")) {
+                        keepAlive = true;
+                    }
+                } else if (headerNameIs(buf, line, next, "content-length")
+                        || headerNameIs(buf, line, next, "transfer-encoding")) {
+                    hasBody = true;
+                } else if (headerNameIs(buf, line, next, "if-none-match")) {
+                    ifNoneMatch = headerValue(buf, line + "if-none-match".length() + 1, next);
+                } else if (headerNameIs(buf, line, next, "if-modified-since")) {
+                    ifModifiedSince = headerValue(buf, line + "if-modified-since".length() + 1, next);
+                }
+                line = next + 2;
+            }
+            // 不讀取請求的 body，帶有 body 的請求回應後直接關閉連線，避免把 body 當成下一個請求
+            if (!keepAlive || hasBody) {
+                connection.closeAfterWrite = true;
+            }
+
+            if (!connection.head && !regionEquals(buf, start, methodEnd, "GET")) {
+                connection.closeAfterWrite = true;
+                return RedirectResponses.METHOD_NOT_ALLOWED;
+            }
+
+            int codeStart = methodEnd + 1 + REDIRECT_PREFIX.length;
+            if (codeStart > targetEnd || !regionMatches(buf, methodEnd + 1, targetEnd, "/r/")) {
+                return RedirectResponses.NOT_FOUND;
+            }
+            int codeEnd = indexOf(buf, codeStart, targetEnd, (byte) '?');
+            if (codeEnd < 0) {
+                codeEnd = targetEnd;
+            }
+            int length = codeEnd - codeStart;
+            if (length == 0 || length > MAX_CODE_LENGTH || indexOf(buf, codeStart, codeEnd, (byte) '/') >= 0) {
+                return RedirectResponses.NOT_FOUND;
+            }
+            return redirectFor(new String(buf, codeStart, length, StandardCharsets.ISO_8859_1),
+                    ifNoneMatch, ifModifiedSince, holder);
+        }
+
+        private void write(Connection connection, byte[] response) {
+            if (connection.pending == null && out.remaining() < response.length) {
+                drain(connection);
+            }
+            if (connection.pending != null || out.remaining() < response.length) {
+                connection.pending = append(connection.pending, response);
+                return;
+            }
+            out.put(response);
+        }
+
+        // 把共用的輸出緩衝區寫到 socket，寫不完的部分複製到該連線自己的 pending
+        private void drain(Connection connection) {
+            if (out.position() == 0) {
+                return;
+            }
+            out.flip();
+            try {
+                connection.channel.write(out);
+            } catch (IOException e) {
+                out.clear();
+                connection.closeAfterWrite = true;
+                connection.pending = null;
+                return;
+            }
+            if (out.hasRemaining()) {
+                ByteBuffer rest = ByteBuffer.allocate(out.remaining());
+                rest.put(out).flip();
+                connection.pending = connection.pending == null ? rest : append(connection.pending, rest.array());
+            }
+            out.clear();
+        }
+
+        private void closeQuietly(SelectionKey key) {
+            key.cancel();
+            try {
+                key.channel().close();
+            } catch (IOException ignored) {
+                // 連線已經中斷
+            }
+        }
+    }
+
+    private static ByteBuffer append(ByteBuffer pending, byte[] bytes) {
+        int existing = pending == null ? 0 : pending.remaining();
+        ByteBuffer merged = ByteBuffer.allocate(existing + bytes.length);
+        if (pending != null) {
+            merged.put(pending);
+        }
+        merged.put(bytes).flip();
+        return merged;
+    }
+
+    private static int indexOfHeaderEnd(byte[] buf, int from, int to) {
+        for (int i = from; i + 3 < to; i++) {
+            if (buf[i] == '\r' && buf[i + 1] == '\n' && buf[i + 2] == '\r' && buf[i + 3] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] buf, int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean regionEquals(byte[] buf, int from, int to, String ascii) {
+        return to - from == ascii.length() && regionMatches(buf, from, to, ascii);
+    }
+
+    private static boolean regionMatches(byte[] buf, int from, int to, String ascii) {
+        if (to - from < ascii.length()) {
+            return false;
+        }
+        for (int i = 0; i < ascii.length(); i++) {
+            if (buf[from + i] != ascii.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 標頭名稱（冒號之前）是否等於 lowerName，不分大小寫
+    private static boolean headerNameIs(byte[] buf, int from, int to, String lowerName) {
+        int n = lowerName.length();
+        if (to - from <= n || buf[from + n] != ':') {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            if (Character.toLowerCase((char) buf[from + i]) != lowerName.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 冒號之後的標頭值，去掉前後空白
+    private static String headerValue(byte[] buf, int from, int to) {
+        while (from < to && (buf[from] == ' ' || buf[from] == '\t')) {
+            from++;
+        }
+        while (to > from && (buf[to - 1] == ' ' || buf[to - 1] == '\t')) {
+            to--;
+        }
+        return new String(buf, from, to - from, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean containsIgnoreCase(byte[] buf, int from, int to, String lower) {
+        int n = lower.length();
+        outer:
+        for (int i = from; i + n <= to; i++) {
+            for (int j = 0; j < n; j++) {
+                if (Character.toLowerCase((char) buf[i + j]) != lower.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}
+
+//程式碼解說：
+//
+//SmartLifecycle: 與 Spring 內嵌的 Tomcat 一樣在 context 啟動完成時開始監聽、關閉時停止，
+// 所有 bean（包含持久化的資料還原）都已就緒後才會接受轉址請求。
+//
+//acceptLoop(): 以阻塞模式 accept，再輪流交給各個 EventLoop；EventLoop 在自己的執行緒上把連線註冊到 Selector。
+//
+//EventLoop: 每個執行緒一個 Selector，連線固定屬於同一個執行緒，因此 Connection 不需要任何同步。
+//
+//processRequests(...): 同一次讀取可能包含多個 pipelined 請求，全部解析完再一次寫出，減少 system call。
+//
+//RuntimeException: resolve 可能丟出例外（例如叢集模式的 ShardUnavailableException）。processRequests 以 503 / 500 回應並關閉該連線，
+// handle 再攔下其他意外的例外，只關閉出錯的連線，event loop 執行緒本身不會因此結束。
+//
+//respond(...): 直接在 byte[] 上解析請求行，只有短碼本身會建立一個 String 用來查詢 store。
+// 查詢沿用 ShortenService.resolve，過期判斷與 Spring 端點完全一致。
+// HEAD 請求在寫出前經過 RedirectResponses.forHead 換成不帶 body 的版本，keep-alive 連線上的下一個回應不會錯位。
+//
+//redirectFor(...): 轉址回應在短碼第一次被命中時建立，放進以短碼為鍵、大小固定的 RedirectResponseCache
+// （app.redirect-server.response-cache-size），之後的命中從那裡取回同一份回應，不在每筆 Entry 上多佔一個欄位。
+// 查詢經過 ShortenService.resolve(code, holder)：短碼寫進 event loop 的 EntryHolder，快取命中時不建立 Entry，
+// store 是 LongKeyStore 時連查詢本身也不配置物件。
+// 剩餘 TTL 已小於 max-age 上限的短碼，max-age 每秒都不同，這時每次重新建立、不寫回快取。
+// 帶有 If-None-Match / If-Modified-Since 且內容沒變的請求回 304，只有這類請求才會為標頭值建立字串。
+//
+//pending: 客戶端讀得比較慢、socket 緩衝區滿了時，未寫出的部分暫存在連線上並改為等待 OP_WRITE，
+// 在寫完之前不再讀取新的請求，記憶體用量因此有上限。
@@ -0,0 +1,58 @@
+// FollowerWriteFilter 讓 follower 只提供讀取：POST /shorten、POST /shorten/batch 與 POST /admin/import 不在本機處理。
+//
+// 設定了 app.replication.leader-url 時回應 307，讓用戶端以相同的 method 與 body 改送到 leader；
+// 沒有設定時回應 503 E5031_READ_ONLY_REPLICA。
+
+package com.example.url_shortener.replication;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+@Component
+@ConditionalOnProperty(name = "app.replication.role", havingValue = "follower")
+public class FollowerWriteFilter extends OncePerRequestFilter {
+
+    private final String leaderUrl;
+
+    public FollowerWriteFilter(@Value("${app.replication.leader-url:}") String leaderUrl) {
+        String trimmed = leaderUrl.trim();
+        this.leaderUrl = trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI();
+        if (!"POST".equals(request.getMethod())
+                || !(path.equals("/shorten") || path.startsWith("/shorten/") || path.equals("/admin/import"))) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (!leaderUrl.isEmpty()) {
+            String query = request.getQueryString();
+            response.setStatus(HttpStatus.TEMPORARY_REDIRECT.value());
+            response.setHeader(HttpHeaders.LOCATION, leaderUrl + path + (query != null ? "?" + query : ""));
+            return;
+        }
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.getWriter().write("E5031_READ_ONLY_REPLICA");
+    }
+}
+
+//程式碼解說：
+//
+//307 Temporary Redirect: 與 302 不同，用戶端必須以原本的 method 與 body 重送，所以 POST 的 JSON 會原封不動送到 leader。
+//
+//只攔截寫入的端點；/r/{code}、/stats 與 /admin 等讀取請求（包含 /admin/export）照常由 follower 本機的資料回應。
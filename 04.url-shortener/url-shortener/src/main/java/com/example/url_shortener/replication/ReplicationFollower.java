@@ -0,0 +1,291 @@
+// ReplicationFollower 在 app.replication.role=follower 時啟用：連到 app.replication.leader，
+// 把收到的 snapshot 與 log 紀錄套用到本機的 store，/r/{code} 直接由本機資料回應。
+//
+// 已套用的 offset 與 leader 的 epoch 保留在記憶體中：連線中斷後重新連線時從下一筆接續；
+// 程序重新啟動後沒有 offset，leader 會先送一份 snapshot，再從 snapshot 涵蓋的 offset 接續。
+
+package com.example.url_shortener.replication;
+
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.persist.RecordCodec;
+import com.example.url_shortener.store.StoreListener;
+import com.example.url_shortener.store.UrlStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+@ConditionalOnProperty(name = "app.replication.role", havingValue = "follower")
+public class ReplicationFollower implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicationFollower.class);
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5_000;
+
+    private final UrlStore store;
+    private final String host;
+    private final int port;
+    private final long retryMillis;
+    private final long readTimeoutMillis;
+    private final RecordCodec codec = new RecordCodec();
+
+    // 以下由 follower 執行緒寫入，stats() 從其他執行緒讀取
+    private volatile long epoch;
+    private volatile long appliedOffset;
+    private volatile long appliedLeaderMillis;
+    private volatile long leaderOffset;
+    private volatile long leaderMillis;
+    private volatile long lastContactMillis;
+    private volatile boolean connected;
+    private final LongAdder recordsApplied = new LongAdder();
+    private final LongAdder snapshotsLoaded = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+
+    // 正在接收 snapshot 時不為 null：記下 snapshot 中出現過的短碼
+    private Set<String> snapshotCodes;
+
+    private final StoreListener apply = new StoreListener() {
+        @Override
+        public void onSave(Entry entry) {
+            store.save(entry.getUrl(), entry.getCode(), entry);
+            if (snapshotCodes != null) {
+                snapshotCodes.add(entry.getCode());
+            }
+        }
+
+        @Override
+        public void onRemove(String url, String code) {
+            store.remove(url, code);
+        }
+    };
+
+    private volatile boolean running;
+    private volatile Socket socket;
+    private Thread thread;
+
+    public ReplicationFollower(UrlStore store,
+                               @Value("${app.replication.leader:127.0.0.1:9201}") String leader,
+                               @Value("${app.replication.retry-ms:1000}") long retryMillis,
+                               @Value("${app.replication.heartbeat-ms:200}") long heartbeatMillis) {
+        int colon = leader.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("app.replication.leader must be host:port: " + leader);
+        }
+        this.store = store;
+        this.host = leader.substring(0, colon);
+        this.port = Integer.parseInt(leader.substring(colon + 1));
+        this.retryMillis = retryMillis;
+        // leader 閒置時每個 heartbeat-ms 送一次 HEARTBEAT，連續多次沒收到就視為連線已失效
+        this.readTimeoutMillis = Math.max(heartbeatMillis * 10, 2_000);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        thread = new Thread(this::run, "replication-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+                // 正在關閉
+            }
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    public long appliedOffset() {
+        return appliedOffset;
+    }
+
+    // 落後 leader 的紀錄筆數
+    public long lagRecords() {
+        return Math.max(0, leaderOffset - appliedOffset);
+    }
+
+    // 落後 leader 的時間：leader 最近一次回報的時間與最後套用的紀錄寫入時間的差（都是 leader 的時鐘）
+    public long lagMillis() {
+        return lagRecords() == 0 ? 0 : Math.max(0, leaderMillis - appliedLeaderMillis);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("role", "follower");
+        stats.put("leader", host + ":" + port);
+        stats.put("connected", connected);
+        stats.put("epoch", Long.toHexString(epoch));
+        stats.put("appliedOffset", appliedOffset);
+        stats.put("leaderOffset", leaderOffset);
+        stats.put("lagRecords", lagRecords());
+        stats.put("lagMillis", lagMillis());
+        stats.put("millisSinceLastContact", lastContactMillis == 0 ? -1 : System.currentTimeMillis() - lastContactMillis);
+        stats.put("recordsApplied", recordsApplied.sum());
+        stats.put("snapshotsLoaded", snapshotsLoaded.sum());
+        stats.put("reconnects", reconnects.sum());
+        return stats;
+    }
+
+    private void run() {
+        while (running) {
+            try (Socket current = new Socket()) {
+                socket = current;
+                current.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+                current.setTcpNoDelay(true);
+                current.setSoTimeout((int) readTimeoutMillis);
+                stream(current);
+            } catch (IOException e) {
+                if (running) {
+                    logger.warn("Replication stream from {}:{} interrupted: {}", host, port, e.toString());
+                }
+            } finally {
+                connected = false;
+                snapshotCodes = null;
+            }
+            if (!running) {
+                return;
+            }
+            reconnects.increment();
+            try {
+                Thread.sleep(retryMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void stream(Socket current) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(current.getOutputStream(), 64));
+        out.writeInt(ReplicationStream.MAGIC);
+        out.writeLong(epoch);
+        out.writeLong(appliedOffset);
+        out.flush();
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(current.getInputStream(), 64 * 1024));
+        byte[] buffer = new byte[4096];
+        while (running) {
+            byte type = in.readByte();
+            long offset = in.readLong();
+            long millis = in.readLong();
+            int length = in.readInt();
+            if (length < 0 || length > ReplicationStream.MAX_PAYLOAD_BYTES) {
+                throw new IOException("Invalid replication frame length " + length);
+            }
+            if (buffer.length < length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            in.readFully(buffer, 0, length);
+            lastContactMillis = System.currentTimeMillis();
+
+            switch (type) {
+                case ReplicationStream.HELLO -> {
+                    epoch = ByteBuffer.wrap(buffer, 0, length).getLong();
+                    leaderOffset = offset;
+                    leaderMillis = millis;
+                    connected = true;
+                    logger.info("Connected to replication leader {}:{} (epoch {}, leader offset {}, applied offset {}).",
+                            host, port, Long.toHexString(epoch), offset, appliedOffset);
+                }
+                case ReplicationStream.SNAPSHOT_BEGIN -> snapshotCodes = new HashSet<>();
+                case ReplicationStream.SNAPSHOT_RECORD -> {
+                    if (snapshotCodes == null) {
+                        throw new IOException("Snapshot record outside of a snapshot");
+                    }
+                    decode(buffer, length);
+                }
+                case ReplicationStream.SNAPSHOT_END -> finishSnapshot(offset, millis);
+                case ReplicationStream.RECORD -> {
+                    if (offset != appliedOffset + 1) {
+                        throw new IOException("Replication gap: expected offset " + (appliedOffset + 1) + " but got " + offset);
+                    }
+                    decode(buffer, length);
+                    appliedOffset = offset;
+                    appliedLeaderMillis = millis;
+                    leaderOffset = Math.max(leaderOffset, offset);
+                    recordsApplied.increment();
+                }
+                case ReplicationStream.HEARTBEAT -> {
+                    leaderOffset = offset;
+                    leaderMillis = millis;
+                    if (appliedOffset >= offset) {
+                        appliedLeaderMillis = millis;
+                    }
+                }
+                default -> throw new IOException("Unknown replication frame type " + type);
+            }
+        }
+    }
+
+    private void decode(byte[] buffer, int length) throws IOException {
+        int consumed = codec.decode(ByteBuffer.wrap(buffer, 0, length), apply);
+        if (consumed != length) {
+            throw new IOException("Corrupt replication record (" + consumed + " of " + length + " bytes decoded)");
+        }
+    }
+
+    // snapshot 中沒有出現的本機資料代表在 leader 上已經不存在（例如 follower 離線期間被刪除），一併刪除
+    private void finishSnapshot(long offset, long millis) {
+        Set<String> codes = snapshotCodes;
+        snapshotCodes = null;
+        if (codes == null) {
+            return;
+        }
+        List<Entry> stale = new ArrayList<>();
+        store.forEach(entry -> {
+            if (!codes.contains(entry.getCode())) {
+                stale.add(entry);
+            }
+        });
+        for (Entry entry : stale) {
+            store.remove(entry);
+        }
+        appliedOffset = offset;
+        appliedLeaderMillis = millis;
+        snapshotsLoaded.increment();
+        logger.info("Loaded replication snapshot at offset {} ({} entries, {} stale entries removed).",
+                offset, codes.size(), stale.size());
+    }
+}
+
+//程式碼解說：
+//
+//apply: 與 PersistenceManager 回放 journal 時相同，把解碼出的 save / remove 直接套用到 store；
+// store 上的其他 StoreListener（快取、Bloom filter、TTL 索引、persistence）也會照常收到通知。
+//
+//RECORD 的 offset 必須剛好是已套用的 offset + 1，否則視為串流錯誤並重新連線，由 leader 決定接續或重送 snapshot。
+//
+//lagRecords / lagMillis: 由 HEARTBEAT 帶來的 leader 位置計算；時間差完全以 leader 的時鐘計算，不受兩台機器時鐘偏差影響。
+//
+//setSoTimeout: leader 閒置時仍會定期送 HEARTBEAT，長時間收不到任何 frame 就代表連線已經失效，重新連線。
@@ -0,0 +1,257 @@
+// ReplicationLeader 在 app.replication.role=leader 時啟用：本機 store 的每一次異動都以 RecordCodec 編碼後
+// 附加到 ReplicationLog，再由每個 follower 各自的傳送執行緒依 offset 順序串流出去。
+//
+// follower 連線時帶著上次的 epoch 與已套用的 offset：
+//   - epoch 相同且 offset 之後的紀錄都還在 log 中：直接從下一筆接續；
+//   - 否則（follower 重新啟動、leader 重新啟動、落後太多）：先送一份 snapshot，再從 snapshot 涵蓋的 offset 接續。
+
+package com.example.url_shortener.replication;
+
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.persist.RecordCodec;
+import com.example.url_shortener.store.StoreListener;
+import com.example.url_shortener.store.UrlStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+@ConditionalOnProperty(name = "app.replication.role", havingValue = "leader")
+public class ReplicationLeader implements StoreListener, SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicationLeader.class);
+
+    private static final int BATCH = 256;
+
+    private final UrlStore store;
+    private final String host;
+    private final int port;
+    private final long heartbeatMillis;
+    private final ReplicationLog log;
+    private final long epoch;
+
+    private final Set<Socket> followers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger followerSequence = new AtomicInteger();
+    private final LongAdder snapshotsSent = new LongAdder();
+    private final LongAdder recordsSent = new LongAdder();
+
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+
+    public ReplicationLeader(UrlStore store,
+                             @Value("${app.replication.address:127.0.0.1:9201}") String address,
+                             @Value("${app.replication.log-capacity:100000}") int logCapacity,
+                             @Value("${app.replication.heartbeat-ms:200}") long heartbeatMillis) {
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("app.replication.address must be host:port: " + address);
+        }
+        this.store = store;
+        this.host = address.substring(0, colon);
+        this.port = Integer.parseInt(address.substring(colon + 1));
+        this.heartbeatMillis = heartbeatMillis;
+        this.log = new ReplicationLog(logCapacity);
+        long random = new SecureRandom().nextLong();
+        this.epoch = random != 0 ? random : 1;
+        store.addListener(this);
+    }
+
+    @Override
+    public void onSave(Entry entry) {
+        log.append(RecordCodec.encodeSave(entry));
+    }
+
+    @Override
+    public void onRemove(String url, String code) {
+        log.append(RecordCodec.encodeRemove(url, code));
+    }
+
+    @Override
+    public void start() {
+        try {
+            serverSocket = new ServerSocket();
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(new InetSocketAddress(host, port), 16);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to start replication listener on " + host + ":" + port, e);
+        }
+        running = true;
+        Thread acceptor = new Thread(this::acceptLoop, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.info("Replication leader listening on {}:{} (epoch {}).", host, port(), Long.toHexString(epoch));
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to close replication listener", e);
+        }
+        for (Socket socket : followers) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // 正在關閉
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // 實際監聽的連接埠（設定為 0 時由系統指定）
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("role", "leader");
+        stats.put("epoch", Long.toHexString(epoch));
+        stats.put("endOffset", log.endOffset());
+        stats.put("firstRetainedOffset", log.firstOffset());
+        stats.put("followers", followers.size());
+        stats.put("recordsSent", recordsSent.sum());
+        stats.put("snapshotsSent", snapshotsSent.sum());
+        return stats;
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                followers.add(socket);
+                Thread sender = new Thread(() -> serve(socket),
+                        "replication-sender-" + followerSequence.incrementAndGet());
+                sender.setDaemon(true);
+                sender.start();
+            } catch (SocketException e) {
+                return; // stop() 關閉了 server socket
+            } catch (IOException e) {
+                logger.warn("Failed to accept replication connection", e);
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+            if (in.readInt() != ReplicationStream.MAGIC) {
+                throw new IOException("Not a replication follower: " + socket.getRemoteSocketAddress());
+            }
+            long followerEpoch = in.readLong();
+            long followerOffset = in.readLong();
+
+            ReplicationStream.write(out, ReplicationStream.HELLO, log.endOffset(), System.currentTimeMillis(),
+                    ByteBuffer.allocate(Long.BYTES).putLong(epoch).array());
+            long next;
+            if (followerEpoch == epoch && followerOffset >= log.firstOffset() - 1 && followerOffset <= log.endOffset()) {
+                next = followerOffset + 1;
+                logger.info("Follower {} resumed at offset {}.", socket.getRemoteSocketAddress(), next);
+            } else {
+                next = sendSnapshot(out, socket) + 1;
+            }
+
+            ReplicationLog.Batch batch = new ReplicationLog.Batch(BATCH);
+            while (running) {
+                int count = log.read(next, batch, heartbeatMillis);
+                if (count < 0) {
+                    logger.warn("Follower {} fell behind the retained log (offset {} < {}); sending a new snapshot. "
+                                    + "Consider a larger app.replication.log-capacity.",
+                            socket.getRemoteSocketAddress(), next, log.firstOffset());
+                    next = sendSnapshot(out, socket) + 1;
+                    continue;
+                }
+                for (int i = 0; i < count; i++) {
+                    ReplicationStream.write(out, ReplicationStream.RECORD,
+                            batch.offsets[i], batch.timestamps[i], batch.records[i]);
+                    batch.records[i] = null;
+                }
+                next += count;
+                recordsSent.add(count);
+                // 每批之後（或閒置時）附上 leader 目前的位置，follower 用來計算延遲
+                ReplicationStream.write(out, ReplicationStream.HEARTBEAT, log.endOffset(), System.currentTimeMillis());
+                out.flush();
+            }
+        } catch (IOException e) {
+            if (running) {
+                logger.info("Follower connection {} closed: {}", socket.getRemoteSocketAddress(), e.toString());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            followers.remove(socket);
+        }
+    }
+
+    // 先記下目前的 offset 再走訪 store：snapshot 至少包含這個 offset 之前的所有異動，
+    // 走訪期間的異動之後會再以 log 紀錄送一次，重複套用 save / remove 的結果相同
+    private long sendSnapshot(DataOutputStream out, Socket socket) throws IOException {
+        long started = System.currentTimeMillis();
+        long covered = log.endOffset();
+        ReplicationStream.write(out, ReplicationStream.SNAPSHOT_BEGIN, covered, started);
+        int[] count = {0};
+        try {
+            store.forEach(entry -> {
+                try {
+                    ReplicationStream.write(out, ReplicationStream.SNAPSHOT_RECORD, covered, started,
+                            RecordCodec.encodeSave(entry));
+                    count[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        ReplicationStream.write(out, ReplicationStream.SNAPSHOT_END, covered, started);
+        out.flush();
+        snapshotsSent.increment();
+        logger.info("Sent snapshot of {} entries at offset {} to follower {} in {} ms.",
+                count[0], covered, socket.getRemoteSocketAddress(), System.currentTimeMillis() - started);
+        return covered;
+    }
+}
+
+//程式碼解說：
+//
+//onSave / onRemove: store 每次異動後由 StoreListener 呼叫，只做編碼與放進 log，不等待任何 follower（非同步複寫）。
+// store 在 URL 的索引鎖內呼叫它們，同一個 URL 的紀錄在 log 中的 offset 順序與 leader 上實際異動的順序相同。
+//
+//serve(...): 每個 follower 一條連線、一個傳送執行緒；follower 跟不上時只會讓它自己的執行緒落後，不影響寫入路徑。
+//
+//sendSnapshot(...): snapshot 不停止寫入；follower 收到 SNAPSHOT_END 後，把已套用的 offset 設為 snapshot 的 offset，
+// 接著的 RECORD 從 offset + 1 開始，因此「snapshot + log offset」就能讓重新啟動的 follower 追上 leader。
+//
+//epoch: 每次啟動隨機產生；follower 帶來的 epoch 不同時，它手上的 offset 對應的是上一次啟動的 log，必須重新送 snapshot。
@@ -0,0 +1,84 @@
+// ReplicationLog 是 leader 上最近 N 筆 store 異動的環狀紀錄，每筆都有一個遞增的 offset（從 1 開始）。
+//
+// 紀錄內容就是 RecordCodec 編碼後的 save / remove（與 journal 相同的格式），follower 收到後直接解碼套用。
+// 只保留最近 app.replication.log-capacity 筆；follower 要的 offset 已被覆蓋時，改送一次 snapshot。
+
+package com.example.url_shortener.replication;
+
+final class ReplicationLog {
+
+    // 一次讀出的多筆紀錄；每個 follower 的傳送執行緒各自持有一個並重複使用
+    static final class Batch {
+        final long[] offsets;
+        final long[] timestamps;
+        final byte[][] records;
+        int size;
+
+        Batch(int capacity) {
+            offsets = new long[capacity];
+            timestamps = new long[capacity];
+            records = new byte[capacity][];
+        }
+    }
+
+    private final int capacity;
+    private final byte[][] records;
+    private final long[] timestamps;
+    private long endOffset; // 最後一筆的 offset，0 表示還沒有任何紀錄
+
+    ReplicationLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("app.replication.log-capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.records = new byte[capacity][];
+        this.timestamps = new long[capacity];
+    }
+
+    synchronized long append(byte[] record) {
+        long offset = ++endOffset;
+        int slot = (int) (offset % capacity);
+        records[slot] = record;
+        timestamps[slot] = System.currentTimeMillis();
+        notifyAll();
+        return offset;
+    }
+
+    synchronized long endOffset() {
+        return endOffset;
+    }
+
+    // 仍保留在記憶體中的第一筆 offset
+    synchronized long firstOffset() {
+        return Math.max(1, endOffset - capacity + 1);
+    }
+
+    // 讀取從 from 開始的紀錄到 batch；沒有新紀錄時最多等待 waitMillis。
+    // 回傳讀到的筆數；from 已經被覆蓋時回傳 -1
+    synchronized int read(long from, Batch batch, long waitMillis) throws InterruptedException {
+        if (from > endOffset && waitMillis > 0) {
+            wait(waitMillis);
+        }
+        if (from < firstOffset()) {
+            return -1;
+        }
+        int count = (int) Math.min(batch.offsets.length, endOffset - from + 1);
+        for (int i = 0; i < count; i++) {
+            long offset = from + i;
+            int slot = (int) (offset % capacity);
+            batch.offsets[i] = offset;
+            batch.timestamps[i] = timestamps[slot];
+            batch.records[i] = records[slot];
+        }
+        batch.size = Math.max(count, 0);
+        return batch.size;
+    }
+}
+
+//程式碼解說：
+//
+//append(...): 由 store 的 StoreListener 呼叫，在同一把鎖內配發 offset 並放進環狀陣列，所以 offset 順序就是 log 的順序。
+//
+//read(...): 傳送執行緒一次最多取 Batch 容量的紀錄，寫出時不持有鎖；沒有新紀錄時以 wait / notifyAll 等待，不需要輪詢。
+//
+//紀錄本身（byte[]）建立後不會再被修改，被覆蓋的只是陣列中的參照，已經讀進 Batch 的紀錄仍然完整。
@@ -0,0 +1,54 @@
+// ReplicationStream 定義 leader 與 follower 之間的複寫串流格式（單向 TCP 串流）。
+//
+// follower 連線後先送出：magic(int) + 上次的 epoch(long) + 已套用的 offset(long)
+// 之後 leader 持續送出 frame：type(byte) + offset(long) + leader 時間毫秒(long) + length(int) + payload
+//
+// HELLO          : payload 為 leader 的 epoch（每次 leader 啟動都不同），offset 為目前的最後一筆
+// SNAPSHOT_BEGIN : 開始傳送 snapshot，offset 為 snapshot 涵蓋到的 log 位置
+// SNAPSHOT_RECORD: 一筆 RecordCodec 編碼的 save
+// SNAPSHOT_END   : snapshot 結束，follower 刪除 snapshot 中沒有的本機資料，並把已套用的 offset 設為 snapshot 的 offset
+// RECORD         : 一筆 log 紀錄（RecordCodec 編碼的 save / remove），offset 一定是上一筆 + 1
+// HEARTBEAT      : leader 目前的最後一筆 offset 與時間，用來計算複寫延遲
+
+package com.example.url_shortener.replication;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+final class ReplicationStream {
+
+    static final int MAGIC = 0x55534C50; // "USLP"
+
+    static final byte HELLO = 1;
+    static final byte SNAPSHOT_BEGIN = 2;
+    static final byte SNAPSHOT_RECORD = 3;
+    static final byte SNAPSHOT_END = 4;
+    static final byte RECORD = 5;
+    static final byte HEARTBEAT = 6;
+
+    static final int MAX_PAYLOAD_BYTES = 16 * 1024 * 1024;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private ReplicationStream() {
+    }
+
+    static void write(DataOutputStream out, byte type, long offset, long leaderMillis, byte[] payload)
+            throws IOException {
+        out.writeByte(type);
+        out.writeLong(offset);
+        out.writeLong(leaderMillis);
+        out.writeInt(payload.length);
+        out.write(payload);
+    }
+
+    static void write(DataOutputStream out, byte type, long offset, long leaderMillis) throws IOException {
+        write(out, type, offset, leaderMillis, EMPTY);
+    }
+}
+
+//程式碼解說：
+//
+//epoch: leader 重新啟動後 offset 會從頭開始，follower 以 epoch 判斷手上的 offset 是否還有意義；不同時 leader 一律改送 snapshot。
+//
+//payload 直接沿用 RecordCodec（journal 的紀錄格式，含 CRC32C），follower 以 RecordCodec.decode 套用，不需要另一套編碼。
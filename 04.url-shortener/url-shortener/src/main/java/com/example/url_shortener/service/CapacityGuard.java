@@ -0,0 +1,398 @@
+// CapacityGuard 讓 store 在固定的容量內運作（app.capacity.enabled=true 時啟用），
+// 避免有人以很長的 TTL 大量呼叫 /shorten，把 heap 撐到 OutOfMemoryError。
+//
+// 容量以筆數（app.capacity.max-entries）或估計的位元組數（app.capacity.max-bytes）限制，兩者可以同時設定。
+// 達到上限之後依 app.capacity.policy 處理：
+//   - soonest-expiry          : 從最快到期的項目開始淘汰（沿用 ExpiryIndex 的時間桶）；
+//   - least-recently-resolved : 以 CLOCK 淘汰最近沒有被轉址的項目（近似 LRU）；
+//   - reject                  : 不淘汰，新的短碼一律以 507 Insufficient Storage 拒絕。
+//
+// 淘汰由背景執行緒漸進進行：佔用率超過上限時開始，一次刪除一小批，降到 low-watermark 以下就停止，
+// 不會鎖住整個 store，轉址與其他寫入照常進行。寫入在 store 已滿時最多等待 admission-wait-ms，仍然沒有空間才回 507。
+// 建立新短碼前先預留一筆的空間（tryAdmit），寫入完成後才釋放（release），並行的 /shorten 不會一起超過上限。
+
+package com.example.url_shortener.service;
+
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.store.ExpiryIndex;
+import com.example.url_shortener.store.StoreListener;
+import com.example.url_shortener.store.UrlStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+@Component
+@ConditionalOnProperty(name = "app.capacity.enabled", havingValue = "true")
+public class CapacityGuard implements StoreListener, ClickListener, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(CapacityGuard.class);
+
+    // 每筆資料除了 URL 本身之外的估計 heap 用量（Entry、短碼字串、Map 節點與各種索引），
+    // 依容量測試（url-shortener-bench 的 CapacitySuite）在 map store 上的結果估計
+    static final long ENTRY_OVERHEAD_BYTES = 160;
+
+    // soonest-expiry 每次向 ExpiryIndex 要求淘汰的筆數
+    private static final int EVICTION_BATCH = 64;
+    // 找不到可淘汰的項目時（例如全部都永不過期），隔多久再試一次
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    public enum Policy {
+        SOONEST_EXPIRY, LEAST_RECENTLY_RESOLVED, REJECT;
+
+        static Policy parse(String value) {
+            return switch (value) {
+                case "soonest-expiry" -> SOONEST_EXPIRY;
+                case "least-recently-resolved" -> LEAST_RECENTLY_RESOLVED;
+                case "reject" -> REJECT;
+                default -> throw new IllegalArgumentException(
+                        "app.capacity.policy must be soonest-expiry, least-recently-resolved or reject: " + value);
+            };
+        }
+    }
+
+    private final UrlStore store;
+    private final ExpiryIndex expiryIndex;
+    private final Policy policy;
+    private final long maxEntries;
+    private final long maxBytes;
+    private final double lowWatermark;
+    private final long admissionWaitNanos;
+
+    // 由 onSave / onRemove 維護的筆數與所有項目 URL 的字元數總和；估計位元組數 = 筆數 * ENTRY_OVERHEAD_BYTES + urlChars。
+    // 不呼叫 store.size()：LongKeyStore 的 size() 要走過每個 Segment 的鎖，不適合放在每次寫入的路徑上
+    private final AtomicLong entries = new AtomicLong();
+    private final AtomicLong urlChars = new AtomicLong();
+
+    // tryAdmit 已預留、還沒有 release 的筆數與估計位元組數；只在 synchronized (this) 內修改
+    private final AtomicLong reservedEntries = new AtomicLong();
+    private final AtomicLong reservedBytes = new AtomicLong();
+
+    // least-recently-resolved 的 CLOCK 指針：store.scan 的 cursor，只由淘汰執行緒讀寫，每一批從上次停下的位置繼續
+    private long clockHand;
+
+    // least-recently-resolved 的 CLOCK reference bits，依短碼雜湊（不同短碼可能共用一個 bit，只會讓淘汰稍微保守）
+    private final AtomicLongArray referenced;
+    private final int referenceMask;
+
+    // 正在 tryAdmit 中等待空間的執行緒數；預留一筆會超過位元組上限時，佔用率可能還不到 1.0，淘汰執行緒也要開始工作
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    private final Object pressure = new Object();
+    private final Thread evictor;
+    private volatile boolean running = true;
+
+    public CapacityGuard(UrlStore store, ExpiryIndex expiryIndex,
+                         @Value("${app.capacity.policy:soonest-expiry}") String policy,
+                         @Value("${app.capacity.max-entries:0}") long maxEntries,
+                         @Value("${app.capacity.max-bytes:0}") long maxBytes,
+                         @Value("${app.capacity.low-watermark:0.9}") double lowWatermark,
+                         @Value("${app.capacity.admission-wait-ms:100}") long admissionWaitMs) {
+        if (maxEntries <= 0 && maxBytes <= 0) {
+            throw new IllegalArgumentException("app.capacity.max-entries or app.capacity.max-bytes must be positive");
+        }
+        if (lowWatermark <= 0 || lowWatermark >= 1) {
+            throw new IllegalArgumentException("app.capacity.low-watermark must be between 0 and 1");
+        }
+        this.store = store;
+        this.expiryIndex = expiryIndex;
+        this.policy = Policy.parse(policy);
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.lowWatermark = lowWatermark;
+        this.admissionWaitNanos = TimeUnit.MILLISECONDS.toNanos(admissionWaitMs);
+
+        // 每筆資料約 1 bit；只有 byte 上限時，以每筆至少 ENTRY_OVERHEAD_BYTES 估計最多的筆數
+        long expected = maxEntries > 0 ? maxEntries : maxBytes / ENTRY_OVERHEAD_BYTES;
+        int words = this.policy == Policy.LEAST_RECENTLY_RESOLVED
+                ? Integer.highestOneBit((int) Math.min(1 << 26, Math.max(64, expected / 64)) * 2 - 1)
+                : 1;
+        this.referenced = new AtomicLongArray(words);
+        this.referenceMask = words * 64 - 1;
+
+        store.addListener(this);
+        store.forEach(this::onSave); // 啟動前已存在的資料（例如持久化還原）
+
+        this.evictor = new Thread(this::evictLoop, "capacity-evictor");
+        this.evictor.setDaemon(true);
+        if (this.policy != Policy.REJECT) {
+            this.evictor.start();
+        }
+    }
+
+    // 建立新短碼前呼叫：還有空間時預留一筆並回傳 true，寫入完成後（不論成功與否）必須呼叫 release(url)；
+    // 已滿時喚醒淘汰執行緒並等待，逾時或 policy=reject 時回傳 false（沒有預留，不必 release）
+    public boolean tryAdmit(String url) {
+        long bytes = ENTRY_OVERHEAD_BYTES + url.length();
+        if (reserve(bytes)) {
+            return true;
+        }
+        if (policy != Policy.REJECT) {
+            long deadline = System.nanoTime() + admissionWaitNanos;
+            waiting.incrementAndGet();
+            try {
+                synchronized (pressure) {
+                    pressure.notifyAll();
+                }
+                return awaitReservation(bytes, deadline);
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+        return false;
+    }
+
+    private boolean awaitReservation(long bytes, long deadline) {
+        while (!reserve(bytes)) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            // 淘汰執行緒每刪除一批就會 notifyAll，這裡也設短暫逾時，避免錯過通知
+            synchronized (pressure) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(pressure, Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(5)));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // 釋放 tryAdmit 的預留；寫入成功時 onSave 已經把這一筆算進 entries
+    public synchronized void release(String url) {
+        reservedEntries.decrementAndGet();
+        reservedBytes.addAndGet(-(ENTRY_OVERHEAD_BYTES + url.length()));
+    }
+
+    // 檢查與預留在同一把鎖內：兩個並行的 tryAdmit 不會都看到最後一個空位
+    private synchronized boolean reserve(long bytes) {
+        if (maxEntries > 0 && entries.get() + reservedEntries.get() + 1 > maxEntries) {
+            return false;
+        }
+        if (maxBytes > 0 && estimatedBytes() + reservedBytes.get() + bytes > maxBytes) {
+            return false;
+        }
+        reservedEntries.incrementAndGet();
+        reservedBytes.addAndGet(bytes);
+        return true;
+    }
+
+    // tryAdmit 失敗且同一個 URL 沒有既有短碼，實際回 507 時由呼叫端記錄
+    public void recordRejection() {
+        rejections.increment();
+    }
+
+    // 目前佔用率：筆數與估計位元組數兩者中較高的比例（1.0 表示已滿），已預留的空間也算在內
+    public double occupancy() {
+        double occupancy = 0;
+        if (maxEntries > 0) {
+            occupancy = (double) (entries.get() + reservedEntries.get()) / maxEntries;
+        }
+        if (maxBytes > 0) {
+            occupancy = Math.max(occupancy, (double) (estimatedBytes() + reservedBytes.get()) / maxBytes);
+        }
+        return occupancy;
+    }
+
+    public long entryCount() {
+        return entries.get();
+    }
+
+    public long estimatedBytes() {
+        return entries.get() * ENTRY_OVERHEAD_BYTES + urlChars.get();
+    }
+
+    public Policy policy() {
+        return policy;
+    }
+
+    public long maxEntries() {
+        return maxEntries;
+    }
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    public long rejectionCount() {
+        return rejections.sum();
+    }
+
+    @Override
+    public void onSave(Entry entry) {
+        entries.incrementAndGet();
+        urlChars.addAndGet(entry.getUrl().length());
+        if (occupancy() >= 1.0 && policy != Policy.REJECT) {
+            // save 不經過 tryAdmit（例如複寫或還原），超過上限時同樣交給淘汰執行緒
+            synchronized (pressure) {
+                pressure.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void onRemove(String url, String code) {
+        // save 覆寫既有短碼時 store 會先對舊資料呼叫 onRemove，筆數與 URL 字元數不會重複計算
+        entries.decrementAndGet();
+        urlChars.addAndGet(-url.length());
+    }
+
+    @Override
+    public void onClick(String code, long epochMillis) {
+        if (policy != Policy.LEAST_RECENTLY_RESOLVED) {
+            return;
+        }
+        int bit = bitOf(code);
+        long mask = 1L << bit;
+        int word = bit >>> 6;
+        // 已經設定過時不再寫入，熱門短碼不會反覆競爭同一個 cache line
+        if ((referenced.get(word) & mask) == 0) {
+            referenced.getAndAccumulate(word, mask, (current, m) -> current | m);
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        synchronized (pressure) {
+            pressure.notifyAll();
+        }
+        evictor.join(5000);
+    }
+
+    private void evictLoop() {
+        while (running) {
+            awaitPressure();
+            // 一旦開始淘汰，就持續到佔用率降到 low-watermark 以下
+            while (running && overLowWatermark()) {
+                long evicted;
+                boolean idle;
+                if (policy == Policy.SOONEST_EXPIRY) {
+                    evicted = expiryIndex.evictSoonest(batchSize());
+                    evictions.add(evicted);
+                    idle = evicted == 0;
+                } else {
+                    // CLOCK：指針從上次停下的位置往前走一批；走完一整圈才回到開頭
+                    long before = evictions.sum();
+                    clockHand = store.scan(clockHand, EVICTION_BATCH, this::clockStep);
+                    evicted = evictions.sum() - before;
+                    // 一批全部都有 reference bit 很正常（第二次機會），只有走到一圈的終點仍然沒有淘汰才暫停
+                    idle = evicted == 0 && clockHand == 0;
+                }
+                synchronized (pressure) {
+                    pressure.notifyAll();
+                }
+                if (idle) {
+                    // 沒有可淘汰的項目（例如全部永不過期，或剛剛全部被存取過），稍後再試
+                    logger.debug("Capacity eviction found nothing to evict at occupancy {}", occupancy());
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+        }
+    }
+
+    private void clockStep(Entry entry) {
+        if (!running || !overLowWatermark()) {
+            return;
+        }
+        int bit = bitOf(entry.getCode());
+        long mask = 1L << bit;
+        int word = bit >>> 6;
+        if ((referenced.get(word) & mask) != 0) {
+            // 最近被轉址過：清掉 reference bit 給它第二次機會
+            referenced.getAndAccumulate(word, ~mask, (current, m) -> current & m);
+            return;
+        }
+        if (store.remove(entry)) {
+            evictions.increment();
+        }
+    }
+
+    // 佔用率還沒到達上限、也沒有寫入在等待空間時等待
+    private void awaitPressure() {
+        synchronized (pressure) {
+            while (running && occupancy() < 1.0 && !(waiting.get() > 0 && overLowWatermark())) {
+                try {
+                    pressure.wait(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    // 降到 low-watermark 大約還要淘汰的筆數（依目前每筆的平均佔用估計），不超過 EVICTION_BATCH
+    private int batchSize() {
+        double occupancy = storedOccupancy();
+        long excess = (long) Math.ceil(entries.get() * (occupancy - lowWatermark) / occupancy);
+        return (int) Math.max(1, Math.min(EVICTION_BATCH, excess));
+    }
+
+    // low-watermark 只看已經寫入的資料：預留只是暫時的，淘汰的量不隨當下有幾個 /shorten 在進行而改變
+    private boolean overLowWatermark() {
+        return storedOccupancy() > lowWatermark;
+    }
+
+    private double storedOccupancy() {
+        double occupancy = 0;
+        if (maxEntries > 0) {
+            occupancy = (double) entries.get() / maxEntries;
+        }
+        if (maxBytes > 0) {
+            occupancy = Math.max(occupancy, (double) estimatedBytes() / maxBytes);
+        }
+        return occupancy;
+    }
+
+    private int bitOf(String code) {
+        int h = code.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & referenceMask;
+    }
+}
+
+//程式碼解說：
+//
+//occupancy(): 筆數由 onSave / onRemove 以 AtomicLong 維護，不必每次寫入都呼叫 store.size()（LongKeyStore 要取 64 把鎖）；
+// 位元組數是估計值（每筆固定 ENTRY_OVERHEAD_BYTES 加上 URL 長度），不需要在寫入路徑上量測物件大小。
+// 以容量測試量出的實際每筆用量調整上限，就能讓 heap 用量固定在預期範圍內。
+//
+//tryAdmit(url) / release(url): 只有新建短碼需要空間。檢查與預留在同一把鎖內完成，預留一直保留到 claim 結束，
+// 所以 N 個並行的 /shorten 最多只會有「剩餘空位」個通過，不會先各自檢查、再一起寫入而超過上限。
+// 寫入成功到 release 之間這一筆會同時算在 entries 與預留中，只會讓佔用率短暫偏高（保守）。
+// ShortenService 在 tryAdmit 失敗時仍會回傳同一個 URL 既有的短碼（冪等），只有真正需要新空間時才回 507 並呼叫 recordRejection()。
+//
+//evictLoop(): 淘汰從佔用率到達 1.0（或有寫入在 tryAdmit 中等待空間）開始，直到降到 low-watermark 為止（遲滯），避免每次寫入都觸發一次淘汰。
+// soonest-expiry 每批的筆數由 batchSize() 依超出的比例估計，不會一次刪到遠低於 low-watermark。
+// 每一筆都透過 store.remove(entry)（CAS）刪除，codeToEntry 與 URL 索引一起更新，
+// StoreListener（持久化、快取、Bloom filter、ExpiryIndex 與這裡的 urlChars）也都會收到通知。
+//
+//clockHand: CLOCK 的指針就是 store.scan 的 cursor。scan 不在 cursor 之間保留狀態，淘汰執行緒停下來等待下一次壓力時，
+// 指針留在原地；下一次從那裡繼續，每筆資料每一圈都只經過一次，不會像每次都從頭走訪那樣，
+// 開頭的項目一直被清掉 reference bit、一直被淘汰，排在後面的冷資料卻永遠輪不到。
+//
+//clockStep(...): scan 在鎖外呼叫 action，淘汰執行緒可以邊走訪邊刪除；佔用率降到 low-watermark 以下時，
+// 同一批剩下的項目直接略過（指針照樣經過它們，下一圈再檢查）。
+//
+//referenced: 每次成功轉址（onClick）設定短碼對應的 bit，CLOCK 經過時清掉；連續兩輪之間都沒有被轉址的項目才會被淘汰。
+//
+//reject: 不啟動淘汰執行緒，store 已滿時新的短碼直接回 507，既有資料只會因為 TTL 過期而減少。
@@ -0,0 +1,118 @@
+// ClickCounter 記錄每個短碼被成功轉址的次數（app.stats.enabled=true 時啟用，預設關閉）。
+//
+// 轉址路徑上只做一次 LongAdder.increment()：LongAdder 會把競爭分散到多個 cell，
+// 即使上百萬個請求同時打在同一個爆紅的短碼上，也不會卡在同一個計數器。
+// 背景的彙總工作定期算出每個短碼自上次彙總以來的新增次數，交給 Space-Saving 找出最熱門的短碼。
+
+package com.example.url_shortener.service;
+
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.store.StoreListener;
+import com.example.url_shortener.store.UrlStore;
+import com.example.url_shortener.util.SpaceSaving;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+@ConditionalOnProperty(name = "app.stats.enabled", havingValue = "true")
+public class ClickCounter implements ClickListener, StoreListener {
+
+    private final UrlStore store;
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final SpaceSaving topCodes;
+
+    public ClickCounter(UrlStore store, @Value("${app.stats.top-capacity:1000}") int topCapacity) {
+        this.store = store;
+        this.topCodes = new SpaceSaving(topCapacity);
+        store.addListener(this);
+    }
+
+    @Override
+    public void onClick(String code, long epochMillis) {
+        Counter counter = counters.get(code);
+        if (counter == null) {
+            Counter created = new Counter();
+            counter = counters.putIfAbsent(code, created);
+            if (counter == null) {
+                // 轉址與刪除同時發生時 onRemove 可能已經先執行：短碼已不存在就撤回剛建立的計數器
+                if (store.getEntry(code) == null) {
+                    counters.remove(code, created);
+                    return;
+                }
+                counter = created;
+            }
+        }
+        counter.clicks.increment();
+    }
+
+    // 短碼目前的總點擊數（含尚未彙總的部分）；短碼不存在時回傳 null
+    public Long clicks(String code) {
+        if (store.getEntry(code) == null) {
+            return null;
+        }
+        Counter counter = counters.get(code);
+        return counter == null ? 0L : counter.clicks.sum();
+    }
+
+    // 點擊數最多的前 k 個短碼（Space-Saving 的估計值）
+    public List<SpaceSaving.Item> top(int k) {
+        return topCodes.top(k);
+    }
+
+    public int topCapacity() {
+        return topCodes.capacity();
+    }
+
+    // 定期把每個短碼新增的點擊數交給 Space-Saving；同一時間只有一個彙總執行緒
+    @Scheduled(fixedDelayString = "${app.stats.aggregate-interval-ms:1000}")
+    public synchronized void aggregate() {
+        counters.forEach((code, counter) -> {
+            long seen = counter.clicks.sum();
+            long delta = seen - counter.lastSeen;
+            if (delta > 0) {
+                counter.lastSeen = seen;
+                topCodes.offer(code, delta);
+            }
+        });
+    }
+
+    @Override
+    public void onSave(Entry entry) {
+        // 新建立的短碼在第一次被點擊時才配置計數器
+    }
+
+    @Override
+    public void onRemove(String url, String code) {
+        // 短碼被刪除（過期或覆寫）後，統計也一併捨棄
+        counters.remove(code);
+        topCodes.remove(code);
+    }
+
+    private static final class Counter {
+        // 從不歸零：點擊數就是它的 sum()
+        final LongAdder clicks = new LongAdder();
+        // 上次彙總時看到的 sum()，只在 aggregate 內讀寫
+        long lastSeen;
+    }
+}
+
+//程式碼解說：
+//
+//onClick(code, ...): 先以 get 取得計數器，只有第一次點擊才以 putIfAbsent 建立；之後每次點擊只是一次 LongAdder.increment()。
+// 建立計數器後再向 store 確認短碼仍然存在：resolve 之後、onClick 之前短碼可能已被刪除，
+// 這時 onRemove 已經執行過，不撤回的話計數器就會一直留在 map 中。確認時短碼還在的話，之後的刪除一定會再觸發 onRemove。
+//
+//aggregate(): 以 sum() 減去上次看到的 lastSeen 得到新增的次數，以這個增量更新 Space-Saving。
+// LongAdder 從不歸零：sumThenReset() 的「讀取再歸零」與同時進行的 increment 交錯時，
+// 查詢可能暫時少算、彙總與歸零之間的點擊也可能遺失；每個 cell 只會增加，所以後一次的 sum() 一定不小於前一次，增量不會是負數。
+// 每次只處理「有被點擊過的短碼」，不會走訪整個 store，也不需要排序。
+//
+//clicks(code): 直接回傳 sum()，包含尚未彙總的點擊，查詢結果不需要等到下一次彙總。
+//
+//onRemove(...): 與 store 同步刪除計數器，計數器的數量不會超過 store 中被點擊過的短碼數量。
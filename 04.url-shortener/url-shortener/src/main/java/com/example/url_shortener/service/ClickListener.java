@@ -0,0 +1,12 @@
+// ClickListener 在每一次成功轉址（ShortenService.resolve 找到未過期的短碼）後被呼叫。
+// 例如 ClickCounter 用它累計點擊數，ClickEventLog 用它記錄點擊事件。
+//
+// 呼叫發生在轉址的熱路徑上，實作必須非常便宜，而且不可以阻塞。
+
+package com.example.url_shortener.service;
+
+public interface ClickListener {
+
+    // epochMillis 為轉址發生的時間
+    void onClick(String code, long epochMillis);
+}
@@ -1,27 +1,136 @@
+// CodeGenerator 以 MurmurHash3 雜湊 URL 產生候選短碼，短碼長度隨 store 的筆數自動加長：
+//
+//   - 第 0 級：32-bit 雜湊的 Base62（最多 6 碼），與原本的短碼完全相同；
+//   - 第 1 級起：64-bit 雜湊，固定寬度 7、8、9、10 碼（10 碼仍能以 Base62.toKey 打包成 long）。
+//
+// 新短碼與既有短碼碰撞的機率約等於「現存筆數 / 這一級的短碼空間」。
+// 這個比例超過 app.codes.max-collision-rate 時就改用下一級，每次縮短平均的 salt 重試次數因此維持在 1 附近。
+// 既有的短碼不會改變，長度不同的短碼也不會互相碰撞，所以加長之後舊短碼照常轉址。
+
 package com.example.url_shortener.service;
 
-import com.google.common.hash.Hashing;
+import com.example.url_shortener.store.UrlStore;
 import com.example.url_shortener.util.Base62;
+import com.example.url_shortener.util.Murmur3;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
-import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 @Component
-public class CodeGenerator {
+@ConditionalOnProperty(name = "app.codes.strategy", havingValue = "hash", matchIfMissing = true)
+public class CodeGenerator implements CodeStrategy {
+
+    // 第 1 級的長度；第 0 級的 32-bit 雜湊最多 6 碼，所以從 7 碼開始不會與既有短碼重疊
+    private static final int FIRST_WIDE_LENGTH = 7;
+    private static final int MAX_LEVEL = Base62.MAX_KEY_LENGTH - FIRST_WIDE_LENGTH + 1;
+
+    // 同一個 URL 在同一級連續碰撞這麼多次，就直接改用下一級。
+    // 筆數低估時的保險，例如叢集模式下 store 只有本機分片的筆數。
+    static final int RETRIES_PER_LEVEL = 2;
+
+    // generate 使用的筆數最多這麼久重新讀取一次 store.size()
+    private static final long SIZE_REFRESH_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    // 每個執行緒重複使用的編碼緩衝區
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[Base62.MAX_ENCODED_LENGTH]);
+
+    private final UrlStore store;
+    private final double maxCollisionRate;
 
-    private static final int SHORT_CODE_LENGTH = 7;
+    // 各級在碰撞機率不超過 maxCollisionRate 時可以容納的筆數
+    private final long[] levelCapacity = new long[MAX_LEVEL + 1];
 
+    private final LongAdder widened = new LongAdder();
+
+    // 快取的 store 筆數與上次讀取的時間（System.nanoTime）
+    private volatile int cachedSize;
+    private final AtomicLong sizeReadAt = new AtomicLong(System.nanoTime() - SIZE_REFRESH_NANOS);
+
+    public CodeGenerator(UrlStore store, @Value("${app.codes.max-collision-rate:0.01}") double maxCollisionRate) {
+        if (!(maxCollisionRate > 0 && maxCollisionRate < 1)) {
+            throw new IllegalArgumentException("app.codes.max-collision-rate must be between 0 and 1");
+        }
+        this.store = store;
+        this.maxCollisionRate = maxCollisionRate;
+        for (int level = 0; level <= MAX_LEVEL; level++) {
+            levelCapacity[level] = (long) (codeSpace(level) * maxCollisionRate);
+        }
+    }
+
+    @Override
     public String generate(String url, int salt) {
-        // 使用 MurmurHash3_32 雜湊演算法
-        long hash = Hashing.murmur3_32_fixed()
-                .hashString(url + salt, StandardCharsets.UTF_8)
-                .padToLong();
+        int level = levelFor(cachedSize());
+        if (salt >= RETRIES_PER_LEVEL && level < MAX_LEVEL) {
+            level = Math.min(MAX_LEVEL, level + salt / RETRIES_PER_LEVEL);
+            if (salt % RETRIES_PER_LEVEL == 0) {
+                widened.increment();
+            }
+        }
 
-        // 將雜湊值轉換為 Base62 字串
-        String base62Encoded = Base62.encode(hash);
+        char[] buffer = BUFFER.get();
+        if (level == 0) {
+            // 使用 MurmurHash3_32 雜湊演算法，直接餵入 URL 與 salt，不先串成新的字串
+            long hash = Murmur3.hash32(url, salt) & 0xFFFFFFFFL;
+            // 將雜湊值轉換為 Base62，寫進可重複使用的緩衝區，只在最後建立一次 String
+            int length = Base62.encode(hash, buffer, 0);
+            return new String(buffer, 0, length);
+        }
+
+        // 64-bit 雜湊取非負值後固定寬度編碼：只保留低位的 length 個 Base62 位數，不足時左側補 '0'
+        int length = lengthOf(level);
+        Base62.encodeFixed(Murmur3.hash64(url, salt) >>> 1, length, buffer, 0);
+        return new String(buffer, 0, length);
+    }
+
+    // 目前新短碼的長度（第 0 級回傳 6，也就是它的最大長度）
+    public int currentLength() {
+        return lengthOf(levelFor(store.size()));
+    }
 
-        // 確保短碼長度為 7
-        return base62Encoded.substring(0, Math.min(base62Encoded.length(), SHORT_CODE_LENGTH));
+    // 現存筆數佔目前這一級短碼空間的比例，也就是新短碼的預期碰撞機率
+    public double loadFactor() {
+        int size = store.size();
+        return size / codeSpace(levelFor(size));
+    }
+
+    public double maxCollisionRate() {
+        return maxCollisionRate;
+    }
+
+    // 因連續碰撞而提早改用下一級的次數
+    public long widenedCount() {
+        return widened.sum();
+    }
+
+    // store.size() 在 LongKeyStore 要取 64 把讀鎖；筆數要增加到上千萬才會換級，晚 100 ms 看到不影響結果。
+    // 只有搶到 CAS 的執行緒重新讀取，其他執行緒照常使用舊的值
+    private int cachedSize() {
+        long now = System.nanoTime();
+        long readAt = sizeReadAt.get();
+        if (now - readAt >= SIZE_REFRESH_NANOS && sizeReadAt.compareAndSet(readAt, now)) {
+            cachedSize = store.size();
+        }
+        return cachedSize;
+    }
+
+    private int levelFor(long size) {
+        int level = 0;
+        while (level < MAX_LEVEL && size > levelCapacity[level]) {
+            level++;
+        }
+        return level;
+    }
+
+    private static int lengthOf(int level) {
+        return level == 0 ? FIRST_WIDE_LENGTH - 1 : FIRST_WIDE_LENGTH + level - 1;
+    }
+
+    private static double codeSpace(int level) {
+        return level == 0 ? 0x1p32 : Math.pow(62, lengthOf(level));
     }
 }
 
@@ -29,12 +138,23 @@ public class CodeGenerator {
 //
 //@Component: 這是 Spring Framework 的註解，表示這個類別是一個 Spring 元件，讓 Spring 能夠自動建立和管理這個類別的實例。
 //
+//@ConditionalOnProperty: app.codes.strategy=hash（預設）時使用雜湊產碼；設定為 sequential 時改用 SequentialCodeAllocator。
+//
 //generate(String url, int salt): 這是核心方法。它接收兩個參數：url 和一個 salt（鹽值）。
 //
 //url + salt: 我們將原始 URL 和 salt 結合在一起。當發生碰撞時，我們會增加 salt 的值，讓同一個 URL 產生不同的雜湊值，進而生成不同的短碼，避免衝突。
+// Murmur3.hash32(url, salt) / hash64(url, salt) 直接把兩者依序餵進雜湊，不再實際串出 url + salt 這個暫時字串。
+//
+// levelFor(cachedSize()): 以現存筆數選擇短碼的長度。預設 1% 的碰撞機率下，第 0 級可以容納約 4,300 萬筆，
+// 7 碼約 350 億筆；store 縮小時也會自動回到較短的短碼。筆數來自 store.size()，不需要另外維護計數器，
+// 但每 100 ms 才重新讀取一次：LongKeyStore 的 size() 要走過 64 個 Segment 的讀鎖，不適合每次產碼都呼叫。
+// 晚一點看到新的筆數最多只是少數短碼仍用舊的長度，碰撞時由 salt 重試與 RETRIES_PER_LEVEL 處理。
+//
+//RETRIES_PER_LEVEL: 正常情況下連續碰撞兩次的機率只有 max-collision-rate 的平方；真的發生時代表筆數估計偏低，
+// 直接加長短碼，重試次數不會隨著資料量無限增加。
 //
-//Hashing.murmur3_32_fixed(): 這是 Google Guava 函式庫提供的 MurmurHash3 雜湊函式。
+//Murmur3.hash32(...) / hash64(...): 自行實作的 MurmurHash3，結果與 Google Guava 的 murmur3_32_fixed() / murmur3_128() 相同，但不配置任何物件。
 //
-//Base62.encode(hash): 將雜湊值轉換為 Base62 字串。
+//Base62.encode(hash, buffer, 0) / encodeFixed(...): 將雜湊值以 Base62 寫進每個執行緒共用的 char[]。
 //
-//substring(...): 最後，我們截取 Base62 字串的前 7 個字元作為最終的短碼。
\ No newline at end of file
+//new String(buffer, 0, ...): 最後建立短碼，這是整個產碼流程中唯一的一次配置。
@@ -0,0 +1,12 @@
+// CodeStrategy 是「如何產生候選短碼」的抽象，由 app.codes.strategy 選擇實作：
+//
+// hash       : CodeGenerator，以 MurmurHash3 雜湊 URL（預設；同一個 URL 會得到相同的候選碼）
+// sequential : SequentialCodeAllocator，從遞增的計數器配發，不會發生碰撞
+
+package com.example.url_shortener.service;
+
+public interface CodeStrategy {
+
+    // salt 為碰撞後的重試次數，從 0 開始
+    String generate(String url, int salt);
+}
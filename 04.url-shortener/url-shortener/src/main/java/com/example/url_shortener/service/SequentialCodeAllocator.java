@@ -0,0 +1,193 @@
+// SequentialCodeAllocator 以遞增的 64-bit 計數器配發短碼（app.codes.strategy=sequential）。
+//
+// 短碼固定 7 碼 Base62（62^7 ≈ 2^41.7），使用其中 41 bits：
+//   [ node-id 6 bits ][ 計數器 35 bits ]
+// 每個節點（app.codes.node-id）有自己的前綴，多個實例同時配發也不需要彼此溝通。
+//
+// 計數器以區塊（lease）為單位向磁碟上的 lease 檔預約：每配完 app.codes.lease-size 個才寫一次檔，
+// 重啟後從檔案記錄的高水位繼續，未用完的區塊直接跳過，保證不會重複配發。
+// lease 檔先寫到 .tmp 並 fsync，再以 ATOMIC_MOVE 取代舊檔；長度不對的 lease 檔視為損毀並拒絕啟動，不會從 0 重新配發。
+//
+// 配發出的數值可再經過 41 bits 內的可逆混淆（app.codes.scramble），讓相鄰的短碼看起來不連續。
+// 由於混淆是一對一的對應，不同數值永遠得到不同短碼，shorten 的成本與 store 填滿程度無關。
+
+package com.example.url_shortener.service;
+
+import com.example.url_shortener.util.Base62;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+@ConditionalOnProperty(name = "app.codes.strategy", havingValue = "sequential")
+public class SequentialCodeAllocator implements CodeStrategy {
+
+    private static final int CODE_LENGTH = 7;
+    private static final int NODE_BITS = 6;
+    private static final int COUNTER_BITS = 35;
+    private static final int ID_BITS = NODE_BITS + COUNTER_BITS;
+    private static final long ID_MASK = (1L << ID_BITS) - 1;
+    private static final long MAX_COUNTER = 1L << COUNTER_BITS;
+    private static final long FIXED_LENGTH_KEY = (long) CODE_LENGTH << 60;
+
+    private final long nodePrefix;
+    private final long leaseSize;
+    private final boolean scramble;
+    private final Path leaseFile;
+
+    private volatile Lease current = new Lease(0, 0);
+    private long highWater; // 由 this 的 monitor 保護
+
+    public SequentialCodeAllocator(@Value("${app.codes.node-id:0}") int nodeId,
+                                   @Value("${app.codes.lease-size:10000}") long leaseSize,
+                                   @Value("${app.codes.scramble:true}") boolean scramble,
+                                   @Value("${app.codes.lease-file:data/code-sequence.lease}") String leaseFile) {
+        if (nodeId < 0 || nodeId >= (1 << NODE_BITS)) {
+            throw new IllegalArgumentException("app.codes.node-id must be between 0 and " + ((1 << NODE_BITS) - 1));
+        }
+        this.nodePrefix = (long) nodeId << COUNTER_BITS;
+        this.leaseSize = leaseSize;
+        this.scramble = scramble;
+        this.leaseFile = Paths.get(leaseFile);
+        this.highWater = readHighWater();
+    }
+
+    @Override
+    public String generate(String url, int salt) {
+        long id = nodePrefix | nextCounter();
+        if (scramble) {
+            id = scramble(id);
+        }
+        // 固定 7 碼、左側補 0
+        return Base62.fromKey(FIXED_LENGTH_KEY | id);
+    }
+
+    private long nextCounter() {
+        while (true) {
+            Lease lease = current;
+            long value = lease.next.getAndIncrement();
+            if (value < lease.end) {
+                return value;
+            }
+            // 目前的區塊用完了，只有一個執行緒負責預約下一個區塊
+            synchronized (this) {
+                if (current == lease) {
+                    current = leaseNext();
+                }
+            }
+        }
+    }
+
+    // 只在持有 this 的 monitor 時呼叫：先把新的高水位寫入磁碟，再開放使用這個區塊
+    private Lease leaseNext() {
+        long start = highWater;
+        long end = Math.min(start + leaseSize, MAX_COUNTER);
+        if (start >= end) {
+            throw new IllegalStateException("Sequential code space exhausted for node " + (nodePrefix >>> COUNTER_BITS));
+        }
+        writeHighWater(end);
+        highWater = end;
+        return new Lease(start, end);
+    }
+
+    // 41 bits 內的可逆混淆：xorshift 與乘上奇數（mod 2^41）都是一對一的運算
+    static long scramble(long id) {
+        long x = id & ID_MASK;
+        x ^= x >>> 20;
+        x = (x * 0x5DEECE66DL) & ID_MASK;
+        x ^= x >>> 17;
+        x = (x * 0x2545F4914F6CDD1DL) & ID_MASK;
+        x ^= x >>> 21;
+        return x;
+    }
+
+    // 檔案不存在表示從未配發過；存在但內容不是一個合理的高水位時拒絕啟動，
+    // 從 0 重新配發會產生已經存在的短碼
+    private long readHighWater() {
+        byte[] bytes;
+        try {
+            if (!Files.exists(leaseFile)) {
+                return 0;
+            }
+            bytes = Files.readAllBytes(leaseFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read code lease file " + leaseFile.toAbsolutePath(), e);
+        }
+        long value = bytes.length == Long.BYTES ? ByteBuffer.wrap(bytes).getLong() : -1;
+        if (value < 0 || value > MAX_COUNTER) {
+            throw new IllegalStateException("Code lease file " + leaseFile.toAbsolutePath() + " is corrupt ("
+                    + bytes.length + " bytes); restore it or set a high-water mark above every issued code");
+        }
+        return value;
+    }
+
+    private void writeHighWater(long value) {
+        try {
+            Path parent = leaseFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            // 寫入中當機只會留下不完整的 .tmp，原本的 lease 檔保持完整
+            Path temp = leaseFile.resolveSibling(leaseFile.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, value));
+                channel.force(true);
+            }
+            Files.move(temp, leaseFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            if (parent != null) {
+                forceDirectory(parent);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write code lease file " + leaseFile.toAbsolutePath(), e);
+        }
+    }
+
+    // 改名要等目錄本身寫入磁碟才算持久；不支援開啟目錄的平台（Windows）略過
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+            // 無法 fsync 目錄時，改名仍然是原子的，只是當機時可能回到上一個高水位
+        }
+    }
+
+    private static final class Lease {
+        final AtomicLong next;
+        final long end;
+
+        Lease(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
+
+//程式碼解說：
+//
+//nodePrefix: 節點編號放在最高的 6 bits，各節點的數值範圍互不重疊，因此不需要任何跨節點協調。
+//
+//Lease: 一個預約好的區塊 [start, end)。配發時只是一次 AtomicLong.getAndIncrement()，沒有鎖；
+// 區塊用完時才由一個執行緒進入 synchronized 預約下一塊。
+//
+//writeHighWater(...): 先 fsync 新的高水位才開始使用區塊，即使當機重啟也只會跳號，不會重複。
+// 不直接覆寫 lease 檔：TRUNCATE 之後、fsync 之前當機會留下 0 bytes 的檔案。改為寫 .tmp → fsync → ATOMIC_MOVE → fsync 目錄，
+// 任何時間點磁碟上的 lease 檔都是某一個完整的高水位。
+//
+//readHighWater(): 長度不是 8 bytes 或數值超出範圍的 lease 檔以 IllegalStateException 中止啟動，由維運人員處理，
+// 而不是當成 0 重新配發已經存在的短碼。
+//
+//scramble(...): 在 41 bits 範圍內做一對一的混淆，短碼不再看得出建立順序，但仍保證不會碰撞。
+//
+//Base62.fromKey(FIXED_LENGTH_KEY | id): 以長度 7 編碼，不足 7 碼時左側補 0，所有短碼長度一致。
@@ -0,0 +1,26 @@
+// ShortenResult 是 ShortenService.shorten 的回傳值：
+// 一次帶回這次縮短對應的 Entry，以及它是新建立的還是既有的（冪等），
+// Controller 不需要再呼叫 resolve 把資料讀回來。
+
+package com.example.url_shortener.service;
+
+import com.example.url_shortener.model.Entry;
+
+public class ShortenResult {
+
+    private final Entry entry;
+    private final boolean created;
+
+    public ShortenResult(Entry entry, boolean created) {
+        this.entry = entry;
+        this.created = created;
+    }
+
+    public Entry getEntry() {
+        return entry;
+    }
+
+    public boolean isCreated() {
+        return created;
+    }
+}
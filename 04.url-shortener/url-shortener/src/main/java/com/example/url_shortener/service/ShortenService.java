@@ -1,22 +1,34 @@
 // ShortenService 是這個專案的核心業務邏輯層。
-// 它將串接 CodeGenerator 來生成短碼，並使用 InMemoryStore 來儲存和查詢資料。
+// 它將串接 CodeStrategy（預設為 CodeGenerator）來生成短碼，並使用 UrlStore（預設為 InMemoryStore）來儲存和查詢資料。
 // 此外，它也會處理設計書中提到的冪等性、TTL (Time-to-Live) 和碰撞處理。
 
 package com.example.url_shortener.service;
 
+import com.example.url_shortener.cluster.ClusterNode;
 import com.example.url_shortener.model.Entry;
-import com.example.url_shortener.store.InMemoryStore;
+import com.example.url_shortener.model.EntryHolder;
+import com.example.url_shortener.store.CodeFilter;
+import com.example.url_shortener.store.HotEntryCache;
+import com.example.url_shortener.store.UrlStore;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
 public class ShortenService {
 
-    private final CodeGenerator codeGenerator;
-    private final InMemoryStore store;
+    private final CodeStrategy codeStrategy;
+    private final UrlStore store;
+    private final HotEntryCache hotCache; // app.cache.enabled=false 或叢集模式時為 null
+    private final CodeFilter codeFilter; // app.bloom.enabled=false 或叢集模式時為 null
+    private final ClickListener[] clickListeners;
+    private final CapacityGuard capacityGuard; // app.capacity.enabled=false 或叢集模式時為 null
+    private final ShortenerMetrics metrics; // app.metrics.enabled=false 時為 null
 
     @Value("${app.base-url:http://localhost:8080}")
     private String baseUrl;
@@ -24,101 +36,251 @@ public class ShortenService {
     @Value("${app.default-ttl-seconds:2592000}")
     private long defaultTtlSeconds;
 
-    public ShortenService(CodeGenerator codeGenerator, InMemoryStore store) {
-        this.codeGenerator = codeGenerator;
-        this.store = store;
+    public ShortenService(CodeStrategy codeStrategy, UrlStore store,
+                          ObjectProvider<HotEntryCache> hotCache, ObjectProvider<CodeFilter> codeFilter,
+                          ObjectProvider<ClickListener> clickListeners, ObjectProvider<ClusterNode> cluster,
+                          ObjectProvider<CapacityGuard> capacityGuard, ObjectProvider<ShortenerMetrics> metrics) {
+        this.codeStrategy = codeStrategy;
+        ClusterNode clusterNode = cluster.getIfAvailable();
+        if (clusterNode != null) {
+            // 叢集模式：讀寫都依短碼 / URL 轉送到擁有者節點，快取與 Bloom filter 由擁有者在它的本機分片上使用
+            this.store = clusterNode.routedStore();
+            this.hotCache = null;
+            this.codeFilter = null;
+            this.capacityGuard = null;
+        } else {
+            this.store = store;
+            this.hotCache = hotCache.getIfAvailable();
+            this.codeFilter = codeFilter.getIfAvailable();
+            this.capacityGuard = capacityGuard.getIfAvailable();
+        }
+        this.clickListeners = clickListeners.orderedStream().toArray(ClickListener[]::new);
+        this.metrics = metrics.getIfAvailable();
+    }
+
+    public ShortenResult shorten(String url, Long ttlSeconds) {
+        return shorten(url, ttlSeconds, Instant.now());
     }
 
-    public Optional<String> shorten(String url, Long ttlSeconds) {
-        // 檢查是否已存在，處理冪等性
-        String existingCode = store.getCode(url);
-        if (existingCode != null) {
-            return Optional.of(existingCode);
+    // 批次縮短：同一批共用一個建立時間，重複的 URL 只處理一次。
+    // 回傳的 Map 依輸入順序排列，key 為 URL；因 store 已滿（StoreFullException）而無法建立的 URL 不會出現在結果中。
+    public Map<String, ShortenResult> shortenAll(Map<String, Long> urlToTtlSeconds) {
+        Instant now = Instant.now();
+        Map<String, ShortenResult> results = new LinkedHashMap<>(urlToTtlSeconds.size() * 2);
+        for (Map.Entry<String, Long> request : urlToTtlSeconds.entrySet()) {
+            try {
+                results.put(request.getKey(), shorten(request.getKey(), request.getValue(), now));
+            } catch (StoreFullException e) {
+                // 只影響這一筆，呼叫端依 key 不存在回報錯誤
+            }
         }
+        return results;
+    }
+
+    private ShortenResult shorten(String url, Long ttlSeconds, Instant now) {
+        // 計算到期時間
+        Instant expiresAt = now.plusSeconds(ttlSeconds != null ? ttlSeconds : defaultTtlSeconds);
+
+        // 容量上限：已滿時只回傳同一個 URL 既有的短碼（冪等），不建立新資料
+        if (capacityGuard != null && !capacityGuard.tryAdmit(url)) {
+            String existingCode = store.getCode(url);
+            Entry existing = existingCode != null ? store.getEntry(existingCode) : null;
+            if (existing != null && existing.hasUrl(url) && !existing.isExpired(now)) {
+                return new ShortenResult(existing, false);
+            }
+            capacityGuard.recordRejection();
+            throw new StoreFullException("Store is at capacity");
+        }
+        try {
+            return claim(url, now, expiresAt);
+        } finally {
+            // 預留的空間保留到寫入完成（或拿到既有短碼）為止
+            if (capacityGuard != null) {
+                capacityGuard.release(url);
+            }
+        }
+    }
 
+    private ShortenResult claim(String url, Instant now, Instant expiresAt) {
         // 處理碰撞，自動重新生成
         int salt = 0;
-        String code;
-        do {
-            code = codeGenerator.generate(url, salt);
-            // 嘗試將新的 url 和 code 存入 store
-            Entry existingEntry = store.getEntry(code);
-            if (existingEntry == null) {
+        while (true) {
+            String code = codeStrategy.generate(url, salt);
+            Entry candidate = new Entry(code, url, now, expiresAt);
+
+            // 原子地完成冪等檢查、碰撞檢查與寫入
+            Entry claimed = store.claim(candidate);
+            if (claimed == candidate) {
                 // 成功存入，無碰撞
-                break;
-            } else if (existingEntry.getUrl().equals(url)) {
-                // 發生極低機率的碰撞，但與現有 URL 相同，直接使用現有 code
-                return Optional.of(code);
+                if (metrics != null) {
+                    metrics.recordShorten(salt);
+                }
+                return new ShortenResult(candidate, true);
+            }
+            if (claimed.hasUrl(url)) {
+                if (!claimed.isExpired(now)) {
+                    // 冪等：同一個 URL 已經有短碼
+                    if (metrics != null) {
+                        metrics.recordShorten(salt);
+                    }
+                    return new ShortenResult(claimed, false);
+                }
+                // 既有短碼已過期但尚未被清理，CAS 刪除後以同一個 salt 重試
+                store.remove(claimed);
             } else {
                 // 發生碰撞，但 URL 不同，增加 salt 重新生成
+                if (metrics != null) {
+                    metrics.recordCollision();
+                }
                 salt++;
             }
-        } while (true);
-
-        // 計算到期時間
-        Instant now = Instant.now();
-        Instant expiresAt = null;
-        if (ttlSeconds != null) {
-            expiresAt = now.plusSeconds(ttlSeconds);
-        } else {
-            expiresAt = now.plusSeconds(defaultTtlSeconds);
         }
-
-        // 建立 Entry 並儲存
-        Entry newEntry = new Entry(code, url, now, expiresAt);
-        store.save(url, code, newEntry);
-
-        return Optional.of(code);
     }
 
     public Optional<Entry> resolve(String code) {
-        Entry entry = store.getEntry(code);
+        // Bloom filter 判定一定不存在時，不必查詢快取或 store
+        if (codeFilter != null && !codeFilter.mightContain(code)) {
+            recordMiss();
+            return Optional.empty();
+        }
+
+        // 啟用快取時先查熱門項目快取，未命中才由快取向 store 讀取
+        Entry entry = hotCache != null ? hotCache.get(code) : store.getEntry(code);
 
         if (entry == null) {
+            recordMiss();
             return Optional.empty(); // 找不到短碼
         }
 
         // 檢查是否過期
-        if (entry.getExpiresAt() != null && entry.getExpiresAt().isBefore(Instant.now())) {
-            // 已過期，從 store 移除並回傳 empty
-            store.remove(entry.getUrl(), entry.getCode());
+        Instant now = Instant.now();
+        if (entry.isExpired(now)) {
+            // 已過期，以 CAS 從 store 移除（不會誤刪同時被重新建立的新資料）並回傳 empty
+            store.remove(entry);
+            recordExpired();
             return Optional.empty();
         }
 
+        recordHit(code, now);
         return Optional.of(entry);
     }
+
+    // 與 resolve(code) 相同，但把資料寫進呼叫端重複使用的 holder（RedirectServer 每個 event loop 一個），
+    // 查到且未過期時回傳 true；LongKeyStore 命中時整個查詢不配置 Entry
+    public boolean resolve(String code, EntryHolder holder) {
+        if (codeFilter != null && !codeFilter.mightContain(code)) {
+            recordMiss();
+            return false;
+        }
+
+        boolean found;
+        if (hotCache != null) {
+            Entry entry = hotCache.get(code);
+            found = entry != null;
+            if (found) {
+                holder.set(entry);
+            }
+        } else {
+            found = store.getEntry(code, holder);
+        }
+        if (!found) {
+            recordMiss();
+            return false;
+        }
+
+        Instant now = Instant.now();
+        if (holder.isExpired(now)) {
+            // CAS 刪除需要 store 目前的那一筆 Entry（InMemoryStore 以物件比對），只有過期時才多查一次
+            Entry expired = store.getEntry(code);
+            if (expired != null && expired.isExpired(now)) {
+                store.remove(expired);
+            }
+            recordExpired();
+            return false;
+        }
+
+        recordHit(code, now);
+        return true;
+    }
+
+    private void recordMiss() {
+        if (metrics != null) {
+            metrics.recordMiss();
+        }
+    }
+
+    private void recordExpired() {
+        if (metrics != null) {
+            metrics.recordExpired();
+        }
+    }
+
+    // 命中：記錄 metrics 並通知每個 ClickListener，時間沿用過期檢查的 now
+    private void recordHit(String code, Instant now) {
+        if (metrics != null) {
+            metrics.recordHit();
+        }
+        if (clickListeners.length > 0) {
+            long epochMillis = now.toEpochMilli();
+            for (ClickListener listener : clickListeners) {
+                listener.onClick(code, epochMillis);
+            }
+        }
+    }
 }
 
 //程式碼解說：
 //
 //@Service: 這是一個特殊的 @Component，用於標記業務邏輯層。
 //
-//依賴注入 (Dependency Injection): ShortenService 的建構子 (Constructor) 接收 CodeGenerator 和 InMemoryStore 作為參數。Spring 容器會自動建立這些實例並傳遞給 ShortenService，這是一種最佳實踐，稱為依賴注入。
+//依賴注入 (Dependency Injection): ShortenService 的建構子 (Constructor) 接收 CodeStrategy 和 UrlStore 作為參數。Spring 容器會自動建立這些實例並傳遞給 ShortenService，這是一種最佳實踐，稱為依賴注入。
 //
 //@Value: 我們使用 @Value 註解從 application.properties 或環境變數中讀取設定值，這使得我們的程式碼更具彈性。例如：${app.base-url:http://localhost:8080} 表示如果找不到 app.base-url 這個設定，就使用預設值 http://localhost:8080。
 //
-//shorten(String url, Long ttlSeconds) 方法:
+//ObjectProvider<HotEntryCache> / ObjectProvider<CodeFilter>: 快取與 Bloom filter 都是可選的 bean（app.cache.enabled、app.bloom.enabled），
+// getIfAvailable() 在未啟用時回傳 null，resolve 就略過對應的步驟。
 //
-//冪等性處理: 在開始生成短碼前，我們首先檢查 urlToCode 中是否已存在這個 URL。如果存在，直接回傳對應的短碼，而不做任何操作。這確保了同一個 URL 每次縮短都會得到相同的短碼。
+//ObjectProvider<ClusterNode>: 啟用叢集（app.cluster.enabled）時改用 ClusterNode.routedStore()，
+// 非本機分片的短碼與 URL 會以二進位協定轉送到擁有者節點處理，shorten / resolve 的流程完全不變。
 //
-//碰撞處理: 我們使用 do-while 迴圈來處理短碼碰撞。
+//ObjectProvider<ClickListener>: 所有啟用中的點擊監聽者（ClickCounter、ClickEventLog、CapacityGuard），在建構時轉成陣列，轉址時不必再查詢容器。
 //
-//呼叫 codeGenerator.generate(url, salt) 生成初始短碼。
+//ObjectProvider<CapacityGuard>: 啟用容量上限（app.capacity.enabled）時，新建短碼前先以 tryAdmit 預留一筆空間，
+// claim 結束後在 finally 中 release；已滿且無法及時淘汰出空間時丟出 StoreFullException（507），同一個 URL 已經有短碼時則照常回傳。
 //
-//檢查 codeToEntry 中是否已存在這個短碼。
+//ObjectProvider<ShortenerMetrics>: 記錄 salt 重試次數、碰撞次數與 resolve 的 hit / miss / expired（見 /actuator/prometheus）；
+// 每次只是對建構時就建立好的 Counter 加一，不影響轉址路徑的配置量。
 //
-//如果短碼不存在，代表沒有碰撞，我們跳出迴圈。
+//shorten(String url, Long ttlSeconds) 方法:
 //
-//如果短碼存在，但對應的原始 URL 和當前 URL 相同，這表示我們在極低機率下再次生成了相同的短碼，這時依然是冪等操作，我們直接回傳這個短碼。
+//冪等性與碰撞處理都交給 store.claim(candidate) 一次完成：它以 putIfAbsent 先佔用 URL、再佔用短碼，
+// 每個 Map 只查一次，在高併發下也不會讓同一個 URL 拿到兩個短碼，或讓兩個 URL 搶到同一個短碼。
 //
-//如果短碼存在，且對應的原始 URL 不同，表示發生碰撞。我們將 salt 遞增，重新生成新的短碼，並繼續迴圈。
+//claim 回傳 candidate 本身，代表新建立成功。
+//
+//claim 回傳的 Entry 屬於同一個 URL，代表這個 URL 之前已縮短過（冪等），直接回傳既有資料；若它其實已過期，先 CAS 刪除再重試。
+//
+//claim 回傳的 Entry 屬於其他 URL，表示發生碰撞。我們將 salt 遞增，重新生成新的短碼，並繼續迴圈。
+// CodeGenerator 會隨 store 的筆數與連續碰撞次數加長短碼，這個迴圈平均只需要執行一次多一點。
+//
+//回傳值 ShortenResult 同時帶有 Entry 與「是否新建立」，Controller 不必再呼叫 resolve 讀回資料。
+//
+//shortenAll(...): 批次 API 使用。一整批共用同一個 Instant.now()，並以 Map 的 key 在批次內去除重複的 URL。
 //
 //resolve(String code) 方法:
 //
 //這個方法負責根據短碼查詢原始網址。
 //
-//它首先從 codeToEntry 中查找 Entry 物件。
+//啟用 CodeFilter 時，先以 Bloom filter 排除一定不存在的短碼（大多是機器人猜測的隨機短碼），直接回傳 Optional.empty()。
+//
+//接著從 codeToEntry 中查找 Entry 物件；啟用 HotEntryCache 時改由快取查詢（未命中時快取會自己向 store 讀取）。
 //
 //如果找不到，回傳 Optional.empty()。
 //
-//如果找到了，它會檢查 expiresAt 是否過期。如果已過期，它會從兩個 Map 中移除這個項目，並回傳 Optional.empty()，符合設計書中**「逾期後短碼作廢」**的需求。
\ No newline at end of file
+//如果找到了，它會檢查 expiresAt 是否過期。如果已過期，它會以 CAS（store.remove(entry)）從兩個 Map 中移除這個項目，並回傳 Optional.empty()，符合設計書中**「逾期後短碼作廢」**的需求。
+//
+//成功找到未過期的項目時，通知每個 ClickListener（Spring 的 /r/{code} 與 RedirectServer 都會經過這裡），時間沿用過期檢查的 now。
+//
+//resolve(String code, EntryHolder holder): RedirectServer 使用的版本，流程與 resolve(code) 完全相同，
+// 只是結果寫進呼叫端的 holder、不回傳 Optional；store 是 LongKeyStore 時命中的查詢不建立任何 Entry。
+// 過期時仍向 store 取出真正的 Entry 再做 CAS 刪除，兩種儲存後端的刪除語意都不變。
\ No newline at end of file
@@ -0,0 +1,140 @@
+// ShortenerMetrics 以 Micrometer 記錄短網址核心流程的內部狀態，由 /actuator/prometheus 以 Prometheus 文字格式輸出：
+//
+//   shortener_shorten_salt_retries  : 每次 shorten 的 salt 重試次數（histogram）
+//   shortener_shorten_collisions    : 短碼被其他 URL 佔用的次數
+//   shortener_resolve{result=...}   : resolve 的 hit / miss / expired 次數
+//   shortener_store_codes / _urls   : codeToEntry 與 urlToCode（URL 冪等索引）的筆數
+//   shortener_sweep_duration / _scanned / _removed : TTL 清理的耗時、檢查的短碼數與刪除的筆數
+//   shortener_replication_lag_records / _seconds   : follower 落後 leader 的筆數與時間（只有 follower 才註冊）
+//
+// 所有 meter 在建構時建立好，記錄時只是對既有物件做一次加法，轉址路徑上不配置任何物件。
+
+package com.example.url_shortener.service;
+
+import com.example.url_shortener.cluster.ClusterNode;
+import com.example.url_shortener.replication.ReplicationFollower;
+import com.example.url_shortener.store.ExpiryIndex;
+import com.example.url_shortener.store.UrlStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+@Component
+@ConditionalOnProperty(name = "app.metrics.enabled", havingValue = "true", matchIfMissing = true)
+public class ShortenerMetrics {
+
+    private final DistributionSummary saltRetries;
+    private final Counter collisions;
+    private final Counter resolveHit;
+    private final Counter resolveMiss;
+    private final Counter resolveExpired;
+    private final Timer sweepDuration;
+    private final Counter sweepRemoved;
+
+    public ShortenerMetrics(MeterRegistry registry, UrlStore store, ExpiryIndex expiryIndex,
+                            ObjectProvider<ClusterNode> cluster, ObjectProvider<ReplicationFollower> follower) {
+        ClusterNode clusterNode = cluster.getIfAvailable();
+        // 叢集模式下只計算本機分片
+        UrlStore local = clusterNode != null ? clusterNode.routedStore() : store;
+
+        this.saltRetries = DistributionSummary.builder("shortener.shorten.salt.retries")
+                .description("Salt retries per shorten request")
+                .serviceLevelObjectives(0.5, 1, 2, 3, 4, 8)
+                .register(registry);
+        this.collisions = Counter.builder("shortener.shorten.collisions")
+                .description("Generated codes already taken by a different URL")
+                .register(registry);
+        this.resolveHit = resolveCounter(registry, "hit");
+        this.resolveMiss = resolveCounter(registry, "miss");
+        this.resolveExpired = resolveCounter(registry, "expired");
+
+        Gauge.builder("shortener.store.codes", local, UrlStore::size)
+                .description("Entries in codeToEntry")
+                .strongReference(true)
+                .register(registry);
+        Gauge.builder("shortener.store.urls", local, UrlStore::urlIndexSize)
+                .description("Entries in the urlToCode index")
+                .strongReference(true)
+                .register(registry);
+
+        this.sweepDuration = Timer.builder("shortener.sweep.duration")
+                .description("TTL sweep duration")
+                .register(registry);
+        FunctionCounter.builder("shortener.sweep.scanned", expiryIndex, ExpiryIndex::scannedCount)
+                .description("Codes checked by TTL sweeps")
+                .register(registry);
+        this.sweepRemoved = Counter.builder("shortener.sweep.removed")
+                .description("Expired entries removed by TTL sweeps")
+                .register(registry);
+
+        ReplicationFollower replicationFollower = follower.getIfAvailable();
+        if (replicationFollower != null) {
+            Gauge.builder("shortener.replication.lag.records", replicationFollower, ReplicationFollower::lagRecords)
+                    .description("Log records the follower has not applied yet")
+                    .strongReference(true)
+                    .register(registry);
+            Gauge.builder("shortener.replication.lag", replicationFollower, f -> f.lagMillis() / 1000.0)
+                    .description("Replication lag behind the leader, measured on the leader's clock")
+                    .baseUnit("seconds")
+                    .strongReference(true)
+                    .register(registry);
+        }
+    }
+
+    public void recordShorten(int salt) {
+        saltRetries.record(salt);
+    }
+
+    public void recordCollision() {
+        collisions.increment();
+    }
+
+    public void recordHit() {
+        resolveHit.increment();
+    }
+
+    public void recordMiss() {
+        resolveMiss.increment();
+    }
+
+    public void recordExpired() {
+        resolveExpired.increment();
+    }
+
+    public void recordSweep(long durationNanos, int removed) {
+        sweepDuration.record(durationNanos, TimeUnit.NANOSECONDS);
+        sweepRemoved.increment(removed);
+    }
+
+    private static Counter resolveCounter(MeterRegistry registry, String result) {
+        return Counter.builder("shortener.resolve")
+                .description("Code lookups by outcome")
+                .tag("result", result)
+                .register(registry);
+    }
+}
+
+//程式碼解說：
+//
+//@ConditionalOnProperty: app.metrics.enabled=false 時不建立這個 bean，ShortenService 與 TTLSweeper 透過 ObjectProvider 拿到 null 就不記錄。
+//
+//serviceLevelObjectives(0.5, 1, 2, 3, 4, 8): salt 重試次數的 histogram 邊界（Micrometer 不接受 0，le="0.5" 就是沒有重試的次數）。正常情況幾乎都落在 0；
+// 1 以上的比例接近 app.codes.max-collision-rate，持續出現 4 以上表示短碼空間估計偏低。
+//
+//resolveCounter(...): 三種結果各自一個 Counter，在建構時就把 tag 決定好；每次轉址只呼叫 increment()，
+// 不必以 registry.counter(name, tags) 查表，也不會建立 Tag 陣列。
+//
+//Gauge / FunctionCounter: 抓取 /actuator/prometheus 時才讀取 store.size() 與 ExpiryIndex.scannedCount()，平時不需要維護額外的計數。
+//
+//shortener.replication.lag*: 只在 app.replication.role=follower 時註冊，讀取的就是 /admin/replication 的 lagRecords / lagMillis，
+// 可直接對 lag 設告警；leader 與未啟用複寫的實例不會出現這兩個指標。
+//
+//recordSweep(...): TTLSweeper 每次清理呼叫一次；scanned 與 removed 的差距代表到期桶中已失效的短碼。
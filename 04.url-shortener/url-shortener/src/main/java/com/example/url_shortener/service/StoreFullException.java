@@ -0,0 +1,20 @@
+// StoreFullException 表示 store 已達到容量上限（CapacityGuard），無法再建立新的短碼。
+// 對 HTTP 呼叫端而言對應到 507 Insufficient Storage；淘汰政策不是 reject 時，稍後重試通常就會成功。
+
+package com.example.url_shortener.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.INSUFFICIENT_STORAGE, reason = "E5071_STORE_FULL")
+public class StoreFullException extends RuntimeException {
+
+    public StoreFullException(String message) {
+        super(message);
+    }
+}
+
+//程式碼解說：
+//
+//@ResponseStatus(reason = "E5071_STORE_FULL"): 與 ShardUnavailableException 相同，例外傳到 Controller 之外時由 Spring 直接回應 507，
+// 錯誤碼沿用專案 E<狀態碼><序號> 的格式。
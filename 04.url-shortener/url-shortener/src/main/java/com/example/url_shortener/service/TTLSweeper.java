@@ -1,50 +1,54 @@
 package com.example.url_shortener.service;
 
-import com.example.url_shortener.model.Entry;
-import com.example.url_shortener.store.InMemoryStore;
+import com.example.url_shortener.store.CodeFilter;
+import com.example.url_shortener.store.ExpiryIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.time.Instant;
-import java.util.Iterator;
-import java.util.Map;
 
 @Component
 public class TTLSweeper {
 
     private static final Logger logger = LoggerFactory.getLogger(TTLSweeper.class);
-    private final InMemoryStore store;
+    private final ExpiryIndex expiryIndex;
+    private final CodeFilter codeFilter; // app.bloom.enabled=false 時為 null
+    private final ShortenerMetrics metrics; // app.metrics.enabled=false 時為 null
 
     @Value("${app.sweep-interval-seconds:60}")
     private long sweepIntervalSeconds;
 
-    public TTLSweeper(InMemoryStore store) {
-        this.store = store;
+    public TTLSweeper(ExpiryIndex expiryIndex, ObjectProvider<CodeFilter> codeFilter,
+                      ObjectProvider<ShortenerMetrics> metrics) {
+        this.expiryIndex = expiryIndex;
+        this.codeFilter = codeFilter.getIfAvailable();
+        this.metrics = metrics.getIfAvailable();
     }
 
     @Scheduled(fixedRateString = "${app.sweep-interval-seconds:60}000")
     public void cleanupExpiredEntries() {
         logger.info("Starting TTL sweep to remove expired entries.");
         Instant now = Instant.now();
-        int removedCount = 0;
+        long start = System.nanoTime();
+        long scannedBefore = expiryIndex.scannedCount();
 
-        // 迭代 codeToEntry 並刪除過期項目
-        Iterator<Map.Entry<String, Entry>> iterator = store.getCodeToEntry().entrySet().iterator();
-        while (iterator.hasNext()) {
-            Map.Entry<String, Entry> mapEntry = iterator.next();
-            Entry entry = mapEntry.getValue();
+        // 只處理已到期的時間桶，不再走訪整個 store
+        int removedCount = expiryIndex.removeExpired(now);
+        long durationNanos = System.nanoTime() - start;
+        if (metrics != null) {
+            metrics.recordSweep(durationNanos, removedCount);
+        }
+        logger.info("TTL sweep completed. Removed {} of {} scanned entries in {} ms.", removedCount,
+                expiryIndex.scannedCount() - scannedBefore, durationNanos / 1_000_000);
 
-            // 檢查是否已過期
-            if (entry.getExpiresAt() != null && entry.getExpiresAt().isBefore(now)) {
-                // 找到過期項目，從 codeToEntry 和 urlToCode 兩個 Map 中移除
-                store.remove(entry.getUrl(), entry.getCode());
-                removedCount++;
-            }
+        // Bloom filter 估計的誤判率變差（飽和或筆數成長）時才重建；重建要走訪整個 store
+        if (codeFilter != null) {
+            codeFilter.rebuildIfDegraded();
         }
-        logger.info("TTL sweep completed. Removed {} expired entries.", removedCount);
     }
 }
 
@@ -64,10 +68,14 @@ public class TTLSweeper {
 //
 //Instant.now(): 取得當前 UTC 時間，用於比對是否過期。
 //
-//Iterator: 我們使用 Iterator 來安全地遍歷 ConcurrentHashMap，並在遍歷過程中移除元素，這比傳統的 for 迴圈更安全，能避免 ConcurrentModificationException 錯誤。
+//expiryIndex.removeExpired(now): ExpiryIndex 在每次寫入時就把短碼依到期時間分桶，
+// 這裡只取出已經過期的桶並刪除其中的項目（同時清掉 codeToEntry 與 urlToCode），
+// 因此清理成本只和實際過期的數量有關，不會隨著 store 變大而變慢。
 //
-//entry.getExpiresAt().isBefore(now): 檢查短碼的到期時間是否早於當前時間。
+//metrics.recordSweep(...): 清理的耗時與刪除筆數輸出為 shortener_sweep_duration / shortener_sweep_removed，
+// 檢查過的短碼數（shortener_sweep_scanned）由 ExpiryIndex 自己累計。
 //
-//store.remove(...): 如果過期，呼叫 InMemoryStore 的 remove 方法來清理資料。我們傳入 url 和 code，確保兩個 Map 中的資料都能被同步刪除。
+//codeFilter.rebuildIfDegraded(): 啟用 Bloom filter 時，清理完檢查 filter 估計的誤判率（O(1)），
+// 超過目標值的 app.bloom.rebuild-factor 倍才依 store 目前的內容重建，不會讓每次清理都走訪整個 store。
 //
 //logger.info(...): 使用日誌記錄清理任務的開始和結束，這有助於我們觀察應用程式的行為。
\ No newline at end of file
@@ -0,0 +1,39 @@
+// AbstractUrlStore 集中處理 StoreListener 的註冊與通知，
+// InMemoryStore 與 LongKeyStore 在資料真正異動後、仍持有 URL 的索引鎖時呼叫 fireSaved / fireRemoved，
+// 解鎖後再呼叫 fireAfterWrite。
+
+package com.example.url_shortener.store;
+
+import com.example.url_shortener.model.Entry;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public abstract class AbstractUrlStore implements UrlStore {
+
+    // 監聽者很少變動、卻在每次寫入時都要走訪，所以使用 CopyOnWriteArrayList
+    private final List<StoreListener> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void addListener(StoreListener listener) {
+        listeners.add(listener);
+    }
+
+    protected void fireSaved(Entry entry) {
+        for (StoreListener listener : listeners) {
+            listener.onSave(entry);
+        }
+    }
+
+    protected void fireRemoved(String url, String code) {
+        for (StoreListener listener : listeners) {
+            listener.onRemove(url, code);
+        }
+    }
+
+    protected void fireAfterWrite() {
+        for (StoreListener listener : listeners) {
+            listener.afterWrite();
+        }
+    }
+}
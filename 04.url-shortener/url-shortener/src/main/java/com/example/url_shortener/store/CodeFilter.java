@@ -0,0 +1,140 @@
+// CodeFilter 以 counting Bloom filter 記錄目前存在的短碼（app.bloom.enabled=true 時啟用）。
+//
+// 大量的 /r/{code} 流量其實是機器人在猜隨機短碼。resolve 先詢問 CodeFilter：
+// 回答「一定不存在」時直接回傳 404，不必查詢快取或 store。
+//
+// filter 透過 StoreListener 與 store 同步（save → add、remove → remove）。
+// TTL 清理後檢查 filter 估計的誤判率，超過目標值的 app.bloom.rebuild-factor 倍時才依 store 目前的筆數重建：
+// 重建要走訪整個 store，不能每次清理都做。重建期間新的 save 同時寫入新舊兩個 filter（double write），
+// 完成後才切換，因此任何時間點都不會把存在的短碼誤判為不存在。
+
+package com.example.url_shortener.store;
+
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.util.CountingBloomFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+@ConditionalOnProperty(name = "app.bloom.enabled", havingValue = "true")
+public class CodeFilter implements StoreListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(CodeFilter.class);
+
+    private final UrlStore store;
+    private final long expectedEntries;
+    private final double falsePositiveRate;
+    private final double rebuildFactor;
+
+    private volatile CountingBloomFilter current;
+    // 重建中的新 filter，沒有在重建時為 null
+    private volatile CountingBloomFilter rebuilding;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+
+    public CodeFilter(UrlStore store,
+                      @Value("${app.bloom.expected-entries:1000000}") long expectedEntries,
+                      @Value("${app.bloom.false-positive-rate:0.01}") double falsePositiveRate,
+                      @Value("${app.bloom.rebuild-factor:2.0}") double rebuildFactor) {
+        if (rebuildFactor < 1.0) {
+            throw new IllegalArgumentException("app.bloom.rebuild-factor must be >= 1.0");
+        }
+        this.store = store;
+        this.expectedEntries = expectedEntries;
+        this.falsePositiveRate = falsePositiveRate;
+        this.rebuildFactor = rebuildFactor;
+        this.current = new CountingBloomFilter(expectedEntries, falsePositiveRate);
+        store.addListener(this);
+    }
+
+    // false 代表短碼一定不存在
+    public boolean mightContain(String code) {
+        if (current.mightContain(code)) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    @Override
+    public void onSave(Entry entry) {
+        // 先讀 rebuilding 再讀 current：若重建剛好完成，讀到的 current 已經是新的 filter
+        CountingBloomFilter next = rebuilding;
+        CountingBloomFilter active = current;
+        active.add(entry.getCode());
+        if (next != null && next != active) {
+            next.add(entry.getCode());
+        }
+    }
+
+    @Override
+    public void onRemove(String url, String code) {
+        // 重建中的 filter 不處理 remove：它可能還沒加入這個短碼，多留一筆只會增加誤判，不會漏判
+        current.remove(code);
+    }
+
+    // 估計的誤判率超過目標值的 rebuildFactor 倍時重建，回傳是否重建。由 TTLSweeper 在每次清理後呼叫，檢查本身是 O(1)
+    public boolean rebuildIfDegraded() {
+        if (estimatedFalsePositiveRate() <= falsePositiveRate * rebuildFactor) {
+            return false;
+        }
+        rebuild();
+        return true;
+    }
+
+    // 依 store 目前的內容重建 filter，清掉飽和的計數器並依筆數調整大小
+    public synchronized void rebuild() {
+        long started = System.nanoTime();
+        CountingBloomFilter next = new CountingBloomFilter(
+                Math.max(expectedEntries, store.size() * 2L), falsePositiveRate);
+        rebuilding = next;
+        store.forEach(entry -> next.add(entry.getCode()));
+        current = next;
+        rebuilding = null;
+        rebuilds.increment();
+        logger.info("Rebuilt code filter with {} counters in {} ms", next.counterCount(),
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // 被 filter 直接判定為不存在的查詢次數
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    public long rebuildCount() {
+        return rebuilds.sum();
+    }
+
+    public long counterCount() {
+        return current.counterCount();
+    }
+
+    public int hashCount() {
+        return current.hashCount();
+    }
+
+    public double estimatedFalsePositiveRate() {
+        return current.estimatedFalsePositiveRate();
+    }
+}
+
+//程式碼解說：
+//
+//onSave / onRemove: 由 store 在每次寫入、刪除後呼叫，filter 與 store 同步更新。
+//
+//rebuild(): 計數器一旦飽和就不再減少，長時間運作後誤判率會慢慢上升；重建可以把 filter 恢復到乾淨的狀態，
+// 並依 store 實際筆數（至少 app.bloom.expected-entries）重新決定大小。
+//
+//rebuildIfDegraded(): 重建是 O(store) 的走訪，只在誤判率真的變差時才值得做。刪除會讓計數器歸 0，
+// 單純的 TTL 清理不會讓估計值上升；需要重建的是飽和、重建期間漏掉的刪除，以及筆數成長超過 filter 的大小。
+//
+//rebuilding: 重建時 store 仍持續寫入。新的 save 同時寫入新舊 filter，而走訪 store 會補上重建前就存在的短碼，
+// 因此切換到新 filter 時不會漏掉任何短碼；重建期間被刪除的短碼最多只是多留到下一次重建。
+//
+//rejected: 直接被擋下、不需要查詢 store 的請求數，可以用來觀察掃描流量的規模。
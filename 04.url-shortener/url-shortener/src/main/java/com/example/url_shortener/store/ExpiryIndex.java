@@ -0,0 +1,214 @@
+// ExpiryIndex 依到期時間把短碼分進固定寬度的時間桶（bucketed expiry queue）。
+//
+// 每次 save 時（透過 StoreListener）把短碼放進它到期的那個桶；
+// TTLSweeper 清理時只需要取出「已經整個過期」的桶，逐一刪除裡面的短碼，
+// 不再走訪整個 store。清理成本因此只和實際到期的數量有關，和 store 的大小無關。
+// 桶內存放的是 Base62.toKey 打包的 long（每筆 8 bytes），不為每個會過期的項目多留一個 String。
+
+package com.example.url_shortener.store;
+
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.util.Base62;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+public class ExpiryIndex implements StoreListener {
+
+    private final UrlStore store;
+    private final long bucketSeconds;
+
+    // 桶編號（到期秒數 / bucketSeconds）-> 該時間區間內到期的短碼
+    private final ConcurrentNavigableMap<Long, Bucket> buckets = new ConcurrentSkipListMap<>();
+
+    // removeExpired 檢查過的短碼總數（包含已被刪除或重新存入而略過的）
+    private final LongAdder scanned = new LongAdder();
+
+    public ExpiryIndex(UrlStore store, @Value("${app.expiry.bucket-seconds:10}") long bucketSeconds) {
+        this.store = store;
+        this.bucketSeconds = bucketSeconds;
+        store.addListener(this);
+    }
+
+    @Override
+    public void onSave(Entry entry) {
+        if (entry.getExpiresAt() == null) {
+            return; // 永不過期的項目不需要索引
+        }
+        add(Math.floorDiv(entry.getExpiresAtEpochSecond(), bucketSeconds), entry.getCode());
+    }
+
+    @Override
+    public void onRemove(String url, String code) {
+        // 不主動從桶中移除：清理時查不到項目就直接略過，省下刪除時的搜尋成本
+    }
+
+    // 移除所有在 now 之前到期的項目，回傳實際刪除的數量
+    public int removeExpired(Instant now) {
+        long nowSecond = now.getEpochSecond();
+        int removed = 0;
+        while (true) {
+            Map.Entry<Long, Bucket> first = buckets.firstEntry();
+            // 桶的結束時間 <= now，代表桶內每一個項目都已過期
+            if (first == null || (first.getKey() + 1) * bucketSeconds > nowSecond) {
+                break;
+            }
+            buckets.remove(first.getKey(), first.getValue());
+            String[] codes = first.getValue().close();
+            scanned.add(codes.length);
+            for (String code : codes) {
+                Entry entry = store.getEntry(code);
+                // 項目可能已被刪除，或以新的到期時間重新存入（會出現在別的桶），這兩種情況都略過；
+                // CAS 刪除失敗代表資料剛被改寫，新的資料已經由 onSave 放進它自己的桶
+                if (entry != null && entry.isExpired(now) && store.remove(entry)) {
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    // 容量上限的淘汰（CapacityGuard，soonest-expiry）：從最早到期的桶開始刪除最多 max 筆尚未過期的項目，回傳實際刪除的數量。
+    // 每次只從桶中取出需要的數量，桶很大時也不會一次刪除整個桶。
+    public int evictSoonest(int max) {
+        int evicted = 0;
+        while (evicted < max) {
+            Map.Entry<Long, Bucket> first = buckets.firstEntry();
+            if (first == null) {
+                break;
+            }
+            String[] codes = first.getValue().poll(max - evicted);
+            if (codes.length == 0) {
+                // 桶已經空了（或正被清理執行緒關閉）：關閉後移除，之後的寫入會建立新的桶
+                first.getValue().close();
+                buckets.remove(first.getKey(), first.getValue());
+                continue;
+            }
+            int failed = 0;
+            for (String code : codes) {
+                Entry entry = store.getEntry(code);
+                // 已刪除，或以新的到期時間重新存入（屬於別的桶，留給那個桶處理）：不需要留在這個桶
+                if (entry == null || entry.getExpiresAt() == null
+                        || Math.floorDiv(entry.getExpiresAtEpochSecond(), bucketSeconds) != first.getKey()) {
+                    continue;
+                }
+                if (store.remove(entry)) {
+                    evicted++;
+                } else {
+                    // CAS 失敗（資料剛被改寫）：短碼仍在 store 中，放回桶裡，之後的淘汰與 TTL 清理才找得到它
+                    add(first.getKey(), code);
+                    failed++;
+                }
+            }
+            if (failed == codes.length) {
+                // 這一批全部刪不掉：放回的短碼會被下一次 poll 立刻取出，先停下來留給下一輪淘汰
+                break;
+            }
+        }
+        return evicted;
+    }
+
+    // 把短碼放進桶；桶可能剛好被清理執行緒關閉，此時重新取得（建立）一個新的桶
+    private void add(long bucketId, String code) {
+        while (!buckets.computeIfAbsent(bucketId, id -> new Bucket()).add(code)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    public long scannedCount() {
+        return scanned.sum();
+    }
+
+    // 目前仍在索引中的桶數量
+    public int bucketCount() {
+        return buckets.size();
+    }
+
+    private static final class Bucket {
+        private long[] keys = new long[8];
+        private int size;
+        // 無法打包成 long 的短碼（非 Base62 或超過 Base62.MAX_KEY_LENGTH）；CodeGenerator 產生的短碼不會用到
+        private List<String> unpacked;
+        private boolean closed;
+
+        synchronized boolean add(String code) {
+            if (closed) {
+                return false;
+            }
+            long key = Base62.toKey(code);
+            if (key == 0) {
+                if (unpacked == null) {
+                    unpacked = new ArrayList<>();
+                }
+                unpacked.add(code);
+                return true;
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            keys[size++] = key;
+            return true;
+        }
+
+        // 取出最多 max 個短碼（桶保持開啟）；已關閉的桶由清理執行緒負責，回傳空陣列
+        synchronized String[] poll(int max) {
+            if (closed) {
+                return new String[0];
+            }
+            int fromUnpacked = unpacked == null ? 0 : Math.min(max, unpacked.size());
+            int fromKeys = Math.min(max - fromUnpacked, size);
+            String[] polled = new String[fromUnpacked + fromKeys];
+            for (int i = 0; i < fromUnpacked; i++) {
+                polled[i] = unpacked.remove(unpacked.size() - 1);
+            }
+            for (int i = fromUnpacked; i < polled.length; i++) {
+                polled[i] = Base62.fromKey(keys[--size]);
+            }
+            return polled;
+        }
+
+        // 關閉後不再接受新的短碼，回傳桶內所有短碼
+        synchronized String[] close() {
+            closed = true;
+            int extra = unpacked == null ? 0 : unpacked.size();
+            String[] codes = new String[size + extra];
+            for (int i = 0; i < size; i++) {
+                codes[i] = Base62.fromKey(keys[i]);
+            }
+            for (int i = 0; i < extra; i++) {
+                codes[size + i] = unpacked.get(i);
+            }
+            return codes;
+        }
+    }
+}
+
+//程式碼解說：
+//
+//bucketId: 以 app.expiry.bucket-seconds（預設 10 秒）為寬度把到期時間分桶。
+// 只有「桶的結束時間」已經過去的桶才會被清理，因此桶內的項目保證都已過期。
+//
+//ConcurrentSkipListMap: 依桶編號排序，firstEntry() 就是最早到期的桶，清理時從頭開始取直到遇到未來的桶。
+//
+//Bucket: 用可成長的 long[] 存放打包後的短碼，比每筆一個 String（加上它的 byte[]）或佇列節點省記憶體；
+// 只有取出（清理、淘汰）時才以 Base62.fromKey 還原成 String，而且只還原這一次要處理的部分。
+// close() 之後新的寫入會自動改放到新的桶，避免遺失。
+//
+//onRemove(...): 仍然不從桶中移除。桶只知道短碼、不知道它屬於哪個桶，刪除時找出它要多一份 短碼 -> 桶 的索引，
+// 比留下一個 8 bytes 的 key 到桶過期更貴；清理時查不到的短碼計入 scanned 後略過。
+//
+//removeExpired(...): 逐一確認桶內短碼目前的狀態，只刪除真正過期的項目。
+// scanned 與刪除數的差距就是桶內已失效的短碼（被刪除或以新的到期時間重新存入），差距很大時可以考慮調整 bucket-seconds。
+//
+//evictSoonest(...): store 達到容量上限時由 CapacityGuard 呼叫，同樣從最早的桶開始，但不要求已過期；
+// 每次只 poll 出一小批短碼，淘汰是漸進的，不會為了騰出空間一次刪除大量資料。
+// poll 會把短碼移出桶，CAS 刪除失敗而仍在 store 中的短碼要放回去，否則它再也不會被淘汰或被 TTL 清理。
@@ -0,0 +1,83 @@
+// FrequencySketch 是 HotEntryCache 的存取頻率估計器（Count-Min Sketch，4-bit 計數器）。
+//
+// 每個 long 存 16 個 4-bit 計數器，每個 key 對應 4 個計數器，估計值取其中的最小值。
+// 累計的存取次數達到 sampleSize 時把所有計數器減半（aging），讓過去的熱門項目逐漸退場。
+// 記憶體用量與快取容量成正比（約每個項目 8 bytes），與實際看過多少不同的 key 無關。
+
+package com.example.url_shortener.store;
+
+final class FrequencySketch {
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int maximumSize) {
+        int length = Integer.highestOneBit(Math.max(64, maximumSize) - 1) << 1;
+        this.table = new long[length];
+        this.tableMask = length - 1;
+        this.sampleSize = 10 * Math.max(64, maximumSize);
+    }
+
+    // 4 個計數器都 +1（已達上限 15 的不變）。
+    // 為了不在熱路徑上加鎖，並行的遞增可能互相覆蓋而少算幾次，對頻率估計來說可以接受。
+    void increment(int hash) {
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int index = indexOf(hash, i);
+            int offset = offsetOf(hash, i);
+            long word = table[index];
+            if (((word >>> offset) & 0xfL) != 0xfL) {
+                table[index] = word + (1L << offset);
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    int frequency(int hash) {
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int count = (int) ((table[indexOf(hash, i)] >>> offsetOf(hash, i)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    // 所有計數器減半
+    private void reset() {
+        additions = 0;
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+    }
+
+    private long mix(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        return h ^ (h >>> 32);
+    }
+
+    private int indexOf(int hash, int i) {
+        return (int) mix(hash, i) & tableMask;
+    }
+
+    // 計數器在 long 中的位移（0, 4, ..., 60）
+    private int offsetOf(int hash, int i) {
+        return (int) (mix(hash, i) >>> 60) << 2;
+    }
+}
+
+//程式碼解說：
+//
+//increment(hash) / frequency(hash): Count-Min Sketch 的標準操作。碰撞只會讓估計值偏高，取 4 個計數器的最小值可以降低誤差。
+//
+//4-bit 計數器: TinyLFU 只需要比較「誰比較常被存取」，上限 15 已經足夠區分熱門與冷門項目。
+//
+//reset(): aging。每累積 sampleSize 次存取就把計數器全部減半，昨天的熱門連結不會永遠佔住快取。
@@ -0,0 +1,231 @@
+// HotEntryCache 是位於 ShortenService.resolve 與 UrlStore 之間的熱門項目快取（app.cache.enabled=true 時啟用）。
+//
+// 當 store 換成較慢的儲存層（off-heap、持久化或遠端）時，熱門的短碼仍應該由一個小而快的 on-heap 快取提供。
+//   - 查詢：ConcurrentHashMap 直接命中，命中時只設定一個 referenced 旗標，不需要加鎖；
+//   - 未命中：read-through 向 store 讀取，再交給 TinyLFU 的准入規則決定是否放入快取；
+//   - 淘汰：以 CLOCK 選出最近沒被存取的項目作為 victim，只有新項目的存取頻率比 victim 高時才會取代它。
+// 因此爆紅的連結會一直留在快取中，而一次性的大量掃描（每個短碼只出現一次）幾乎無法擠掉它們。
+//
+// 快取透過 StoreListener 與 store 保持一致：任何 save / remove 都會讓對應的短碼失效。
+
+package com.example.url_shortener.store;
+
+import com.example.url_shortener.model.Entry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+@ConditionalOnProperty(name = "app.cache.enabled", havingValue = "true")
+public class HotEntryCache implements StoreListener {
+
+    private static final int STAMP_STRIPES = 64;
+
+    private final UrlStore store;
+    private final int capacity;
+    private final FrequencySketch sketch;
+    private final ConcurrentHashMap<String, Node> nodes;
+
+    // 每個 stripe 的失效次數。讀取 store 前先記下，放入快取後再比對，避免把讀取期間已被刪除或覆寫的舊資料放進快取
+    private final AtomicLongArray stamps = new AtomicLongArray(STAMP_STRIPES);
+
+    // CLOCK 的環狀槽位，以下欄位由 this 的 monitor 保護
+    private final Node[] slots;
+    private int hand;
+    private int size;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    public HotEntryCache(UrlStore store, @Value("${app.cache.max-entries:10000}") int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("app.cache.max-entries must be positive");
+        }
+        this.store = store;
+        this.capacity = capacity;
+        this.sketch = new FrequencySketch(capacity);
+        this.nodes = new ConcurrentHashMap<>(capacity * 2);
+        this.slots = new Node[capacity];
+        store.addListener(this);
+    }
+
+    // 依短碼查詢，未命中時從 store 讀取（read-through）；找不到回傳 null
+    public Entry get(String code) {
+        int hash = code.hashCode();
+        sketch.increment(hash);
+
+        Node node = nodes.get(code);
+        if (node != null) {
+            if (!isExpired(node.entry, Instant.now())) {
+                if (!node.referenced) {
+                    node.referenced = true;
+                }
+                hits.increment();
+                return node.entry;
+            }
+            // 已過期的項目不再由快取提供
+            invalidate(code);
+        }
+
+        misses.increment();
+        long stamp = stamps.get(stripe(hash));
+        Entry entry = store.getEntry(code);
+        if (entry != null && !isExpired(entry, Instant.now())) {
+            admit(entry, hash, stamp);
+        }
+        return entry;
+    }
+
+    @Override
+    public void onSave(Entry entry) {
+        invalidate(entry.getCode());
+    }
+
+    @Override
+    public void onRemove(String url, String code) {
+        invalidate(code);
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    // 因為存取頻率不夠高而沒有被放入快取的次數
+    public long rejectionCount() {
+        return rejections.sum();
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    private void admit(Entry entry, int hash, long stamp) {
+        String code = entry.getCode();
+        Node candidate = new Node(entry);
+        synchronized (this) {
+            if (nodes.containsKey(code)) {
+                return;
+            }
+            int slot;
+            if (size < capacity) {
+                slot = nextFreeSlot();
+            } else {
+                Node victim = nextVictim();
+                // TinyLFU 准入：新項目必須比 victim 更常被存取；已過期的 victim 一律可以被取代
+                if (!isExpired(victim.entry, Instant.now())
+                        && sketch.frequency(hash) <= sketch.frequency(victim.entry.getCode().hashCode())) {
+                    rejections.increment();
+                    return;
+                }
+                nodes.remove(victim.entry.getCode(), victim);
+                removeFromSlot(victim);
+                evictions.increment();
+                slot = victim.slot;
+            }
+            candidate.slot = slot;
+            slots[slot] = candidate;
+            size++;
+            nodes.put(code, candidate);
+        }
+        // 讀取 store 之後若這個短碼被 save / remove 過，放入的可能是舊資料，直接撤回
+        if (stamps.get(stripe(hash)) != stamp) {
+            invalidate(code);
+        }
+    }
+
+    private void invalidate(String code) {
+        int hash = code.hashCode();
+        stamps.incrementAndGet(stripe(hash));
+        Node node = nodes.remove(code);
+        if (node != null) {
+            synchronized (this) {
+                removeFromSlot(node);
+            }
+        }
+    }
+
+    // 只在持有 this 的 monitor 時呼叫
+    private void removeFromSlot(Node node) {
+        if (node.slot >= 0 && slots[node.slot] == node) {
+            slots[node.slot] = null;
+            size--;
+        }
+    }
+
+    // 只在持有 this 的 monitor 且 size < capacity 時呼叫
+    private int nextFreeSlot() {
+        while (slots[hand] != null) {
+            hand = (hand + 1) % capacity;
+        }
+        return hand;
+    }
+
+    // CLOCK：略過並清除 referenced 的項目，回傳第一個最近沒被存取（或已過期）的項目。只在快取已滿時呼叫
+    private Node nextVictim() {
+        Instant now = Instant.now();
+        while (true) {
+            Node node = slots[hand];
+            hand = (hand + 1) % capacity;
+            if (node == null) {
+                continue;
+            }
+            if (node.referenced && !isExpired(node.entry, now)) {
+                node.referenced = false;
+                continue;
+            }
+            return node;
+        }
+    }
+
+    private static int stripe(int hash) {
+        return (hash ^ (hash >>> 16)) & (STAMP_STRIPES - 1);
+    }
+
+    private static boolean isExpired(Entry entry, Instant now) {
+        return entry.isExpired(now);
+    }
+
+    private static final class Node {
+        final Entry entry;
+        volatile boolean referenced;
+        int slot = -1; // 由 HotEntryCache 的 monitor 保護
+
+        Node(Entry entry) {
+            this.entry = entry;
+        }
+    }
+}
+
+//程式碼解說：
+//
+//get(code): 命中時只做一次 ConcurrentHashMap 查詢與一次旗標寫入（已經是 true 就不寫，避免多核心之間來回搶同一條 cache line）。
+// 不論命中與否都會更新 FrequencySketch，未出現在快取中的短碼也會累積頻率。
+//
+//admit(...): 快取未滿時直接放入；已滿時以 CLOCK 找出 victim，再用 FrequencySketch 比較兩者的頻率（TinyLFU 准入）。
+// 一次性掃描的短碼頻率只有 1，通常比不過 victim，於是被拒絕（rejections），熱門項目不會被沖掉。
+//
+//stamps: 以短碼雜湊分成 64 個 stripe 的失效計數器。讀取 store 與放入快取之間若發生 save / remove，
+// 計數器會改變，admit 之後的檢查會把可能過時的項目撤回。
+//
+//isExpired(...): 快取項目依各自 Entry 的 expiresAt 到期；過期的項目不會被回傳，而且在 CLOCK 淘汰時優先被取代。
+//
+//hits / misses / evictions / rejections: 以 LongAdder 累計，多執行緒同時遞增也不會互相競爭，由 AdminController 對外提供。
@@ -3,40 +3,127 @@
 //codeToEntry: 儲存短碼與 Entry 物件的對應關係。
 //
 //urlToCode: 儲存原始網址與其對應短碼的關係，這對於處理冪等（Idempotency）非常重要
+//（以 URL 指紋為鍵的 UrlFingerprintIndex，URL 本身只存在 Entry 中）
 
 package com.example.url_shortener.store;
 
 import com.example.url_shortener.model.Entry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
 
 @Component
-public class InMemoryStore {
+@ConditionalOnProperty(name = "app.store.type", havingValue = "map", matchIfMissing = true)
+public class InMemoryStore extends AbstractUrlStore {
 
     // 儲存短碼 -> 完整 Entry 物件
     private final ConcurrentMap<String, Entry> codeToEntry = new ConcurrentHashMap<>();
 
-    // 儲存原始 URL -> 短碼 (用於快速查找與處理冪等性)
-    private final ConcurrentMap<String, String> urlToCode = new ConcurrentHashMap<>();
+    // 儲存原始 URL 指紋 -> 短碼 (用於快速查找與處理冪等性)
+    private final UrlFingerprintIndex urlToCode = new UrlFingerprintIndex(codeToEntry::get);
 
+    @Override
     public void save(String url, String code, Entry entry) {
-        urlToCode.put(url, code);
-        codeToEntry.put(code, entry);
+        urlToCode.put(url, code, () -> {
+            Entry previous = codeToEntry.put(code, entry);
+            if (previous != null) {
+                // 覆寫既有短碼：監聽者先看到舊資料被刪除，筆數、URL 長度與 Bloom filter 的計數才不會重複累加
+                fireRemoved(previous.getUrl(), code);
+            }
+            fireSaved(entry);
+        }, replaced -> {
+            // URL 改指向新的短碼：舊短碼的資料一併刪除，不留下沒有索引的資料
+            Entry old = codeToEntry.get(replaced);
+            if (old != null && old.hasUrl(url) && codeToEntry.remove(replaced, old)) {
+                fireRemoved(url, replaced);
+            }
+        });
+        fireAfterWrite();
     }
 
+    @Override
     public String getCode(String url) {
-        return urlToCode.get(url);
+        Entry entry = urlToCode.find(url);
+        return entry != null ? entry.getCode() : null;
     }
 
+    @Override
     public Entry getEntry(String code) {
         return codeToEntry.get(code);
     }
 
+    @Override
     public void remove(String url, String code) {
-        urlToCode.remove(url, code);
-        codeToEntry.remove(code);
+        boolean removed = urlToCode.remove(url, code, () -> {
+            // 只刪除仍屬於這個 URL 的短碼：短碼可能已被刪除後改由其他 URL 使用
+            Entry current = codeToEntry.get(code);
+            if (current == null || !current.hasUrl(url) || !codeToEntry.remove(code, current)) {
+                return false;
+            }
+            fireRemoved(url, code);
+            return true;
+        });
+        if (removed) {
+            fireAfterWrite();
+        }
+    }
+
+    @Override
+    public Entry claim(Entry candidate) {
+        String code = candidate.getCode();
+        // 在 URL 的索引鎖內：同一個 URL 已有短碼就回傳它，否則佔用短碼（碰撞時回傳佔用者，讓呼叫端換短碼）
+        Entry existing = urlToCode.claim(candidate.getUrl(), code, () -> {
+            Entry occupant = codeToEntry.putIfAbsent(code, candidate);
+            if (occupant == null) {
+                fireSaved(candidate);
+            }
+            return occupant;
+        });
+        if (existing != null) {
+            return existing;
+        }
+        fireAfterWrite();
+        return candidate;
+    }
+
+    @Override
+    public boolean remove(Entry expected) {
+        String url = expected.getUrl();
+        String code = expected.getCode();
+        boolean removed = urlToCode.remove(url, code, () -> {
+            if (!codeToEntry.remove(code, expected)) {
+                return false;
+            }
+            fireRemoved(url, code);
+            return true;
+        });
+        if (removed) {
+            fireAfterWrite();
+        }
+        return removed;
+    }
+
+    @Override
+    public void forEach(Consumer<Entry> action) {
+        codeToEntry.values().forEach(action);
+    }
+
+    @Override
+    public long scan(long cursor, int count, Consumer<Entry> action) {
+        return urlToCode.scan(cursor, count, action);
+    }
+
+    @Override
+    public int size() {
+        return codeToEntry.size();
+    }
+
+    @Override
+    public int urlIndexSize() {
+        return urlToCode.size();
     }
 
     public ConcurrentMap<String, Entry> getCodeToEntry() {
@@ -48,15 +135,30 @@ public class InMemoryStore {
 //
 //@Component: 和 CodeGenerator 一樣，這標示它是一個 Spring 元件，讓 Spring 容器可以管理它。
 //
+//@ConditionalOnProperty: 只有在 app.store.type=map（或沒有設定）時才建立這個元件，這是預設的儲存後端。
+//
 //ConcurrentHashMap: 這是一種執行緒安全的 Map 實作。它允許在高併發的環境下，
 // 同時有多個執行緒進行讀寫操作，而不需要額外的鎖定，這對於我們的應用程式效能至關重要。
 //
-//codeToEntry 和 urlToCode: 兩個 final 的 ConcurrentMap 物件，它們將在 InMemoryStore 實例化時被建立。
+//codeToEntry 和 urlToCode: codeToEntry 是 final 的 ConcurrentMap；urlToCode 是 UrlFingerprintIndex，
+// 只記錄 URL 指紋與打包後的短碼（每筆 16 bytes），比對 URL 時向 codeToEntry 取出 Entry，URL 不必再存一份當鍵。
 //
-//save(url, code, entry): 這個方法將新的短網址資料同時存入兩個 Map 中，確保資料的一致性。
+//save(url, code, entry): 在 URL 的索引鎖內寫入 codeToEntry 並更新索引，確保資料的一致性；
+// 同一個 URL 原本的短碼（若不同）會在同一把鎖內刪除，每個 URL 只對應一筆資料；
+// 覆寫既有短碼時先對舊資料呼叫 fireRemoved 再 fireSaved，監聽者維護的計數不會因為覆寫而越加越多。
 //
-//getCode(url): 透過原始網址快速查詢對應的短碼。這對於處理冪等性（相同網址重複縮短時，回傳相同短碼）非常有效率。
+//getCode(url): 透過原始網址的指紋查詢對應的短碼並驗證 URL。這對於處理冪等性（相同網址重複縮短時，回傳相同短碼）非常有效率。
 //
 //getEntry(code): 透過短碼查詢完整的 Entry 物件，用於轉址時獲取原始網址和檢查有效期限。
 //
-//remove(url, code): 刪除過期或無效的資料
\ No newline at end of file
+//remove(url, code): 刪除過期或無效的資料；短碼目前若屬於別的 URL（刪除後被重新使用）就不刪。
+//
+//fireSaved / fireRemoved: 在 URL 的索引鎖內通知監聽者，同一個 URL 的異動寫進 journal / 複寫 log 的順序與實際發生的順序相同；
+// fireAfterWrite 則在解鎖後呼叫，讓 journal 在鎖外等待 fsync。
+//
+//scan(...): ConcurrentHashMap 沒有可以接續的位置，改走訪 URL 索引的開放定址表（每筆資料都有一個槽位），再向 codeToEntry 取出 Entry。
+//
+//claim(candidate): 在 URL 的索引鎖內先找既有短碼，沒有時才以 putIfAbsent 佔用短碼，一次就完成建立或找到既有資料。
+//
+//remove(expected): 利用 ConcurrentMap.remove(key, value) 的 CAS 語意，只刪除仍是同一個物件的項目；
+// 刪除同樣在 URL 的索引鎖內進行，索引才能判斷查不到的短碼是真的已刪除。
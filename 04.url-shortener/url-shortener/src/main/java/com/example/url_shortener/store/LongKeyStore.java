@@ -0,0 +1,444 @@
+// LongKeyStore 是 InMemoryStore 的替代儲存後端（app.store.type=long-key）。
+//
+// 短碼都是 Base62 字串，可以用 Base62.toKey 無損地打包成一個 long，
+// 因此這裡不再替每個短碼配置 String 鍵、Map 節點與 Entry 物件，
+// 而是用「開放定址（linear probing）＋平行陣列」存放：
+//
+// keys[]    : 短碼打包後的 long
+// prefixes[]: 原始 URL 的前綴字典編號（char，見 Entry）
+// tails[]   : 原始 URL 前綴之後的 UTF-8 bytes（與 Entry 共用同一個陣列）
+// created[] : 建立時間（epoch 秒，int）
+// expires[] : 到期時間（epoch 秒，int；0 表示永不過期）
+//
+// 整張表切成多個 Segment，各自有一把 StampedLock：寫入取寫鎖，讀取先走樂觀讀，
+// 所以 getEntry 的查表過程不需要配置任何物件，也不會阻塞其他讀者。
+
+package com.example.url_shortener.store;
+
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.model.EntryHolder;
+import com.example.url_shortener.util.Base62;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+@Component
+@ConditionalOnProperty(name = "app.store.type", havingValue = "long-key")
+public class LongKeyStore extends AbstractUrlStore {
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENT_COUNT = 1 << SEGMENT_BITS;
+
+    // Base62.toKey 不會產生 0 與 1（長度欄位至少為 1），因此拿來當空槽與墓碑標記
+    private static final long EMPTY = 0L;
+    private static final long TOMBSTONE = 1L;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    // 原始 URL 指紋 -> 短碼 key (用於冪等性)；URL 只存在表格的 tails[] 中
+    private final UrlFingerprintIndex urlToCode = new UrlFingerprintIndex(this::getEntry);
+
+    public LongKeyStore() {
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    @Override
+    public void save(String url, String code, Entry entry) {
+        long key = Base62.toKey(code);
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Code is not a packable Base62 string: " + code);
+        }
+        urlToCode.put(url, code, () -> {
+            Entry previous = segmentFor(key).put(key, code, entry);
+            if (previous != null) {
+                // 與 InMemoryStore 相同：覆寫既有短碼時先通知舊資料被刪除
+                fireRemoved(previous.getUrl(), code);
+            }
+            fireSaved(entry);
+        }, replaced -> {
+            // URL 改指向新的短碼：舊短碼的資料一併刪除，不留下沒有索引的資料
+            long replacedKey = Base62.toKey(replaced);
+            Segment segment = segmentFor(replacedKey);
+            Entry old = segment.get(replacedKey, replaced);
+            if (old != null && old.hasUrl(url) && segment.removeIfMatches(replacedKey, old)) {
+                fireRemoved(url, replaced);
+            }
+        });
+        fireAfterWrite();
+    }
+
+    @Override
+    public String getCode(String url) {
+        Entry entry = urlToCode.find(url);
+        return entry != null ? entry.getCode() : null;
+    }
+
+    @Override
+    public Entry getEntry(String code) {
+        long key = Base62.toKey(code);
+        if (key == EMPTY) {
+            return null;
+        }
+        return segmentFor(key).get(key, code);
+    }
+
+    @Override
+    public boolean getEntry(String code, EntryHolder holder) {
+        long key = Base62.toKey(code);
+        return key != EMPTY && segmentFor(key).read(key, code, holder);
+    }
+
+    @Override
+    public void remove(String url, String code) {
+        long key = Base62.toKey(code);
+        if (key == EMPTY) {
+            return;
+        }
+        Segment segment = segmentFor(key);
+        boolean removed = urlToCode.remove(url, code, () -> {
+            // 只刪除仍屬於這個 URL 的短碼：短碼可能已被刪除後改由其他 URL 使用
+            Entry current = segment.get(key, code);
+            if (current == null || !current.hasUrl(url) || !segment.removeIfMatches(key, current)) {
+                return false;
+            }
+            fireRemoved(url, code);
+            return true;
+        });
+        if (removed) {
+            fireAfterWrite();
+        }
+    }
+
+    @Override
+    public Entry claim(Entry candidate) {
+        String code = candidate.getCode();
+        long key = Base62.toKey(code);
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Code is not a packable Base62 string: " + code);
+        }
+        Segment segment = segmentFor(key);
+        Entry existing = urlToCode.claim(candidate.getUrl(), code, () -> {
+            Entry occupant = segment.putIfAbsent(key, code, candidate);
+            if (occupant == null) {
+                fireSaved(candidate);
+            }
+            return occupant;
+        });
+        if (existing != null) {
+            return existing;
+        }
+        fireAfterWrite();
+        return candidate;
+    }
+
+    @Override
+    public boolean remove(Entry expected) {
+        String code = expected.getCode();
+        long key = Base62.toKey(code);
+        if (key == EMPTY) {
+            return false;
+        }
+        String url = expected.getUrl();
+        Segment segment = segmentFor(key);
+        boolean removed = urlToCode.remove(url, code, () -> {
+            if (!segment.removeIfMatches(key, expected)) {
+                return false;
+            }
+            fireRemoved(url, code);
+            return true;
+        });
+        if (removed) {
+            fireAfterWrite();
+        }
+        return removed;
+    }
+
+    @Override
+    public void forEach(Consumer<Entry> action) {
+        // 每個 Segment 先在讀鎖內取出項目，解鎖後才交給 action，
+        // 讓 action 可以安全地呼叫 remove（StampedLock 不可重入）
+        for (Segment segment : segments) {
+            for (Entry entry : segment.entries()) {
+                action.accept(entry);
+            }
+        }
+    }
+
+    @Override
+    public long scan(long cursor, int count, Consumer<Entry> action) {
+        return urlToCode.scan(cursor, count, action);
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    public int urlIndexSize() {
+        return urlToCode.size();
+    }
+
+    private Segment segmentFor(long key) {
+        return segments[(int) (spread(key) >>> (64 - SEGMENT_BITS))];
+    }
+
+    private static long spread(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    // 一組平行陣列；擴容時整組替換，讀者只要讀到同一個 Table 就不會看到不同世代的陣列
+    private static final class Table {
+        final long[] keys;
+        final char[] prefixes;
+        final byte[][] tails;
+        final int[] created;
+        final int[] expires;
+        final int mask;
+        final int threshold;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            prefixes = new char[capacity];
+            tails = new byte[capacity][];
+            created = new int[capacity];
+            expires = new int[capacity];
+            mask = capacity - 1;
+            threshold = capacity - (capacity >>> 2); // load factor 0.75（含墓碑）
+        }
+
+        int indexOf(long key) {
+            int index = (int) spread(key) & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                long k = keys[index];
+                if (k == key) {
+                    return index;
+                }
+                if (k == EMPTY) {
+                    return -1;
+                }
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+    }
+
+    private static final class Segment {
+        private final StampedLock lock = new StampedLock();
+        private Table table = new Table(16);
+        private int size;
+        private int used; // 已佔用的槽位數（含墓碑）
+
+        Entry get(long key, String code) {
+            EntryHolder holder = new EntryHolder();
+            return read(key, code, holder) ? holder.toEntry() : null;
+        }
+
+        // 查到時把槽位寫進 holder 並回傳 true；整個過程不配置任何物件
+        boolean read(long key, String code, EntryHolder holder) {
+            long stamp = lock.tryOptimisticRead();
+            Table t = table;
+            int index = t.indexOf(key);
+            char prefix = index >= 0 ? t.prefixes[index] : 0;
+            byte[] tail = index >= 0 ? t.tails[index] : null;
+            int created = index >= 0 ? t.created[index] : 0;
+            int expires = index >= 0 ? t.expires[index] : 0;
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    t = table;
+                    index = t.indexOf(key);
+                    prefix = index >= 0 ? t.prefixes[index] : 0;
+                    tail = index >= 0 ? t.tails[index] : null;
+                    created = index >= 0 ? t.created[index] : 0;
+                    expires = index >= 0 ? t.expires[index] : 0;
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            if (tail == null) {
+                return false;
+            }
+            holder.set(code, prefix, tail, created, expires);
+            return true;
+        }
+
+        // 寫入並回傳被覆寫的項目（沒有時回傳 null），只有覆寫時才建立 Entry
+        Entry put(long key, String code, Entry entry) {
+            long stamp = lock.writeLock();
+            try {
+                Table t = table;
+                int index = t.indexOf(key);
+                Entry previous = null;
+                if (index < 0) {
+                    index = insert(key);
+                    t = table;
+                } else {
+                    previous = new Entry(code, t.prefixes[index], t.tails[index], t.created[index], t.expires[index]);
+                }
+                store(t, index, entry);
+                return previous;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        // 短碼不存在才寫入並回傳 null；已存在時不寫入，回傳目前的項目
+        Entry putIfAbsent(long key, String code, Entry candidate) {
+            long stamp = lock.writeLock();
+            try {
+                Table t = table;
+                int index = t.indexOf(key);
+                if (index >= 0) {
+                    return new Entry(code, t.prefixes[index], t.tails[index], t.created[index], t.expires[index]);
+                }
+                index = insert(key);
+                store(table, index, candidate);
+                return null;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        // 只在持有寫鎖時呼叫：把 Entry 的精簡欄位寫入槽位，URL bytes 直接共用不複製
+        private static void store(Table t, int index, Entry entry) {
+            t.prefixes[index] = (char) entry.getUrlPrefix();
+            t.tails[index] = entry.getUrlTail();
+            t.created[index] = entry.getCreatedAtRaw();
+            t.expires[index] = entry.getExpiresAtRaw();
+        }
+
+        // 只在持有寫鎖時呼叫：為新的 key 取得槽位，必要時先擴容
+        private int insert(long key) {
+            Table t = table;
+            if (used + 1 > t.threshold) {
+                t = rehash();
+            }
+            int index = insertionSlot(t, key);
+            if (t.keys[index] == EMPTY) {
+                used++;
+            }
+            t.keys[index] = key;
+            size++;
+            return index;
+        }
+
+        boolean removeIfMatches(long key, Entry expected) {
+            long stamp = lock.writeLock();
+            try {
+                Table t = table;
+                int index = t.indexOf(key);
+                // 依內容比對（表格中沒有 Entry 物件）：建立時間也要相同，被同一個 URL 重新建立的資料不會被當成舊資料刪掉
+                if (index < 0 || t.created[index] != expected.getCreatedAtRaw()
+                        || t.expires[index] != expected.getExpiresAtRaw()
+                        || t.prefixes[index] != expected.getUrlPrefix()
+                        || !Arrays.equals(t.tails[index], expected.getUrlTail())) {
+                    return false;
+                }
+                t.keys[index] = TOMBSTONE;
+                t.tails[index] = null;
+                size--;
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        List<Entry> entries() {
+            long stamp = lock.readLock();
+            try {
+                Table t = table;
+                List<Entry> result = new ArrayList<>(size);
+                for (int i = 0; i <= t.mask; i++) {
+                    long k = t.keys[i];
+                    if (k != EMPTY && k != TOMBSTONE) {
+                        result.add(new Entry(Base62.fromKey(k), t.prefixes[i], t.tails[i], t.created[i], t.expires[i]));
+                    }
+                }
+                return result;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        int size() {
+            long stamp = lock.readLock();
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        // 只在持有寫鎖時呼叫：依目前實際筆數重建，順便清掉墓碑
+        private Table rehash() {
+            Table old = table;
+            int capacity = Integer.highestOneBit(Math.max(16, (size + 1) * 2) - 1) << 1;
+            Table t = new Table(capacity);
+            for (int i = 0; i <= old.mask; i++) {
+                long k = old.keys[i];
+                if (k != EMPTY && k != TOMBSTONE) {
+                    int index = insertionSlot(t, k);
+                    t.keys[index] = k;
+                    t.prefixes[index] = old.prefixes[i];
+                    t.tails[index] = old.tails[i];
+                    t.created[index] = old.created[i];
+                    t.expires[index] = old.expires[i];
+                }
+            }
+            table = t;
+            used = size;
+            return t;
+        }
+
+        private static int insertionSlot(Table t, long key) {
+            int index = (int) spread(key) & t.mask;
+            while (t.keys[index] != EMPTY && t.keys[index] != TOMBSTONE) {
+                index = (index + 1) & t.mask;
+            }
+            return index;
+        }
+    }
+}
+
+//程式碼解說：
+//
+//@ConditionalOnProperty(havingValue = "long-key"): 只有設定 app.store.type=long-key 時才會取代預設的 InMemoryStore。
+//
+//Base62.toKey(code): 短碼長度 <= 10 且只含 Base62 字元時，可以打包成一個 long，這就是表格的鍵。
+//
+//Segment + StampedLock: 把表格切成 64 段降低寫入競爭；讀取使用 tryOptimisticRead()，
+// 只要期間沒有寫入發生（validate 成功）就完全不需要取鎖。
+//
+//Table: 五個平行陣列。每筆資料只佔 8 + 2 + 4 + 4 bytes 加上一個 byte[] 參考，
+// 取代原本每筆都要 String 鍵、ConcurrentHashMap 節點、Entry 與兩個 Instant。
+//
+//save(...): 與 InMemoryStore 相同，URL 原本指向的其他短碼在同一把索引鎖內以 removeIfMatches 刪除並通知監聽者；
+// 覆寫既有短碼時 Segment.put 回傳舊的內容，先以 fireRemoved 通知再 fireSaved。
+//
+//remove(url, code): 先取出目前的資料確認仍屬於這個 URL，再以 removeIfMatches 刪除；監聽者的通知與 InMemoryStore 相同，都在 URL 的索引鎖內。
+// 欄位直接沿用 Entry 的精簡格式（前綴編號、URL tail、epoch 秒），存取時不需要任何轉換。
+//
+//TOMBSTONE: 開放定址表刪除時不能直接清空槽位（會切斷後面的探測鏈），所以先標記成墓碑，擴容時再一併清除。
+//
+//claim(...): 與 InMemoryStore 相同，在 UrlFingerprintIndex 的 URL 鎖內先找既有短碼，沒有時再在 Segment 寫鎖內檢查並寫入短碼。
+//
+//removeIfMatches(...): CAS 刪除。因為 getEntry 回傳的是每次新建的 Entry，這裡改用 URL（前綴編號＋tail bytes）與到期時間比對是否仍是同一筆資料。
+//
+//getEntry(code, holder): 查表與寫入 holder 都不配置物件，轉址路徑以每個執行緒一個 holder 查詢。
+// getEntry(code) 依照契約回傳新的 Entry，同樣經過 read，只是多了 holder 與 Entry 兩個短命物件
+// （Segment.get 內聯後 holder 通常會被 escape analysis 消除）。
+//
+//scan(...): 與 InMemoryStore 相同，走訪 URL 索引的槽位，再以 getEntry 取出資料；cursor 不依賴這裡的表格，表格擴容不影響走訪。
@@ -0,0 +1,22 @@
+// StoreListener 讓其他元件在不修改儲存後端的情況下，得知每一次實際發生的寫入與刪除。
+// 例如持久化（PersistenceManager）就是靠它把每個異動寫進 journal。
+//
+// onSave / onRemove 在 store 持有該 URL 的索引鎖時呼叫，同一個 URL 的通知順序與實際異動的順序相同；
+// 因此它們必須很快完成，也不能再呼叫 store 的寫入方法。需要等待的工作（例如 fsync）放在 afterWrite。
+
+package com.example.url_shortener.store;
+
+import com.example.url_shortener.model.Entry;
+
+public interface StoreListener {
+
+    // save 完成後呼叫（entry 已可被 getEntry 查到）
+    void onSave(Entry entry);
+
+    // 短碼確實被刪除後呼叫；save 覆寫既有短碼、或把 URL 改指向新短碼時，被取代的舊資料也會先收到這個通知
+    void onRemove(String url, String code);
+
+    // 每次異動解鎖之後在同一個執行緒上呼叫
+    default void afterWrite() {
+    }
+}
@@ -0,0 +1,455 @@
+// UrlFingerprintIndex 是 InMemoryStore / LongKeyStore 共用的冪等索引（原始 URL -> 短碼）。
+//
+// 原本的 urlToCode 以完整的 URL 字串當 Map 的鍵，等於每個 URL 在 heap 裡多存一份。
+// 這裡只記錄 URL 的 64-bit 指紋與 Base62.toKey 打包後的短碼，每筆固定 16 bytes（兩個 long，開放定址表）；
+// 指紋相同時再到 store 取出 Entry 比對 URL（Entry.hasUrl），所以 URL 本身只存在 Entry 中。
+//
+// 不同的 URL 可能有相同的指紋（碰撞）：同一個指紋可以佔用多個槽位，查詢時逐一比對，不會回傳別的 URL 的短碼。
+//
+// 會改變 store 內容的操作（claim / put / remove）都在 URL 所屬分段的寫鎖內執行，
+// 同一個 URL 的這些操作因此依序發生；查詢則只取讀鎖。
+
+package com.example.url_shortener.store;
+
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.util.Base62;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+final class UrlFingerprintIndex {
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENT_COUNT = 1 << SEGMENT_BITS;
+
+    // Base62.toKey 不會產生 0 與 1，因此 codes[] 以它們當空槽與墓碑標記（指紋可以是任何值）
+    private static final long EMPTY = 0L;
+    private static final long TOMBSTONE = 1L;
+
+    // scan cursor 的格式：分段編號（bits 56 以上）、分段的重建次數（bits 32-55）、槽位（低 32 bits）
+    private static final int SCAN_SEGMENT_SHIFT = 56;
+    private static final int SCAN_REBUILD_SHIFT = 32;
+    private static final int SCAN_REBUILD_MASK = (1 << (SCAN_SEGMENT_SHIFT - SCAN_REBUILD_SHIFT)) - 1;
+
+    private static final long M1 = 0x9E3779B97F4A7C15L;
+    private static final long M2 = 0xC2B2AE3D27D4EB4FL;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+    private final Function<String, Entry> resolver;
+    private final ToLongFunction<String> fingerprinter;
+
+    // resolver: 依短碼從 store 取出目前的 Entry（不存在時回傳 null），用來驗證指紋相同的 URL
+    UrlFingerprintIndex(Function<String, Entry> resolver) {
+        this(resolver, UrlFingerprintIndex::fingerprint);
+    }
+
+    // 測試用：可以換成刻意碰撞的指紋函式
+    UrlFingerprintIndex(Function<String, Entry> resolver, ToLongFunction<String> fingerprinter) {
+        this.resolver = resolver;
+        this.fingerprinter = fingerprinter;
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    // URL 的 64-bit 指紋：每次處理 4 個 char，最後以 murmur3 的 fmix64 打散
+    static long fingerprint(String url) {
+        int length = url.length();
+        long h = M2 ^ (length * M1);
+        int i = 0;
+        for (; i + 4 <= length; i += 4) {
+            long block = url.charAt(i)
+                    | (long) url.charAt(i + 1) << 16
+                    | (long) url.charAt(i + 2) << 32
+                    | (long) url.charAt(i + 3) << 48;
+            h = Long.rotateLeft(h ^ (block * M1), 29) * M2;
+        }
+        for (; i < length; i++) {
+            h = Long.rotateLeft(h ^ (url.charAt(i) * M1), 29) * M2;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // URL 目前對應的 Entry（已驗證 URL 相同），沒有時回傳 null
+    Entry find(String url) {
+        long fingerprint = fingerprinter.applyAsLong(url);
+        Segment segment = segmentFor(fingerprint);
+        long stamp = segment.lock.readLock();
+        try {
+            return segment.find(fingerprint, url, false);
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    // 同一個 URL 已有 Entry 時直接回傳它；否則呼叫 insert 佔用短碼（回傳 null 表示寫入成功、否則為佔用者），
+    // 寫入成功才登記指紋。整個過程持有 URL 所屬分段的寫鎖。
+    Entry claim(String url, String code, Supplier<Entry> insert) {
+        long fingerprint = fingerprinter.applyAsLong(url);
+        Segment segment = segmentFor(fingerprint);
+        long stamp = segment.lock.writeLock();
+        try {
+            Entry existing = segment.find(fingerprint, url, true);
+            if (existing != null) {
+                return existing;
+            }
+            Entry occupant = insert.get();
+            if (occupant == null || occupant.hasUrl(url)) {
+                // 寫入成功；或短碼已是這個 URL 的資料、只是還沒有索引（例如由 save 以外的途徑寫入），一併補上
+                segment.add(fingerprint, code);
+            }
+            return occupant;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    // 無條件寫入（save）：write 在寫鎖內執行，之後 URL 改指向 code，取代原本指向的短碼。
+    // 原本的短碼若仍是這個 URL 的資料，交給 displaced（同樣在寫鎖內）從 store 刪除，
+    // 每筆資料因此都有一個索引槽位，scan / export 不會漏掉任何資料。
+    void put(String url, String code, Runnable write, Consumer<String> displaced) {
+        long fingerprint = fingerprinter.applyAsLong(url);
+        Segment segment = segmentFor(fingerprint);
+        long stamp = segment.lock.writeLock();
+        try {
+            write.run();
+            List<String> replaced = segment.removeMatching(fingerprint, url, code);
+            segment.add(fingerprint, code);
+            for (String old : replaced) {
+                displaced.accept(old);
+            }
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    // removal 在寫鎖內執行並回傳是否真的刪除了資料；只有刪除成功才移除 url -> code 的索引。
+    // CAS 刪除失敗代表短碼已被同一個 URL 重新建立（或根本不存在），這時的索引屬於新的資料，不能一起刪掉；
+    // 不存在的資料留下的索引由之後的 claim（find 的 cleanup）清掉。
+    boolean remove(String url, String code, BooleanSupplier removal) {
+        long fingerprint = fingerprinter.applyAsLong(url);
+        Segment segment = segmentFor(fingerprint);
+        long stamp = segment.lock.writeLock();
+        try {
+            boolean removed = removal.getAsBoolean();
+            if (removed) {
+                segment.remove(fingerprint, code);
+            }
+            return removed;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    // UrlStore.scan 的實作：cursor 記錄（分段, 分段的重建次數, 槽位），回傳下一個 cursor，0 表示已走訪完。
+    // 每個分段只在複製槽位時持有讀鎖，取出 Entry 與呼叫 action 都在鎖外進行。
+    long scan(long cursor, int count, Consumer<Entry> action) {
+        int segmentIndex = (int) (cursor >>> SCAN_SEGMENT_SHIFT);
+        int rebuilds = (int) (cursor >>> SCAN_REBUILD_SHIFT) & SCAN_REBUILD_MASK;
+        int slot = (int) cursor;
+        if (segmentIndex >= SEGMENT_COUNT || slot < 0) {
+            throw new IllegalArgumentException("Invalid scan cursor: " + cursor);
+        }
+
+        long[] foundFingerprints = new long[count];
+        String[] foundCodes = new String[count];
+        int found = 0;
+        List<Long> overflowFingerprints = new ArrayList<>();
+        List<String> overflowCodes = new ArrayList<>();
+        while (segmentIndex < SEGMENT_COUNT && found < count) {
+            Segment segment = segments[segmentIndex];
+            long stamp = segment.lock.readLock();
+            try {
+                int capacity = segment.codes.length;
+                if ((segment.rebuilds & SCAN_REBUILD_MASK) != rebuilds) {
+                    // 上次走訪之後這個分段重建過（即使表格大小不變，只清墓碑也會重新排列槽位）：
+                    // 從頭走訪這個分段（可能重複，不會遺漏）
+                    rebuilds = segment.rebuilds & SCAN_REBUILD_MASK;
+                    slot = 0;
+                }
+                for (; slot < capacity && found < count; slot++) {
+                    long code = segment.codes[slot];
+                    if (code != EMPTY && code != TOMBSTONE) {
+                        foundFingerprints[found] = segment.fingerprints[slot];
+                        foundCodes[found++] = Base62.fromKey(code);
+                    }
+                }
+                if (slot < capacity) {
+                    break;
+                }
+                // 分段走訪完：一併帶上數量很少的 overflow 短碼，再移到下一個分段
+                if (segment.overflow != null) {
+                    segment.overflow.forEach((fingerprint, codes) -> codes.forEach(code -> {
+                        overflowFingerprints.add(fingerprint);
+                        overflowCodes.add(code);
+                    }));
+                }
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+            segmentIndex++;
+            rebuilds = 0;
+            slot = 0;
+        }
+
+        for (int i = 0; i < found; i++) {
+            emit(foundFingerprints[i], foundCodes[i], action);
+        }
+        for (int i = 0; i < overflowCodes.size(); i++) {
+            emit(overflowFingerprints.get(i), overflowCodes.get(i), action);
+        }
+        if (segmentIndex >= SEGMENT_COUNT) {
+            return 0;
+        }
+        return (long) segmentIndex << SCAN_SEGMENT_SHIFT | (long) rebuilds << SCAN_REBUILD_SHIFT | slot;
+    }
+
+    // 只輸出仍然有效的索引：短碼已刪除、或已被覆寫成指紋不同的 URL 時，那筆資料會由它自己的槽位輸出
+    private void emit(long fingerprint, String code, Consumer<Entry> action) {
+        Entry entry = resolver.apply(code);
+        if (entry != null && fingerprinter.applyAsLong(entry.getUrl()) == fingerprint) {
+            action.accept(entry);
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                size += segment.size;
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    private Segment segmentFor(long fingerprint) {
+        return segments[(int) (fingerprint >>> (64 - SEGMENT_BITS))];
+    }
+
+    private final class Segment {
+        final StampedLock lock = new StampedLock();
+        long[] fingerprints = new long[16];
+        long[] codes = new long[16];
+        int size;
+        int used; // 已佔用的槽位數（含墓碑）
+        int rebuilds; // rehash 的次數，scan 以它判斷槽位是否已重新排列
+        // 無法以 Base62.toKey 打包的短碼（超過 10 字元或含其他字元）：指紋 -> 短碼，數量很少
+        Map<Long, List<String>> overflow;
+
+        // 持有讀鎖或寫鎖時呼叫。cleanup 為 true（持有寫鎖）時順便清掉已失效的索引
+        Entry find(long fingerprint, String url, boolean cleanup) {
+            int mask = codes.length - 1;
+            int index = (int) fingerprint & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                long code = codes[index];
+                if (code == EMPTY) {
+                    break;
+                }
+                if (code != TOMBSTONE && fingerprints[index] == fingerprint) {
+                    Entry entry = resolver.apply(Base62.fromKey(code));
+                    if (entry != null && entry.hasUrl(url)) {
+                        return entry;
+                    }
+                    // 指紋相同、URL 不同的 Entry 可能是真正的碰撞（另一個 URL 的有效索引），
+                    // 只清掉指向已刪除資料、或 URL 的指紋根本不同（短碼已被覆寫成別的 URL）的槽位
+                    if (cleanup && (entry == null || fingerprinter.applyAsLong(entry.getUrl()) != fingerprint)) {
+                        codes[index] = TOMBSTONE;
+                        size--;
+                    }
+                }
+                index = (index + 1) & mask;
+            }
+            List<String> overflowCodes = overflow != null ? overflow.get(fingerprint) : null;
+            if (overflowCodes != null) {
+                for (String code : overflowCodes) {
+                    Entry entry = resolver.apply(code);
+                    if (entry != null && entry.hasUrl(url)) {
+                        return entry;
+                    }
+                }
+            }
+            return null;
+        }
+
+        // 持有寫鎖時呼叫：移除指紋相同、且目前確實屬於 url 的索引，回傳其中 keep 以外、資料仍存在的短碼
+        List<String> removeMatching(long fingerprint, String url, String keep) {
+            List<String> replaced = List.of();
+            int mask = codes.length - 1;
+            int index = (int) fingerprint & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                long code = codes[index];
+                if (code == EMPTY) {
+                    break;
+                }
+                if (code != TOMBSTONE && fingerprints[index] == fingerprint) {
+                    String matched = Base62.fromKey(code);
+                    Entry entry = resolver.apply(matched);
+                    if (entry == null || entry.hasUrl(url)) {
+                        codes[index] = TOMBSTONE;
+                        size--;
+                        if (entry != null && !matched.equals(keep)) {
+                            replaced = append(replaced, matched);
+                        }
+                    }
+                }
+                index = (index + 1) & mask;
+            }
+            List<String> overflowCodes = overflow != null ? overflow.get(fingerprint) : null;
+            if (overflowCodes != null) {
+                for (Iterator<String> it = overflowCodes.iterator(); it.hasNext(); ) {
+                    String code = it.next();
+                    Entry entry = resolver.apply(code);
+                    if (entry == null || entry.hasUrl(url)) {
+                        it.remove();
+                        if (entry != null && !code.equals(keep)) {
+                            replaced = append(replaced, code);
+                        }
+                    }
+                }
+                if (overflowCodes.isEmpty()) {
+                    overflow.remove(fingerprint);
+                }
+            }
+            return replaced;
+        }
+
+        // 被取代的短碼幾乎不會出現，一般情況不配置 List
+        private static List<String> append(List<String> list, String code) {
+            List<String> result = list.isEmpty() ? new ArrayList<>(1) : list;
+            result.add(code);
+            return result;
+        }
+
+        // 持有寫鎖時呼叫
+        void add(long fingerprint, String code) {
+            long key = Base62.toKey(code);
+            if (key == EMPTY) {
+                if (overflow == null) {
+                    overflow = new HashMap<>();
+                }
+                List<String> overflowCodes = overflow.computeIfAbsent(fingerprint, f -> new ArrayList<>(1));
+                if (!overflowCodes.contains(code)) {
+                    overflowCodes.add(code);
+                }
+                return;
+            }
+            if (indexOf(fingerprint, key) >= 0) {
+                return; // 同一組 (指紋, 短碼) 已經登記過
+            }
+            if (used + 1 > codes.length - (codes.length >>> 2)) {
+                rehash();
+            }
+            int index = insertionSlot(fingerprints, codes, fingerprint);
+            if (codes[index] == EMPTY) {
+                used++;
+            }
+            fingerprints[index] = fingerprint;
+            codes[index] = key;
+            size++;
+        }
+
+        // 持有寫鎖時呼叫
+        void remove(long fingerprint, String code) {
+            long key = Base62.toKey(code);
+            if (key == EMPTY) {
+                List<String> overflowCodes = overflow != null ? overflow.get(fingerprint) : null;
+                if (overflowCodes != null && overflowCodes.remove(code) && overflowCodes.isEmpty()) {
+                    overflow.remove(fingerprint);
+                }
+                return;
+            }
+            int index = indexOf(fingerprint, key);
+            if (index >= 0) {
+                codes[index] = TOMBSTONE;
+                size--;
+            }
+        }
+
+        private int indexOf(long fingerprint, long key) {
+            int mask = codes.length - 1;
+            int index = (int) fingerprint & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                long code = codes[index];
+                if (code == EMPTY) {
+                    return -1;
+                }
+                if (code == key && fingerprints[index] == fingerprint) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+
+        // 依目前實際筆數重建，順便清掉墓碑
+        private void rehash() {
+            int capacity = Integer.highestOneBit(Math.max(16, (size + 1) * 2) - 1) << 1;
+            long[] newFingerprints = new long[capacity];
+            long[] newCodes = new long[capacity];
+            for (int i = 0; i < codes.length; i++) {
+                long code = codes[i];
+                if (code != EMPTY && code != TOMBSTONE) {
+                    int index = insertionSlot(newFingerprints, newCodes, fingerprints[i]);
+                    newFingerprints[index] = fingerprints[i];
+                    newCodes[index] = code;
+                }
+            }
+            fingerprints = newFingerprints;
+            codes = newCodes;
+            used = size;
+            rebuilds++;
+        }
+
+        private static int insertionSlot(long[] fingerprints, long[] codes, long fingerprint) {
+            int mask = codes.length - 1;
+            int index = (int) fingerprint & mask;
+            while (codes[index] != EMPTY && codes[index] != TOMBSTONE) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+    }
+}
+
+//程式碼解說：
+//
+//fingerprint(url): 不需要密碼學強度，只要分布均勻；碰撞不會造成錯誤，只是多一次 Entry 比對。
+// 分段用指紋的最高 6 bits，分段內的槽位用最低幾個 bits，兩者互不相關。
+//
+//find(...): 沿著探測鏈找出所有指紋相同的槽位，逐一以 resolver 取出 Entry 並用 hasUrl 比對；
+// 指紋碰撞時會看到別的 URL 的 Entry，直接略過繼續找，所以碰撞永遠不會回傳錯誤的短碼。
+//
+//claim(...): 在同一把寫鎖內完成「找既有短碼 → 佔用新短碼 → 登記指紋」，取代原本 urlToCode.putIfAbsent 的 URL 佔用步驟；
+// 同一個 URL 的並行請求依序執行，不會各自建立不同的短碼。
+//
+//cleanup: 所有會刪除 store 資料的路徑都經過 remove(...)（同一把鎖），所以持有寫鎖時查不到 Entry 代表資料真的已經刪除，
+// 可以安全地把這個槽位標記成墓碑；指向其他 URL 的槽位只有在那個 URL 的指紋不同時才確定是過時的索引。
+//
+//overflow: 產生器產生的短碼都能打包成 long；只有匯入或手動寫入的特殊短碼才會放到這裡，不影響一般情況的記憶體用量。
+//
+//每筆固定 16 bytes：fingerprints[] 與 codes[] 各一個 long；load factor 最高 0.75，擴容後約一半，
+// 平均每筆約 21–43 bytes，仍遠小於原本每筆一個 URL 字串加上一個 ConcurrentHashMap 節點。
+//
+//scan(...): 兩種儲存後端的每一筆資料都在這裡有一個槽位，所以以槽位的位置當作 cursor 就能分批走訪整個 store，不必複製任何 Map。
+// 槽位只有在分段重建（rehash）時才會移動，cursor 因此帶著當時的重建次數：次數不同就從該分段開頭重新走訪，寧可重複也不遺漏。
+// 只清墓碑的重建表格大小不變、槽位卻會重新排列，所以不能只比對表格大小。
+//
+//put(...) 的 displaced: save 把同一個 URL 改指向新的短碼時，舊短碼的資料會失去槽位、也不再是這個 URL 的冪等結果；
+// store 在同一把鎖內刪除它並通知監聽者（journal、複寫 log 也會記下這筆刪除），不留下 scan 與匯出看不到的資料。
@@ -0,0 +1,82 @@
+// UrlStore 定義短網址儲存層的共同契約。
+// ShortenService 與 TTLSweeper 只依賴這個介面，實際使用哪一種儲存後端由 app.store.type 決定：
+//
+// map      : InMemoryStore，兩個 ConcurrentHashMap（預設）
+// long-key : LongKeyStore，以 Base62 短碼解碼後的 long 為鍵的開放定址表
+
+package com.example.url_shortener.store;
+
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.model.EntryHolder;
+
+import java.util.function.Consumer;
+
+public interface UrlStore {
+
+    void save(String url, String code, Entry entry);
+
+    String getCode(String url);
+
+    Entry getEntry(String code);
+
+    // 與 getEntry 相同，但把資料寫進呼叫端重複使用的 holder，回傳短碼是否存在。
+    // 預設實作直接複製 getEntry 的結果；LongKeyStore 覆寫成不配置任何物件
+    default boolean getEntry(String code, EntryHolder holder) {
+        Entry entry = getEntry(code);
+        if (entry == null) {
+            return false;
+        }
+        holder.set(entry);
+        return true;
+    }
+
+    // 刪除短碼；短碼目前屬於別的 URL 時不刪除（回放 journal 時，舊 URL 的刪除紀錄不會刪掉重新使用這個短碼的新資料）
+    void remove(String url, String code);
+
+    // 建立短碼的原子操作，一次完成「冪等檢查 + 碰撞檢查 + 寫入」：
+    // - URL 已經有短碼：回傳既有的 Entry
+    // - 短碼尚未被使用：寫入 candidate 並回傳 candidate 本身
+    // - 短碼已被其他 URL 佔用：不寫入，回傳佔用者（呼叫端應換一個短碼重試）
+    Entry claim(Entry candidate);
+
+    // CAS 刪除：只有當短碼目前仍對應到 expected 這筆資料時才刪除，回傳是否刪除成功
+    boolean remove(Entry expected);
+
+    // 逐一走訪目前所有項目（弱一致性，走訪期間可安全呼叫 remove）
+    void forEach(Consumer<Entry> action);
+
+    int size();
+
+    // URL 冪等索引（urlToCode）的筆數；正常情況下與 size() 相同，差距代表兩邊暫時不一致
+    int urlIndexSize();
+
+    // 以 cursor 分批走訪：第一次傳入 0，每次走訪大約 count 筆，回傳下一次的 cursor，回傳 0 表示已走訪完。
+    // 整個走訪期間都存在的項目至少會出現一次（可能重複），cursor 之間不保留任何狀態，也不複製 store。
+    long scan(long cursor, int count, Consumer<Entry> action);
+
+    // 註冊異動監聽者，之後每一次 save / remove 都會通知它
+    void addListener(StoreListener listener);
+}
+
+//程式碼解說：
+//
+//save / getCode / getEntry / remove: 與原本 InMemoryStore 相同的四個操作，讓上層程式碼不需要知道底層資料結構。
+//
+//claim(...): 取代「getCode → getEntry 迴圈 → save」三段式流程。在高併發下，同一個 URL 不會拿到兩個短碼，
+// 兩個不同 URL 也不會在檢查與寫入之間搶到同一個短碼。
+//
+//getEntry(code, holder): 轉址等熱門路徑使用。InMemoryStore 回傳的本來就是既有的 Entry，複製欄位即可；
+// LongKeyStore 的表格中沒有 Entry 物件，直接把槽位寫進 holder，命中時也不必建立新的 Entry。
+//
+//remove(Entry expected): 讓 resolve 刪除過期項目時不會誤刪剛被重新建立的新資料。
+//
+//forEach(...): 取代直接操作 getCodeToEntry()，TTLSweeper 透過它走訪所有項目，不同後端可以用最適合自己的方式實作。
+//
+//size(): 目前儲存的短碼數量。
+//
+//urlIndexSize(): URL 索引的筆數，與 size() 一起輸出為 metrics，用來觀察兩個索引是否同步。
+//
+//scan(...): 給 /admin/scan 與 /admin/export 使用。與 forEach 不同，呼叫端可以在任兩頁之間停下來（例如等待慢速的 HTTP 客戶端），
+// 之後再以 cursor 繼續，store 不需要為此保留任何走訪狀態。
+//
+//addListener(...): 讓持久化等功能掛在儲存層之後，不需要每個後端各自實作。
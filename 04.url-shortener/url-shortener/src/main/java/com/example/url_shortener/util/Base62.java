@@ -5,31 +5,102 @@
 
 package com.example.url_shortener.util;
 
+import java.util.Arrays;
+
 public class Base62 {
     private static final String BASE62_CHARS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
 
+    private static final char[] DIGITS = BASE62_CHARS.toCharArray();
+
+    // 反查表：ASCII 字元 -> Base62 數值，非 Base62 字元為 -1，取代 indexOf 的線性搜尋
+    private static final byte[] DECODE = new byte[128];
+
+    static {
+        Arrays.fill(DECODE, (byte) -1);
+        for (int i = 0; i < DIGITS.length; i++) {
+            DECODE[DIGITS[i]] = (byte) i;
+        }
+    }
+
+    // long 的 Base62 最多 11 碼
+    public static final int MAX_ENCODED_LENGTH = 11;
+
     public static String encode(long value) {
-        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[MAX_ENCODED_LENGTH];
+        int length = encode(value, buffer, 0);
+        return new String(buffer, 0, length);
+    }
+
+    // 把 value 的 Base62 表示寫進 dst[offset...]，回傳寫入的字元數；不配置任何物件
+    public static int encode(long value, char[] dst, int offset) {
         if (value == 0) {
-            return "0";
+            dst[offset] = '0';
+            return 1;
+        }
+        int length = 0;
+        for (long v = value; v > 0; v /= 62) {
+            length++;
         }
-        while (value > 0) {
-            sb.append(BASE62_CHARS.charAt((int) (value % 62)));
+        encodeFixed(value, length, dst, offset);
+        return length;
+    }
+
+    // 固定寬度編碼：寫入剛好 width 個字元，不足時左側補 '0'，超出的高位數會被捨棄
+    public static void encodeFixed(long value, int width, char[] dst, int offset) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            dst[i] = DIGITS[(int) (value % 62)];
             value /= 62;
         }
-        return sb.reverse().toString();
     }
 
     public static long decode(String str) {
         long value = 0;
         long power = 1;
         for (int i = str.length() - 1; i >= 0; i--) {
-            int digit = BASE62_CHARS.indexOf(str.charAt(i));
+            int digit = digit(str.charAt(i));
             value += digit * power;
             power *= 62;
         }
         return value;
     }
+
+    // 單一字元的 Base62 數值，非 Base62 字元回傳 -1
+    public static int digit(char c) {
+        return c < 128 ? DECODE[c] : -1;
+    }
+
+    // 可打包成 long 的最大短碼長度：62^10 < 2^60，剩下的高 4 bits 用來存長度
+    public static final int MAX_KEY_LENGTH = 10;
+
+    private static final int LENGTH_SHIFT = 60;
+    private static final long VALUE_MASK = (1L << LENGTH_SHIFT) - 1;
+
+    // 把短碼打包成 long：高 4 bits 放長度、低 60 bits 放 Base62 數值。
+    // 帶上長度是為了區分 "0a" 與 "a" 這類前導 0 不同的短碼。
+    // 長度超過 MAX_KEY_LENGTH 或含非 Base62 字元時回傳 0（0 不會是合法的 key）。
+    public static long toKey(CharSequence code) {
+        int length = code.length();
+        if (length == 0 || length > MAX_KEY_LENGTH) {
+            return 0;
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            int digit = digit(code.charAt(i));
+            if (digit < 0) {
+                return 0;
+            }
+            value = value * 62 + digit;
+        }
+        return ((long) length << LENGTH_SHIFT) | value;
+    }
+
+    // toKey 的反向操作，依照長度左側補 0 還原短碼
+    public static String fromKey(long key) {
+        int length = (int) (key >>> LENGTH_SHIFT);
+        char[] chars = new char[length];
+        encodeFixed(key & VALUE_MASK, length, chars, 0);
+        return new String(chars);
+    }
 }
 
 //程式碼解說：
@@ -38,7 +109,16 @@ public class Base62 {
 //
 //encode(long value): 將一個 long 型別的數值轉換為 Base62 字串。
 //
+//encode(value, dst, offset) / encodeFixed(...): 直接寫進呼叫端提供、可重複使用的 char[]，
+// 不再建立 StringBuilder 再 reverse，產碼時只有最後的 String 需要配置。
+// 沒有另外提供寫入 byte[] 的版本：轉址伺服器（NIO）只需要從請求的 bytes 讀出短碼，不會把短碼編碼進回應；
+// 回應的 Location 是 URL，而且整份回應建立一次後就放在 RedirectResponseCache 中重複使用。
+//
 //decode(String str): 將一個 Base62 字串轉換回 long 型別的數值。
+//
+//DECODE: 128 格的反查表，每個字元 O(1) 取得數值，取代 BASE62_CHARS.indexOf 的線性搜尋。
+//
+//toKey / fromKey: 將短碼連同長度一起打包成 long，供 LongKeyStore 這類以原始型別為鍵的儲存後端使用。
 
 
 //1) 功能目標（What & Why）
@@ -0,0 +1,126 @@
+// CountingBloomFilter 是支援刪除的 Bloom filter：每個位置是 4-bit 計數器而不是單一 bit。
+//
+// add 把 k 個計數器 +1、remove 把它們 -1，mightContain 只要有一個計數器是 0 就代表「一定不存在」。
+// 計數器達到上限 15 後就不再增減（飽和），只會讓誤判率略為上升，不會產生偽陰性（false negative）。
+// 計數器以 CAS 更新，多執行緒同時 add / remove 也不會遺失任何一次異動。
+// 另外累計非 0 計數器的數量，以 (非 0 比例)^k 估計目前的誤判率，呼叫端可以據此決定何時重建。
+
+package com.example.url_shortener.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class CountingBloomFilter {
+
+    private static final int COUNTERS_PER_WORD = 16;
+    private static final long MAX_COUNT = 0xfL;
+
+    private final AtomicLongArray words;
+    private final long counterCount;
+    private final int hashCount;
+    // 非 0 的計數器數量（只在 0 <-> 1 轉換時更新）
+    private final LongAdder nonZero = new LongAdder();
+
+    // 依預計筆數與目標誤判率決定計數器數量與雜湊函數個數
+    public CountingBloomFilter(long expectedEntries, double falsePositiveRate) {
+        long n = Math.max(1, expectedEntries);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        m = Math.max(COUNTERS_PER_WORD, m);
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, (m + COUNTERS_PER_WORD - 1) / COUNTERS_PER_WORD);
+        this.words = new AtomicLongArray(words);
+        this.counterCount = (long) words * COUNTERS_PER_WORD;
+        this.hashCount = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+    }
+
+    public void add(CharSequence key) {
+        long hash = hash64(key);
+        for (int i = 0; i < hashCount; i++) {
+            update(counterIndex(hash, i), 1);
+        }
+    }
+
+    public void remove(CharSequence key) {
+        long hash = hash64(key);
+        for (int i = 0; i < hashCount; i++) {
+            update(counterIndex(hash, i), -1);
+        }
+    }
+
+    // false 代表一定不存在；true 代表可能存在
+    public boolean mightContain(CharSequence key) {
+        long hash = hash64(key);
+        for (int i = 0; i < hashCount; i++) {
+            long index = counterIndex(hash, i);
+            long word = words.get((int) (index >>> 4));
+            if (((word >>> ((index & 15) << 2)) & MAX_COUNT) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long counterCount() {
+        return counterCount;
+    }
+
+    public int hashCount() {
+        return hashCount;
+    }
+
+    // 以目前非 0 計數器的比例估計的誤判率：一個不存在的 key，k 個位置剛好都不是 0 的機率
+    public double estimatedFalsePositiveRate() {
+        double fill = (double) Math.max(0, nonZero.sum()) / counterCount;
+        return Math.pow(fill, hashCount);
+    }
+
+    private void update(long index, int delta) {
+        int wordIndex = (int) (index >>> 4);
+        int shift = (int) (index & 15) << 2;
+        while (true) {
+            long word = words.get(wordIndex);
+            long count = (word >>> shift) & MAX_COUNT;
+            // 飽和的計數器不再變動；歸零的計數器不會再往下減
+            if (count == MAX_COUNT || (delta < 0 && count == 0)) {
+                return;
+            }
+            long updated = delta > 0 ? word + (1L << shift) : word - (1L << shift);
+            if (words.compareAndSet(wordIndex, word, updated)) {
+                if (count == 0) {
+                    nonZero.increment();
+                } else if (delta < 0 && count == 1) {
+                    nonZero.decrement();
+                }
+                return;
+            }
+        }
+    }
+
+    // Kirsch–Mitzenmacher：以兩個 32-bit 雜湊值組合出第 i 個位置
+    private long counterIndex(long hash, int i) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long combined = (h1 + (long) i * h2) & Long.MAX_VALUE;
+        return combined % counterCount;
+    }
+
+    // 直接雜湊每個字元：String.hashCode() 只有 32 bits，而且 Base62 短碼之間很容易相同（例如 "x0n" 與 "x20"）
+    private static long hash64(CharSequence key) {
+        return Murmur3.hash64(key, 0);
+    }
+}
+
+//程式碼解說：
+//
+//建構子: m = -n·ln(p) / (ln 2)²，k = (m / n)·ln 2。預設 1% 誤判率約為每筆 9.6 個計數器（約 4.8 bytes）。
+//
+//update(...): 以 AtomicLongArray 的 CAS 修改 long 中的某 4 bits，失敗就重讀重試，不需要任何鎖。
+//
+//nonZero / estimatedFalsePositiveRate(): 飽和的計數器永遠不會歸 0，刪除遺漏的短碼也會留下非 0 的計數器，
+// 兩者都直接反映在非 0 比例上；筆數超過建構時的預計值同樣會讓比例上升。計數只在計數器跨過 0 時更新，一般的 add / remove 不受影響。
+//
+//mightContain(...): 短碼不存在時通常第一、二個計數器就是 0，馬上回傳 false，不必查詢 store。
+//
+//hash64(...): 以 MurmurHash3 的 64-bit 結果供兩個雜湊值使用。不能沿用 String.hashCode()：
+// 它把每個字元乘上 31 相加，Base62 短碼中「前一位加 2、後一位減 62」（'0'..'9' 與 'n'..'w'）就會得到相同的值，
+// 共用 hashCode 的短碼在 filter 中的位置完全相同，被刪除的短碼與被猜測的短碼都會因此誤判為存在。
+// 短碼只有幾個字元，逐字元雜湊的成本與一次 Map 查詢相比可以忽略。
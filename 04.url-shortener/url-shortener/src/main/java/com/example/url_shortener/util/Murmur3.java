@@ -0,0 +1,221 @@
+// Murmur3 是 MurmurHash3_x86_32 的串流實作，專門用在產碼的熱路徑上。
+//
+// 原本的寫法是 Hashing.murmur3_32_fixed().hashString(url + salt, UTF_8)：
+// 每次都要先串出一個新的 String、再編碼成新的 byte[]。
+// 這裡直接逐字元把 URL 轉成 UTF-8 bytes、再接上 salt 的十進位數字餵進雜湊，
+// 結果與 Guava 的 murmur3_32_fixed 完全相同（既有短碼不受影響），但整個過程不配置任何物件。
+//
+// hash64 是同樣做法的 MurmurHash3_x64_128（取前 64 bits），供較長的短碼使用：32 bits 的雜湊最多只能區分約 43 億個短碼；
+// CountingBloomFilter 也用它取得兩個雜湊值。
+
+package com.example.url_shortener.util;
+
+public final class Murmur3 {
+
+    private static final int C1 = 0xcc9e2d51;
+    private static final int C2 = 0x1b873593;
+    private static final long C1_64 = 0x87c37b91114253d5L;
+    private static final long C2_64 = 0x4cf5ad432745937fL;
+
+    private static final int[] POWERS_OF_TEN = {
+            1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000, 1_000_000_000};
+
+    private Murmur3() {
+    }
+
+    // 等同於 murmur3_32_fixed().hashString(text + salt, UTF_8).asInt()（salt >= 0）
+    public static int hash32(CharSequence text, int salt) {
+        int h1 = 0;
+        int k = 0;       // 尚未湊滿 4 bytes 的暫存
+        int shift = 0;   // k 目前已填入的 bits
+        int length = 0;  // 總 bytes 數
+
+        int n = text.length();
+        for (int i = 0; i < n; i++) {
+            long encoded = utf8(text, i);
+            int bytes = (int) encoded;
+            int count = (int) (encoded >>> 32) & 0xff;
+            i += (int) (encoded >>> 40);
+            for (int b = 0; b < count; b++) {
+                k |= ((bytes >>> (b * 8)) & 0xff) << shift;
+                shift += 8;
+                length++;
+                if (shift == 32) {
+                    h1 = mixH1(h1, mixK1(k));
+                    k = 0;
+                    shift = 0;
+                }
+            }
+        }
+
+        // salt 的十進位數字（ASCII），由高位到低位
+        int divisor = 1;
+        while (salt / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            k |= ('0' + (salt / divisor) % 10) << shift;
+            shift += 8;
+            length++;
+            if (shift == 32) {
+                h1 = mixH1(h1, mixK1(k));
+                k = 0;
+                shift = 0;
+            }
+        }
+
+        if (shift > 0) {
+            h1 ^= mixK1(k);
+        }
+        return fmix(h1, length);
+    }
+
+    // 等同於 murmur3_128().hashString(text + salt, UTF_8).asLong()（salt >= 0），也就是 MurmurHash3_x64_128 的前 64 bits
+    public static long hash64(CharSequence text, int salt) {
+        long h1 = 0;
+        long h2 = 0;
+        long k1 = 0;     // 16 bytes 區塊的前半
+        long k2 = 0;     // 16 bytes 區塊的後半
+        int shift = 0;   // 目前區塊已填入的 bits（0-127）
+        int length = 0;
+
+        int n = text.length();
+        // 先走訪 URL 的字元，再接上 salt 的十進位數字（由高位到低位）
+        int digit = decimalDigits(salt);
+        for (int i = 0; i < n || digit > 0; i++) {
+            int bytes;
+            int count;
+            if (i < n) {
+                long encoded = utf8(text, i);
+                bytes = (int) encoded;
+                count = (int) (encoded >>> 32) & 0xff;
+                i += (int) (encoded >>> 40);
+            } else {
+                bytes = '0' + (salt / POWERS_OF_TEN[--digit]) % 10;
+                count = 1;
+            }
+            for (int b = 0; b < count; b++) {
+                long value = (bytes >>> (b * 8)) & 0xffL;
+                if (shift < 64) {
+                    k1 |= value << shift;
+                } else {
+                    k2 |= value << (shift - 64);
+                }
+                shift += 8;
+                length++;
+                if (shift == 128) {
+                    h1 ^= mixK1(k1);
+                    h1 = Long.rotateLeft(h1, 27) + h2;
+                    h1 = h1 * 5 + 0x52dce729;
+                    h2 ^= mixK2(k2);
+                    h2 = Long.rotateLeft(h2, 31) + h1;
+                    h2 = h2 * 5 + 0x38495ab5;
+                    k1 = 0;
+                    k2 = 0;
+                    shift = 0;
+                }
+            }
+        }
+
+        // 不足 16 bytes 的尾端：沒有填入的部分是 0，混合後仍是 0，所以不必依長度分支
+        h2 ^= mixK2(k2);
+        h1 ^= mixK1(k1);
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        return h1 + h2;
+    }
+
+    // text[i] 開始的一個字元的 UTF-8 bytes：低 32 bits 為 bytes（第一個 byte 在最低位），
+    // bits 32-39 為 byte 數，bit 40 表示這個字元是 surrogate pair、用掉了兩個 char
+    private static long utf8(CharSequence text, int i) {
+        char c = text.charAt(i);
+        if (c < 0x80) {
+            return c | 1L << 32;
+        }
+        if (c < 0x800) {
+            return ((0xc0 | (c >>> 6)) | ((0x80 | (c & 0x3f)) << 8)) | 2L << 32;
+        }
+        if (!Character.isSurrogate(c)) {
+            return ((0xe0 | (c >>> 12)) | ((0x80 | ((c >>> 6) & 0x3f)) << 8) | ((0x80 | (c & 0x3f)) << 16)) | 3L << 32;
+        }
+        if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+            int cp = Character.toCodePoint(c, text.charAt(i + 1));
+            int bytes = (0xf0 | (cp >>> 18)) | ((0x80 | ((cp >>> 12) & 0x3f)) << 8)
+                    | ((0x80 | ((cp >>> 6) & 0x3f)) << 16) | ((0x80 | (cp & 0x3f)) << 24);
+            return (bytes & 0xffffffffL) | 4L << 32 | 1L << 40;
+        }
+        // 不成對的 surrogate 與 String.getBytes(UTF_8) 一樣以 '?' 取代
+        return '?' | 1L << 32;
+    }
+
+    private static int decimalDigits(int value) {
+        int digits = 1;
+        while (digits < POWERS_OF_TEN.length && value >= POWERS_OF_TEN[digits]) {
+            digits++;
+        }
+        return digits;
+    }
+
+    private static int mixK1(int k1) {
+        k1 *= C1;
+        k1 = Integer.rotateLeft(k1, 15);
+        k1 *= C2;
+        return k1;
+    }
+
+    private static int mixH1(int h1, int k1) {
+        h1 ^= k1;
+        h1 = Integer.rotateLeft(h1, 13);
+        h1 = h1 * 5 + 0xe6546b64;
+        return h1;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1_64;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2_64;
+        return k1;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2_64;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1_64;
+        return k2;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static int fmix(int h1, int length) {
+        h1 ^= length;
+        h1 ^= h1 >>> 16;
+        h1 *= 0x85ebca6b;
+        h1 ^= h1 >>> 13;
+        h1 *= 0xc2b2ae35;
+        h1 ^= h1 >>> 16;
+        return h1;
+    }
+}
+
+//程式碼解說：
+//
+//hash32(text, salt): 一邊走訪字元、一邊產生 UTF-8 bytes，每湊滿 4 bytes 就做一次 MurmurHash3 的區塊混合。
+// salt 直接以十進位數字的 ASCII 接在後面，等同於把 url + salt 串成字串後再雜湊。
+//
+//mixK1 / mixH1 / fmix: MurmurHash3_x86_32 的標準步驟（種子為 0），與 Guava 的實作一致。
+//
+//hash64(text, salt): 以兩個 long（k1、k2）湊成 16 bytes 的區塊，混合步驟與 Guava 的 murmur3_128 相同，回傳 asLong() 的值。
+//
+//utf8(text, i): 兩個雜湊共用的 UTF-8 編碼，把一個字元的 bytes 與長度打包在一個 long 裡回傳，不配置任何物件。
@@ -0,0 +1,175 @@
+// SpaceSaving 以固定的記憶體找出出現次數最多的前 K 個 key（Space-Saving 演算法，支援加權更新）。
+//
+// 最多同時監控 capacity 個 key：已監控的 key 直接加上次數；滿了以後，新的 key 取代目前次數最少的 key，
+// 並繼承它的次數（記在 error 中）。真正的熱門 key 一定會留在監控清單裡，
+// 而且 count - error <= 真實次數 <= count。
+//
+// 最少次數的 key 以索引式最小堆積（indexed min-heap）維護，每次更新只需要 O(log capacity)。
+// 所有方法都是 synchronized；更新只由背景彙總執行緒呼叫，查詢的頻率很低。
+
+package com.example.url_shortener.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class SpaceSaving {
+
+    private final int capacity;
+    private final Map<String, Counter> index;
+    private final Counter[] heap;
+    private int size;
+
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.index = new HashMap<>(capacity * 2);
+        this.heap = new Counter[capacity];
+    }
+
+    public synchronized void offer(String key, long weight) {
+        Counter counter = index.get(key);
+        if (counter != null) {
+            counter.count += weight;
+            siftDown(counter.position);
+            return;
+        }
+        if (size < capacity) {
+            counter = new Counter(key, weight, 0);
+            counter.position = size;
+            heap[size++] = counter;
+            index.put(key, counter);
+            siftUp(counter.position);
+            return;
+        }
+        // 取代次數最少的 key，新 key 繼承它的次數作為誤差上限
+        Counter min = heap[0];
+        index.remove(min.key);
+        min.error = min.count;
+        min.count += weight;
+        min.key = key;
+        index.put(key, min);
+        siftDown(0);
+    }
+
+    // 停止監控某個 key（例如短碼已被刪除）
+    public synchronized void remove(String key) {
+        Counter counter = index.remove(key);
+        if (counter == null) {
+            return;
+        }
+        int position = counter.position;
+        Counter last = heap[--size];
+        heap[size] = null;
+        if (position != size) {
+            heap[position] = last;
+            last.position = position;
+            siftDown(position);
+            siftUp(last.position);
+        }
+    }
+
+    // 次數最多的前 k 個 key，依次數由大到小排列
+    public synchronized List<Item> top(int k) {
+        Counter[] counters = Arrays.copyOf(heap, size);
+        Arrays.sort(counters, (a, b) -> Long.compare(b.count, a.count));
+        List<Item> items = new ArrayList<>(Math.min(k, counters.length));
+        for (int i = 0; i < counters.length && i < k; i++) {
+            items.add(new Item(counters[i].key, counters[i].count, counters[i].error));
+        }
+        return items;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    private void siftUp(int position) {
+        Counter counter = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (heap[parent].count <= counter.count) {
+                break;
+            }
+            place(heap[parent], position);
+            position = parent;
+        }
+        place(counter, position);
+    }
+
+    private void siftDown(int position) {
+        Counter counter = heap[position];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            int right = child + 1;
+            if (right < size && heap[right].count < heap[child].count) {
+                child = right;
+            }
+            if (counter.count <= heap[child].count) {
+                break;
+            }
+            place(heap[child], position);
+            position = child;
+        }
+        place(counter, position);
+    }
+
+    private void place(Counter counter, int position) {
+        heap[position] = counter;
+        counter.position = position;
+    }
+
+    private static final class Counter {
+        String key;
+        long count;
+        long error;
+        int position;
+
+        Counter(String key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    public static final class Item {
+        private final String key;
+        private final long count;
+        private final long error;
+
+        Item(String key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        // 估計的次數（不會低於真實次數）
+        public long getCount() {
+            return count;
+        }
+
+        // 估計值可能高估的上限
+        public long getError() {
+            return error;
+        }
+    }
+}
+
+//程式碼解說：
+//
+//offer(key, weight): 加權版本的 Space-Saving。彙總執行緒每次把一段時間內的點擊數一次加進來，而不是每次點擊呼叫一次。
+//
+//heap / position: 堆積的根永遠是次數最少的 Counter；Counter 記住自己在堆積中的位置，增加次數後可以直接往下調整。
+//
+//remove(key): 把最後一個元素移到被刪除的位置，再往上或往下調整，維持堆積性質。
+//
+//top(k): 只排序 capacity 個監控中的 key，與 store 的大小無關。
@@ -0,0 +1,75 @@
+package com.example.url_shortener.api;
+
+import com.example.url_shortener.cluster.ClusterNode;
+import com.example.url_shortener.service.CapacityGuard;
+import com.example.url_shortener.service.ClickListener;
+import com.example.url_shortener.service.CodeGenerator;
+import com.example.url_shortener.service.ShortenService;
+import com.example.url_shortener.service.ShortenerMetrics;
+import com.example.url_shortener.store.CodeFilter;
+import com.example.url_shortener.store.HotEntryCache;
+import com.example.url_shortener.store.InMemoryStore;
+import com.example.url_shortener.store.UrlStore;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchShortenControllerTest {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void nullElementsAreReportedPerItem() throws Exception {
+		List<JsonNode> results = post("[\"https://www.example.com/a\", null, {\"url\": \"https://www.example.com/b\"}]", 2);
+
+		assertEquals(3, results.size());
+		assertTrue(results.get(0).has("code"));
+		assertEquals(1, results.get(1).get("index").asInt());
+		assertEquals("URL cannot be null", results.get(1).get("error").asText());
+		assertTrue(results.get(2).has("code"));
+	}
+
+	@Test
+	void nullLinesInNdjsonAreReportedPerItem() throws Exception {
+		List<JsonNode> results = post("null\n\"https://www.example.com/a\"\nnull\n", 500);
+
+		assertEquals(3, results.size());
+		assertEquals("URL cannot be null", results.get(0).get("error").asText());
+		assertTrue(results.get(1).has("code"));
+		assertEquals("URL cannot be null", results.get(2).get("error").asText());
+	}
+
+	private List<JsonNode> post(String body, int chunkSize) throws Exception {
+		UrlStore store = new InMemoryStore();
+		StaticListableBeanFactory none = new StaticListableBeanFactory();
+		ShortenService service = new ShortenService(new CodeGenerator(store, 0.01), store,
+				none.getBeanProvider(HotEntryCache.class), none.getBeanProvider(CodeFilter.class),
+				none.getBeanProvider(ClickListener.class), none.getBeanProvider(ClusterNode.class),
+				none.getBeanProvider(CapacityGuard.class), none.getBeanProvider(ShortenerMetrics.class));
+		BatchShortenController controller = new BatchShortenController(service, objectMapper,
+				Validation.buildDefaultValidatorFactory().getValidator());
+		ReflectionTestUtils.setField(controller, "baseUrl", "http://localhost:8080");
+		ReflectionTestUtils.setField(controller, "chunkSize", chunkSize);
+
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		controller.shortenBatch(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), response);
+
+		List<JsonNode> results = new ArrayList<>();
+		for (String line : response.getContentAsString(StandardCharsets.UTF_8).split("\n")) {
+			results.add(objectMapper.readTree(line));
+		}
+		return results;
+	}
+}
@@ -0,0 +1,129 @@
+package com.example.url_shortener.api;
+
+import com.example.url_shortener.cluster.ClusterNode;
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.store.InMemoryStore;
+import com.example.url_shortener.store.LongKeyStore;
+import com.example.url_shortener.store.UrlStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StoreExportControllerTest {
+
+	private static final Instant NOW = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void exportThenImportRoundTripsEveryEntry() throws Exception {
+		UrlStore source = new InMemoryStore();
+		int count = 2500;
+		for (int i = 0; i < count; i++) {
+			save(source, i, i % 2 == 0 ? null : NOW.plusSeconds(3600 + i));
+		}
+		String unicode = "https://例子.測試/路徑?查詢=值";
+		source.save(unicode, "uni", new Entry("uni", unicode, NOW, null));
+
+		MockHttpServletResponse exported = new MockHttpServletResponse();
+		controller(source).export(exported);
+		byte[] body = exported.getContentAsByteArray();
+		assertEquals(count + 1, new String(body, StandardCharsets.UTF_8).split("\n").length);
+
+		// 匯入到另一種儲存後端，內容不變
+		UrlStore target = new LongKeyStore();
+		Map<String, Object> result = controller(target).importEntries(new ByteArrayInputStream(body));
+		assertEquals((long) count + 1, result.get("imported"));
+		assertEquals(0L, result.get("invalid"));
+		assertEquals(count + 1, target.size());
+		for (int i = 0; i < count; i++) {
+			Entry entry = target.getEntry(code(i));
+			assertNotNull(entry, code(i));
+			assertEquals(url(i), entry.getUrl());
+			assertEquals(NOW, entry.getCreatedAt());
+			assertEquals(i % 2 == 0 ? null : NOW.plusSeconds(3600 + i), entry.getExpiresAt());
+			assertEquals(code(i), target.getCode(url(i)));
+		}
+		assertEquals(unicode, target.getEntry("uni").getUrl());
+	}
+
+	@Test
+	void importReportsBadRecordsAndSkipsExpiredOnes() throws Exception {
+		UrlStore target = new LongKeyStore();
+		String body = String.join("\n",
+				"{\"code\":\"ok1\",\"url\":\"https://www.example.com/1\",\"createdAt\":\"" + NOW + "\",\"expiresAt\":null}",
+				"{\"code\":\"old\",\"url\":\"https://www.example.com/2\",\"createdAt\":\"" + NOW.minusSeconds(100)
+						+ "\",\"expiresAt\":\"" + NOW.minusSeconds(10) + "\"}",
+				"[1, 2]",
+				"{\"code\":\"\",\"url\":\"https://www.example.com/3\"}",
+				"{\"code\":\"far\",\"url\":\"https://www.example.com/4\",\"expiresAt\":\"2200-01-01T00:00:00Z\"}",
+				// long-key 後端無法保存超過 10 碼的短碼
+				"{\"code\":\"abcdefghijk\",\"url\":\"https://www.example.com/5\"}",
+				"{\"code\":\"ok2\",\"url\":\"https://www.example.com/6\"}",
+				"{\"code\": broken");
+		Map<String, Object> result = controller(target).importEntries(
+				new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+
+		assertEquals(2L, result.get("imported"));
+		assertEquals(1L, result.get("expired"));
+		assertEquals(4L, result.get("invalid"));
+		List<?> errors = (List<?>) result.get("errors");
+		assertEquals(5, errors.size());
+		assertTrue(errors.get(4).toString().startsWith("E4001_MALFORMED_IMPORT after record 7"), errors.get(4).toString());
+		assertNotNull(target.getEntry("ok1"));
+		assertNotNull(target.getEntry("ok2"));
+		assertNull(target.getEntry("old"));
+		assertEquals(2, target.size());
+	}
+
+	@Test
+	void scanPagesCoverTheStoreOnce() {
+		UrlStore store = new InMemoryStore();
+		for (int i = 0; i < 100; i++) {
+			save(store, i, null);
+		}
+		StoreExportController controller = controller(store);
+		Set<Object> seen = new HashSet<>();
+		String cursor = "0";
+		do {
+			Map<String, Object> page = controller.scan(cursor, 7);
+			for (Object row : (List<?>) page.get("entries")) {
+				assertTrue(seen.add(((Map<?, ?>) row).get("code")));
+			}
+			cursor = (String) page.get("cursor");
+		} while (!cursor.equals("0"));
+		assertEquals(100, seen.size());
+	}
+
+	private StoreExportController controller(UrlStore store) {
+		return new StoreExportController(store, new StaticListableBeanFactory().getBeanProvider(ClusterNode.class),
+				objectMapper);
+	}
+
+	private static void save(UrlStore store, int i, Instant expiresAt) {
+		store.save(url(i), code(i), new Entry(code(i), url(i), NOW, expiresAt));
+	}
+
+	private static String code(int i) {
+		return "c" + Integer.toString(i, 36);
+	}
+
+	private static String url(int i) {
+		return "https://www.example.com/page/" + i;
+	}
+}
@@ -0,0 +1,86 @@
+package com.example.url_shortener.clicklog;
+
+import com.example.url_shortener.util.Base62;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClickEventLogTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void eventsAreRoutedToTheirHourFile() throws Exception {
+		ClickEventLog log = new ClickEventLog(directory.toString(), 1024);
+		try {
+			long hour = Math.floorDiv(System.currentTimeMillis(), ClickEventLog.HOUR_MILLIS);
+			long thisHour = hour * ClickEventLog.HOUR_MILLIS;
+			long nextHour = thisHour + ClickEventLog.HOUR_MILLIS;
+			log.onClick("abc", thisHour + 1);
+			log.onClick("abc", nextHour + 2);
+			log.onClick("xyz", thisHour + 3);
+			// 無法打包成 long 的短碼不記錄
+			log.onClick("my-alias", thisHour + 4);
+
+			Path current = directory.resolve(RollupFiles.eventFileName(hour));
+			Path next = directory.resolve(RollupFiles.eventFileName(hour + 1));
+			await(() -> log.writtenCount() == 3 && size(current) == 32 && size(next) == 16);
+
+			ByteBuffer events = ByteBuffer.wrap(Files.readAllBytes(current));
+			assertEquals(Base62.toKey("abc"), events.getLong());
+			assertEquals(thisHour + 1, events.getLong());
+			assertEquals(Base62.toKey("xyz"), events.getLong());
+			assertEquals(thisHour + 3, events.getLong());
+			ByteBuffer later = ByteBuffer.wrap(Files.readAllBytes(next));
+			assertEquals(Base62.toKey("abc"), later.getLong());
+			assertEquals(nextHour + 2, later.getLong());
+			assertEquals(0, log.droppedCount());
+		} finally {
+			log.destroy();
+		}
+	}
+
+	@Test
+	void lateEventsAreDroppedWithoutAFile() throws Exception {
+		ClickEventLog log = new ClickEventLog(directory.toString(), 1024);
+		try {
+			long now = System.currentTimeMillis();
+			long hour = Math.floorDiv(now, ClickEventLog.HOUR_MILLIS);
+			// 三小時前的那個小時早已超過遲到期限
+			log.onClick("abc", now - 3 * ClickEventLog.HOUR_MILLIS);
+			log.onClick("abc", now);
+			await(() -> log.lateCount() == 1 && log.writtenCount() == 1);
+
+			assertFalse(Files.exists(directory.resolve(RollupFiles.eventFileName(hour - 3))));
+			assertTrue(Files.exists(directory.resolve(RollupFiles.eventFileName(hour))));
+		} finally {
+			log.destroy();
+		}
+	}
+
+	private static long size(Path file) {
+		try {
+			return Files.exists(file) ? Files.size(file) : -1;
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + 5_000_000_000L;
+		while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertTrue(condition.getAsBoolean());
+	}
+}
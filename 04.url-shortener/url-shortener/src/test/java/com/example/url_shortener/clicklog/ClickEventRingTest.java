@@ -0,0 +1,93 @@
+package com.example.url_shortener.clicklog;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClickEventRingTest {
+
+	@Test
+	void fullRingDropsUntilTheConsumerCatchesUp() {
+		ClickEventRing ring = new ClickEventRing(4);
+		for (int i = 1; i <= 4; i++) {
+			assertTrue(ring.offer(i, i * 10L));
+		}
+		assertFalse(ring.offer(5, 50));
+
+		List<long[]> events = new ArrayList<>();
+		assertEquals(2, ring.drain((key, time) -> events.add(new long[]{key, time}), 2));
+		// 讀走兩格之後又能寫入兩筆，依寫入順序讀出
+		assertTrue(ring.offer(6, 60));
+		assertTrue(ring.offer(7, 70));
+		assertFalse(ring.offer(8, 80));
+		assertEquals(4, ring.drain((key, time) -> events.add(new long[]{key, time}), 100));
+		assertEquals(0, ring.drain((key, time) -> events.add(new long[]{key, time}), 100));
+
+		long[] expected = {1, 2, 3, 4, 6, 7};
+		assertEquals(expected.length, events.size());
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], events.get(i)[0]);
+			assertEquals(expected[i] * 10, events.get(i)[1]);
+		}
+	}
+
+	@Test
+	void capacityIsRoundedUpToAPowerOfTwo() {
+		ClickEventRing ring = new ClickEventRing(5);
+		for (int i = 0; i < 8; i++) {
+			assertTrue(ring.offer(i + 1, i));
+		}
+		assertFalse(ring.offer(9, 9));
+	}
+
+	@Test
+	void concurrentProducersLoseNothingThatWasAccepted() throws Exception {
+		ClickEventRing ring = new ClickEventRing(1024);
+		int producers = 4;
+		int perProducer = 100_000;
+		AtomicLong accepted = new AtomicLong();
+		List<Thread> threads = new ArrayList<>();
+		for (int p = 0; p < producers; p++) {
+			long producer = p + 1;
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < perProducer; i++) {
+					// 時間欄位放每個生產者自己的序號，消費端據此檢查同一個生產者的事件沒有亂序或重複
+					if (ring.offer(producer, i)) {
+						accepted.incrementAndGet();
+					}
+				}
+			}));
+		}
+		threads.forEach(Thread::start);
+
+		long[] lastSeen = {-1, -1, -1, -1, -1};
+		long[] received = new long[1];
+		boolean[] ordered = {true};
+		ClickEventRing.EventHandler handler = (key, sequence) -> {
+			if (sequence <= lastSeen[(int) key]) {
+				ordered[0] = false;
+			}
+			lastSeen[(int) key] = sequence;
+			received[0]++;
+		};
+		while (threads.stream().anyMatch(Thread::isAlive)) {
+			ring.drain(handler, 256);
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		while (ring.drain(handler, 256) > 0) {
+			// 取出剩下的事件
+		}
+
+		assertTrue(ordered[0]);
+		assertEquals(accepted.get(), received[0]);
+		assertTrue(accepted.get() > 0);
+	}
+}
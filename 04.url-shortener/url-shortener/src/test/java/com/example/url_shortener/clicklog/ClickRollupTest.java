@@ -0,0 +1,149 @@
+package com.example.url_shortener.clicklog;
+
+import com.example.url_shortener.util.Base62;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Map;
+import java.util.NavigableMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClickRollupTest {
+
+	private static final Instant JAN_31_22 = Instant.parse("2024-01-31T22:00:00Z");
+
+	@TempDir
+	Path directory;
+
+	private ClickEventLog log;
+	private ClickRollup rollup;
+
+	@BeforeEach
+	void setUp() {
+		log = new ClickEventLog(directory.toString(), 1024);
+		// 保留期限拉長：測試資料的時間早於現在，不能在 rollup 時就被刪除
+		rollup = new ClickRollup(log, 1_000_000, 100_000);
+	}
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		log.destroy();
+	}
+
+	@Test
+	void rollsEventsUpIntoMinutesHoursAndDays() throws IOException {
+		writeFixture();
+		rollup.rollup();
+
+		// 已封存的小時：事件檔併入 minute 檔後刪除
+		assertFalse(Files.exists(directory.resolve(RollupFiles.eventFileName(hourOf("2024-01-31T22:00:00Z")))));
+		assertTrue(Files.exists(directory.resolve("minute-2024-01-31T22.roll")));
+		assertTrue(Files.exists(directory.resolve("hour-2024-01-31.roll")));
+		assertTrue(Files.exists(directory.resolve("day-2024-01.roll")));
+		assertTrue(Files.exists(directory.resolve("day-2024-02.roll")));
+
+		assertEquals(Map.of(at("2024-01-31T22:05:00Z"), 4L, at("2024-01-31T22:59:00Z"), 1L, at("2024-01-31T23:00:00Z"), 2L,
+						at("2024-02-01T00:30:00Z"), 5L),
+				rollup.query("abc", Granularity.MINUTE, JAN_31_22, at("2024-02-01T01:00:00Z")));
+		assertEquals(Map.of(at("2024-01-31T22:00:00Z"), 5L, at("2024-01-31T23:00:00Z"), 2L, at("2024-02-01T00:00:00Z"), 5L),
+				rollup.query("abc", Granularity.HOUR, at("2024-01-31T00:00:00Z"), at("2024-02-02T00:00:00Z")));
+		assertEquals(Map.of(at("2024-01-31T00:00:00Z"), 7L, at("2024-02-01T00:00:00Z"), 5L),
+				rollup.query("abc", Granularity.DAY, at("2024-01-01T00:00:00Z"), at("2024-03-01T00:00:00Z")));
+		assertEquals(Map.of(at("2024-01-31T00:00:00Z"), 7L),
+				rollup.query("xyz", Granularity.DAY, at("2024-01-01T00:00:00Z"), at("2024-03-01T00:00:00Z")));
+
+		// 範圍是 [from, to)：只回傳範圍內的 bucket
+		assertEquals(Map.of(at("2024-01-31T22:05:00Z"), 4L),
+				rollup.query("abc", Granularity.MINUTE, at("2024-01-31T22:05:00Z"), at("2024-01-31T22:06:00Z")));
+		assertTrue(rollup.query("abc", Granularity.MINUTE, at("2024-01-31T22:06:00Z"), at("2024-01-31T22:59:00Z")).isEmpty());
+		assertTrue(rollup.query("nothere", Granularity.DAY, at("2024-01-01T00:00:00Z"), at("2024-03-01T00:00:00Z")).isEmpty());
+
+		// 重跑不會重複計算
+		rollup.rollup();
+		assertEquals(Map.of(at("2024-01-31T00:00:00Z"), 7L, at("2024-02-01T00:00:00Z"), 5L),
+				rollup.query("abc", Granularity.DAY, at("2024-01-01T00:00:00Z"), at("2024-03-01T00:00:00Z")));
+	}
+
+	@Test
+	void rangeQueriesOpenOnlyTheFilesTheyNeed() throws IOException {
+		writeFixture();
+		rollup.rollup();
+		// 範圍外的檔案被破壞：只要查詢真的開啟它就會失敗
+		Files.write(directory.resolve("minute-2024-01-31T23.roll"), new byte[]{1, 2, 3});
+		Files.write(directory.resolve("hour-2024-02-01.roll"), new byte[]{1, 2, 3});
+		Files.write(directory.resolve("day-2024-02.roll"), new byte[]{1, 2, 3});
+
+		NavigableMap<Instant, Long> minutes = rollup.query("abc", Granularity.MINUTE, JAN_31_22, at("2024-01-31T23:00:00Z"));
+		assertEquals(Map.of(at("2024-01-31T22:05:00Z"), 4L, at("2024-01-31T22:59:00Z"), 1L), minutes);
+		assertEquals(5L, rollup.query("abc", Granularity.HOUR, JAN_31_22, at("2024-02-01T00:00:00Z"))
+				.get(at("2024-01-31T22:00:00Z")));
+		assertEquals(7L, rollup.query("abc", Granularity.DAY, at("2024-01-01T00:00:00Z"), at("2024-02-01T00:00:00Z"))
+				.get(at("2024-01-31T00:00:00Z")));
+
+		// 多涵蓋一分鐘就會讀到被破壞的檔案
+		assertThrows(IOException.class,
+				() -> rollup.query("abc", Granularity.MINUTE, JAN_31_22, at("2024-01-31T23:01:00Z")));
+	}
+
+	@Test
+	void eventsAppendedToAnOpenHourAreAddedOnce() throws IOException {
+		// 目前這個小時還沒封存：事件檔保留，下一次 rollup 只讀新增的部分
+		long hour = Math.floorDiv(System.currentTimeMillis(), ClickEventLog.HOUR_MILLIS);
+		long start = hour * ClickEventLog.HOUR_MILLIS;
+		Path events = directory.resolve(RollupFiles.eventFileName(hour));
+		append(events, "abc", start, 3);
+		rollup.rollup();
+		assertTrue(Files.exists(events));
+
+		append(events, "abc", start, 2);
+		rollup.rollup();
+		Instant from = Instant.ofEpochMilli(start);
+		assertEquals(Map.of(from, 5L), rollup.query("abc", Granularity.MINUTE, from, from.plusSeconds(3600)));
+		assertEquals(Map.of(from, 5L), rollup.query("abc", Granularity.HOUR, from, from.plusSeconds(3600)));
+	}
+
+	private void writeFixture() throws IOException {
+		append(eventFile("2024-01-31T22:00:00Z"), "abc", millis("2024-01-31T22:05:10Z"), 3);
+		append(eventFile("2024-01-31T22:00:00Z"), "abc", millis("2024-01-31T22:05:50Z"), 1);
+		append(eventFile("2024-01-31T22:00:00Z"), "xyz", millis("2024-01-31T22:05:10Z"), 7);
+		append(eventFile("2024-01-31T22:00:00Z"), "abc", millis("2024-01-31T22:59:59Z"), 1);
+		append(eventFile("2024-01-31T23:00:00Z"), "abc", millis("2024-01-31T23:00:00Z"), 2);
+		append(eventFile("2024-02-01T00:00:00Z"), "abc", millis("2024-02-01T00:30:00Z"), 5);
+	}
+
+	private Path eventFile(String hour) {
+		return directory.resolve(RollupFiles.eventFileName(hourOf(hour)));
+	}
+
+	private static void append(Path file, String code, long epochMillis, int times) throws IOException {
+		ByteBuffer events = ByteBuffer.allocate(RollupFiles.EVENT_SIZE * times);
+		for (int i = 0; i < times; i++) {
+			events.putLong(Base62.toKey(code)).putLong(epochMillis);
+		}
+		Files.write(file, events.array(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+
+	private static long hourOf(String instant) {
+		return Math.floorDiv(millis(instant), ClickEventLog.HOUR_MILLIS);
+	}
+
+	private static long millis(String instant) {
+		return Instant.parse(instant).toEpochMilli();
+	}
+
+	private static Instant at(String instant) {
+		return Instant.parse(instant);
+	}
+}
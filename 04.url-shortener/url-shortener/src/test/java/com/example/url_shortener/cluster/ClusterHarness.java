@@ -0,0 +1,71 @@
+// ClusterHarness 在同一個 JVM 中啟動多個分片節點，每個節點有自己的 InMemoryStore，
+// 分片協定監聽 127.0.0.1 上由系統指定的連接埠，節點之間仍然透過真正的 TCP 連線轉送。
+// 不需要任何外部基礎設施就能量測節點數量與 rebalance 對吞吐量的影響。
+
+package com.example.url_shortener.cluster;
+
+import com.example.url_shortener.store.CodeFilter;
+import com.example.url_shortener.store.HotEntryCache;
+import com.example.url_shortener.store.InMemoryStore;
+import com.example.url_shortener.store.UrlStore;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+final class ClusterHarness implements AutoCloseable {
+
+	private final int virtualNodes;
+	private final List<ClusterNode> nodes = new ArrayList<>();
+
+	ClusterHarness(int virtualNodes) {
+		this.virtualNodes = virtualNodes;
+	}
+
+	// 第一個節點自己組成一個環，之後的節點都經由第一個節點 JOIN（與正式環境設定 app.cluster.join 相同）
+	ClusterNode addNode() {
+		return addNode(new InMemoryStore());
+	}
+
+	// 以指定的本機 store 加入（測試可以換成會失敗的 store）
+	ClusterNode addNode(UrlStore store) {
+		String id = "node-" + (nodes.size() + 1);
+		String join = nodes.isEmpty() ? "" : nodes.get(0).address();
+		ClusterNode node = new ClusterNode(store, (HotEntryCache) null, (CodeFilter) null,
+				id, "127.0.0.1:0", "", join, virtualNodes, 8);
+		node.start();
+		nodes.add(node);
+		return node;
+	}
+
+	// 等到所有節點都結束 rebalance
+	void awaitRebalanced(Duration timeout) throws InterruptedException {
+		long deadline = System.nanoTime() + timeout.toNanos();
+		while (nodes.stream().anyMatch(ClusterNode::isRebalancing)) {
+			if (System.nanoTime() > deadline) {
+				throw new IllegalStateException("Cluster did not finish rebalancing within " + timeout);
+			}
+			Thread.sleep(5);
+		}
+	}
+
+	ClusterNode node(int index) {
+		return nodes.get(index);
+	}
+
+	int size() {
+		return nodes.size();
+	}
+
+	// 所有節點本機分片的筆數總和
+	int totalEntries() {
+		return nodes.stream().mapToInt(node -> node.routedStore().size()).sum();
+	}
+
+	@Override
+	public void close() {
+		for (int i = nodes.size() - 1; i >= 0; i--) {
+			nodes.get(i).stop();
+		}
+	}
+}
@@ -0,0 +1,227 @@
+package com.example.url_shortener.cluster;
+
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.store.InMemoryStore;
+import com.example.url_shortener.store.UrlStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClusterHarnessTest {
+
+	// 分片協定以 epoch 毫秒傳送時間，跨節點比較 createdAt 時要用同樣的精度
+	private static final Instant NOW = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+
+	@Test
+	void routesCodesAndUrlIndexAcrossNodes() throws Exception {
+		try (ClusterHarness cluster = new ClusterHarness(128)) {
+			for (int i = 0; i < 3; i++) {
+				cluster.addNode();
+				cluster.awaitRebalanced(Duration.ofSeconds(30));
+			}
+
+			int count = 3000;
+			for (int i = 0; i < count; i++) {
+				Entry entry = entry(i);
+				assertSame(entry, cluster.node(i % 3).routedStore().claim(entry));
+			}
+
+			for (int i = 0; i < count; i++) {
+				// 同一個 URL 從另一個節點以不同的短碼再縮短一次，仍然拿回原本的短碼
+				Entry again = new Entry("dup" + i, url(i), NOW, null);
+				assertEquals(code(i), cluster.node((i + 1) % 3).routedStore().claim(again).getCode());
+
+				Entry resolved = cluster.node((i + 2) % 3).routedStore().getEntry(code(i));
+				assertNotNull(resolved);
+				assertEquals(url(i), resolved.getUrl());
+			}
+
+			assertEquals(count, cluster.totalEntries());
+			for (int i = 0; i < 3; i++) {
+				// 每個節點至少分到平均值的一半
+				assertTrue(cluster.node(i).routedStore().size() > count / 6);
+			}
+		}
+	}
+
+	@Test
+	void addingNodeMovesOnlyItsShareWhileServingReads() throws Exception {
+		try (ClusterHarness cluster = new ClusterHarness(128)) {
+			for (int i = 0; i < 3; i++) {
+				cluster.addNode();
+				cluster.awaitRebalanced(Duration.ofSeconds(30));
+			}
+
+			int count = 20_000;
+			long loadStarted = System.nanoTime();
+			for (int i = 0; i < count; i++) {
+				cluster.node(i % 3).routedStore().claim(entry(i));
+			}
+			long loadNanos = System.nanoTime() - loadStarted;
+
+			// rebalance 期間持續從舊節點讀取，任何一次查不到都算失敗
+			AtomicBoolean reading = new AtomicBoolean(true);
+			AtomicLong reads = new AtomicLong();
+			AtomicLong misses = new AtomicLong();
+			Thread reader = new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				while (reading.get()) {
+					int i = random.nextInt(count);
+					Entry entry = cluster.node(random.nextInt(3)).routedStore().getEntry(code(i));
+					if (entry == null || !entry.getUrl().equals(url(i))) {
+						misses.incrementAndGet();
+					}
+					reads.incrementAndGet();
+				}
+			});
+			reader.start();
+
+			long rebalanceStarted = System.nanoTime();
+			ClusterNode joined = cluster.addNode();
+			cluster.awaitRebalanced(Duration.ofSeconds(30));
+			long rebalanceNanos = System.nanoTime() - rebalanceStarted;
+
+			reading.set(false);
+			reader.join();
+
+			int moved = joined.routedStore().size();
+			long migrated = 0;
+			for (int i = 0; i < 3; i++) {
+				migrated += cluster.node(i).migratedEntryCount();
+			}
+			System.out.printf("cluster harness: loaded %d entries on 3 nodes at %.0f claims/s; "
+							+ "4th node took %d entries (%.1f%%, %d pushed by migration) in %d ms with %d concurrent reads%n",
+					count, count / (loadNanos / 1e9), moved, 100.0 * moved / count, migrated,
+					rebalanceNanos / 1_000_000, reads.get());
+
+			assertEquals(0, misses.get());
+			assertEquals(count, cluster.totalEntries());
+			// 一致性雜湊：新節點只分走大約 1/4，其餘短碼留在原本的節點
+			assertTrue(moved > count / 10 && moved < count * 2 / 5, "moved " + moved);
+			assertEquals(moved, migrated);
+
+			for (int i = 0; i < count; i++) {
+				UrlStore store = cluster.node(i % 4).routedStore();
+				Entry entry = store.getEntry(code(i));
+				assertNotNull(entry);
+				assertEquals(url(i), entry.getUrl());
+				assertEquals(code(i), store.getCode(url(i)));
+			}
+		}
+	}
+
+	@Test
+	void failedMigrationBatchesAreRetriedUntilTheRebalanceFinishes() throws Exception {
+		try (ClusterHarness cluster = new ClusterHarness(128)) {
+			for (int i = 0; i < 3; i++) {
+				cluster.addNode();
+				cluster.awaitRebalanced(Duration.ofSeconds(30));
+			}
+			int count = 3000;
+			for (int i = 0; i < count; i++) {
+				cluster.node(i % 3).routedStore().claim(entry(i));
+			}
+
+			// 新節點的 store 前幾次寫入失敗：每個舊節點的第一批搬移都會被拒絕
+			AtomicInteger failures = new AtomicInteger(3);
+			ClusterNode joined = cluster.addNode(new InMemoryStore() {
+				@Override
+				public Entry claim(Entry candidate) {
+					if (failures.getAndDecrement() > 0) {
+						throw new IllegalStateException("store temporarily unavailable");
+					}
+					return super.claim(candidate);
+				}
+			});
+			cluster.awaitRebalanced(Duration.ofSeconds(30));
+
+			long retries = 0;
+			long migrated = 0;
+			for (int i = 0; i < 3; i++) {
+				retries += cluster.node(i).migrationRetryCount();
+				migrated += cluster.node(i).migratedEntryCount();
+			}
+			assertTrue(retries > 0);
+			assertEquals(joined.routedStore().size(), migrated);
+			assertEquals(count, cluster.totalEntries());
+			for (int i = 0; i < count; i++) {
+				Entry entry = cluster.node(i % 4).routedStore().getEntry(code(i));
+				assertNotNull(entry, code(i));
+				assertEquals(url(i), entry.getUrl());
+			}
+			// 沒有停在 rebalance 中：coordinator 接受下一個 JOIN
+			cluster.addNode();
+			cluster.awaitRebalanced(Duration.ofSeconds(30));
+			assertEquals(5, cluster.node(0).ringNodes().size());
+		}
+	}
+
+	@Test
+	void concurrentClaimsOfOneUrlAgreeOnOneCode() throws Exception {
+		try (ClusterHarness cluster = new ClusterHarness(128)) {
+			for (int i = 0; i < 3; i++) {
+				cluster.addNode();
+				cluster.awaitRebalanced(Duration.ofSeconds(30));
+			}
+
+			// URL 索引指向一個還沒寫入的短碼（另一個請求停在兩步驟之間）：接手那個短碼，而不是另外建立一個
+			cluster.node(0).claimUrl(url(0), "pending0");
+			Entry adopted = cluster.node(1).routedStore().claim(entry(0));
+			assertEquals("pending0", adopted.getCode());
+			assertEquals(url(0), adopted.getUrl());
+			// 停住的請求稍後完成第二步，拿到的也是同一筆資料
+			assertEquals(adopted.getCreatedAt(),
+					cluster.node(2).claimEntry(new Entry("pending0", url(0), NOW.plusSeconds(1), null)).getCreatedAt());
+
+			int urls = 50;
+			int threads = 6;
+			String[][] codes = new String[threads][urls];
+			Thread[] workers = new Thread[threads];
+			for (int t = 0; t < threads; t++) {
+				int worker = t;
+				workers[t] = new Thread(() -> {
+					for (int i = 1; i <= urls; i++) {
+						// 每個執行緒以不同的短碼縮短同一組 URL
+						Entry candidate = new Entry("w" + worker + "u" + i, url(i), NOW, null);
+						codes[worker][i - 1] = cluster.node(worker % 3).routedStore().claim(candidate).getCode();
+					}
+				});
+				workers[t].start();
+			}
+			for (Thread worker : workers) {
+				worker.join();
+			}
+			for (int i = 1; i <= urls; i++) {
+				String code = codes[0][i - 1];
+				for (int t = 1; t < threads; t++) {
+					assertEquals(code, codes[t][i - 1], url(i));
+				}
+				assertEquals(code, cluster.node(i % 3).routedStore().getCode(url(i)));
+			}
+			assertEquals(urls + 1, cluster.totalEntries());
+		}
+	}
+
+	private static Entry entry(int i) {
+		return new Entry(code(i), url(i), NOW, null);
+	}
+
+	private static String code(int i) {
+		return "c" + Integer.toString(i, 36);
+	}
+
+	private static String url(int i) {
+		return "https://example.com/page/" + i;
+	}
+}
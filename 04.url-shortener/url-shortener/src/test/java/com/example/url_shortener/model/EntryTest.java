@@ -0,0 +1,95 @@
+package com.example.url_shortener.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EntryTest {
+
+	private static final Instant NOW = Instant.ofEpochSecond(1_700_000_000L);
+
+	@Test
+	void compactFormRoundTripsUrls() {
+		List<String> urls = List.of(
+				"https://www.example.com/articles/1?utm_source=mail#top",
+				"https://www.example.com",
+				"https://www.example.com?q=1",
+				"http://localhost:8080#section",
+				"mailto:someone@example.com",
+				"https://例子.測試/路徑?查詢=值",
+				"https://www.example.com/café/😀");
+		for (String url : urls) {
+			Entry entry = new Entry("abc", url, NOW, null);
+			assertEquals(url, entry.getUrl());
+			assertTrue(entry.hasUrl(url), url);
+
+			// 從精簡格式重建（LongKeyStore 的路徑）之後內容不變
+			Entry rebuilt = new Entry("abc", entry.getUrlPrefix(), entry.getUrlTail(),
+					entry.getCreatedAtRaw(), entry.getExpiresAtRaw());
+			assertEquals(url, rebuilt.getUrl());
+			assertTrue(rebuilt.hasUrl(url), url);
+		}
+	}
+
+	@Test
+	void prefixStopsAtPathQueryOrFragment() {
+		assertEquals("https://www.example.com", prefixOf("https://www.example.com/a/b"));
+		assertEquals("https://www.example.com", prefixOf("https://www.example.com?utm_source=mail"));
+		assertEquals("https://www.example.com:8443", prefixOf("https://www.example.com:8443#top"));
+		assertEquals("https://www.example.com", prefixOf("https://www.example.com"));
+		assertEquals("", prefixOf("www.example.com/a"));
+	}
+
+	@Test
+	void hasUrlComparesNonAsciiUrlsExactly() {
+		Entry entry = new Entry("abc", "https://www.example.com/café", NOW, null);
+		// 字元數相同、bytes 數不同
+		assertFalse(entry.hasUrl("https://www.example.com/cafe"));
+		assertFalse(entry.hasUrl("https://www.example.com/cafè"));
+		// 字元數剛好等於儲存的 UTF-8 bytes 數：逐字比較遇到非 ASCII 的 byte 時改為完整比較
+		assertFalse(entry.hasUrl("https://www.example.com/caféx"));
+		assertFalse(entry.hasUrl("https://www.example.com/caf"));
+		assertTrue(entry.hasUrl("https://www.example.com/café"));
+
+		Entry ascii = new Entry("abc", "https://www.example.com/cafe", NOW, null);
+		assertFalse(ascii.hasUrl("https://www.example.com/café"));
+		// UTF-8 bytes 數與儲存的 URL 相同、字元數較少的字串
+		assertFalse(ascii.hasUrl("https://www.example.com/caé"));
+	}
+
+	@Test
+	void timesAreStoredAsUnsignedEpochSeconds() {
+		Instant beyond2038 = Instant.parse("2100-01-01T00:00:00Z");
+		Entry entry = new Entry("abc", "https://www.example.com/", NOW, beyond2038.plusMillis(1));
+		assertEquals(NOW, entry.getCreatedAt());
+		// 到期時間無條件進位到整秒
+		assertEquals(beyond2038.plusSeconds(1), entry.getExpiresAt());
+		assertFalse(entry.isExpired(beyond2038));
+		assertTrue(entry.isExpired(beyond2038.plusSeconds(2)));
+		assertNull(new Entry("abc", "https://www.example.com/", NOW, null).getExpiresAt());
+	}
+
+	@Test
+	void timesOutsideTheCompactRangeAreRejected() {
+		String url = "https://www.example.com/";
+		Instant max = Instant.ofEpochSecond(0xFFFF_FFFFL);
+		assertEquals(max, new Entry("abc", url, NOW, max).getExpiresAt());
+		assertThrows(IllegalArgumentException.class, () -> new Entry("abc", url, NOW, max.plusMillis(1)));
+		assertThrows(IllegalArgumentException.class, () -> new Entry("abc", url, NOW, Instant.parse("2200-01-01T00:00:00Z")));
+		assertThrows(IllegalArgumentException.class, () -> new Entry("abc", url, Instant.EPOCH, null));
+		assertThrows(IllegalArgumentException.class, () -> new Entry("abc", url, Instant.parse("1969-12-31T00:00:00Z"), null));
+		assertThrows(IllegalArgumentException.class, () -> new Entry("abc", url, NOW, Instant.EPOCH));
+	}
+
+	private static String prefixOf(String url) {
+		return new String(UrlPrefixes.bytes(new Entry("abc", url, NOW, null).getUrlPrefix()), StandardCharsets.UTF_8);
+	}
+}
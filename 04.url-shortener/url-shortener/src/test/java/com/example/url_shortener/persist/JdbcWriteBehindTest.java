@@ -0,0 +1,104 @@
+package com.example.url_shortener.persist;
+
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.store.InMemoryStore;
+import com.example.url_shortener.store.UrlStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class JdbcWriteBehindTest {
+
+	private static final Instant NOW = Instant.now();
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void flushedChangesAreReloadedPageByPage() throws Exception {
+		UrlStore store = new InMemoryStore();
+		JdbcWriteBehind writeBehind = open(store, 50, 10);
+		for (int i = 0; i < 200; i++) {
+			save(store, i, NOW.plusSeconds(3600));
+		}
+		for (int i = 0; i < 200; i += 4) {
+			store.remove(url(i), code(i));
+		}
+		// 已經過期、尚未被清理的短碼：重新啟動時不載入
+		save(store, 1000, NOW.minusSeconds(10));
+		writeBehind.destroy();
+		assertEquals(0, writeBehind.queuedCount());
+		assertEquals(0, writeBehind.failureCount());
+
+		// page-size 10：載入時要走過十幾頁 keyset 分頁
+		UrlStore reloaded = new InMemoryStore();
+		JdbcWriteBehind again = open(reloaded, 50, 10);
+		try {
+			assertEquals(150, reloaded.size());
+			for (int i = 0; i < 200; i++) {
+				Entry entry = reloaded.getEntry(code(i));
+				if (i % 4 == 0) {
+					assertNull(entry, code(i));
+				} else {
+					assertNotNull(entry, code(i));
+					assertEquals(url(i), entry.getUrl());
+					assertEquals(NOW.getEpochSecond(), entry.getCreatedAt().getEpochSecond());
+					assertEquals(code(i), reloaded.getCode(url(i)));
+				}
+			}
+			assertNull(reloaded.getEntry(code(1000)));
+		} finally {
+			again.destroy();
+		}
+	}
+
+	@Test
+	void changesToOneCodeInABatchAreCoalesced() throws Exception {
+		UrlStore store = new InMemoryStore();
+		// flush 間隔夠長，三筆異動落在同一批
+		JdbcWriteBehind writeBehind = open(store, 1000, 10);
+		save(store, 0, null);
+		store.remove(url(0), code(0));
+		save(store, 1, null);
+		writeBehind.destroy();
+		assertEquals(1, writeBehind.coalescedCount());
+		assertEquals(2, writeBehind.flushedCount());
+		assertEquals(1, writeBehind.batchCount());
+
+		UrlStore reloaded = new InMemoryStore();
+		JdbcWriteBehind again = open(reloaded, 500, 10);
+		try {
+			assertNull(reloaded.getEntry(code(0)));
+			assertEquals(url(1), reloaded.getEntry(code(1)).getUrl());
+			assertEquals(1, reloaded.size());
+		} finally {
+			again.destroy();
+		}
+	}
+
+	private JdbcWriteBehind open(UrlStore store, long flushIntervalMs, int pageSize) {
+		String jdbcUrl = "jdbc:h2:file:" + directory.resolve("shortener").toAbsolutePath() + ";DB_CLOSE_ON_EXIT=FALSE";
+		JdbcWriteBehind writeBehind = new JdbcWriteBehind(store, jdbcUrl, "sa", "", 1000, 500, flushIntervalMs,
+				pageSize, "block", "retry");
+		writeBehind.afterSingletonsInstantiated();
+		return writeBehind;
+	}
+
+	private static void save(UrlStore store, int i, Instant expiresAt) {
+		store.save(url(i), code(i), new Entry(code(i), url(i), NOW, expiresAt));
+	}
+
+	private static String code(int i) {
+		return "c" + Integer.toString(i, 36);
+	}
+
+	private static String url(int i) {
+		return "https://www.example.com/page/" + i;
+	}
+}
@@ -0,0 +1,185 @@
+package com.example.url_shortener.persist;
+
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.store.InMemoryStore;
+import com.example.url_shortener.store.LongKeyStore;
+import com.example.url_shortener.store.UrlStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PersistenceManagerTest {
+
+	private static final Instant NOW = Instant.ofEpochSecond(1_700_000_000L);
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void snapshotAndJournalSurviveATornTail() throws IOException {
+		UrlStore store = new InMemoryStore();
+		PersistenceManager manager = open(store);
+		for (int i = 0; i < 100; i++) {
+			save(store, i);
+		}
+		manager.compact();
+		// snapshot 之後的異動只在 journal 中
+		for (int i = 100; i < 150; i++) {
+			save(store, i);
+		}
+		store.remove(url(3), code(3));
+		store.remove(url(120), code(120));
+		manager.destroy();
+
+		// 模擬寫到一半當機：最新的 journal 結尾只有半筆紀錄
+		Path journal = latestJournal();
+		byte[] record = RecordCodec.encodeSave(entry(999));
+		Files.write(journal, Arrays.copyOf(record, record.length / 2), StandardOpenOption.APPEND);
+
+		UrlStore recovered = new InMemoryStore();
+		PersistenceManager reopened = open(recovered);
+		assertEquals(148, recovered.size());
+		assertNull(recovered.getEntry(code(3)));
+		assertNull(recovered.getEntry(code(120)));
+		assertNull(recovered.getEntry(code(999)));
+		assertEquals(code(149), recovered.getCode(url(149)));
+
+		// 回放後的新異動寫到新的 journal，不會接在殘缺的紀錄後面
+		save(recovered, 200);
+		reopened.destroy();
+		UrlStore again = new InMemoryStore();
+		open(again).destroy();
+		assertEquals(149, again.size());
+		assertEquals(code(200), again.getCode(url(200)));
+	}
+
+	@Test
+	void removeOfAReusedCodeDoesNotDeleteTheNewOwner() throws IOException {
+		// 短碼先屬於 url(1)，刪除後改由 url(2) 使用；兩個 URL 的鎖不同，紀錄可能以「新資料、舊刪除」的順序寫入
+		Entry reused = new Entry(code(1), url(2), NOW, NOW.plusSeconds(3600));
+		ByteArrayOutputStream journal = new ByteArrayOutputStream();
+		journal.write(RecordCodec.header());
+		journal.write(RecordCodec.encodeSave(entry(1)));
+		journal.write(RecordCodec.encodeSave(reused));
+		journal.write(RecordCodec.encodeRemove(url(1), code(1)));
+		Files.write(directory.resolve("journal-1.log"), journal.toByteArray());
+
+		for (Supplier<UrlStore> backend : List.<Supplier<UrlStore>>of(InMemoryStore::new, LongKeyStore::new)) {
+			UrlStore store = backend.get();
+			open(store).destroy();
+			assertEquals(url(2), store.getEntry(code(1)).getUrl());
+			assertEquals(code(1), store.getCode(url(2)));
+			assertNull(store.getCode(url(1)));
+		}
+	}
+
+	@Test
+	void journalOrderMatchesConcurrentRemoveAndRecreate() throws Exception {
+		for (Supplier<UrlStore> backend : List.<Supplier<UrlStore>>of(InMemoryStore::new, LongKeyStore::new)) {
+			UrlStore store = backend.get();
+			PersistenceManager manager = open(store);
+			int urls = 4;
+			AtomicBoolean stop = new AtomicBoolean();
+			List<Thread> threads = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				int offset = t;
+				threads.add(new Thread(() -> {
+					// 兩個執行緒刪除同一組 URL 的資料，另外兩個重新建立（清理執行緒與 shorten 搶同一個短碼）
+					for (long n = 1; !stop.get(); n++) {
+						int i = (int) (n % urls);
+						if (offset < 2) {
+							Entry current = store.getEntry(code(i));
+							if (current != null) {
+								store.remove(current);
+							}
+						} else {
+							store.claim(new Entry(code(i), url(i), NOW.plusSeconds(n), NOW.plusSeconds(n + 3600)));
+						}
+					}
+				}));
+			}
+			threads.forEach(Thread::start);
+			Thread.sleep(300);
+			stop.set(true);
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			manager.destroy();
+
+			UrlStore recovered = backend.get();
+			open(recovered).destroy();
+			for (int i = 0; i < urls; i++) {
+				Entry live = store.getEntry(code(i));
+				Entry replayed = recovered.getEntry(code(i));
+				if (live == null) {
+					assertNull(replayed);
+				} else {
+					assertEquals(live.getCreatedAt(), replayed.getCreatedAt());
+				}
+			}
+			assertEquals(store.size(), recovered.size());
+			deleteFiles();
+		}
+	}
+
+	private PersistenceManager open(UrlStore store) {
+		PersistenceManager manager = new PersistenceManager(store, directory.toString(), "batch", 1);
+		manager.afterSingletonsInstantiated();
+		return manager;
+	}
+
+	private Path latestJournal() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			List<Path> journals = files.filter(file -> file.getFileName().toString().startsWith("journal-"))
+					.sorted((a, b) -> Long.compare(generation(a), generation(b)))
+					.toList();
+			assertTrue(!journals.isEmpty());
+			return journals.get(journals.size() - 1);
+		}
+	}
+
+	private void deleteFiles() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : files.toList()) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	private static long generation(Path file) {
+		String name = file.getFileName().toString();
+		return Long.parseLong(name.substring("journal-".length(), name.length() - ".log".length()));
+	}
+
+	private static void save(UrlStore store, int i) {
+		store.save(url(i), code(i), entry(i));
+	}
+
+	private static Entry entry(int i) {
+		return new Entry(code(i), url(i), NOW, NOW.plusSeconds(3600));
+	}
+
+	private static String url(int i) {
+		return "https://www.example.com/articles/" + i;
+	}
+
+	private static String code(int i) {
+		return "c" + i;
+	}
+}
@@ -0,0 +1,49 @@
+package com.example.url_shortener.ratelimit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RateLimitFilterTest {
+
+	@Test
+	void equivalentSpellingsOfTheEndpointShareOneBucket() throws Exception {
+		// 每個用戶端只有 1 個 token，補充很慢
+		RateLimitFilter filter = new RateLimitFilter("", 0.001, 1, 0.001, 1, 100);
+
+		assertEquals(200, post(filter, "/shorten"));
+		assertEquals(429, post(filter, "/shorten"));
+		assertEquals(429, post(filter, "/shorten;x=1"));
+		assertEquals(429, post(filter, "/%73horten"));
+		assertEquals(429, post(filter, "/app/shorten"));
+
+		assertEquals(200, post(filter, "/shorten/batch;jsessionid=1"));
+		assertEquals(429, post(filter, "/shorten/%62atch"));
+		assertEquals(1, filter.shortenClients());
+		assertEquals(1, filter.batchClients());
+	}
+
+	@Test
+	void otherPathsAreNotLimited() throws Exception {
+		RateLimitFilter filter = new RateLimitFilter("", 0.001, 1, 0.001, 1, 100);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(200, post(filter, "/shortenx"));
+			assertEquals(200, post(filter, "/admin/scan"));
+		}
+		assertEquals(0, filter.shortenClients());
+	}
+
+	private static int post(RateLimitFilter filter, String uri) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", uri);
+		if (uri.startsWith("/app/")) {
+			request.setContextPath("/app");
+		}
+		request.setRemoteAddr("10.0.0.1");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(request, response, new MockFilterChain());
+		return response.getStatus();
+	}
+}
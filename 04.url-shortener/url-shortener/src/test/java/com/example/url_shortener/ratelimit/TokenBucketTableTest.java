@@ -0,0 +1,65 @@
+package com.example.url_shortener.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTableTest {
+
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	@Test
+	void burstThenRefillAtRate() {
+		TokenBucketTable table = new TokenBucketTable(2, 3, 100);
+		long now = 1_000 * SECOND;
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, table.tryAcquire("10.0.0.1", now));
+		}
+		long wait = table.tryAcquire("10.0.0.1", now);
+		// 每秒 2 個 token：下一個 token 在半秒後
+		assertEquals(SECOND / 2, wait, SECOND / 1000);
+		// 其他用戶端不受影響
+		assertEquals(0, table.tryAcquire("10.0.0.2", now));
+
+		assertTrue(table.tryAcquire("10.0.0.1", now + SECOND / 4) > 0);
+		assertEquals(0, table.tryAcquire("10.0.0.1", now + SECOND * 6 / 10));
+		assertTrue(table.tryAcquire("10.0.0.1", now + SECOND * 6 / 10) > 0);
+	}
+
+	@Test
+	void onlyFullBucketsAreEvicted() {
+		TokenBucketTable table = new TokenBucketTable(1, 2, 100);
+		long now = 1_000 * SECOND;
+		table.tryAcquire("idle", now);
+		table.tryAcquire("busy", now + SECOND);
+		table.tryAcquire("busy", now + SECOND);
+
+		// 補滿 2 個 token 需要 2 秒：idle 已經補滿，busy 還沒有
+		assertEquals(1, table.evictIdle(now + 2 * SECOND));
+		assertEquals(1, table.size());
+		assertEquals(0, table.tryAcquire("busy", now + 2 * SECOND));
+		assertTrue(table.tryAcquire("busy", now + 2 * SECOND) > 0);
+	}
+
+	@Test
+	void newClientsAreRejectedWhenTheTableIsFull() {
+		// 每一段最多 1 個 bucket
+		TokenBucketTable table = new TokenBucketTable(1, 1, 1);
+		long now = 1_000 * SECOND;
+		int admitted = 0;
+		for (int i = 0; i < 1_000; i++) {
+			if (table.tryAcquire("client-" + i, now) == 0) {
+				admitted++;
+			}
+		}
+		assertEquals(table.size(), admitted);
+		assertTrue(admitted <= 64);
+
+		// 閒置的 bucket 補滿之後可以讓位給新的用戶端
+		assertEquals(0, table.tryAcquire("client-late", now + SECOND));
+	}
+}
@@ -0,0 +1,136 @@
+package com.example.url_shortener.redirect;
+
+import com.example.url_shortener.api.ShortenController;
+import com.example.url_shortener.cluster.ClusterNode;
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.service.CapacityGuard;
+import com.example.url_shortener.service.ClickListener;
+import com.example.url_shortener.service.CodeGenerator;
+import com.example.url_shortener.service.ShortenService;
+import com.example.url_shortener.service.ShortenerMetrics;
+import com.example.url_shortener.store.CodeFilter;
+import com.example.url_shortener.store.HotEntryCache;
+import com.example.url_shortener.store.InMemoryStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RedirectPolicyTest {
+
+	private static final Instant NOW = Instant.ofEpochSecond(1_700_000_000L);
+	private static final String URL = "https://www.example.com/articles/1";
+
+	@Test
+	void ifNoneMatchWithTheCurrentEtagIsNotModified() {
+		RedirectPolicy policy = new RedirectPolicy(60, 302);
+		Entry entry = new Entry("abc123", URL, NOW, null);
+		String etag = policy.etag(entry);
+
+		assertTrue(policy.isNotModified(entry, etag, null));
+		assertTrue(policy.isNotModified(entry, "W/" + etag, null));
+		assertTrue(policy.isNotModified(entry, "\"other\", " + etag, null));
+		assertTrue(policy.isNotModified(entry, "*", null));
+		assertFalse(policy.isNotModified(entry, "\"other\"", null));
+		// 有 If-None-Match 時不看 If-Modified-Since
+		assertFalse(policy.isNotModified(entry, "\"other\"", policy.lastModified(entry)));
+
+		// 同一個短碼改指向其他 URL（建立時間相同）：ETag 不同，不能回 304
+		Entry repointed = new Entry("abc123", URL + "?v=2", NOW, null);
+		assertNotEquals(etag, policy.etag(repointed));
+		assertFalse(policy.isNotModified(repointed, etag, null));
+	}
+
+	@Test
+	void ifModifiedSinceComparesTheCreationTime() {
+		RedirectPolicy policy = new RedirectPolicy(60, 302);
+		Entry entry = new Entry("abc123", URL, NOW, null);
+
+		assertEquals("Tue, 14 Nov 2023 22:13:20 GMT", policy.lastModified(entry));
+		assertTrue(policy.isNotModified(entry, null, policy.lastModified(entry)));
+		assertTrue(policy.isNotModified(entry, null, "Wed, 15 Nov 2023 00:00:00 GMT"));
+		assertFalse(policy.isNotModified(entry, null, "Tue, 14 Nov 2023 22:13:19 GMT"));
+		assertFalse(policy.isNotModified(entry, null, "yesterday"));
+		assertFalse(policy.isNotModified(entry, null, null));
+	}
+
+	@Test
+	void maxAgeIsCappedByTheRemainingTtl() {
+		RedirectPolicy policy = new RedirectPolicy(60, 302);
+		long now = NOW.getEpochSecond();
+
+		assertEquals(60, policy.maxAge(new Entry("a", URL, NOW, null), now));
+		assertEquals(60, policy.maxAge(new Entry("a", URL, NOW, NOW.plusSeconds(3600)), now));
+		assertEquals(15, policy.maxAge(new Entry("a", URL, NOW, NOW.plusSeconds(15)), now));
+		assertEquals("public, max-age=15", policy.cacheControl(15));
+
+		// max-age 不受剩餘 TTL 影響的才能整段快取回應
+		assertTrue(policy.isStable(new Entry("a", URL, NOW, null), now));
+		assertTrue(policy.isStable(new Entry("a", URL, NOW, NOW.plusSeconds(60)), now));
+		assertFalse(policy.isStable(new Entry("a", URL, NOW, NOW.plusSeconds(59)), now));
+	}
+
+	@Test
+	void expiringAndExpiredEntriesAreNotStored() {
+		RedirectPolicy policy = new RedirectPolicy(60, 302);
+		long now = NOW.getEpochSecond();
+		Entry expiring = new Entry("a", URL, NOW.minusSeconds(3600), NOW);
+		Entry expired = new Entry("b", URL, NOW.minusSeconds(3600), NOW.minusSeconds(10));
+
+		assertEquals(0, policy.maxAge(expiring, now));
+		assertEquals(0, policy.maxAge(expired, now));
+		assertEquals("no-store", policy.cacheControl(policy.maxAge(expiring, now)));
+		assertEquals("no-store", policy.cacheControl(policy.maxAge(expired, now)));
+		assertFalse(policy.isStable(expired, now));
+
+		// 上限設為 0 就完全不讓快取保存
+		RedirectPolicy uncached = new RedirectPolicy(0, 302);
+		assertEquals("no-store", uncached.cacheControl(uncached.maxAge(new Entry("c", URL, NOW, null), now)));
+	}
+
+	@Test
+	void permanentStatusOnlyForNonExpiringEntries() {
+		RedirectPolicy policy = new RedirectPolicy(60, 308);
+		assertEquals(308, policy.status(new Entry("a", URL, NOW, null)));
+		assertEquals(302, policy.status(new Entry("a", URL, NOW, NOW.plusSeconds(3600))));
+		assertThrows(IllegalArgumentException.class, () -> new RedirectPolicy(60, 307));
+		assertThrows(IllegalArgumentException.class, () -> new RedirectPolicy(-1, 302));
+	}
+
+	@Test
+	void controllerAnswersRevalidationWith304() {
+		InMemoryStore store = new InMemoryStore();
+		StaticListableBeanFactory none = new StaticListableBeanFactory();
+		ShortenService service = new ShortenService(new CodeGenerator(store, 0.01), store,
+				none.getBeanProvider(HotEntryCache.class), none.getBeanProvider(CodeFilter.class),
+				none.getBeanProvider(ClickListener.class), none.getBeanProvider(ClusterNode.class),
+				none.getBeanProvider(CapacityGuard.class), none.getBeanProvider(ShortenerMetrics.class));
+		RedirectPolicy policy = new RedirectPolicy(60, 302);
+		ShortenController controller = new ShortenController(service, policy);
+		String code = service.shorten(URL, 3600L).getEntry().getCode();
+
+		ResponseEntity<String> first = controller.redirect(code, null, null);
+		assertEquals(HttpStatus.FOUND, first.getStatusCode());
+		assertEquals(URL, first.getHeaders().getLocation().toString());
+		assertEquals("public, max-age=60", first.getHeaders().getCacheControl());
+		String etag = first.getHeaders().getETag();
+
+		ResponseEntity<String> again = controller.redirect(code, etag, null);
+		assertEquals(HttpStatus.NOT_MODIFIED, again.getStatusCode());
+		assertNull(again.getHeaders().getLocation());
+		assertEquals(etag, again.getHeaders().getETag());
+		assertEquals("public, max-age=60", again.getHeaders().getFirst(HttpHeaders.CACHE_CONTROL));
+		assertEquals(1, policy.redirectCount());
+		assertEquals(1, policy.notModifiedCount());
+	}
+}
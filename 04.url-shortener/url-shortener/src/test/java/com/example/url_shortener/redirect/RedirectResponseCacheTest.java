@@ -0,0 +1,63 @@
+package com.example.url_shortener.redirect;
+
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.model.EntryHolder;
+import com.example.url_shortener.store.LongKeyStore;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RedirectResponseCacheTest {
+
+	private static final Instant NOW = Instant.ofEpochSecond(1_700_000_000L);
+	private static final String URL = "https://www.example.com/articles/1";
+
+	@Test
+	void hitsAcrossReadsFromLongKeyStore() {
+		LongKeyStore store = new LongKeyStore();
+		store.save(URL, "abc123", new Entry("abc123", URL, NOW, null));
+		RedirectResponseCache cache = new RedirectResponseCache(16);
+		byte[] response = "302".getBytes(StandardCharsets.US_ASCII);
+
+		EntryHolder first = new EntryHolder();
+		assertTrue(store.getEntry("abc123", first));
+		assertNull(cache.get(first));
+		cache.put(first, response);
+		// 另一個 event loop 的 holder 讀到同一筆資料，仍然命中同一份回應
+		EntryHolder second = new EntryHolder();
+		assertTrue(store.getEntry("abc123", second));
+		assertSame(response, cache.get(second));
+	}
+
+	@Test
+	void changedEntriesMiss() {
+		RedirectResponseCache cache = new RedirectResponseCache(16);
+		cache.put(holder(new Entry("abc123", URL, NOW, null)), new byte[1]);
+
+		assertNull(cache.get(holder(new Entry("abc123", URL + "?x", NOW, null))));
+		assertNull(cache.get(holder(new Entry("abc123", URL, NOW.plusSeconds(1), null))));
+		assertNull(cache.get(holder(new Entry("abc123", URL, NOW, NOW.plusSeconds(3600)))));
+		assertNull(cache.get(holder(new Entry("abc124", URL, NOW, null))));
+	}
+
+	@Test
+	void zeroSizeDisablesTheCache() {
+		RedirectResponseCache cache = new RedirectResponseCache(0);
+		EntryHolder entry = holder(new Entry("abc123", URL, NOW, null));
+		cache.put(entry, new byte[1]);
+		assertNull(cache.get(entry));
+		assertThrows(IllegalArgumentException.class, () -> new RedirectResponseCache(-1));
+	}
+
+	private static EntryHolder holder(Entry entry) {
+		EntryHolder holder = new EntryHolder();
+		holder.set(entry);
+		return holder;
+	}
+}
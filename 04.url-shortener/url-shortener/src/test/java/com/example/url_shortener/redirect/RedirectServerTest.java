@@ -0,0 +1,231 @@
+package com.example.url_shortener.redirect;
+
+import com.example.url_shortener.cluster.ClusterNode;
+import com.example.url_shortener.cluster.ShardUnavailableException;
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.service.CapacityGuard;
+import com.example.url_shortener.service.ClickListener;
+import com.example.url_shortener.service.CodeGenerator;
+import com.example.url_shortener.service.ShortenService;
+import com.example.url_shortener.service.ShortenerMetrics;
+import com.example.url_shortener.store.CodeFilter;
+import com.example.url_shortener.store.HotEntryCache;
+import com.example.url_shortener.store.InMemoryStore;
+import com.example.url_shortener.store.UrlStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RedirectServerTest {
+
+	private static final String URL = "https://www.example.com/articles/1";
+
+	private RedirectServer server;
+	private int port;
+
+	@BeforeEach
+	void startServer() throws IOException {
+		// getEntry 對 "down" 模擬擁有者節點無法連線，對 "boom" 模擬其他意外的錯誤
+		UrlStore store = new InMemoryStore() {
+			@Override
+			public Entry getEntry(String code) {
+				if (code.equals("down")) {
+					throw new ShardUnavailableException("owner unreachable");
+				}
+				if (code.equals("boom")) {
+					throw new IllegalStateException("unexpected");
+				}
+				return super.getEntry(code);
+			}
+		};
+		Instant now = Instant.now();
+		store.save(URL, "abc123", new Entry("abc123", URL, now, now.plusSeconds(3600)));
+
+		StaticListableBeanFactory none = new StaticListableBeanFactory();
+		ShortenService service = new ShortenService(new CodeGenerator(store, 0.01), store,
+				none.getBeanProvider(HotEntryCache.class), none.getBeanProvider(CodeFilter.class),
+				none.getBeanProvider(ClickListener.class), none.getBeanProvider(ClusterNode.class),
+				none.getBeanProvider(CapacityGuard.class), none.getBeanProvider(ShortenerMetrics.class));
+		// 只用一個 event loop：所有連線都在同一個執行緒上，才能驗證例外不會拖垮其他連線
+		server = new RedirectServer(service, new RedirectPolicy(60, 302), 0, 1, 16);
+		server.start();
+		port = server.localPort();
+	}
+
+	@AfterEach
+	void stopServer() {
+		server.stop();
+	}
+
+	@Test
+	void lookupFailureClosesOnlyThatConnection() throws IOException {
+		try (Socket healthy = connect(); Socket failing = connect()) {
+			send(healthy, "GET /r/abc123 HTTP/1.1\r\nHost: s\r\n\r\n");
+			assertTrue(readResponse(healthy.getInputStream(), false).startsWith("HTTP/1.1 302"));
+
+			send(failing, "GET /r/down HTTP/1.1\r\nHost: s\r\n\r\n");
+			String unavailable = readResponse(failing.getInputStream(), false);
+			assertTrue(unavailable.startsWith("HTTP/1.1 503"), unavailable);
+			assertTrue(unavailable.contains("Connection: close"), unavailable);
+			assertEquals(-1, failing.getInputStream().read());
+
+			// 同一個 event loop 上的其他連線照常服務
+			send(healthy, "GET /r/abc123 HTTP/1.1\r\nHost: s\r\n\r\n");
+			assertTrue(readResponse(healthy.getInputStream(), false).startsWith("HTTP/1.1 302"));
+		}
+
+		try (Socket failing = connect()) {
+			// pipelined：錯誤之前的回應照常寫出，錯誤之後的請求不再處理
+			send(failing, "GET /r/abc123 HTTP/1.1\r\n\r\nGET /r/boom HTTP/1.1\r\n\r\nGET /r/abc123 HTTP/1.1\r\n\r\n");
+			InputStream in = failing.getInputStream();
+			assertTrue(readResponse(in, false).startsWith("HTTP/1.1 302"));
+			assertTrue(readResponse(in, false).startsWith("HTTP/1.1 500"));
+			assertEquals(-1, in.read());
+		}
+
+		try (Socket healthy = connect()) {
+			send(healthy, "GET /r/abc123 HTTP/1.1\r\n\r\n");
+			assertTrue(readResponse(healthy.getInputStream(), false).startsWith("HTTP/1.1 302"));
+		}
+	}
+
+	@Test
+	void headResponsesHaveNoBody() throws IOException {
+		try (Socket socket = connect()) {
+			// HEAD 404 保留連線：如果寫出了 body，下一個回應的狀態列會被 body 擋住
+			send(socket, "HEAD /r/missing HTTP/1.1\r\n\r\nHEAD /r/abc123 HTTP/1.1\r\n\r\nGET /r/abc123 HTTP/1.1\r\n\r\n");
+			InputStream in = socket.getInputStream();
+			String notFound = readResponse(in, true);
+			assertTrue(notFound.startsWith("HTTP/1.1 404"), notFound);
+			assertTrue(notFound.contains("Content-Length: 42"), notFound);
+			assertTrue(readResponse(in, true).startsWith("HTTP/1.1 302"));
+			assertTrue(readResponse(in, false).startsWith("HTTP/1.1 302"));
+		}
+
+		try (Socket socket = connect()) {
+			send(socket, "HEAD /r/down HTTP/1.1\r\n\r\n");
+			InputStream in = socket.getInputStream();
+			assertTrue(readResponse(in, true).startsWith("HTTP/1.1 503"));
+			assertEquals(-1, in.read());
+		}
+	}
+
+	@Test
+	void parsesRequestsAndKeepsConnectionsAlive() throws IOException, InterruptedException {
+		try (Socket socket = connect()) {
+			InputStream in = socket.getInputStream();
+			// 請求分兩次送達：收到標頭結尾之前不回應
+			send(socket, "GET /r/abc123 HTTP/1.1\r\nHost: s\r\n");
+			Thread.sleep(50);
+			send(socket, "\r\n");
+			String redirect = readResponse(in, false);
+			assertTrue(redirect.startsWith("HTTP/1.1 302"), redirect);
+			assertTrue(redirect.contains("Location: " + URL + "\r\n"), redirect);
+
+			// 查詢字串不屬於短碼；不是 /r/{code} 的路徑回 404，連線都保留
+			send(socket, "GET /r/abc123?utm_source=mail HTTP/1.1\r\n\r\n"
+					+ "GET /r/ HTTP/1.1\r\n\r\n"
+					+ "GET /r/abc123/more HTTP/1.1\r\n\r\n"
+					+ "GET /shorten HTTP/1.1\r\n\r\n");
+			assertTrue(readResponse(in, false).startsWith("HTTP/1.1 302"));
+			for (int i = 0; i < 3; i++) {
+				assertTrue(readResponse(in, false).startsWith("HTTP/1.1 404"));
+			}
+
+			// 條件式請求：ETag 相同時回 304
+			String etag = headerValue(redirect, "ETag");
+			send(socket, "GET /r/abc123 HTTP/1.1\r\nIf-None-Match: " + etag + "\r\n\r\n");
+			assertTrue(readResponse(in, false).startsWith("HTTP/1.1 304"));
+
+			send(socket, "GET /r/abc123 HTTP/1.1\r\nConnection: close\r\n\r\n");
+			assertTrue(readResponse(in, false).startsWith("HTTP/1.1 302"));
+			assertEquals(-1, in.read());
+		}
+
+		// HTTP/1.0 預設不保留連線，帶 Connection: keep-alive 時才保留
+		try (Socket socket = connect()) {
+			InputStream in = socket.getInputStream();
+			send(socket, "GET /r/abc123 HTTP/1.0\r\nConnection: keep-alive\r\n\r\n");
+			assertTrue(readResponse(in, false).startsWith("HTTP/1.1 302"));
+			send(socket, "GET /r/abc123 HTTP/1.0\r\n\r\n");
+			assertTrue(readResponse(in, false).startsWith("HTTP/1.1 302"));
+			assertEquals(-1, in.read());
+		}
+
+		assertClosesWith("POST /r/abc123 HTTP/1.1\r\nContent-Length: 0\r\n\r\n", "HTTP/1.1 405");
+		assertClosesWith("GARBAGE\r\n\r\n", "HTTP/1.1 400");
+		// 剛好填滿 8 KB 的讀取緩衝區仍沒有標頭結尾；不多送，關閉時才不會因為未讀的資料送出 RST
+		String oversized = "GET /r/abc123 HTTP/1.1\r\nX-Padding: ";
+		assertClosesWith(oversized + "x".repeat(8 * 1024 - oversized.length()), "HTTP/1.1 431");
+	}
+
+	private void assertClosesWith(String request, String statusLine) throws IOException {
+		try (Socket socket = connect()) {
+			InputStream in = socket.getInputStream();
+			send(socket, request);
+			String response = readResponse(in, false);
+			assertTrue(response.startsWith(statusLine), response);
+			assertEquals(-1, in.read());
+		}
+	}
+
+	private static String headerValue(String response, String name) {
+		for (String line : response.split("\r\n")) {
+			if (line.regionMatches(true, 0, name + ":", 0, name.length() + 1)) {
+				return line.substring(name.length() + 1).trim();
+			}
+		}
+		throw new AssertionError(name + " missing in " + response);
+	}
+
+	private Socket connect() throws IOException {
+		Socket socket = new Socket();
+		socket.connect(new InetSocketAddress("127.0.0.1", port), 1000);
+		socket.setSoTimeout(5000);
+		return socket;
+	}
+
+	private static void send(Socket socket, String request) throws IOException {
+		OutputStream out = socket.getOutputStream();
+		out.write(request.getBytes(StandardCharsets.US_ASCII));
+		out.flush();
+	}
+
+	// 讀取一個完整的回應；head 為 true 時依 HEAD 的規則不讀 body（Content-Length 描述的是對應 GET 的 body）
+	static String readResponse(InputStream in, boolean head) throws IOException {
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		int matched = 0;
+		while (matched < 4) {
+			int b = in.read();
+			if (b < 0) {
+				throw new IOException("connection closed after " + response);
+			}
+			response.write(b);
+			matched = b == (matched % 2 == 0 ? '\r' : '\n') ? matched + 1 : (b == '\r' ? 1 : 0);
+		}
+		String headers = response.toString(StandardCharsets.US_ASCII);
+		int length = 0;
+		for (String line : headers.split("\r\n")) {
+			if (line.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+				length = Integer.parseInt(line.substring(15).trim());
+			}
+		}
+		if (!head) {
+			response.write(in.readNBytes(length));
+		}
+		return response.toString(StandardCharsets.US_ASCII);
+	}
+}
@@ -0,0 +1,231 @@
+package com.example.url_shortener.replication;
+
+import com.example.url_shortener.cluster.ClusterNode;
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.persist.RecordCodec;
+import com.example.url_shortener.service.ShortenerMetrics;
+import com.example.url_shortener.store.ExpiryIndex;
+import com.example.url_shortener.store.InMemoryStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplicationTest {
+
+	private static final Instant NOW = Instant.ofEpochSecond(1_700_000_000L);
+
+	@Test
+	void reconnectResumesFromTheAppliedOffset() throws Exception {
+		InMemoryStore leaderStore = new InMemoryStore();
+		InMemoryStore followerStore = new InMemoryStore();
+		int port = freePort();
+		ReplicationLeader leader = new ReplicationLeader(leaderStore, "127.0.0.1:" + port, 1000, 50);
+		for (int i = 0; i < 100; i++) {
+			save(leaderStore, i);
+		}
+		ReplicationFollower follower = new ReplicationFollower(followerStore, "127.0.0.1:" + port, 20, 50);
+		leader.start();
+		follower.start();
+		try {
+			await(() -> follower.appliedOffset() == 100);
+			assertEquals(100, followerStore.size());
+			assertEquals(1L, follower.stats().get("snapshotsLoaded"));
+
+			// leader 的連接埠關閉期間的異動仍留在 log 中，重新連線後從 offset 101 接續，不再送 snapshot
+			leader.stop();
+			// 等 follower 關掉舊連線，leader 這端的連線不再佔用連接埠後才能重新綁定
+			await(() -> !(Boolean) follower.stats().get("connected"));
+			for (int i = 100; i < 150; i++) {
+				save(leaderStore, i);
+			}
+			for (int i = 0; i < 10; i++) {
+				leaderStore.remove(url(i), code(i));
+			}
+			leader.start();
+
+			await(() -> follower.appliedOffset() == 160);
+			assertEquals(140, followerStore.size());
+			assertNull(followerStore.getEntry(code(0)));
+			assertNotNull(followerStore.getEntry(code(149)));
+			assertEquals(1L, follower.stats().get("snapshotsLoaded"));
+			assertEquals(1L, leader.stats().get("snapshotsSent"));
+			assertEquals(60L, follower.stats().get("recordsApplied"));
+			assertTrue((Long) follower.stats().get("reconnects") >= 1);
+		} finally {
+			follower.stop();
+			leader.stop();
+		}
+	}
+
+	@Test
+	void overwrittenOffsetFallsBackToASnapshot() throws Exception {
+		InMemoryStore leaderStore = new InMemoryStore();
+		InMemoryStore followerStore = new InMemoryStore();
+		int port = freePort();
+		// log 只保留 8 筆
+		ReplicationLeader leader = new ReplicationLeader(leaderStore, "127.0.0.1:" + port, 8, 50);
+		for (int i = 0; i < 20; i++) {
+			save(leaderStore, i);
+		}
+		ReplicationFollower follower = new ReplicationFollower(followerStore, "127.0.0.1:" + port, 20, 50);
+		leader.start();
+		follower.start();
+		try {
+			await(() -> follower.appliedOffset() == 20);
+
+			leader.stop();
+			// 等 follower 關掉舊連線，leader 這端的連線不再佔用連接埠後才能重新綁定
+			await(() -> !(Boolean) follower.stats().get("connected"));
+			// offset 21 的刪除在重新連線前就被後面 20 筆覆蓋，只能靠 snapshot 讓 follower 也刪掉它
+			leaderStore.remove(url(0), code(0));
+			for (int i = 20; i < 40; i++) {
+				save(leaderStore, i);
+			}
+			assertEquals(34L, leader.stats().get("firstRetainedOffset"));
+			leader.start();
+
+			await(() -> (Long) follower.stats().get("snapshotsLoaded") == 2);
+			assertEquals(41, follower.appliedOffset());
+			assertEquals(2L, leader.stats().get("snapshotsSent"));
+			assertEquals(39, followerStore.size());
+			assertNull(followerStore.getEntry(code(0)));
+			assertNotNull(followerStore.getEntry(code(39)));
+		} finally {
+			follower.stop();
+			leader.stop();
+		}
+	}
+
+	@Test
+	void snapshotEndRemovesLocalEntriesTheLeaderDoesNotHave() throws Exception {
+		InMemoryStore leaderStore = new InMemoryStore();
+		InMemoryStore followerStore = new InMemoryStore();
+		for (int i = 0; i < 10; i++) {
+			save(leaderStore, i);
+		}
+		// follower 離線前留下的資料：一部分 leader 也有，另一部分已在 leader 上被刪除
+		for (int i = 5; i < 15; i++) {
+			save(followerStore, i);
+		}
+		int port = freePort();
+		ReplicationLeader leader = new ReplicationLeader(leaderStore, "127.0.0.1:" + port, 1000, 50);
+		ReplicationFollower follower = new ReplicationFollower(followerStore, "127.0.0.1:" + port, 20, 50);
+		leader.start();
+		follower.start();
+		try {
+			await(() -> (Long) follower.stats().get("snapshotsLoaded") == 1);
+			assertEquals(10, followerStore.size());
+			for (int i = 0; i < 15; i++) {
+				assertEquals(i < 10, followerStore.getEntry(code(i)) != null, code(i));
+			}
+		} finally {
+			follower.stop();
+			leader.stop();
+		}
+	}
+
+	@Test
+	void lagFollowsTheLeaderHeartbeats() throws Exception {
+		InMemoryStore followerStore = new InMemoryStore();
+		try (ServerSocket fakeLeader = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			ReplicationFollower follower = new ReplicationFollower(followerStore,
+					"127.0.0.1:" + fakeLeader.getLocalPort(), 20, 1000);
+			SimpleMeterRegistry registry = new SimpleMeterRegistry();
+			StaticListableBeanFactory beans = new StaticListableBeanFactory();
+			beans.addBean("replicationFollower", follower);
+			new ShortenerMetrics(registry, followerStore, new ExpiryIndex(followerStore, 10),
+					beans.getBeanProvider(ClusterNode.class), beans.getBeanProvider(ReplicationFollower.class));
+
+			follower.start();
+			try (Socket socket = fakeLeader.accept()) {
+				DataInputStream in = new DataInputStream(socket.getInputStream());
+				assertEquals(ReplicationStream.MAGIC, in.readInt());
+				assertEquals(0, in.readLong());
+				assertEquals(0, in.readLong());
+
+				DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+				ReplicationStream.write(out, ReplicationStream.HELLO, 3, 10_000,
+						ByteBuffer.allocate(Long.BYTES).putLong(42).array());
+				ReplicationStream.write(out, ReplicationStream.SNAPSHOT_BEGIN, 0, 10_000);
+				ReplicationStream.write(out, ReplicationStream.SNAPSHOT_END, 0, 10_000);
+				record(out, 1, 10_000);
+				// leader 已寫到 offset 3：落後 2 筆、2.5 秒（都以 leader 的時鐘計算）
+				ReplicationStream.write(out, ReplicationStream.HEARTBEAT, 3, 12_500);
+				out.flush();
+				await(() -> follower.lagMillis() == 2_500);
+				assertEquals(2, follower.lagRecords());
+				assertEquals(2.0, registry.get("shortener.replication.lag.records").gauge().value());
+				assertEquals(2.5, registry.get("shortener.replication.lag").gauge().value());
+
+				record(out, 2, 11_000);
+				record(out, 3, 12_000);
+				ReplicationStream.write(out, ReplicationStream.HEARTBEAT, 3, 13_000);
+				out.flush();
+				await(() -> follower.appliedOffset() == 3 && follower.lagMillis() == 0);
+				assertEquals(0, follower.lagRecords());
+				assertEquals(0.0, registry.get("shortener.replication.lag").gauge().value());
+				assertEquals(3, followerStore.size());
+			} finally {
+				follower.stop();
+			}
+		}
+	}
+
+	@Test
+	void lagGaugesAreOnlyRegisteredOnFollowers() {
+		InMemoryStore store = new InMemoryStore();
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		StaticListableBeanFactory none = new StaticListableBeanFactory();
+		new ShortenerMetrics(registry, store, new ExpiryIndex(store, 10),
+				none.getBeanProvider(ClusterNode.class), none.getBeanProvider(ReplicationFollower.class));
+		assertNull(registry.find("shortener.replication.lag.records").gauge());
+		assertNull(registry.find("shortener.replication.lag").gauge());
+	}
+
+	private static void record(DataOutputStream out, long offset, long leaderMillis) throws IOException {
+		int i = (int) offset;
+		ReplicationStream.write(out, ReplicationStream.RECORD, offset, leaderMillis,
+				RecordCodec.encodeSave(new Entry(code(i), url(i), NOW, null)));
+	}
+
+	private static void save(InMemoryStore store, int i) {
+		store.save(url(i), code(i), new Entry(code(i), url(i), NOW, null));
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			return socket.getLocalPort();
+		}
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + 10_000_000_000L;
+		while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertTrue(condition.getAsBoolean());
+	}
+
+	private static String code(int i) {
+		return "r" + i;
+	}
+
+	private static String url(int i) {
+		return "https://www.example.com/replicated/" + i;
+	}
+}
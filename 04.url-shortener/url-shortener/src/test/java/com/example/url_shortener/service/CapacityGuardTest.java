@@ -0,0 +1,261 @@
+package com.example.url_shortener.service;
+
+import com.example.url_shortener.cluster.ClusterNode;
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.store.CodeFilter;
+import com.example.url_shortener.store.ExpiryIndex;
+import com.example.url_shortener.store.HotEntryCache;
+import com.example.url_shortener.store.InMemoryStore;
+import com.example.url_shortener.store.UrlStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CapacityGuardTest {
+
+	private static final Instant NOW = Instant.now();
+
+	@Test
+	void rejectKeepsEveryEntry() throws Exception {
+		UrlStore store = new InMemoryStore();
+		CapacityGuard guard = new CapacityGuard(store, new ExpiryIndex(store, 10), "reject", 10, 0, 0.5, 10);
+		try {
+			for (int i = 0; i < 10; i++) {
+				assertTrue(guard.tryAdmit(url(i)));
+				save(store, i, 3600 + i);
+				guard.release(url(i));
+			}
+			assertFalse(guard.tryAdmit(url(10)));
+			assertEquals(10, store.size());
+			assertEquals(0, guard.evictionCount());
+		} finally {
+			guard.destroy();
+		}
+	}
+
+	@Test
+	void soonestExpiryEvictsDownToTheLowWatermark() throws Exception {
+		UrlStore store = new InMemoryStore();
+		CapacityGuard guard = new CapacityGuard(store, new ExpiryIndex(store, 1), "soonest-expiry", 10, 0, 0.5, 5000);
+		try {
+			for (int i = 0; i < 10; i++) {
+				save(store, i, 3600 + i * 10);
+			}
+			assertTrue(guard.tryAdmit(url(10)));
+			guard.release(url(10));
+			awaitEvictions(guard, 5);
+			assertEquals(5, store.size());
+			// 最早到期的 5 筆被淘汰
+			for (int i = 0; i < 10; i++) {
+				assertEquals(i >= 5, store.getEntry("c" + i) != null, "c" + i);
+			}
+		} finally {
+			guard.destroy();
+		}
+	}
+
+	@Test
+	void leastRecentlyResolvedKeepsClickedEntries() throws Exception {
+		UrlStore store = new InMemoryStore();
+		CapacityGuard guard = new CapacityGuard(store, new ExpiryIndex(store, 10), "least-recently-resolved",
+				10, 0, 0.5, 5000);
+		try {
+			for (int i = 0; i < 9; i++) {
+				save(store, i, 3600);
+			}
+			for (int i = 0; i < 4; i++) {
+				guard.onClick("c" + i, System.currentTimeMillis());
+			}
+			save(store, 9, 3600);
+			assertTrue(guard.tryAdmit(url(10)));
+			guard.release(url(10));
+			awaitEvictions(guard, 5);
+			// 第一輪 CLOCK 淘汰沒有被轉址過的項目，被轉址過的只清掉 reference bit
+			for (int i = 0; i < 4; i++) {
+				assertNotNull(store.getEntry("c" + i), "c" + i);
+			}
+			assertEquals(5, store.size());
+		} finally {
+			guard.destroy();
+		}
+	}
+
+	@Test
+	void byteLimitCountsUrlLength() throws Exception {
+		UrlStore store = new InMemoryStore();
+		long maxBytes = 4 * (CapacityGuard.ENTRY_OVERHEAD_BYTES + 100);
+		CapacityGuard guard = new CapacityGuard(store, new ExpiryIndex(store, 10), "reject", 0, maxBytes, 0.5, 10);
+		try {
+			for (int i = 0; i < 4; i++) {
+				String url = "https://www.example.com/" + "x".repeat(100 - 24 - 1) + i;
+				store.save(url, "c" + i, new Entry("c" + i, url, NOW, null));
+			}
+			assertEquals(maxBytes, guard.estimatedBytes());
+			String next = "https://www.example.com/" + "x".repeat(100 - 24 - 1) + 4;
+			assertFalse(guard.tryAdmit(next));
+			store.remove(store.getEntry("c0"));
+			assertTrue(guard.tryAdmit(next));
+			// 預留的空間算在內：同一時間只能再容納一筆
+			assertFalse(guard.tryAdmit(next));
+			guard.release(next);
+		} finally {
+			guard.destroy();
+		}
+	}
+
+	@Test
+	void overwritesDoNotInflateTheEstimate() throws Exception {
+		UrlStore store = new InMemoryStore();
+		CapacityGuard guard = new CapacityGuard(store, new ExpiryIndex(store, 10), "reject", 10, 0, 0.5, 10);
+		try {
+			save(store, 0, 3600);
+			// 同一個短碼以更長的 URL 覆寫，再以相同內容重新寫入一次
+			String longer = url(0) + "/longer";
+			store.save(longer, "c0", new Entry("c0", longer, NOW, null));
+			store.save(longer, "c0", new Entry("c0", longer, NOW, null));
+			// 同一個 URL 改指向新的短碼
+			store.save(longer, "c1", new Entry("c1", longer, NOW, null));
+
+			assertEquals(1, store.size());
+			assertEquals(1, guard.entryCount());
+			assertEquals(CapacityGuard.ENTRY_OVERHEAD_BYTES + longer.length(), guard.estimatedBytes());
+		} finally {
+			guard.destroy();
+		}
+	}
+
+	@Test
+	void concurrentShortensNeverExceedTheHardLimit() throws Exception {
+		UrlStore store = new InMemoryStore();
+		CapacityGuard guard = new CapacityGuard(store, new ExpiryIndex(store, 10), "reject", 50, 0, 0.5, 10);
+		StaticListableBeanFactory beans = new StaticListableBeanFactory();
+		beans.addBean("capacityGuard", guard);
+		ShortenService service = new ShortenService(new CodeGenerator(store, 0.01), store,
+				beans.getBeanProvider(HotEntryCache.class), beans.getBeanProvider(CodeFilter.class),
+				beans.getBeanProvider(ClickListener.class), beans.getBeanProvider(ClusterNode.class),
+				beans.getBeanProvider(CapacityGuard.class), beans.getBeanProvider(ShortenerMetrics.class));
+		try {
+			AtomicInteger created = new AtomicInteger();
+			AtomicInteger rejected = new AtomicInteger();
+			CountDownLatch start = new CountDownLatch(1);
+			List<Thread> threads = new ArrayList<>();
+			for (int t = 0; t < 8; t++) {
+				int thread = t;
+				threads.add(new Thread(() -> {
+					try {
+						start.await();
+						for (int i = 0; i < 40; i++) {
+							try {
+								service.shorten(url(thread * 1000 + i), 3600L);
+								created.incrementAndGet();
+							} catch (StoreFullException e) {
+								rejected.incrementAndGet();
+							}
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}));
+			}
+			threads.forEach(Thread::start);
+			start.countDown();
+			for (Thread thread : threads) {
+				thread.join();
+			}
+
+			assertEquals(50, created.get());
+			assertEquals(8 * 40 - 50, rejected.get());
+			assertEquals(50, store.size());
+			assertEquals(50, guard.entryCount());
+			assertEquals(1.0, guard.occupancy());
+		} finally {
+			guard.destroy();
+		}
+	}
+
+	@Test
+	void clockHandResumesWhereThePreviousPassStopped() throws Exception {
+		List<long[]> scans = new CopyOnWriteArrayList<>();
+		UrlStore store = new InMemoryStore() {
+			@Override
+			public long scan(long cursor, int count, Consumer<Entry> action) {
+				long next = super.scan(cursor, count, action);
+				scans.add(new long[] {cursor, next});
+				return next;
+			}
+		};
+		CapacityGuard guard = new CapacityGuard(store, new ExpiryIndex(store, 10), "least-recently-resolved",
+				200, 0, 0.95, 5000);
+		try {
+			for (int i = 0; i < 200; i++) {
+				save(store, i, 3600);
+			}
+			assertTrue(guard.tryAdmit(url(200)));
+			guard.release(url(200));
+			awaitEvictions(guard, 10);
+			// 第一批就淘汰夠了：指針停在 store 的中間
+			awaitScans(scans, 1);
+			long hand = scans.get(0)[1];
+			assertNotEquals(0, hand);
+
+			// 再次寫滿：下一批從上次停下的位置繼續，而不是回到開頭
+			for (int i = 200; i < 210; i++) {
+				save(store, i, 3600);
+			}
+			awaitEvictions(guard, 20);
+			awaitScans(scans, 2);
+			assertEquals(hand, scans.get(1)[0]);
+		} finally {
+			guard.destroy();
+		}
+	}
+
+	@Test
+	void invalidSettingsAreRejected() {
+		UrlStore store = new InMemoryStore();
+		ExpiryIndex index = new ExpiryIndex(store, 10);
+		assertThrows(IllegalArgumentException.class, () -> new CapacityGuard(store, index, "reject", 0, 0, 0.5, 10));
+		assertThrows(IllegalArgumentException.class, () -> new CapacityGuard(store, index, "reject", 10, 0, 1.0, 10));
+		assertThrows(IllegalArgumentException.class, () -> new CapacityGuard(store, index, "lru", 10, 0, 0.5, 10));
+	}
+
+	private static void awaitEvictions(CapacityGuard guard, long expected) throws InterruptedException {
+		long deadline = System.nanoTime() + 5_000_000_000L;
+		while (guard.evictionCount() < expected && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(expected, guard.evictionCount());
+	}
+
+	// 淘汰數在 scan 的走訪中就已累加，scan 回傳（並記錄 cursor）稍晚才發生
+	private static void awaitScans(List<long[]> scans, int expected) throws InterruptedException {
+		long deadline = System.nanoTime() + 5_000_000_000L;
+		while (scans.size() < expected && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(expected, scans.size());
+	}
+
+	private static void save(UrlStore store, int i, long ttlSeconds) {
+		String code = "c" + i;
+		store.save(url(i), code, new Entry(code, url(i), NOW, NOW.plusSeconds(ttlSeconds)));
+	}
+
+	private static String url(int i) {
+		return "https://www.example.com/" + i;
+	}
+}
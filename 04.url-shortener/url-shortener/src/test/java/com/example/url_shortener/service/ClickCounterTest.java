@@ -0,0 +1,101 @@
+package com.example.url_shortener.service;
+
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.store.InMemoryStore;
+import com.example.url_shortener.store.UrlStore;
+import com.example.url_shortener.util.SpaceSaving;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClickCounterTest {
+
+	private static final Instant NOW = Instant.now();
+	private static final String URL = "https://www.example.com/articles/1";
+
+	@Test
+	void clicksAreCountedAndAggregated() {
+		UrlStore store = new InMemoryStore();
+		ClickCounter counter = new ClickCounter(store, 10);
+		store.save(URL, "abc123", new Entry("abc123", URL, NOW, null));
+
+		assertEquals(0L, counter.clicks("abc123"));
+		for (int i = 0; i < 3; i++) {
+			counter.onClick("abc123", System.currentTimeMillis());
+		}
+		assertEquals(3L, counter.clicks("abc123"));
+		counter.aggregate();
+		assertEquals(3L, counter.clicks("abc123"));
+		assertEquals("abc123", counter.top(1).get(0).getKey());
+	}
+
+	@Test
+	void concurrentClicksAndAggregationKeepExactTotals() throws Exception {
+		UrlStore store = new InMemoryStore();
+		ClickCounter counter = new ClickCounter(store, 10);
+		store.save(URL, "abc123", new Entry("abc123", URL, NOW, null));
+		store.save(URL + "/2", "abc124", new Entry("abc124", URL + "/2", NOW, null));
+
+		int threads = 8;
+		int clicksPerThread = 200_000;
+		AtomicBoolean clicking = new AtomicBoolean(true);
+		// 彙總與點擊同時進行：每次彙總之間都有點擊落在 sum() 與更新之間
+		Thread aggregator = new Thread(() -> {
+			while (clicking.get()) {
+				counter.aggregate();
+			}
+		});
+		aggregator.start();
+		List<Thread> clickers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			String code = t % 2 == 0 ? "abc123" : "abc124";
+			clickers.add(new Thread(() -> {
+				for (int i = 0; i < clicksPerThread; i++) {
+					counter.onClick(code, 0L);
+				}
+			}));
+		}
+		clickers.forEach(Thread::start);
+		for (Thread clicker : clickers) {
+			clicker.join();
+		}
+		clicking.set(false);
+		aggregator.join();
+		counter.aggregate();
+
+		long expected = (long) threads / 2 * clicksPerThread;
+		assertEquals(expected, counter.clicks("abc123"));
+		assertEquals(expected, counter.clicks("abc124"));
+		for (SpaceSaving.Item item : counter.top(2)) {
+			assertEquals(expected, item.getCount(), item.getKey());
+			assertEquals(0, item.getError());
+		}
+	}
+
+	@Test
+	void clicksOnRemovedCodesDoNotRecreateCounters() {
+		UrlStore store = new InMemoryStore();
+		ClickCounter counter = new ClickCounter(store, 10);
+		store.save(URL, "abc123", new Entry("abc123", URL, NOW, null));
+		counter.onClick("abc123", System.currentTimeMillis());
+
+		store.remove(URL, "abc123");
+		// resolve 之後才被刪除的短碼：點擊晚於 onRemove 到達
+		counter.onClick("abc123", System.currentTimeMillis());
+		counter.aggregate();
+		assertTrue(counter.top(10).isEmpty());
+
+		// 同一個短碼之後重新建立，點擊數從 0 開始
+		store.save(URL, "abc123", new Entry("abc123", URL, NOW, null));
+		assertEquals(0L, counter.clicks("abc123"));
+		store.remove(URL, "abc123");
+		assertNull(counter.clicks("abc123"));
+	}
+}
@@ -0,0 +1,106 @@
+package com.example.url_shortener.service;
+
+import com.example.url_shortener.store.InMemoryStore;
+import com.example.url_shortener.store.UrlStore;
+import com.example.url_shortener.util.Base62;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CodeGeneratorTest {
+
+	@Test
+	void levelZeroCodesMatchTheOriginal32BitPath() {
+		// 原本的產碼：Base62(murmur3_32_fixed(url + salt) 的無號值)，以參考實作算出
+		CodeGenerator generator = new CodeGenerator(new InMemoryStore(), 0.01);
+		assertEquals("1UAAd3", generator.generate("https://www.example.com/", 0));
+		assertEquals("aNgFB", generator.generate("https://www.example.com/", 1));
+		assertEquals("Je4aE", generator.generate("https://github.com/spring-projects/spring-boot", 0));
+		assertEquals("3d4y7n", generator.generate("https://例子.測試/路徑?q=1", 1));
+	}
+
+	@Test
+	void widensAtTheConfiguredFill() {
+		// 1e-6 的碰撞機率：第 0 級約 4,294 筆、7 碼約 352 萬筆、8 碼約 2.18 億筆就換下一級
+		assertEquals(6, lengthAt(4_294));
+		assertEquals(7, lengthAt(4_295));
+		assertEquals(7, lengthAt(3_521_614));
+		assertEquals(8, lengthAt(3_521_615));
+		assertEquals(8, lengthAt(218_340_105));
+		assertEquals(9, lengthAt(218_340_106));
+
+		CodeGenerator generator = new CodeGenerator(sizedStore(4_295), 1e-6);
+		assertEquals(7, generator.generate("https://www.example.com/", 0).length());
+		// 換級之後碰撞機率以新一級的空間計算
+		assertEquals(4_295 / Math.pow(62, 7), generator.loadFactor(), 1e-18);
+	}
+
+	@Test
+	void repeatedCollisionsWidenEveryTwoSalts() {
+		CodeGenerator generator = new CodeGenerator(new InMemoryStore(), 0.01);
+		String url = "https://www.example.com/collides";
+		int[] expected = {6, 6, 7, 7, 8, 8, 9, 9, 10, 10};
+		for (int salt = 0; salt < expected.length; salt++) {
+			String code = generator.generate(url, salt);
+			if (salt < CodeGenerator.RETRIES_PER_LEVEL) {
+				assertTrue(code.length() <= 6, code);
+			} else {
+				assertEquals(expected[salt], code.length(), code);
+			}
+		}
+		// 每兩次碰撞記一次提早加長（salt 2、4、6、8）；10 碼是可以打包成 long 的最大長度
+		assertEquals(4, generator.widenedCount());
+	}
+
+	@Test
+	void wideCodesNeverCollideWithLevelZeroCodes() {
+		CodeGenerator narrow = new CodeGenerator(new InMemoryStore(), 0.01);
+		CodeGenerator wide = new CodeGenerator(sizedStore(50_000_000), 0.01);
+		Set<String> levelZero = new HashSet<>();
+		Set<String> levelOne = new HashSet<>();
+		for (int i = 0; i < 20_000; i++) {
+			String url = "https://www.example.com/page/" + i;
+			String code = narrow.generate(url, 0);
+			assertTrue(code.length() <= 6, code);
+			levelZero.add(code);
+
+			String widened = wide.generate(url, 0);
+			// 固定寬度：前導 0 也保留，而且仍能打包成 LongKeyStore 的 key
+			assertEquals(7, widened.length(), widened);
+			assertEquals(widened, Base62.fromKey(Base62.toKey(widened)));
+			levelOne.add(widened);
+		}
+		levelZero.retainAll(levelOne);
+		assertTrue(levelZero.isEmpty(), levelZero.toString());
+		assertNotEquals(narrow.generate("https://www.example.com/", 0), wide.generate("https://www.example.com/", 0));
+	}
+
+	@Test
+	void invalidCollisionRatesAreRejected() {
+		UrlStore store = new InMemoryStore();
+		assertThrows(IllegalArgumentException.class, () -> new CodeGenerator(store, 0));
+		assertThrows(IllegalArgumentException.class, () -> new CodeGenerator(store, 1));
+		assertFalse(new CodeGenerator(store, 0.5).loadFactor() > 0);
+	}
+
+	private static int lengthAt(int size) {
+		return new CodeGenerator(sizedStore(size), 1e-6).currentLength();
+	}
+
+	// 只回報筆數的 store：產碼只看 size()
+	private static UrlStore sizedStore(int size) {
+		return new InMemoryStore() {
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+}
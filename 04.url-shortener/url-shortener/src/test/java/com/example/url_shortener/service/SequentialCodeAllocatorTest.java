@@ -0,0 +1,108 @@
+package com.example.url_shortener.service;
+
+import com.example.url_shortener.util.Base62;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SequentialCodeAllocatorTest {
+
+	private static final long ID_MASK = (1L << 41) - 1;
+	private static final long COUNTER_MASK = (1L << 35) - 1;
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void restartContinuesAfterTheLeasedBlock() throws IOException {
+		Path lease = directory.resolve("code.lease");
+		SequentialCodeAllocator first = allocator(3, 10, lease);
+		for (int i = 0; i < 15; i++) {
+			assertEquals(i, counterOf(first.generate("ignored", 0)));
+		}
+		// 第二個區塊 [10, 20) 已預約
+		assertEquals(20, highWater(lease));
+
+		// 重啟：未用完的 [15, 20) 直接跳過
+		SequentialCodeAllocator restarted = allocator(3, 10, lease);
+		String code = restarted.generate("ignored", 0);
+		assertEquals(20, counterOf(code));
+		assertEquals(3, (Base62.toKey(code) & ID_MASK) >>> 35);
+		assertEquals(7, code.length());
+		assertEquals(30, highWater(lease));
+	}
+
+	@Test
+	void exhaustedBlocksLeaseTheNextOneWithoutDuplicates() throws Exception {
+		Path lease = directory.resolve("code.lease");
+		SequentialCodeAllocator allocator = new SequentialCodeAllocator(0, 7, true, lease.toString());
+		Set<String> codes = ConcurrentHashMap.newKeySet();
+		Thread[] workers = new Thread[8];
+		for (int t = 0; t < workers.length; t++) {
+			workers[t] = new Thread(() -> {
+				for (int i = 0; i < 1000; i++) {
+					codes.add(allocator.generate("ignored", 0));
+				}
+			});
+			workers[t].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		// 混淆是一對一的：8000 個數值得到 8000 個不同的短碼
+		assertEquals(8000, codes.size());
+		// 每個區塊的數值都配完才預約下一塊：ceil(8000 / 7) 個區塊
+		assertEquals(1143 * 7, highWater(lease));
+	}
+
+	@Test
+	void exhaustedCodeSpaceIsReported() throws IOException {
+		Path lease = directory.resolve("code.lease");
+		Files.write(lease, ByteBuffer.allocate(Long.BYTES).putLong(0, (1L << 35) - 2).array());
+		SequentialCodeAllocator allocator = allocator(0, 10, lease);
+		allocator.generate("ignored", 0);
+		allocator.generate("ignored", 0);
+		assertThrows(IllegalStateException.class, () -> allocator.generate("ignored", 0));
+	}
+
+	@Test
+	void tornOrCorruptLeaseFilesStopStartup() throws IOException {
+		Path lease = directory.resolve("code.lease");
+		// 覆寫中途當機留下的 0 bytes 或不完整檔案，不能被當成 0 重新配發
+		Files.write(lease, new byte[0]);
+		assertThrows(IllegalStateException.class, () -> allocator(0, 10, lease));
+		Files.write(lease, new byte[] { 0, 0, 0 });
+		assertThrows(IllegalStateException.class, () -> allocator(0, 10, lease));
+		Files.write(lease, ByteBuffer.allocate(Long.BYTES).putLong(0, -5).array());
+		assertThrows(IllegalStateException.class, () -> allocator(0, 10, lease));
+
+		// 改名之前當機只會留下 .tmp，lease 檔本身仍是上一個完整的高水位
+		Files.write(lease, ByteBuffer.allocate(Long.BYTES).putLong(0, 40).array());
+		Files.write(directory.resolve("code.lease.tmp"), new byte[] { 1, 2 });
+		assertEquals(40, counterOf(allocator(0, 10, lease).generate("ignored", 0)));
+		assertEquals(50, highWater(lease));
+	}
+
+	private static SequentialCodeAllocator allocator(int nodeId, long leaseSize, Path lease) {
+		return new SequentialCodeAllocator(nodeId, leaseSize, false, lease.toString());
+	}
+
+	private static long counterOf(String code) {
+		return Base62.toKey(code) & COUNTER_MASK;
+	}
+
+	private static long highWater(Path lease) throws IOException {
+		byte[] bytes = Files.readAllBytes(lease);
+		assertEquals(Long.BYTES, bytes.length);
+		return ByteBuffer.wrap(bytes).getLong();
+	}
+}
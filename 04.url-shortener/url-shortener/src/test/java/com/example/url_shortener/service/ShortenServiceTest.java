@@ -0,0 +1,115 @@
+package com.example.url_shortener.service;
+
+import com.example.url_shortener.cluster.ClusterNode;
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.store.CodeFilter;
+import com.example.url_shortener.store.HotEntryCache;
+import com.example.url_shortener.store.InMemoryStore;
+import com.example.url_shortener.store.LongKeyStore;
+import com.example.url_shortener.store.UrlStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShortenServiceTest {
+
+	private static final long TTL = 3600;
+
+	@Test
+	void concurrentShortensOfOneUrlCreateOneCode() throws Exception {
+		for (UrlStore store : new UrlStore[] { new InMemoryStore(), new LongKeyStore() }) {
+			ShortenService service = service(new CodeGenerator(store, 0.01), store);
+			int urls = 200;
+			int threads = 8;
+			String[][] codes = new String[threads][urls];
+			AtomicInteger created = new AtomicInteger();
+			CountDownLatch start = new CountDownLatch(1);
+			Thread[] workers = new Thread[threads];
+			for (int t = 0; t < threads; t++) {
+				int worker = t;
+				workers[t] = new Thread(() -> {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < urls; i++) {
+						ShortenResult result = service.shorten(url(i), TTL);
+						codes[worker][i] = result.getEntry().getCode();
+						if (result.isCreated()) {
+							created.incrementAndGet();
+						}
+					}
+				});
+				workers[t].start();
+			}
+			start.countDown();
+			for (Thread worker : workers) {
+				worker.join();
+			}
+
+			// 每個 URL 只建立一次，所有執行緒拿到同一個短碼
+			assertEquals(urls, created.get());
+			assertEquals(urls, store.size());
+			for (int i = 0; i < urls; i++) {
+				for (int t = 1; t < threads; t++) {
+					assertEquals(codes[0][i], codes[t][i], url(i));
+				}
+				assertEquals(codes[0][i], store.getCode(url(i)));
+			}
+		}
+	}
+
+	@Test
+	void collisionsRetryWithTheNextSalt() {
+		UrlStore store = new InMemoryStore();
+		// salt 0 的候選碼全部相同：第二個 URL 一定碰撞
+		ShortenService service = service((url, salt) -> salt == 0 ? "same" : "s" + salt + Integer.toString(url.length(), 36), store);
+
+		ShortenResult first = service.shorten(url(1), TTL);
+		ShortenResult second = service.shorten(url(22), TTL);
+		assertEquals("same", first.getEntry().getCode());
+		assertNotEquals("same", second.getEntry().getCode());
+		assertTrue(second.isCreated());
+
+		ShortenResult again = service.shorten(url(22), TTL);
+		assertFalse(again.isCreated());
+		assertEquals(second.getEntry().getCode(), again.getEntry().getCode());
+	}
+
+	@Test
+	void expiredEntriesAreReplacedUnderTheSameCode() {
+		UrlStore store = new InMemoryStore();
+		ShortenService service = service(new CodeGenerator(store, 0.01), store);
+		String code = service.shorten(url(1), TTL).getEntry().getCode();
+		// 已過期、尚未被清理的同一個 URL
+		Instant past = Instant.now().minusSeconds(100);
+		store.save(url(1), code, new Entry(code, url(1), past, past.plusSeconds(10)));
+
+		ShortenResult result = service.shorten(url(1), TTL);
+		assertTrue(result.isCreated());
+		assertEquals(code, result.getEntry().getCode());
+		assertTrue(store.getEntry(code).getExpiresAt().isAfter(Instant.now()));
+		assertEquals(1, store.size());
+	}
+
+	private static ShortenService service(CodeStrategy strategy, UrlStore store) {
+		StaticListableBeanFactory none = new StaticListableBeanFactory();
+		return new ShortenService(strategy, store,
+				none.getBeanProvider(HotEntryCache.class), none.getBeanProvider(CodeFilter.class),
+				none.getBeanProvider(ClickListener.class), none.getBeanProvider(ClusterNode.class),
+				none.getBeanProvider(CapacityGuard.class), none.getBeanProvider(ShortenerMetrics.class));
+	}
+
+	private static String url(int i) {
+		return "https://www.example.com/page/" + i;
+	}
+}
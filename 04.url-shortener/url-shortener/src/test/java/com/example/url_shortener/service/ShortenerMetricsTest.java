@@ -0,0 +1,104 @@
+package com.example.url_shortener.service;
+
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.store.UrlStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalManagementPort;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Instant;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 測試預設不匯出 metrics，需要 @AutoConfigureObservability 才會有 /actuator/prometheus
+@AutoConfigureObservability
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "management.server.port=0")
+class ShortenerMetricsTest {
+
+	private final HttpClient client = HttpClient.newHttpClient();
+
+	@LocalServerPort
+	private int port;
+
+	@LocalManagementPort
+	private int managementPort;
+
+	@Autowired
+	private UrlStore store;
+
+	@Test
+	void prometheusScrapeReportsShortenAndResolveOutcomes() throws Exception {
+		String before = scrape();
+
+		for (int i = 0; i < 3; i++) {
+			HttpResponse<String> created = post("/shorten", "{\"url\": \"https://www.example.com/metrics/" + i + "\"}");
+			assertEquals(201, created.statusCode());
+		}
+		String code = post("/shorten", "{\"url\": \"https://www.example.com/metrics/0\"}")
+				.body().replaceAll(".*\"code\"\\s*:\\s*\"([^\"]+)\".*", "$1");
+		// 已過期但還沒被 TTLSweeper 清掉的資料
+		Instant now = Instant.now();
+		store.save("https://www.example.com/metrics/expired", "mExpired",
+				new Entry("mExpired", "https://www.example.com/metrics/expired", now.minusSeconds(120), now.minusSeconds(60)));
+
+		assertEquals(302, get(port, "/r/" + code).statusCode());
+		assertEquals(302, get(port, "/r/" + code).statusCode());
+		assertEquals(404, get(port, "/r/zzzzzzz").statusCode());
+		assertEquals(404, get(port, "/r/mExpired").statusCode());
+
+		String after = scrape();
+		assertEquals(4, value(after, "shortener_shorten_salt_retries_count") - value(before, "shortener_shorten_salt_retries_count"));
+		// 沒有碰撞時每次 shorten 都落在 le="0.5"
+		String noRetry = "shortener_shorten_salt_retries_bucket{le=\"0.5\"}";
+		assertEquals(value(after, "shortener_shorten_salt_retries_count"), value(after, noRetry));
+		assertTrue(after.contains("shortener_shorten_salt_retries_bucket{le=\"8.0\"}"), after);
+		assertEquals(2, delta(before, after, "shortener_resolve_total{result=\"hit\"}"));
+		assertEquals(1, delta(before, after, "shortener_resolve_total{result=\"miss\"}"));
+		assertEquals(1, delta(before, after, "shortener_resolve_total{result=\"expired\"}"));
+	}
+
+	@Test
+	void actuatorIsNotServedOnThePublicPort() throws Exception {
+		assertEquals(404, get(port, "/actuator/prometheus").statusCode());
+		assertEquals(200, get(managementPort, "/actuator/health").statusCode());
+	}
+
+	private String scrape() throws Exception {
+		HttpResponse<String> response = get(managementPort, "/actuator/prometheus");
+		assertEquals(200, response.statusCode());
+		return response.body();
+	}
+
+	private HttpResponse<String> get(int port, String path) throws Exception {
+		return client.send(HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + path)).build(),
+				HttpResponse.BodyHandlers.ofString());
+	}
+
+	private HttpResponse<String> post(String path, String json) throws Exception {
+		return client.send(HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + path))
+						.header("Content-Type", "application/json")
+						.POST(HttpRequest.BodyPublishers.ofString(json))
+						.build(),
+				HttpResponse.BodyHandlers.ofString());
+	}
+
+	private static double delta(String before, String after, String series) {
+		return value(after, series) - value(before, series);
+	}
+
+	// Prometheus 文字格式中某個 series 的值；還沒出現時為 0
+	private static double value(String scrape, String series) {
+		Matcher matcher = Pattern.compile("(?m)^" + Pattern.quote(series) + " (\\S+)$").matcher(scrape);
+		return matcher.find() ? Double.parseDouble(matcher.group(1)) : 0;
+	}
+}
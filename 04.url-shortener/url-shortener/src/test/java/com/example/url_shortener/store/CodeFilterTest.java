@@ -0,0 +1,115 @@
+package com.example.url_shortener.store;
+
+import com.example.url_shortener.model.Entry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CodeFilterTest {
+
+	private static final Instant NOW = Instant.now();
+
+	@Test
+	void savedCodesAreNeverRejected() {
+		UrlStore store = new InMemoryStore();
+		CodeFilter filter = new CodeFilter(store, 10_000, 0.01, 2.0);
+		for (int i = 0; i < 5000; i++) {
+			save(store, i);
+		}
+		for (int i = 0; i < 5000; i += 2) {
+			store.remove(url(i), code(i));
+		}
+		for (int i = 1; i < 5000; i += 2) {
+			assertTrue(filter.mightContain(code(i)), code(i));
+		}
+
+		// 刪除的與從未存在的短碼大多被直接排除；誤判率遠高於目標值代表計數器沒有正確遞減
+		int falsePositives = 0;
+		for (int i = 0; i < 5000; i += 2) {
+			if (filter.mightContain(code(i))) {
+				falsePositives++;
+			}
+		}
+		for (int i = 100_000; i < 102_500; i++) {
+			if (filter.mightContain(code(i))) {
+				falsePositives++;
+			}
+		}
+		assertTrue(falsePositives < 250, "false positives " + falsePositives);
+		assertEquals(5000 - falsePositives, filter.rejectedCount());
+	}
+
+	@Test
+	void savesDuringRebuildAreKept() throws Exception {
+		UrlStore store = new InMemoryStore();
+		CodeFilter filter = new CodeFilter(store, 1000, 0.01, 2.0);
+		for (int i = 0; i < 20_000; i++) {
+			save(store, i);
+		}
+		// 重建與寫入同時進行：重建完成後新寫入的短碼也必須存在於新的 filter
+		AtomicBoolean rebuilding = new AtomicBoolean(true);
+		Thread rebuilder = new Thread(() -> {
+			for (int round = 0; round < 5; round++) {
+				filter.rebuild();
+			}
+			rebuilding.set(false);
+		});
+		rebuilder.start();
+		int next = 20_000;
+		while (rebuilding.get()) {
+			save(store, next++);
+		}
+		rebuilder.join();
+
+		assertEquals(5, filter.rebuildCount());
+		// 依重建時的筆數放大，不再是建構時的 1000 筆
+		assertTrue(filter.counterCount() > 20_000 * 9, "counters " + filter.counterCount());
+		for (int i = 0; i < next; i++) {
+			assertTrue(filter.mightContain(code(i)), code(i));
+		}
+	}
+
+	@Test
+	void rebuildsOnlyWhenTheEstimatedRateDegrades() {
+		UrlStore store = new InMemoryStore();
+		CodeFilter filter = new CodeFilter(store, 10_000, 0.01, 2.0);
+		for (int i = 0; i < 10_000; i++) {
+			save(store, i);
+		}
+		// 在預計筆數之內：估計值接近目標值，不需要重建
+		assertFalse(filter.rebuildIfDegraded());
+		// 刪除會讓計數器歸 0，清理之後估計值只會下降
+		for (int i = 0; i < 10_000; i += 2) {
+			store.remove(url(i), code(i));
+		}
+		assertFalse(filter.rebuildIfDegraded());
+		assertEquals(0, filter.rebuildCount());
+
+		// 筆數遠超過 filter 的大小：誤判率上升，重建後依實際筆數放大
+		for (int i = 10_000; i < 40_000; i++) {
+			save(store, i);
+		}
+		assertTrue(filter.estimatedFalsePositiveRate() > 0.02, "estimated " + filter.estimatedFalsePositiveRate());
+		assertTrue(filter.rebuildIfDegraded());
+		assertEquals(1, filter.rebuildCount());
+		assertTrue(filter.estimatedFalsePositiveRate() < 0.01, "estimated " + filter.estimatedFalsePositiveRate());
+		assertFalse(filter.rebuildIfDegraded());
+	}
+
+	private static void save(UrlStore store, int i) {
+		store.save(url(i), code(i), new Entry(code(i), url(i), NOW, null));
+	}
+
+	private static String code(int i) {
+		return "c" + Integer.toString(i, 36);
+	}
+
+	private static String url(int i) {
+		return "https://www.example.com/page/" + i;
+	}
+}
@@ -0,0 +1,109 @@
+package com.example.url_shortener.store;
+
+import com.example.url_shortener.model.Entry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ExpiryIndexTest {
+
+	private static final Instant NOW = Instant.ofEpochSecond(1_700_000_000L);
+
+	@Test
+	void sweepRemovesOnlyBucketsThatEndedBeforeNow() {
+		UrlStore store = new InMemoryStore();
+		ExpiryIndex index = new ExpiryIndex(store, 10);
+		save(store, 0, 5);
+		save(store, 1, 15);
+		save(store, 2, 25);
+		save(store, 3, -1);
+		// c4 先以較早的到期時間存入，再以較晚的到期時間重新存入：舊的桶裡只剩失效的短碼
+		save(store, 4, 5);
+		save(store, 4, 100);
+
+		// NOW 是 10 的倍數：[NOW, NOW+10) 的桶在 NOW+10 之後才整個過期
+		assertEquals(0, index.removeExpired(NOW.plusSeconds(9)));
+		assertEquals(2, index.removeExpired(NOW.plusSeconds(20)));
+		assertNull(store.getEntry("c0"));
+		assertNull(store.getEntry("c1"));
+		assertNotNull(store.getEntry("c2"));
+		assertNotNull(store.getEntry("c3"));
+		assertNotNull(store.getEntry("c4"));
+		assertEquals(3, index.scannedCount());
+
+		assertEquals(2, index.removeExpired(NOW.plusSeconds(1000)));
+		assertEquals(1, store.size());
+		assertEquals(0, index.bucketCount());
+	}
+
+	@Test
+	void evictSoonestStartsFromTheEarliestBucket() {
+		UrlStore store = new InMemoryStore();
+		ExpiryIndex index = new ExpiryIndex(store, 10);
+		for (int i = 0; i < 10; i++) {
+			save(store, i, 100 + i * 10);
+		}
+		save(store, 10, -1);
+
+		assertEquals(3, index.evictSoonest(3));
+		for (int i = 0; i < 3; i++) {
+			assertNull(store.getEntry("c" + i));
+		}
+		assertEquals(7, index.evictSoonest(100));
+		// 永不過期的項目不在任何桶中
+		assertNotNull(store.getEntry("c10"));
+		assertEquals(0, index.evictSoonest(1));
+	}
+
+	@Test
+	void codesWhoseRemoveFailedStayIndexed() {
+		Set<String> failOnce = new HashSet<>(Set.of("c0", "c1"));
+		UrlStore store = new InMemoryStore() {
+			@Override
+			public boolean remove(Entry expected) {
+				// 模擬 getEntry 與 CAS 刪除之間資料被改寫
+				return !failOnce.remove(expected.getCode()) && super.remove(expected);
+			}
+		};
+		ExpiryIndex index = new ExpiryIndex(store, 10);
+		save(store, 0, 100);
+		save(store, 1, 100);
+
+		assertEquals(0, index.evictSoonest(2));
+		assertEquals(2, store.size());
+		// 刪除失敗的短碼仍在桶中，下一次淘汰找得到它們
+		assertEquals(2, index.evictSoonest(2));
+		assertEquals(0, store.size());
+	}
+
+	@Test
+	void packedAndUnpackableCodesAreBothSwept() {
+		UrlStore store = new InMemoryStore();
+		ExpiryIndex index = new ExpiryIndex(store, 10);
+		// "a" 與 "0a" 打包後只差在長度；"my-alias" 與 11 碼的短碼無法打包，另外存放
+		String[] codes = {"a", "0a", "zzzzzzzzzz", "my-alias", "abcdefghijk"};
+		for (String code : codes) {
+			String url = "https://www.example.com/" + code;
+			store.save(url, code, new Entry(code, url, NOW, NOW.plusSeconds(5)));
+		}
+
+		assertEquals(2, index.evictSoonest(2));
+		assertEquals(3, store.size());
+		assertEquals(3, index.removeExpired(NOW.plusSeconds(10)));
+		assertEquals(0, store.size());
+		assertEquals(3, index.scannedCount());
+	}
+
+	// expiresIn < 0 表示永不過期
+	private static void save(UrlStore store, int i, long expiresIn) {
+		String code = "c" + i;
+		String url = "https://www.example.com/" + i;
+		store.save(url, code, new Entry(code, url, NOW, expiresIn < 0 ? null : NOW.plusSeconds(expiresIn)));
+	}
+}
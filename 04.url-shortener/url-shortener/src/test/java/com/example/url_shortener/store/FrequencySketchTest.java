@@ -0,0 +1,60 @@
+package com.example.url_shortener.store;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrequencySketchTest {
+
+	@Test
+	void countsUpToTheFourBitLimit() {
+		FrequencySketch sketch = new FrequencySketch(64);
+		int hot = "hot".hashCode();
+		for (int i = 1; i <= 10; i++) {
+			sketch.increment(hot);
+			assertEquals(i, sketch.frequency(hot));
+		}
+		for (int i = 0; i < 10; i++) {
+			sketch.increment(hot);
+		}
+		assertEquals(15, sketch.frequency(hot));
+		assertEquals(0, sketch.frequency("never-seen".hashCode()));
+	}
+
+	@Test
+	void hotKeysStayAboveTheBackground() {
+		FrequencySketch sketch = new FrequencySketch(1024);
+		for (int i = 0; i < 1000; i++) {
+			sketch.increment(("cold" + i).hashCode());
+			if (i % 100 == 0) {
+				for (int n = 0; n < 10; n++) {
+					sketch.increment(("hot" + i).hashCode());
+				}
+			}
+		}
+		for (int i = 0; i < 1000; i += 100) {
+			// 碰撞只會讓估計值偏高：熱門短碼至少是它實際的存取次數
+			assertTrue(sketch.frequency(("hot" + i).hashCode()) >= 10);
+			assertTrue(sketch.frequency(("cold" + i).hashCode()) < 10);
+		}
+	}
+
+	@Test
+	void agingHalvesEveryCounter() {
+		FrequencySketch sketch = new FrequencySketch(64);
+		int hot = "hot".hashCode();
+		for (int i = 0; i < 15; i++) {
+			sketch.increment(hot);
+		}
+		assertEquals(15, sketch.frequency(hot));
+
+		// sampleSize = 10 × 64 次新增之後全部減半；已經是 15 的計數器不會再被碰撞推高
+		int added = 0;
+		while (sketch.frequency(hot) == 15) {
+			sketch.increment(("background" + added++).hashCode());
+			assertTrue(added <= 640, "no reset after " + added + " additions");
+		}
+		assertEquals(7, sketch.frequency(hot));
+	}
+}
@@ -0,0 +1,189 @@
+package com.example.url_shortener.store;
+
+import com.example.url_shortener.model.Entry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HotEntryCacheTest {
+
+	private static final Instant NOW = Instant.now();
+
+	@Test
+	void frequentKeysBeatOneHitCandidates() {
+		UrlStore store = new InMemoryStore();
+		for (int i = 0; i < 100; i++) {
+			save(store, i, null);
+		}
+		HotEntryCache cache = new HotEntryCache(store, 4);
+		for (int round = 0; round < 5; round++) {
+			for (int i = 0; i < 4; i++) {
+				cache.get(code(i));
+			}
+		}
+		assertEquals(4, cache.size());
+		assertEquals(16, cache.hitCount());
+
+		// 一次性的掃描：每個短碼只出現一次，頻率比不過任何 victim
+		for (int i = 50; i < 100; i++) {
+			assertEquals(url(i), cache.get(code(i)).getUrl());
+		}
+		assertEquals(50, cache.rejectionCount());
+		assertEquals(0, cache.evictionCount());
+		for (int i = 0; i < 4; i++) {
+			cache.get(code(i));
+		}
+		assertEquals(20, cache.hitCount());
+
+		// 新的熱門短碼：頻率超過 victim 之後才被放入，取代一個舊項目
+		for (int round = 0; round < 8; round++) {
+			cache.get(code(10));
+		}
+		assertEquals(1, cache.evictionCount());
+		assertEquals(4, cache.size());
+		long hits = cache.hitCount();
+		cache.get(code(10));
+		assertEquals(hits + 1, cache.hitCount());
+	}
+
+	@Test
+	void savesAndRemovesInvalidateCachedEntries() {
+		UrlStore store = new InMemoryStore();
+		save(store, 0, null);
+		HotEntryCache cache = new HotEntryCache(store, 16);
+		Entry first = cache.get(code(0));
+		assertSame(first, cache.get(code(0)));
+		assertEquals(1, cache.hitCount());
+
+		// 同一個短碼改指向其他 URL：快取不能再回傳舊的 Entry
+		Entry moved = new Entry(code(0), url(1), NOW, null);
+		store.save(url(1), code(0), moved);
+		assertEquals(0, cache.size());
+		assertSame(moved, cache.get(code(0)));
+
+		store.remove(moved);
+		assertEquals(0, cache.size());
+		assertNull(cache.get(code(0)));
+	}
+
+	@Test
+	void writesDuringTheStoreReadAreNotCachedAsStaleData() {
+		AtomicBoolean overwrite = new AtomicBoolean(true);
+		Entry newer = new Entry(code(0), url(1), NOW, null);
+		UrlStore store = new InMemoryStore() {
+			@Override
+			public Entry getEntry(String code) {
+				Entry entry = super.getEntry(code);
+				// 模擬讀取 store 之後、放入快取之前，另一個執行緒覆寫了同一個短碼
+				if (overwrite.getAndSet(false)) {
+					save(url(1), code, newer);
+				}
+				return entry;
+			}
+		};
+		save(store, 0, null);
+		HotEntryCache cache = new HotEntryCache(store, 16);
+
+		assertEquals(url(0), cache.get(code(0)).getUrl());
+		// stamp 已改變：讀到的舊資料被撤回，下一次讀到新的資料
+		assertEquals(0, cache.size());
+		assertSame(newer, cache.get(code(0)));
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	void expiredEntriesAreNotServedFromTheCache() throws Exception {
+		UrlStore store = new InMemoryStore();
+		Instant expiresAt = Instant.ofEpochSecond(Instant.now().getEpochSecond() + 1);
+		save(store, 0, expiresAt);
+		save(store, 1, null);
+		HotEntryCache cache = new HotEntryCache(store, 16);
+		cache.get(code(0));
+		cache.get(code(1));
+		assertEquals(2, cache.size());
+
+		while (!Instant.now().isAfter(expiresAt)) {
+			Thread.sleep(50);
+		}
+		long hits = cache.hitCount();
+		long misses = cache.missCount();
+		// 過期的項目改由 store 回答（ShortenService 依此回傳 410），而且不再放回快取
+		Entry expired = cache.get(code(0));
+		assertTrue(expired.isExpired(Instant.now()));
+		assertEquals(hits, cache.hitCount());
+		assertEquals(misses + 1, cache.missCount());
+		assertEquals(1, cache.size());
+		assertFalse(cache.get(code(1)).isExpired(Instant.now()));
+	}
+
+	@Test
+	void sizeStaysBoundedUnderChurn() throws Exception {
+		UrlStore store = new InMemoryStore();
+		int codes = 5000;
+		for (int i = 0; i < codes; i++) {
+			save(store, i, null);
+		}
+		HotEntryCache cache = new HotEntryCache(store, 100);
+		AtomicBoolean failed = new AtomicBoolean();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			int thread = t;
+			threads.add(new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				for (int n = 0; n < 50_000; n++) {
+					// 一半的讀取集中在前 200 個短碼，其餘散在全部短碼上；寫入執行緒同時覆寫與刪除
+					int i = random.nextBoolean() ? random.nextInt(200) : random.nextInt(codes);
+					if (thread == 0 && n % 10 == 0) {
+						if (random.nextBoolean()) {
+							save(store, i, null);
+						} else {
+							store.remove(url(i), code(i));
+						}
+						continue;
+					}
+					Entry entry = cache.get(code(i));
+					if (entry != null && !entry.getCode().equals(code(i))) {
+						failed.set(true);
+					}
+					if (cache.size() > cache.capacity()) {
+						failed.set(true);
+					}
+				}
+			}));
+		}
+		threads.forEach(Thread::start);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertFalse(failed.get());
+		assertTrue(cache.size() <= 100, "size " + cache.size());
+		assertTrue(cache.evictionCount() > 0);
+		// 停止寫入後，快取回傳的一定是 store 目前的內容
+		for (int i = 0; i < codes; i++) {
+			assertSame(store.getEntry(code(i)), cache.get(code(i)), code(i));
+		}
+	}
+
+	private static void save(UrlStore store, int i, Instant expiresAt) {
+		store.save(url(i), code(i), new Entry(code(i), url(i), NOW, expiresAt));
+	}
+
+	private static String code(int i) {
+		return "c" + Integer.toString(i, 36);
+	}
+
+	private static String url(int i) {
+		return "https://www.example.com/page/" + i;
+	}
+}
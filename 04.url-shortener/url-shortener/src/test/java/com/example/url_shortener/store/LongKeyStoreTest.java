@@ -0,0 +1,159 @@
+package com.example.url_shortener.store;
+
+import com.example.url_shortener.model.Entry;
+import com.example.url_shortener.model.EntryHolder;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongKeyStoreTest {
+
+	private static final Instant NOW = Instant.ofEpochSecond(1_700_000_000L);
+
+	@Test
+	void getReturnsSavedEntriesAcrossResizes() {
+		LongKeyStore store = new LongKeyStore();
+		// 每個 Segment 從 16 個槽位開始：5000 筆會讓每一段都擴容好幾次
+		int count = 5000;
+		for (int i = 0; i < count; i++) {
+			store.save(url(i), code(i), entry(i, NOW.plusSeconds(3600 + i)));
+		}
+		assertEquals(count, store.size());
+		assertEquals(count, store.urlIndexSize());
+
+		for (int i = 0; i < count; i++) {
+			Entry entry = store.getEntry(code(i));
+			assertNotNull(entry, code(i));
+			assertEquals(code(i), entry.getCode());
+			assertEquals(url(i), entry.getUrl());
+			assertEquals(NOW, entry.getCreatedAt());
+			assertEquals(NOW.plusSeconds(3600 + i), entry.getExpiresAt());
+			assertEquals(code(i), store.getCode(url(i)));
+		}
+		assertNull(store.getEntry(code(count)));
+		assertNull(store.getCode(url(count)));
+
+		AtomicInteger visited = new AtomicInteger();
+		store.forEach(entry -> {
+			assertTrue(entry.hasUrl(url(Integer.parseInt(entry.getCode().substring(1), 36))));
+			visited.incrementAndGet();
+		});
+		assertEquals(count, visited.get());
+	}
+
+	@Test
+	void holderReadsReuseOneInstance() {
+		LongKeyStore store = new LongKeyStore();
+		for (int i = 0; i < 100; i++) {
+			store.save(url(i), code(i), entry(i, NOW.plusSeconds(i + 1)));
+		}
+		EntryHolder holder = new EntryHolder();
+		for (int i = 0; i < 100; i++) {
+			assertTrue(store.getEntry(code(i), holder));
+			assertEquals(code(i), holder.getCode());
+			assertFalse(holder.isExpired(NOW.plusSeconds(i)));
+			assertTrue(holder.isExpired(NOW.plusSeconds(i + 2)));
+			Entry entry = holder.toEntry();
+			assertEquals(url(i), entry.getUrl());
+			assertEquals(NOW.plusSeconds(i + 1), entry.getExpiresAt());
+		}
+		assertFalse(store.getEntry(code(100), holder));
+		assertFalse(store.getEntry("not-base62", holder));
+	}
+
+	@Test
+	void codesThatCannotBePackedAreRejected() {
+		LongKeyStore store = new LongKeyStore();
+		String url = "https://www.example.com/";
+		assertThrows(IllegalArgumentException.class, () -> store.save(url, "not-base62", new Entry("not-base62", url, NOW, null)));
+		assertThrows(IllegalArgumentException.class, () -> store.claim(new Entry("abcdefghijk", url, NOW, null)));
+		assertNull(store.getEntry("not-base62"));
+		assertNull(store.getEntry(""));
+		assertEquals(0, store.size());
+	}
+
+	@Test
+	void removeLeavesTheRestOfTheProbeChainReachable() {
+		LongKeyStore store = new LongKeyStore();
+		int count = 2000;
+		for (int i = 0; i < count; i++) {
+			store.save(url(i), code(i), entry(i, null));
+		}
+		// 刪除一半：留下的墓碑不能切斷後面的探測鏈
+		for (int i = 0; i < count; i += 2) {
+			store.remove(url(i), code(i));
+		}
+		assertEquals(count / 2, store.size());
+		for (int i = 0; i < count; i++) {
+			assertEquals(i % 2 == 1, store.getEntry(code(i)) != null, code(i));
+			assertEquals(i % 2 == 1 ? code(i) : null, store.getCode(url(i)));
+		}
+
+		// 再寫入新的短碼，重用墓碑並在擴容時清掉它們
+		for (int i = count; i < count * 2; i++) {
+			store.save(url(i), code(i), entry(i, null));
+		}
+		assertEquals(count * 3 / 2, store.size());
+		for (int i = 1; i < count * 2; i++) {
+			assertEquals(i % 2 == 1 || i >= count, store.getEntry(code(i)) != null, code(i));
+		}
+	}
+
+	@Test
+	void removeOnlyDeletesTheMatchingEntry() {
+		LongKeyStore store = new LongKeyStore();
+		store.save(url(0), code(0), entry(0, null));
+		Entry stale = store.getEntry(code(0));
+
+		// URL 不符：短碼已改由其他 URL 使用時不刪除
+		store.remove(url(1), code(0));
+		assertNotNull(store.getEntry(code(0)));
+
+		// 同一個 URL 以新的建立時間重新寫入後，舊的 Entry 不能再刪掉它
+		store.save(url(0), code(0), new Entry(code(0), url(0), NOW.plusSeconds(1), null));
+		assertFalse(store.remove(stale));
+		assertEquals(NOW.plusSeconds(1), store.getEntry(code(0)).getCreatedAt());
+
+		assertTrue(store.remove(store.getEntry(code(0))));
+		assertNull(store.getEntry(code(0)));
+		assertNull(store.getCode(url(0)));
+		assertEquals(0, store.size());
+		assertFalse(store.remove(stale));
+	}
+
+	@Test
+	void claimReturnsTheExistingEntry() {
+		LongKeyStore store = new LongKeyStore();
+		Entry first = entry(0, null);
+		assertSame(first, store.claim(first));
+		// 同一個 URL：拿回既有的短碼
+		assertEquals(code(0), store.claim(new Entry("other", url(0), NOW, null)).getCode());
+		assertNull(store.getEntry("other"));
+		// 同一個短碼、不同的 URL：拿回佔用者，不覆寫
+		Entry occupant = store.claim(new Entry(code(0), url(1), NOW, null));
+		assertEquals(url(0), occupant.getUrl());
+		assertNull(store.getCode(url(1)));
+		assertEquals(1, store.size());
+	}
+
+	private static Entry entry(int i, Instant expiresAt) {
+		return new Entry(code(i), url(i), NOW, expiresAt);
+	}
+
+	private static String code(int i) {
+		return "c" + Integer.toString(i, 36);
+	}
+
+	private static String url(int i) {
+		return "https://www.example.com/page/" + i;
+	}
+}
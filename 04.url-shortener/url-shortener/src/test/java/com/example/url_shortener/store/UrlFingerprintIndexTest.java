@@ -0,0 +1,234 @@
+package com.example.url_shortener.store;
+
+import com.example.url_shortener.model.Entry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UrlFingerprintIndexTest {
+
+	private static final Instant NOW = Instant.now();
+
+	@Test
+	void collidingFingerprintsResolveToTheirOwnCodes() {
+		ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+		// 所有 URL 的指紋都相同：每次查詢都必須靠 Entry 比對 URL
+		UrlFingerprintIndex index = new UrlFingerprintIndex(entries::get, url -> 42L);
+
+		int count = 100;
+		for (int i = 0; i < count; i++) {
+			Entry entry = entry(i);
+			assertNull(index.claim(entry.getUrl(), entry.getCode(), () -> entries.putIfAbsent(entry.getCode(), entry)));
+		}
+		assertEquals(count, index.size());
+
+		for (int i = 0; i < count; i++) {
+			assertEquals(code(i), index.find(url(i)).getCode());
+			// 同一個 URL 以不同的短碼再佔用一次：拿回原本的 Entry，不會寫入新短碼
+			Entry again = new Entry("dup" + i, url(i), NOW, null);
+			assertSame(entries.get(code(i)), index.claim(url(i), again.getCode(), () -> entries.putIfAbsent(again.getCode(), again)));
+		}
+		assertEquals(count, entries.size());
+
+		for (int i = 0; i < count; i += 2) {
+			int n = i;
+			assertTrue(index.remove(url(n), code(n), () -> entries.remove(code(n)) != null));
+		}
+		for (int i = 0; i < count; i++) {
+			Entry found = index.find(url(i));
+			if (i % 2 == 0) {
+				assertNull(found);
+			} else {
+				assertEquals(code(i), found.getCode());
+			}
+		}
+		assertNull(index.find("https://example.com/not-shortened"));
+	}
+
+	@Test
+	void inMemoryStoreKeepsIdempotencyAndCollisionSemantics() {
+		InMemoryStore store = new InMemoryStore();
+		Entry first = entry(1);
+		assertSame(first, store.claim(first));
+		assertSame(first, store.claim(new Entry("other", url(1), NOW, null)));
+		assertEquals(code(1), store.getCode(url(1)));
+
+		// 短碼碰撞：回傳佔用者，URL 索引不受影響
+		Entry collision = new Entry(code(1), url(2), NOW, null);
+		assertSame(first, store.claim(collision));
+		assertNull(store.getCode(url(2)));
+
+		// save 覆寫同一個 URL 的短碼時，索引改指向新的短碼，舊短碼的資料一併刪除
+		store.save(url(1), "renamed", new Entry("renamed", url(1), NOW, null));
+		assertEquals("renamed", store.getCode(url(1)));
+		assertNull(store.getEntry(code(1)));
+		assertEquals(1, store.size());
+
+		assertTrue(store.remove(store.getEntry("renamed")));
+		assertNull(store.getCode(url(1)));
+	}
+
+	@Test
+	void failedCasRemoveKeepsTheIndexOfTheRecreatedEntry() {
+		for (UrlStore store : List.of(new InMemoryStore(), new LongKeyStore())) {
+			Entry stale = entry(1);
+			assertSame(stale, store.claim(stale));
+			assertTrue(store.remove(stale));
+			// 同一個 URL 以同一個短碼重新建立；之後持有舊 Entry 的執行緒（resolve、TTL 清理、淘汰）才刪除它
+			Entry recreated = new Entry(code(1), url(1), NOW.plusSeconds(1), null);
+			assertSame(recreated, store.claim(recreated));
+			assertFalse(store.remove(stale));
+
+			assertEquals(code(1), store.getCode(url(1)));
+			// LongKeyStore 每次回傳新的 Entry 物件，所以比較內容
+			assertEquals(recreated.getCreatedAt(), store.claim(new Entry("other", url(1), NOW, null)).getCreatedAt());
+			assertEquals(1, store.urlIndexSize());
+		}
+	}
+
+	@Test
+	void concurrentStaleRemovesNeverDropLiveIndexes() throws Exception {
+		for (Supplier<UrlStore> factory : List.<Supplier<UrlStore>>of(InMemoryStore::new, LongKeyStore::new)) {
+			UrlStore store = factory.get();
+			int urls = 8;
+			List<Thread> threads = new ArrayList<>();
+			for (int t = 0; t < 8; t++) {
+				threads.add(new Thread(() -> {
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					Entry[] held = new Entry[urls];
+					for (int n = 0; n < 20_000; n++) {
+						int i = random.nextInt(urls);
+						Entry current = store.getEntry(code(i));
+						if (current == null) {
+							// 建立時間不同：LongKeyStore 的 CAS 依內容比對，相同內容的 Entry 視為同一筆
+							store.claim(new Entry(code(i), url(i), NOW.plusSeconds(n), null));
+						} else if (held[i] != null && random.nextBoolean()) {
+							// 以之前讀到、可能已經被別的執行緒刪除並重新建立的 Entry 做 CAS 刪除
+							store.remove(held[i]);
+						} else {
+							held[i] = current;
+							if (random.nextInt(4) == 0) {
+								store.remove(current);
+							}
+						}
+					}
+				}));
+			}
+			threads.forEach(Thread::start);
+			for (Thread thread : threads) {
+				thread.join();
+			}
+
+			for (int i = 0; i < urls; i++) {
+				Entry current = store.getEntry(code(i));
+				assertEquals(current != null ? code(i) : null, store.getCode(url(i)));
+			}
+			assertEquals(store.size(), store.urlIndexSize());
+		}
+	}
+
+	@Test
+	void savingAUrlUnderANewCodeRemovesTheOldEntry() {
+		for (UrlStore store : List.of(new InMemoryStore(), new LongKeyStore())) {
+			List<String> removed = new ArrayList<>();
+			store.addListener(new StoreListener() {
+				@Override
+				public void onSave(Entry entry) {
+				}
+
+				@Override
+				public void onRemove(String url, String code) {
+					removed.add(url + " " + code);
+				}
+			});
+			for (int i = 0; i < 10; i++) {
+				store.save(url(i), code(i), entry(i));
+			}
+			// 匯入或複寫把 URL 改指向新的短碼：舊短碼刪除並通知監聽者，不會變成 scan 看不到的資料
+			store.save(url(3), code(100), new Entry(code(100), url(3), NOW, null));
+			store.save(url(3), code(3), entry(3));
+
+			assertEquals(List.of(url(3) + " " + code(3), url(3) + " " + code(100)), removed);
+			assertNull(store.getEntry(code(100)));
+			assertEquals(code(3), store.getCode(url(3)));
+			assertEquals(10, store.size());
+			List<String> scanned = new ArrayList<>();
+			long cursor = 0;
+			do {
+				cursor = store.scan(cursor, 3, entry -> scanned.add(entry.getCode()));
+			} while (cursor != 0);
+			assertEquals(10, scanned.size());
+		}
+	}
+
+	@Test
+	void pagedScanSurvivesATombstoneOnlyRehash() {
+		ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+		Map<String, Long> fingerprints = new HashMap<>();
+		// 指紋由測試指定，全部落在第一個分段，槽位 = 指紋
+		UrlFingerprintIndex index = new UrlFingerprintIndex(entries::get, fingerprints::get);
+
+		// 25 筆：分段擴容到 64 個槽位，佔用槽位 0-24
+		for (int i = 0; i < 25; i++) {
+			add(index, entries, fingerprints, i, i);
+		}
+		// 10 筆指紋相同（0）的資料沿著探測鏈排在槽位 25-34
+		for (int i = 100; i < 110; i++) {
+			add(index, entries, fingerprints, i, 0);
+		}
+		for (int i = 0; i < 25; i++) {
+			int n = i;
+			assertTrue(index.remove(url(n), code(n), () -> entries.remove(code(n)) != null));
+		}
+
+		Set<String> seen = new HashSet<>();
+		long cursor = index.scan(0, 5, entry -> seen.add(entry.getCode()));
+		assertEquals(5, seen.size());
+
+		// 再佔用 13 個空槽位（35-47），第 14 筆觸發重建：實際只有 24 筆，表格大小仍是 64，
+		// 但清掉墓碑後，指紋 0 的資料搬到槽位 0-9，落在 cursor 之前
+		for (int i = 35; i < 49; i++) {
+			add(index, entries, fingerprints, i, i);
+		}
+		do {
+			cursor = index.scan(cursor, 5, entry -> seen.add(entry.getCode()));
+		} while (cursor != 0);
+
+		assertEquals(entries.keySet(), seen);
+	}
+
+	private static void add(UrlFingerprintIndex index, ConcurrentMap<String, Entry> entries, Map<String, Long> fingerprints,
+			int i, long fingerprint) {
+		Entry entry = entry(i);
+		fingerprints.put(entry.getUrl(), fingerprint);
+		assertNull(index.claim(entry.getUrl(), entry.getCode(), () -> entries.putIfAbsent(entry.getCode(), entry)));
+	}
+
+	private static Entry entry(int i) {
+		return new Entry(code(i), url(i), NOW, null);
+	}
+
+	private static String code(int i) {
+		return "c" + Integer.toString(i, 36);
+	}
+
+	private static String url(int i) {
+		return "https://example.com/page/" + i;
+	}
+}
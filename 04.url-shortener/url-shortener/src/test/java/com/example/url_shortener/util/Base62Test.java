@@ -0,0 +1,72 @@
+package com.example.url_shortener.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class Base62Test {
+
+	@Test
+	void encodesKnownValues() {
+		assertEquals("0", Base62.encode(0));
+		assertEquals("z", Base62.encode(61));
+		assertEquals("10", Base62.encode(62));
+		assertEquals("zz", Base62.encode(62 * 62 - 1));
+		assertEquals("AzL8n0Y58m7", Base62.encode(Long.MAX_VALUE));
+		assertEquals(Base62.MAX_ENCODED_LENGTH, Base62.encode(Long.MAX_VALUE).length());
+	}
+
+	@Test
+	void roundTripsThroughStringsAndBuffers() {
+		SplittableRandom random = new SplittableRandom(42);
+		char[] buffer = new char[Base62.MAX_ENCODED_LENGTH + 3];
+		for (int i = 0; i < 10_000; i++) {
+			long value = (random.nextLong() & Long.MAX_VALUE) >>> random.nextInt(63);
+			String code = Base62.encode(value);
+			assertEquals(value, Base62.decode(code), code);
+
+			// 寫進既有緩衝區的指定位置，前後的內容不受影響
+			buffer[0] = '#';
+			int length = Base62.encode(value, buffer, 1);
+			assertEquals(code, new String(buffer, 1, length));
+			assertEquals('#', buffer[0]);
+		}
+	}
+
+	@Test
+	void fixedWidthPadsAndTruncates() {
+		char[] buffer = new char[7];
+		Base62.encodeFixed(62, 7, buffer, 0);
+		assertEquals("0000010", new String(buffer));
+		// 超出寬度的高位數被捨棄：只留下 value mod 62^width
+		Base62.encodeFixed(62L * 62 * 62 + 5, 3, buffer, 2);
+		assertEquals("00005", new String(buffer, 0, 5));
+		assertEquals(5, Base62.decode("005"));
+	}
+
+	@Test
+	void digitRejectsCharactersOutsideTheAlphabet() {
+		assertEquals(0, Base62.digit('0'));
+		assertEquals(10, Base62.digit('A'));
+		assertEquals(61, Base62.digit('z'));
+		for (char c : new char[]{'-', '_', '/', ' ', 'é', '例'}) {
+			assertEquals(-1, Base62.digit(c), String.valueOf(c));
+		}
+	}
+
+	@Test
+	void keysKeepLeadingZerosAndRejectUnpackableCodes() {
+		for (String code : new String[]{"0", "a", "0a", "00a", "abc123", "zzzzzzzzzz", "0000000000"}) {
+			long key = Base62.toKey(code);
+			assertNotEquals(0, key, code);
+			assertEquals(code, Base62.fromKey(key));
+		}
+		assertNotEquals(Base62.toKey("a"), Base62.toKey("0a"));
+		assertEquals(0, Base62.toKey(""));
+		assertEquals(0, Base62.toKey("abcdefghijk"));
+		assertEquals(0, Base62.toKey("my-alias"));
+	}
+}
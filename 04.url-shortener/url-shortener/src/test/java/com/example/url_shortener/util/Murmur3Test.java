@@ -0,0 +1,44 @@
+package com.example.url_shortener.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class Murmur3Test {
+
+	// MurmurHash3_x86_32 / x64_128（種子 0）對 text + salt 的 UTF-8 bytes 的結果，以參考實作產生；
+	// 參考實作本身對 "hello"（0x248bfa47、0xcbd8a7b341bd9b02）與
+	// "The quick brown fox jumps over the lazy dog"（0x2e4ff723、0xe34bbc7bbc071b6c）符合公開的測試向量
+	@Test
+	void matchesReferenceVectors() {
+		assertVectors("", 0, 0xd271c07f, 0x2ac9debed546a380L);
+		assertVectors("https://www.example.com/", 0, 0x512c230d, 0xcc14e8fdce8f39fbL);
+		// 超過一個 16 bytes 區塊、尾端不足一個區塊
+		assertVectors("https://www.example.com/articles/2024/03/long-path?q=1", 7, 0xe77d1fa7, 0x41229cecfb0bb1b1L);
+		// 3 bytes 的 UTF-8 字元跨過區塊邊界
+		assertVectors("https://例子.測試/路徑", 12345, 0xf5482ebb, 0x1f6a2b785b7aa453L);
+		// surrogate pair 是一個 4 bytes 的字元；salt 為 int 的最大值（10 位數）
+		assertVectors("https://example.com/😀", Integer.MAX_VALUE, 0x0db7bf8c, 0x80a36f4e73326f96L);
+		assertVectors("abc", 1_000_000_000, 0x56bbcd93, 0x4e3aec95ff5d6b0eL);
+	}
+
+	@Test
+	void saltIsHashedAsItsDecimalDigits() {
+		// salt 直接接在 URL 後面，等同於雜湊串接後的字串
+		assertEquals(Murmur3.hash32("abc1", 23), Murmur3.hash32("abc", 123));
+		assertEquals(Murmur3.hash32("abc12", 3), Murmur3.hash32("abc", 123));
+		assertEquals(Murmur3.hash64("https://www.example.com/1", 0), Murmur3.hash64("https://www.example.com/", 10));
+	}
+
+	@Test
+	void unpairedSurrogatesHashLikeStringGetBytes() {
+		// String.getBytes(UTF_8) 把不成對的 surrogate 換成 '?'
+		assertEquals(Murmur3.hash32("a?b", 1), Murmur3.hash32("a\uD800b", 1));
+		assertEquals(Murmur3.hash64("a?", 1), Murmur3.hash64("a\uDC00", 1));
+	}
+
+	private static void assertVectors(String text, int salt, int expected32, long expected64) {
+		assertEquals(expected32, Murmur3.hash32(text, salt), text);
+		assertEquals(expected64, Murmur3.hash64(text, salt), text);
+	}
+}